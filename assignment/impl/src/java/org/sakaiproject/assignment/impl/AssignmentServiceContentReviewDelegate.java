@@ -6,8 +6,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -19,7 +17,7 @@ import org.sakaiproject.assignment.api.model.AssignmentSubmission;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.contentreview.dao.ContentReviewConstants.ReviewStatus;
-import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
@@ -74,13 +72,12 @@ public class AssignmentServiceContentReviewDelegate
 		Map<String, List<ContentReviewResult>> results = new HashMap<>(submissions.size());
 		boolean allowAnyFile = true; // TIITODO: initialize properly. TiiActivityCfg? Is this a turnitin-only property? do we need a CRS method for this?
 		
-		// get the content review items for this assignment
-		// TIITODO: do we have this already so we can pass it in?
-		Map<String, ContentReviewItem> crItems = Collections.emptyMap();
+		// get the content review items for this assignment, the report and error are then derived from these
+		// rather than looked up again for each attachment
+		Map<String, ContentReviewItemSummary> crItems = Collections.emptyMap();
 		try
 		{
-			List<ContentReviewItem> items = contentReviewService.getAllContentReviewItems(siteId, getAsnRef(asn));
-			crItems = items.stream().collect(Collectors.toMap(ContentReviewItem::getContentId, Function.identity()));
+			crItems = contentReviewService.getItemSummaries(siteId, getAsnRef(asn));
 		}
 		catch (QueueException | SubmissionException | ReportException e)
 		{
@@ -111,7 +108,7 @@ public class AssignmentServiceContentReviewDelegate
 					ContentResource res = contentHostingService.getResource(ref.getId());
 					if (allowAnyFile || contentReviewService.isAcceptableContent(res))
 					{
-						ContentReviewItem crItem = crItems.get(res.getId());
+						ContentReviewItemSummary crItem = crItems.get(res.getId());
 
 						if (crItem == null)
 						{
@@ -152,7 +149,7 @@ public class AssignmentServiceContentReviewDelegate
 		return results;
 	}
 	
-	private int getReviewScore(ContentReviewItem item)
+	private int getReviewScore(ContentReviewItemSummary item)
 	{
 		ReviewStatus reviewStatus = ReviewStatus.fromItemStatus(item.getStatus());
 		if (reviewStatus == ReviewStatus.NOT_SUBMITTED || reviewStatus == ReviewStatus.UNKNOWN
@@ -166,7 +163,7 @@ public class AssignmentServiceContentReviewDelegate
 		return item.getReviewScore();  // TIITODO: what if this is null?
 	}
 	
-	private String getReviewReport(ContentReviewItem item)
+	private String getReviewReport(ContentReviewItemSummary item)
 	{
 		try
 		{
@@ -189,7 +186,7 @@ public class AssignmentServiceContentReviewDelegate
 				M_log.debug(this + " getReviewReport Could not find site from m_context value " + m_context);
 				return "error";
 			}*/
-			return contentReviewService.getReviewReport(contentId, null, null);
+			return contentReviewService.getReviewReport(item, null, null);
 			
 		}
 		catch (QueueException | ReportException e)
@@ -201,16 +198,15 @@ public class AssignmentServiceContentReviewDelegate
 		}
 	}
 	
-	private String getReviewError(ContentReviewItem item)
+	private String getReviewError(ContentReviewItemSummary item)
 	{
 		try
 		{
-			String contentId = item.getContentId();
 			ReviewStatus reviewStatus = ReviewStatus.fromItemStatus(item.getStatus());
 			// TIITODO: does the decision to expose the error belong here or in CRS?
 			boolean exposeError = reviewStatus == ReviewStatus.SUBMISSION_ERROR_NO_RETRY || reviewStatus == ReviewStatus.SUBMISSION_ERROR_RETRY;
 			
-			String errorMessage = contentReviewService.getReviewError(contentId);
+			String errorMessage = contentReviewService.getReviewError(item);
 			
 			// TIITODO: probably a better way to handle this error messaging
 			if (StringUtils.isBlank(errorMessage))
@@ -239,7 +235,7 @@ public class AssignmentServiceContentReviewDelegate
 	 * Convenience method to retrieve the lastError for a content review item, given the content resource ID
 	 * @return a formatted String containing the lastError message for the content review item asked for
 	 */
-	private String getLastErrorForContentReviewItem(ContentReviewItem item)
+	private String getLastErrorForContentReviewItem(ContentReviewItemSummary item)
 	{
 		Object[] args = new String[] { contentReviewService.getServiceName(), item.getLastError() };
 		// TIITODO: one could argue that this localization should happen in CRS or in the tool layer, not the service
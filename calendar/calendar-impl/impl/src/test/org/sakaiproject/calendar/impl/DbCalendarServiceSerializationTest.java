@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.function.Consumer;
 
 import junit.framework.TestCase;
 
@@ -163,6 +164,16 @@ public class DbCalendarServiceSerializationTest extends TestCase
 				return null;
 			}
 
+			public int dbReadEach(String sql, Object[] fields, SqlReader reader, Consumer consumer)
+			{
+				return 0;
+			}
+
+			public int dbReadEach(Connection conn, String sql, Object[] fields, SqlReader reader, Consumer consumer)
+			{
+				return 0;
+			}
+
 			public void dbReadBinary(String sql, Object[] fields, byte[] value)
 			{
 				// TODO Auto-generated method stub
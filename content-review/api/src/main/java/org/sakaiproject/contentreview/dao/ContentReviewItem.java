@@ -46,6 +46,8 @@ public class ContentReviewItem {
 	private String lastError;
 	private Long retryCount;
 	private Integer version;
+	private String leaseOwner;
+	private Date leaseExpiry;
 
 	public ContentReviewItem(String contentId, Integer providerId) {
 		this(contentId, null, null, null, new Date(), ContentReviewConstants.CONTENT_REVIEW_NOT_SUBMITTED_CODE, providerId);
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.dao;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Value;
+
+/**
+ * A read-only copy of the parts of a {@link ContentReviewItem} that are needed to display its review status, score,
+ * report link and error. These are small enough to cache for every item of a task, so a listing of a task's
+ * submissions does not need a lookup per item.
+ */
+@Value
+public class ContentReviewItemSummary implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Long id;
+	private final String contentId;
+	private final String userId;
+	private final String siteId;
+	private final String taskId;
+	private final String externalId;
+	private final Long status;
+	private final Integer reviewScore;
+	private final Integer errorCode;
+	private final String lastError;
+	private final Date dateQueued;
+	private final Date dateSubmitted;
+	private final Date dateReportReceived;
+
+	public static ContentReviewItemSummary of(ContentReviewItem item) {
+		return new ContentReviewItemSummary(item.getId(), item.getContentId(), item.getUserId(), item.getSiteId(),
+				item.getTaskId(), item.getExternalId(), item.getStatus(), item.getReviewScore(), item.getErrorCode(),
+				item.getLastError(), copy(item.getDateQueued()), copy(item.getDateSubmitted()),
+				copy(item.getDateReportReceived()));
+	}
+
+	private static Date copy(Date date) {
+		return date == null ? null : new Date(date.getTime());
+	}
+}
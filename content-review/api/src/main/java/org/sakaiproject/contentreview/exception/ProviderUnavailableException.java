@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.exception;
+
+/**
+ * Thrown when the {@link org.sakaiproject.contentreview.service.ContentReviewProviderGuard} refuses a call because
+ * the provider is unavailable or its call rate has been reached. The call was never made, so the item it was for
+ * should be left as it was rather than counted as a failed attempt.
+ */
+public class ProviderUnavailableException extends TransientSubmissionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ProviderUnavailableException(String s) {
+		super(s);
+	}
+
+}
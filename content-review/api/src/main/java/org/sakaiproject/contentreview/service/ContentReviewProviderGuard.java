@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+/**
+ * Rate limiting and circuit breaking shared by the content review providers.
+ *
+ * Every call a provider makes to its remote service should first {@link #acquire(String) acquire} a permit and
+ * then report its outcome with that permit through {@link #recordSuccess(String, long, long)} or
+ * {@link #recordFailure(String, long, long)}. Calls
+ * are paced by a per-provider token bucket whose rate is cut back when calls fail and raised again as they succeed.
+ * After a run of consecutive failures the circuit opens and calls are refused outright until a trial call gets
+ * through, so an outage doesn't tie up connections or push every queued item's retry time forward. Outcomes of calls
+ * whose permit was granted before the circuit last changed state don't move it again.
+ */
+public interface ContentReviewProviderGuard {
+
+	/** returned by {@link #acquire(String)} when the call may not go ahead */
+	long NO_PERMIT = -1L;
+
+	/**
+	 * Whether calls to the provider are currently allowed
+	 * @param provider the provider's service name
+	 * @return false if the circuit is open
+	 */
+	boolean isCallPermitted(String provider);
+
+	/**
+	 * Whether a queue or report run may go on to its next item. Runs check this before claiming each item so they
+	 * stop early, leaving the remaining items untouched, while the provider is unavailable. Logs when a run is stopped.
+	 * @param provider the provider's service name
+	 * @return false if the circuit is open
+	 */
+	boolean isRunPermitted(String provider);
+
+	/**
+	 * Waits for permission to make a call to the provider
+	 * @param provider the provider's service name
+	 * @return the permit to report the call's outcome with, or {@link #NO_PERMIT} if the circuit is open or no
+	 * permit became available in time
+	 */
+	long acquire(String provider);
+
+	/**
+	 * Records a call that reached the provider and got a response
+	 * @param provider the provider's service name
+	 * @param permit the permit returned by {@link #acquire(String)} for the call
+	 * @param latencyMillis how long the call took
+	 */
+	void recordSuccess(String provider, long permit, long latencyMillis);
+
+	/**
+	 * Records a call that failed because the provider was unreachable, timed out or returned a server error
+	 * @param provider the provider's service name
+	 * @param permit the permit returned by {@link #acquire(String)} for the call
+	 * @param latencyMillis how long the call took
+	 */
+	void recordFailure(String provider, long permit, long latencyMillis);
+}
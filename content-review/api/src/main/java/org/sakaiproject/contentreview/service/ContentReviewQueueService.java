@@ -17,19 +17,25 @@ package org.sakaiproject.contentreview.service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
 
 public interface ContentReviewQueueService {
 
+	/** Posted once content has been queued, with the task id as the resource and the site id as the context */
+	String EVENT_QUEUE_CONTENT = "contentreview.queue";
+
 	/**
 	 * Queue a content item that will later be sent to the content review service
-	 * when the Content Review Process Job is run.
+	 * when the Content Review Process Job is run. A {@link #EVENT_QUEUE_CONTENT} event is posted
+	 * once the transaction commits, so the queue can be processed straight away.
 	 * @param providerId the id of content review implementation
 	 * @param userId the user id associated with the item to be reviewed
 	 * @param siteId the site id associated with the item to be reviewed
@@ -89,6 +95,16 @@ public interface ContentReviewQueueService {
 	 */
 	List<ContentReviewItem> getContentReviewItems(Integer providerId, String siteId, String taskId);
 
+	/**
+	 * Get the status, score and error of every item for a task in a single query. The result is cached until an item of
+	 * the task is changed through this service, or for at most {@code contentreview.statusCache.ttlSeconds}.
+	 * @param providerId the id of content review implementation
+	 * @param siteId the site id associated with the items
+	 * @param taskId the task id associated with the items
+	 * @return a {@code java.util.Map} of item summaries keyed by content id
+	 */
+	Map<String, ContentReviewItemSummary> getItemSummaries(Integer providerId, String siteId, String taskId);
+
 	/**
 	 * Get an item that has been queued and contentId.
 	 * @param providerId the id of content review implementation
@@ -117,6 +133,13 @@ public interface ContentReviewQueueService {
 	 * @return {@code List<ContentReviewItem>}
 	 */
 	List<ContentReviewItem> getAwaitingReports(Integer providerId);
+
+	/**
+	 * Get items awaiting a report from the content review service that have an external id and have reached their next retry time
+	 * @param providerId the id of content review implementation
+	 * @return {@code List<ContentReviewItem>}
+	 */
+	List<ContentReviewItem> getAwaitingReportsDueForRetry(Integer providerId);
 	
 	/**
 	 * Sets the items to be retried for a specific user and a status of {@code ContentReviewConstants}
@@ -173,4 +196,23 @@ public interface ContentReviewQueueService {
 	 * @return the next item missing an external id, if any
 	 */
 	Optional<ContentReviewItem> getNextSubmittedItemMissingExternalId(Integer providerId);
+
+	/**
+	 * Leases up to maxItems items that are ready to be submitted, including submitted items still missing an external id,
+	 * to the given owner. Items leased to another owner are skipped until their lease expires, so several nodes can
+	 * share the queue without submitting the same item twice.
+	 * @param providerId the id of the content review service provider
+	 * @param leaseOwner identifies the node (or worker) taking the lease, eg. the server id
+	 * @param maxItems the maximum number of items to lease
+	 * @param leaseSeconds how long the lease lasts if it is not released
+	 * @return a possibly empty list of items now leased to leaseOwner
+	 */
+	List<ContentReviewItem> claimItemsToSubmit(Integer providerId, String leaseOwner, int maxItems, int leaseSeconds);
+
+	/**
+	 * Releases all leases held by the given owner
+	 * @param providerId the id of the content review service provider
+	 * @param leaseOwner the owner passed to {@link #claimItemsToSubmit(Integer, String, int, int)}
+	 */
+	void releaseLeases(Integer providerId, String leaseOwner);
 }
\ No newline at end of file
@@ -22,10 +22,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.stream.Collectors;
 
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
@@ -83,6 +85,22 @@ public interface ContentReviewService {
 	 */
 	public String getReviewReport(String contentId, String assignmentRef, String userId)
 	throws QueueException, ReportException;
+
+	/**
+	 * As {@link #getReviewReport(String, String, String)}, for an item already fetched by {@link #getItemSummaries(String, String)}
+	 * so implementations need not look it up again
+	 * @param item
+	 * @param assignmentRef
+	 * @param userId
+	 * @return the url
+	 * @throws QueueException
+	 * @throws ReportException
+	 */
+	default String getReviewReport(ContentReviewItemSummary item, String assignmentRef, String userId)
+	throws QueueException, ReportException
+	{
+		return getReviewReport(item.getContentId(), assignmentRef, userId);
+	}
 	
 	/**
 	 * Get the URL of a report constructed for a student
@@ -195,6 +213,21 @@ public interface ContentReviewService {
 	 */
 	public List<ContentReviewItem> getAllContentReviewItems(String siteId, String taskId)
 	throws QueueException, SubmissionException, ReportException;
+
+	/**
+	 * Get the status, score and error of every item queued for a task, for listing all the submissions to it at once.
+	 * Implementations backed by {@link ContentReviewQueueService} serve this from a cache refreshed when an item changes.
+	 * 
+	 * @param siteId
+	 * @param taskId
+	 * @return the item summaries keyed by content id
+	 */
+	default Map<String, ContentReviewItemSummary> getItemSummaries(String siteId, String taskId)
+	throws QueueException, SubmissionException, ReportException
+	{
+		return getAllContentReviewItems(siteId, taskId).stream()
+				.collect(Collectors.toMap(ContentReviewItem::getContentId, ContentReviewItemSummary::of));
+	}
 	
 	
 	/**
@@ -287,6 +320,17 @@ public interface ContentReviewService {
 	 * @deprecated use {@link #getLocalizedStatusMessage(String)}
 	 */
 	public String getReviewError(String contentId);
+
+	/**
+	 * As {@link #getReviewError(String)}, for an item already fetched by {@link #getItemSummaries(String, String)}
+	 * @param item
+	 * @return
+	 */
+	default String getReviewError(ContentReviewItemSummary item)
+	{
+		return getReviewError(item.getContentId());
+	}
+
 	/**
 	 * Get a status message for a submission in the locale specified
 	 * @param messageCode
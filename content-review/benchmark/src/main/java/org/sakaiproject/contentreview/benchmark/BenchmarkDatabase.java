@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.benchmark;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.sakaiproject.contentreview.dao.ContentReviewConstants;
+import org.sakaiproject.contentreview.dao.ContentReviewItemDao;
+import org.sakaiproject.contentreview.service.ContentReviewQueueService;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * An in memory content review database for the benchmarks, filled with a reproducible set of items.
+ *
+ * Items are laid out as sites of {@link #TASKS_PER_SITE} tasks with {@link #ITEMS_PER_TASK} items each, about the
+ * size of a large course. Statuses, scores and dates are drawn from a Random with a fixed seed relative to a fixed
+ * {@link #EPOCH}, so the same item count always produces the same rows. The schema is the one Hibernate creates
+ * from the mapping plus the contentId index from the ddl, so queries see the same indexes as in production.
+ */
+@Slf4j
+public class BenchmarkDatabase implements AutoCloseable {
+
+	public static final int ITEMS_PER_TASK = 150;
+	public static final int TASKS_PER_SITE = 4;
+
+	/** 2018-01-01T00:00:00Z, all generated dates are offsets from this */
+	public static final long EPOCH = 1514764800000L;
+
+	private static final String TRANSACTION_MANAGER = "org.sakaiproject.springframework.orm.hibernate.GlobalTransactionManager";
+	private static final int INSERT_BATCH_SIZE = 10000;
+	private static final String INSERT_ITEM = "insert into CONTENTREVIEW_ITEM (version, providerId, contentId, userId, siteId, taskId, externalId,"
+			+ " dateQueued, dateSubmitted, dateReportReceived, status, reviewScore, retryCount, nextRetryTime)"
+			+ " values (0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private final ClassPathXmlApplicationContext context;
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate readOnlyTransaction;
+
+	@Getter
+	private final ContentReviewItemDao itemDao;
+
+	@Getter
+	private final ContentReviewQueueService queueService;
+
+	public BenchmarkDatabase() {
+		context = new ClassPathXmlApplicationContext("benchmark-context.xml");
+		jdbcTemplate = new JdbcTemplate(context.getBean("benchmarkDataSource", DataSource.class));
+		jdbcTemplate.execute("create index contentreview_content_id on CONTENTREVIEW_ITEM (contentId)");
+		readOnlyTransaction = new TransactionTemplate(context.getBean(TRANSACTION_MANAGER, PlatformTransactionManager.class));
+		readOnlyTransaction.setReadOnly(true);
+		itemDao = context.getBean(ContentReviewItemDao.class);
+		queueService = context.getBean(ContentReviewQueueService.class);
+	}
+
+	public static String siteId(int item) {
+		return "site-" + item / (ITEMS_PER_TASK * TASKS_PER_SITE);
+	}
+
+	public static String taskId(int item) {
+		return "task-" + item / ITEMS_PER_TASK;
+	}
+
+	/** Each user of a site submits one item to every task of the site */
+	public static String userId(int item) {
+		return "user-" + (item / (ITEMS_PER_TASK * TASKS_PER_SITE) * ITEMS_PER_TASK + item % ITEMS_PER_TASK);
+	}
+
+	public static String contentId(int item) {
+		return "/attachment/" + siteId(item) + "/" + taskId(item) + "/essay-" + item + ".docx";
+	}
+
+	/**
+	 * Fills the database with items in a mix of states: 5% waiting to be submitted, 5% failed submissions,
+	 * 15% waiting for a report and the rest with a report
+	 * @param providerId the provider the items belong to
+	 * @param items the number of items
+	 * @param seed the seed for the statuses, scores and dates
+	 */
+	public void populate(int providerId, int items, long seed) {
+		Random random = new Random(seed);
+		insert(items, item -> {
+			double state = random.nextDouble();
+			Timestamp queued = new Timestamp(EPOCH - random.nextInt(90 * 24 * 60) * 60000L);
+			Timestamp due = new Timestamp(EPOCH - random.nextInt(60) * 60000L);
+			Timestamp later = new Timestamp(EPOCH + random.nextInt(24 * 60) * 60000L);
+			if (state < 0.05) {
+				return row(providerId, item, null, queued, null, null, ContentReviewConstants.CONTENT_REVIEW_NOT_SUBMITTED_CODE, null, null, due);
+			}
+			Timestamp submitted = new Timestamp(queued.getTime() + random.nextInt(60) * 60000L);
+			if (state < 0.08) {
+				return row(providerId, item, null, queued, null, null, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, null, 1L + random.nextInt(5), due);
+			}
+			if (state < 0.10) {
+				return row(providerId, item, null, queued, null, null, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, null, 0L, later);
+			}
+			String externalId = "oid-" + item;
+			if (state < 0.25) {
+				// half of them are due to be polled for a report
+				return row(providerId, item, externalId, queued, submitted, null, ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE,
+						null, (long) random.nextInt(3), random.nextBoolean() ? due : later);
+			}
+			Timestamp received = new Timestamp(submitted.getTime() + random.nextInt(120) * 60000L);
+			return row(providerId, item, externalId, queued, submitted, received, ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_REPORT_AVAILABLE_CODE,
+					random.nextInt(101), 0L, later);
+		});
+	}
+
+	/**
+	 * Fills the database with items that are all waiting to be submitted
+	 * @param providerId the provider the items belong to
+	 * @param items the number of items
+	 */
+	public void queue(int providerId, int items) {
+		Timestamp queued = new Timestamp(EPOCH);
+		insert(items, item -> row(providerId, item, null, queued, null, null, ContentReviewConstants.CONTENT_REVIEW_NOT_SUBMITTED_CODE, null, null, queued));
+	}
+
+	/**
+	 * Moves the next retry time of every item into the past, eg. so items submitted by a queue run can be polled for
+	 * reports straight away
+	 * @return the number of items updated
+	 */
+	public int makeAllDue() {
+		return jdbcTemplate.update("update CONTENTREVIEW_ITEM set nextRetryTime = ?", new Timestamp(EPOCH));
+	}
+
+	public int countByStatus(Long status) {
+		return jdbcTemplate.queryForObject("select count(*) from CONTENTREVIEW_ITEM where status = ?", Integer.class, status);
+	}
+
+	/**
+	 * Runs a DAO query in a read only transaction, as the queue service does
+	 */
+	public <T> T readOnly(Supplier<T> query) {
+		return readOnlyTransaction.execute(status -> query.get());
+	}
+
+	@Override
+	public void close() {
+		context.close();
+	}
+
+	private void insert(int items, RowGenerator generator) {
+		long start = System.currentTimeMillis();
+		List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+		for (int item = 0; item < items; item++) {
+			batch.add(generator.row(item));
+			if (batch.size() == INSERT_BATCH_SIZE || item == items - 1) {
+				jdbcTemplate.batchUpdate(INSERT_ITEM, batch);
+				batch.clear();
+			}
+		}
+		log.info("Inserted " + items + " items in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private static Object[] row(int providerId, int item, String externalId, Timestamp queued, Timestamp submitted, Timestamp received,
+			Long status, Integer score, Long retryCount, Timestamp nextRetry) {
+		return new Object[] { providerId, contentId(item), userId(item), siteId(item), taskId(item), externalId,
+				queued, submitted, received, status, score, retryCount, nextRetry };
+	}
+
+	@FunctionalInterface
+	private interface RowGenerator {
+		Object[] row(int item);
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.contentreview.dao.ContentReviewConstants;
+import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemDao;
+import org.sakaiproject.contentreview.dao.ContentReviewItemDao.SearchParameters;
+
+/**
+ * Times the queries behind the queue and reports jobs and the assignment grading view against tables of 100k and
+ * 1M items. Run with java -jar target/benchmarks.jar ContentReviewItemDaoBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ContentReviewItemDaoBenchmark {
+
+	private static final int PROVIDER_ID = 1;
+	private static final long SEED = 20180101L;
+
+	@Param({ "100000", "1000000" })
+	public int items;
+
+	private BenchmarkDatabase database;
+	private ContentReviewItemDao dao;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		database = new BenchmarkDatabase();
+		database.populate(PROVIDER_ID, items, SEED);
+		dao = database.getItemDao();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.close();
+	}
+
+	/**
+	 * Picks the assignments to look up, the same sequence on every run
+	 */
+	@State(Scope.Thread)
+	public static class TaskPicker {
+		private Random random;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			random = new Random(SEED);
+		}
+
+		int next(int items) {
+			return random.nextInt(items);
+		}
+	}
+
+	/**
+	 * The grading view: every item of one assignment
+	 */
+	@Benchmark
+	public List<ContentReviewItem> findBySiteAndTask(TaskPicker picker) {
+		int item = picker.next(items);
+		SearchParameters params = new SearchParameters();
+		params.providerId = PROVIDER_ID;
+		params.siteId = BenchmarkDatabase.siteId(item);
+		params.taskId = BenchmarkDatabase.taskId(item);
+		return database.readOnly(() -> dao.findBySearchParameters(params));
+	}
+
+	@Benchmark
+	public List<ContentReviewItem> findByStatusNotSubmitted() {
+		SearchParameters params = new SearchParameters();
+		params.providerId = PROVIDER_ID;
+		params.status = ContentReviewConstants.CONTENT_REVIEW_NOT_SUBMITTED_CODE;
+		return database.readOnly(() -> dao.findBySearchParameters(params));
+	}
+
+	@Benchmark
+	public List<ContentReviewItem> findByProviderGroupedBySiteAndTask() {
+		return database.readOnly(() -> dao.findByProviderGroupedBySiteAndTask(PROVIDER_ID));
+	}
+
+	/**
+	 * The reports job
+	 */
+	@Benchmark
+	public List<ContentReviewItem> findByProviderAwaitingReportsDueForRetry() {
+		return database.readOnly(() -> dao.findByProviderAwaitingReportsDueForRetry(PROVIDER_ID));
+	}
+
+	/**
+	 * The queue job, one claim of the default batch size
+	 */
+	@Benchmark
+	public List<Long> findIdsOfUnleasedItemsToSubmit() {
+		return database.readOnly(() -> dao.findIdsOfUnleasedItemsToSubmit(PROVIDER_ID, 50));
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.benchmark;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.mockito.Answers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sakaiproject.api.common.edu.person.SakaiPersonManager;
+import org.sakaiproject.assignment.api.AssignmentService;
+import org.sakaiproject.assignment.api.model.Assignment;
+import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.contentreview.advisors.ContentReviewSiteAdvisor;
+import org.sakaiproject.contentreview.dao.ContentReviewConstants;
+import org.sakaiproject.contentreview.turnitin.TiiBaseReviewServiceImpl;
+import org.sakaiproject.contentreview.turnitin.TurnitinAccountConnection;
+import org.sakaiproject.contentreview.turnitin.util.TurnitinLTIUtil;
+import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.site.api.Site;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.tool.api.ToolManager;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * Drives the Turnitin queue and reports jobs end to end against {@link TurnitinStubServer}, with the real
+ * queue service and DAO on an in memory database and the rest of Sakai stubbed out.
+ *
+ * The run queues the items, times one processQueue() run that submits them all, makes them due and times one
+ * checkForReports() run that collects their reports. Settings are read from system properties:
+ * <ul>
+ * <li>items - the number of items to queue (10000)</li>
+ * <li>latency - the milliseconds every Turnitin call takes (50)</li>
+ * <li>errorRate - the fraction of Turnitin calls that fail (0)</li>
+ * <li>concurrency - turnitin.queue.concurrency (1)</li>
+ * <li>seed - the seed for the failed calls (1)</li>
+ * </ul>
+ */
+@Slf4j
+public class TurnitinLoadHarness {
+
+	private static final byte[] PAPER = StringUtils.repeat("The quick brown fox jumps over the lazy dog. ", 500)
+			.getBytes(StandardCharsets.UTF_8);
+
+	public static void main(String[] args) throws Exception {
+		int items = Integer.getInteger("items", 10000);
+		long latency = Long.getLong("latency", 50L);
+		double errorRate = Double.parseDouble(System.getProperty("errorRate", "0"));
+		int concurrency = Integer.getInteger("concurrency", 1);
+		long seed = Long.getLong("seed", 1L);
+
+		try (TurnitinStubServer turnitin = new TurnitinStubServer(latency, errorRate, seed);
+				BenchmarkDatabase database = new BenchmarkDatabase()) {
+			Map<String, String> properties = new HashMap<>();
+			properties.put("turnitin.apiURL", turnitin.getApiUrl());
+			properties.put("turnitin.aid", "1");
+			properties.put("turnitin.said", "1");
+			properties.put("turnitin.secretKey", "benchmark");
+			properties.put("turnitin.defaultInstructorEmail", "instructor@example.edu");
+			properties.put("turnitin.defaultInstructorFName", "Benchmark");
+			properties.put("turnitin.defaultInstructorLName", "Instructor");
+			properties.put("turnitin.defaultInstructorId", "instructor");
+			properties.put("turnitin.networkTimeout", "30000");
+			properties.put("turnitin.http.maxConnections", String.valueOf(Math.max(10, concurrency)));
+			properties.put("turnitin.queue.concurrency", String.valueOf(concurrency));
+			properties.put("turnitin.report.minAgeMinutes", "0");
+			ServerConfigurationService config = stub(ServerConfigurationService.class, new ConfigurationAnswer(properties));
+
+			TurnitinAccountConnection connection = new TurnitinAccountConnection();
+			connection.setServerConfigurationService(config);
+			connection.init();
+
+			TiiBaseReviewServiceImpl service = createService(database, config, connection);
+			int providerId = service.getProviderId();
+			database.queue(providerId, items);
+
+			log.info("Submitting " + items + " items with latency=" + latency + "ms errorRate=" + errorRate + " concurrency=" + concurrency);
+			long start = System.nanoTime();
+			service.processQueue();
+			report("processQueue", items, start);
+			int submitted = database.countByStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
+
+			database.makeAllDue();
+			start = System.nanoTime();
+			service.checkForReports();
+			report("checkForReports", submitted, start);
+
+			log.info("Items awaiting report: " + database.countByStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE)
+					+ ", report available: " + database.countByStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_REPORT_AVAILABLE_CODE)
+					+ ", submission errors: " + database.countByStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE)
+					+ ", report errors: " + database.countByStatus(ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE));
+			log.info("Turnitin calls by fid: " + turnitin.getCalls() + ", failed on purpose: " + turnitin.getErrors());
+
+			connection.destroy();
+		}
+	}
+
+	private static void report(String phase, int items, long startNanos) {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		log.info(String.format("%s: %d items in %.1fs, %.1f items/sec", phase, items, seconds, items / seconds));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static TiiBaseReviewServiceImpl createService(BenchmarkDatabase database, ServerConfigurationService config,
+			TurnitinAccountConnection connection) throws Exception {
+		TiiBaseReviewServiceImpl service = new TiiBaseReviewServiceImpl();
+		service.setServerConfigurationService(config);
+		service.setTurnitinConn(connection);
+		service.setCrqServ(database.getQueueService());
+		service.setToolManager(stub(ToolManager.class));
+		service.setSiteAdvisor(stub(ContentReviewSiteAdvisor.class));
+		service.setTiiUtil(stub(TurnitinLTIUtil.class));
+		service.setSakaiPersonManager(stub(SakaiPersonManager.class));
+		service.setEntityManager(stub(EntityManager.class));
+		service.setSecurityService(stub(SecurityService.class));
+
+		// one user per user id, with an eid that can be used as their Turnitin email address
+		Map<String, User> users = new ConcurrentHashMap<>();
+		UserDirectoryService userDirectoryService = stub(UserDirectoryService.class);
+		when(userDirectoryService.getUser(anyString())).thenAnswer(invocation -> user(users, invocation.getArgument(0)));
+		when(userDirectoryService.getUsers(anyCollection())).thenAnswer(invocation -> ((Collection<String>) invocation.getArgument(0))
+				.stream().map(id -> user(users, id)).collect(Collectors.toList()));
+		service.setUserDirectoryService(userDirectoryService);
+
+		Map<String, Assignment> assignments = new ConcurrentHashMap<>();
+		AssignmentService assignmentService = stub(AssignmentService.class);
+		when(assignmentService.getAssignment(anyString())).thenAnswer(invocation -> assignments.computeIfAbsent(invocation.getArgument(0), id -> {
+			Assignment assignment = new Assignment();
+			assignment.setId(id);
+			assignment.setContentReview(true);
+			assignment.setDateCreated(new Date(BenchmarkDatabase.EPOCH));
+			assignment.setCloseDate(new Date(BenchmarkDatabase.EPOCH + 365L * 24 * 60 * 60 * 1000));
+			return assignment;
+		}));
+		service.setAssignmentService(assignmentService);
+
+		SiteService siteService = stub(SiteService.class);
+		Site site = stub(Site.class);
+		when(siteService.getSite(anyString())).thenReturn(site);
+		service.setSiteService(siteService);
+
+		Map<String, ContentResource> resources = new ConcurrentHashMap<>();
+		ContentHostingService contentHostingService = stub(ContentHostingService.class);
+		when(contentHostingService.getResource(anyString())).thenAnswer(invocation -> resources.computeIfAbsent(invocation.getArgument(0),
+				TurnitinLoadHarness::resource));
+		service.setContentHostingService(contentHostingService);
+
+		SessionManager sessionManager = stub(SessionManager.class);
+		Session session = stub(Session.class);
+		when(sessionManager.getCurrentSessionUserId()).thenReturn("admin");
+		when(sessionManager.getCurrentSession()).thenReturn(session);
+		when(sessionManager.startSession()).thenReturn(session);
+		service.setSessionManager(sessionManager);
+		service.setThreadLocalManager(stub(ThreadLocalManager.class));
+
+		service.init();
+		return service;
+	}
+
+	private static User user(Map<String, User> users, String id) {
+		return users.computeIfAbsent(id, k -> {
+			User user = stub(User.class);
+			when(user.getId()).thenReturn(id);
+			when(user.getEid()).thenReturn(id + "@example.edu");
+			when(user.getEmail()).thenReturn(id + "@example.edu");
+			when(user.getFirstName()).thenReturn("Student");
+			when(user.getLastName()).thenReturn(id);
+			return user;
+		});
+	}
+
+	private static ContentResource resource(String id) {
+		try {
+			ResourceProperties properties = stub(ResourceProperties.class);
+			when(properties.getNamePropDisplayName()).thenReturn(ResourceProperties.PROP_DISPLAY_NAME);
+			when(properties.getProperty(ResourceProperties.PROP_DISPLAY_NAME)).thenReturn(id.substring(id.lastIndexOf('/') + 1));
+
+			ContentResource resource = stub(ContentResource.class);
+			when(resource.getId()).thenReturn(id);
+			when(resource.getProperties()).thenReturn(properties);
+			when(resource.getContentType()).thenReturn("text/plain");
+			when(resource.getContentLength()).thenReturn((long) PAPER.length);
+			when(resource.streamContent()).thenAnswer(invocation -> new ByteArrayInputStream(PAPER));
+			return resource;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Stubs don't record their invocations, which would otherwise hold on to every call made during a run
+	 */
+	private static <T> T stub(Class<T> type) {
+		return mock(type, withSettings().stubOnly());
+	}
+
+	private static <T> T stub(Class<T> type, Answer<?> defaultAnswer) {
+		return mock(type, withSettings().stubOnly().defaultAnswer(defaultAnswer));
+	}
+
+	/**
+	 * Answers ServerConfigurationService lookups from a map, falling back to the caller's default, or "" for
+	 * getString(name) as the real service does
+	 */
+	private static class ConfigurationAnswer implements Answer<Object> {
+		private final Map<String, String> properties;
+
+		private ConfigurationAnswer(Map<String, String> properties) {
+			this.properties = properties;
+		}
+
+		@Override
+		public Object answer(InvocationOnMock invocation) throws Throwable {
+			Object[] args = invocation.getArguments();
+			String value = args.length > 0 && args[0] instanceof String ? properties.get(args[0]) : null;
+			switch (invocation.getMethod().getName()) {
+				case "getString":
+					return value != null ? value : args.length > 1 ? args[1] : "";
+				case "getInt":
+					return value != null ? Integer.valueOf(value) : args[1];
+				case "getBoolean":
+					return value != null ? Boolean.valueOf(value) : args[1];
+				case "getServerIdInstance":
+					return "benchmark";
+				case "getServerUrl":
+					return "http://localhost:8080";
+				default:
+					return Answers.RETURNS_DEFAULTS.answer(invocation);
+			}
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A stand in for the Turnitin API that answers the calls made by the legacy (non LTI) integration: class creation,
+ * enrolment, assignment lookup, paper submission and the report list. Every call waits for the configured latency,
+ * and the configured fraction of calls fails with an HTTP 500, so a run shows how the queue and reports jobs behave
+ * against a slow or flaky Turnitin. Failures are drawn from a seeded Random so runs can be repeated.
+ */
+@Slf4j
+public class TurnitinStubServer implements AutoCloseable {
+
+	private static final Pattern MULTIPART_PARAM = Pattern.compile("name=\"([^\"]+)\"\r\n\r\n([^\r]*)\r\n");
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final long latencyMillis;
+	private final double errorRate;
+	private final Random random;
+
+	private final AtomicLong nextPaperId = new AtomicLong(1000000);
+	private final Map<String, List<String>> papersByAssignment = new ConcurrentHashMap<>();
+	private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+	private final AtomicInteger errors = new AtomicInteger();
+
+	/**
+	 * Starts the server on a free port on the loopback interface
+	 * @param latencyMillis how long every call takes
+	 * @param errorRate the fraction of calls, between 0 and 1, that fail
+	 * @param seed the seed for picking the failed calls
+	 */
+	public TurnitinStubServer(long latencyMillis, double errorRate, long seed) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.errorRate = errorRate;
+		this.random = new Random(seed);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api.asp", this::handle);
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "turnitin-stub");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+		server.start();
+		log.info("Turnitin stub listening on " + getApiUrl() + " latency=" + latencyMillis + "ms errorRate=" + errorRate);
+	}
+
+	/**
+	 * @return the value for turnitin.apiURL
+	 */
+	public String getApiUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/api.asp?";
+	}
+
+	/**
+	 * @return the number of calls made per fid, including failed calls
+	 */
+	public Map<String, Integer> getCalls() {
+		Map<String, Integer> counts = new HashMap<>();
+		calls.forEach((fid, count) -> counts.put(fid, count.get()));
+		return counts;
+	}
+
+	/**
+	 * @return the number of calls that were failed on purpose
+	 */
+	public int getErrors() {
+		return errors.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			Map<String, String> params = parseParams(IOUtils.toString(in, StandardCharsets.UTF_8),
+					exchange.getRequestHeaders().getFirst("Content-Type"));
+			String fid = params.getOrDefault("fid", "");
+			calls.computeIfAbsent(fid, k -> new AtomicInteger()).incrementAndGet();
+
+			if (latencyMillis > 0) {
+				TimeUnit.MILLISECONDS.sleep(latencyMillis);
+			}
+
+			boolean fail;
+			synchronized (random) {
+				fail = random.nextDouble() < errorRate;
+			}
+			if (fail) {
+				errors.incrementAndGet();
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+
+			byte[] body = respond(fid, params.getOrDefault("fcmd", ""), params.get("assignid")).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			exchange.sendResponseHeaders(503, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private String respond(String fid, String fcmd, String assignid) {
+		switch (fid) {
+			case "2":
+				return returnData("21", "Successful!");
+			case "3":
+				return returnData("31", "Successful!");
+			case "4":
+				// fcmd 7 looks the assignment up, anything else creates or updates it
+				return "7".equals(fcmd) ? returnData("85", "Successful!") : returnData("41", "Successful!");
+			case "5":
+				String paperId = String.valueOf(nextPaperId.getAndIncrement());
+				if (assignid != null) {
+					papersByAssignment.computeIfAbsent(assignid, k -> new CopyOnWriteArrayList<>()).add(paperId);
+				}
+				return "<returnData><objectID>" + paperId + "</objectID><rcode>51</rcode><rmessage>Successful!</rmessage></returnData>";
+			case "10":
+				return reportList(assignid);
+			default:
+				return "<returnData><rcode>41</rcode><rmessage>Successful!</rmessage><sessionid>stub-session</sessionid></returnData>";
+		}
+	}
+
+	/**
+	 * Every paper submitted to the assignment has a report, with a score derived from its id
+	 */
+	private String reportList(String assignid) {
+		StringBuilder sb = new StringBuilder("<returnData>");
+		for (String paperId : papersByAssignment.getOrDefault(assignid, new CopyOnWriteArrayList<>())) {
+			int score = (int) (Long.parseLong(paperId) % 101);
+			sb.append("<object><objectID>").append(paperId).append("</objectID><similarityScore>").append(score)
+					.append("</similarityScore><overlap>").append(score).append("</overlap></object>");
+		}
+		return sb.append("<rcode>72</rcode><rmessage>Successful!</rmessage></returnData>").toString();
+	}
+
+	private static String returnData(String rcode, String rmessage) {
+		return "<returnData><rcode>" + rcode + "</rcode><rmessage>" + rmessage + "</rmessage></returnData>";
+	}
+
+	/**
+	 * Pulls the parameters out of a urlencoded or multipart body. Only the plain text parameters are needed, so the
+	 * uploaded file is skipped.
+	 */
+	private static Map<String, String> parseParams(String body, String contentType) {
+		Map<String, String> params = new HashMap<>();
+		if (contentType != null && contentType.startsWith("multipart/")) {
+			Matcher matcher = MULTIPART_PARAM.matcher(body);
+			while (matcher.find()) {
+				params.put(matcher.group(1), matcher.group(2));
+			}
+		} else {
+			for (String pair : body.split("&")) {
+				int eq = pair.indexOf('=');
+				if (eq > 0) {
+					params.put(pair.substring(0, eq), pair.substring(eq + 1));
+				}
+			}
+		}
+		return params;
+	}
+}
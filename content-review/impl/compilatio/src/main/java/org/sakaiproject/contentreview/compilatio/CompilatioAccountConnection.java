@@ -24,6 +24,7 @@ import org.apache.commons.logging.LogFactory;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.contentreview.exception.SubmissionException;
 import org.sakaiproject.contentreview.exception.TransientSubmissionException;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.compilatio.util.CompilatioAPIUtil;
 import org.w3c.dom.Document;
 
@@ -67,7 +68,30 @@ public class CompilatioAccountConnection {
 	 * Utility Methods below
 	 */	
 	public Document callCompilatioReturnDocument(Map params) throws TransientSubmissionException, SubmissionException {
-		return CompilatioAPIUtil.callCompilatioReturnDocument(apiURL, params, secretKey, compilatioConnTimeout);
+		if (providerGuard == null) {
+			return CompilatioAPIUtil.callCompilatioReturnDocument(apiURL, params, secretKey, compilatioConnTimeout);
+		}
+
+		long permit = providerGuard.acquire(CompilatioReviewServiceImpl.SERVICE_NAME);
+		if (permit == ContentReviewProviderGuard.NO_PERMIT) {
+			throw new TransientSubmissionException("Compilatio is unavailable or its call rate has been reached, the call will be retried");
+		}
+
+		// CompilatioAPIUtil returns null when the call fails, which counts against Compilatio along with transient
+		// errors; a SubmissionException is a problem with the request itself
+		long start = System.currentTimeMillis();
+		try {
+			Document document = CompilatioAPIUtil.callCompilatioReturnDocument(apiURL, params, secretKey, compilatioConnTimeout);
+			if (document != null) {
+				providerGuard.recordSuccess(CompilatioReviewServiceImpl.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			} else {
+				providerGuard.recordFailure(CompilatioReviewServiceImpl.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			}
+			return document;
+		} catch (TransientSubmissionException | RuntimeException e) {
+			providerGuard.recordFailure(CompilatioReviewServiceImpl.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			throw e;
+		}
 	}
         
 	// Dependency
@@ -76,4 +100,9 @@ public class CompilatioAccountConnection {
 		this.serverConfigurationService = serverConfigurationService;
 	}
 
+	private ContentReviewProviderGuard providerGuard;
+	public void setProviderGuard(ContentReviewProviderGuard providerGuard) {
+		this.providerGuard = providerGuard;
+	}
+
 }
@@ -31,10 +31,12 @@ import org.sakaiproject.contentreview.advisors.ContentReviewSiteAdvisor;
 import org.sakaiproject.contentreview.compilatio.util.CompilatioAPIUtil;
 import org.sakaiproject.contentreview.dao.ContentReviewConstants;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
 import org.sakaiproject.contentreview.exception.TransientSubmissionException;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.service.ContentReviewQueueService;
 import org.sakaiproject.contentreview.service.ContentReviewService;
 import org.sakaiproject.entity.api.EntityManager;
@@ -64,7 +66,7 @@ public class CompilatioReviewServiceImpl implements ContentReviewService {
 	
 	public static final String COMPILATIO_DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
 	
-	private static final String SERVICE_NAME = "Compilatio";
+	static final String SERVICE_NAME = "Compilatio";
 	
 	// Site property to enable or disable use of Compilatio for the site
 	private static final String COMPILATIO_SITE_PROPERTY = "compilatio";
@@ -188,6 +190,7 @@ public class CompilatioReviewServiceImpl implements ContentReviewService {
 	@Setter protected CompilatioContentValidator compilatioContentValidator;
 	@Setter protected ContentReviewSiteAdvisor siteAdvisor;
 	@Setter	ContentReviewQueueService crqs;
+	@Setter protected ContentReviewProviderGuard providerGuard;
 	
 	public void init() {		
 	}
@@ -267,6 +270,12 @@ public class CompilatioReviewServiceImpl implements ContentReviewService {
 		return crqs.getContentReviewItems(getProviderId(), siteId, taskId);
 	}
 
+	@Override
+	public Map<String, ContentReviewItemSummary> getItemSummaries(String siteId, String taskId)
+			throws QueueException, SubmissionException, ReportException {
+		return crqs.getItemSummaries(getProviderId(), siteId, taskId);
+	}
+
 	@Override
 	public void resetUserDetailsLockedItems(String userId) {
 		crqs.resetUserDetailsLockedItems(getProviderId(), userId);
@@ -373,7 +382,9 @@ public class CompilatioReviewServiceImpl implements ContentReviewService {
 		int success = 0;
 
 		Optional<ContentReviewItem> nextItem = null;
-		while ((nextItem = getNextItemInSubmissionQueue()).isPresent()) {
+		// stop while Compilatio is unavailable, so the remaining items keep their retry times
+		while ((providerGuard == null || providerGuard.isRunPermitted(SERVICE_NAME))
+				&& (nextItem = getNextItemInSubmissionQueue()).isPresent()) {
 			ContentReviewItem currentItem = nextItem.get();
 			
 			//if document has no external id, we need to add it to Compilatio
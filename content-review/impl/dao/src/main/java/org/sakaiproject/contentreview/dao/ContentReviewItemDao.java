@@ -16,10 +16,14 @@
 package org.sakaiproject.contentreview.dao;
 
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
 import org.hibernate.Criteria;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
@@ -34,6 +38,9 @@ public class ContentReviewItemDao extends HibernateCommonDao<ContentReviewItem>
 	protected static final String STATUS_COL = "status";
 	protected static final String ERROR_CODE_COL = "errorCode";
 	protected static final String NEXT_RETRY_TIME_COL = "nextRetryTime";
+	protected static final String LEASE_OWNER_COL = "leaseOwner";
+	protected static final String LEASE_EXPIRY_COL = "leaseExpiry";
+	protected static final String ID_COL = "id";
 	
 	@SuppressWarnings("unchecked")
 	public List<ContentReviewItem> findBySearchParameters(SearchParameters params)
@@ -78,6 +85,20 @@ public class ContentReviewItemDao extends HibernateCommonDao<ContentReviewItem>
 		return c.list();
 	}
 	
+	@SuppressWarnings("unchecked")
+	public List<ContentReviewItem> findByProviderAwaitingReportsDueForRetry(Integer providerId) {
+
+		Criteria c = sessionFactory.getCurrentSession()
+				.createCriteria(ContentReviewItem.class)
+				.add(Restrictions.eq(PROVIDER_ID_COL, providerId))
+				.add(Restrictions.in(STATUS_COL, new Long[]{ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE,
+					ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE}))
+				.add(Restrictions.isNotNull(EXTERNAL_ID_COL))
+				.add(Restrictions.le(NEXT_RETRY_TIME_COL, new Date()));
+		
+		return c.list();
+	}
+	
 	public Optional<ContentReviewItem> findByProviderAndContentId(Integer providerId, String contentId) {
 
 		Criteria c = sessionFactory.getCurrentSession()
@@ -132,6 +153,104 @@ public class ContentReviewItemDao extends HibernateCommonDao<ContentReviewItem>
 		return Optional.ofNullable((ContentReviewItem) c.uniqueResult());
 	}
 	
+	/**
+	 * Finds the ids of up to maxResults items that are ready to be submitted and are not leased by any node.
+	 * This covers both items that have never been submitted (or are due for a retry) and items that
+	 * were submitted but are still missing an external id.
+	 * @param providerId the id of the content review implementation
+	 * @param maxResults the maximum number of ids to return
+	 * @return the ids of eligible items, oldest first
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Long> findIdsOfUnleasedItemsToSubmit(Integer providerId, int maxResults)
+	{
+		Date now = new Date();
+
+		Criteria c = sessionFactory.getCurrentSession()
+				.createCriteria(ContentReviewItem.class)
+				.add(Restrictions.eq(PROVIDER_ID_COL, providerId))
+				.add(Restrictions.lt(NEXT_RETRY_TIME_COL, now))
+				.add(Restrictions.or(
+						Restrictions.in(STATUS_COL, new Long[]{ContentReviewConstants.CONTENT_REVIEW_NOT_SUBMITTED_CODE,
+							ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE,
+							ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE}),
+						Restrictions.and(
+							Restrictions.in(STATUS_COL, new Long[]{ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE,
+								ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE}),
+							Restrictions.isNull(EXTERNAL_ID_COL))))
+				.add(Restrictions.or(Restrictions.isNull(LEASE_EXPIRY_COL), Restrictions.lt(LEASE_EXPIRY_COL, now)))
+				.setProjection(Projections.id())
+				.addOrder(Order.asc(ID_COL))
+				.setMaxResults(maxResults);
+
+		return c.list();
+	}
+
+	/**
+	 * Leases the given items to leaseOwner until leaseExpiry. Items already holding an unexpired lease are left
+	 * untouched, so when several nodes race for the same ids each item is leased by exactly one of them.
+	 * The update is versioned so stale copies of the items held elsewhere can no longer be saved.
+	 * @param ids the ids of the items to lease
+	 * @param leaseOwner the node or worker taking the lease
+	 * @param leaseExpiry when the lease lapses if it is not released
+	 * @return the number of items leased
+	 */
+	public int leaseItems(Collection<Long> ids, String leaseOwner, Date leaseExpiry)
+	{
+		if (ids.isEmpty())
+		{
+			return 0;
+		}
+
+		return sessionFactory.getCurrentSession()
+				.createQuery("update versioned ContentReviewItem set leaseOwner = :owner, leaseExpiry = :expiry "
+						+ "where id in (:ids) and (leaseExpiry is null or leaseExpiry < :now)")
+				.setString("owner", leaseOwner)
+				.setTimestamp("expiry", leaseExpiry)
+				.setParameterList("ids", ids)
+				.setTimestamp("now", new Date())
+				.executeUpdate();
+	}
+
+	/**
+	 * Finds the items among ids that are currently leased to leaseOwner
+	 * @param ids the candidate item ids
+	 * @param leaseOwner the lease owner
+	 * @return the leased items, oldest first
+	 */
+	@SuppressWarnings("unchecked")
+	public List<ContentReviewItem> findByIdsAndLeaseOwner(Collection<Long> ids, String leaseOwner)
+	{
+		if (ids.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		Criteria c = sessionFactory.getCurrentSession()
+				.createCriteria(ContentReviewItem.class)
+				.add(Restrictions.in(ID_COL, ids))
+				.add(Restrictions.eq(LEASE_OWNER_COL, leaseOwner))
+				.addOrder(Order.asc(ID_COL));
+
+		return c.list();
+	}
+
+	/**
+	 * Releases every lease held by leaseOwner for the given provider
+	 * @param providerId the id of the content review implementation
+	 * @param leaseOwner the lease owner
+	 * @return the number of items released
+	 */
+	public int releaseLeases(Integer providerId, String leaseOwner)
+	{
+		return sessionFactory.getCurrentSession()
+				.createQuery("update ContentReviewItem set leaseOwner = null, leaseExpiry = null "
+						+ "where providerId = :providerId and leaseOwner = :owner")
+				.setInteger("providerId", providerId)
+				.setString("owner", leaseOwner)
+				.executeUpdate();
+	}
+
 	// TIITODO: is status 10 (report not available until due date) applicable to all content review providers or just Turnitin?
 	// If so, remove this method and just add status 10 to ContentReviewQueueService.getAwaitingReports()/ContentReviewItemDao method
 	public List<ContentReviewItem> findAwaitingReportsOnDueDate(Integer providerId)
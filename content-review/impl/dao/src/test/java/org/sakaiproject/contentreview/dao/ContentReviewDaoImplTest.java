@@ -16,6 +16,7 @@
 package org.sakaiproject.contentreview.dao;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 import lombok.extern.slf4j.Slf4j;
@@ -112,6 +113,26 @@ public class ContentReviewDaoImplTest extends AbstractTransactionalJUnit4SpringC
 		Assert.fail("Update of itemD failed");
 	}
 
+	@Test
+	public void testLeaseItems() {
+		ContentReviewItem itemE = new ContentReviewItem(USER, "site", "task", "content-E", new Date(),
+				ContentReviewConstants.CONTENT_REVIEW_NOT_SUBMITTED_CODE, providerId);
+		itemE.setNextRetryTime(new Date(System.currentTimeMillis() - 60000));
+		itemDao.create(itemE);
+
+		List<Long> ids = itemDao.findIdsOfUnleasedItemsToSubmit(providerId, 10);
+		Assert.assertTrue(ids.contains(itemE.getId()));
+
+		Date expiry = new Date(System.currentTimeMillis() + 60000);
+		Assert.assertEquals(ids.size(), itemDao.leaseItems(ids, "node1", expiry));
+		// a second node cannot lease items that are already leased
+		Assert.assertEquals(0, itemDao.leaseItems(ids, "node2", expiry));
+		Assert.assertFalse(itemDao.findIdsOfUnleasedItemsToSubmit(providerId, 10).contains(itemE.getId()));
+
+		itemDao.releaseLeases(providerId, "node1");
+		Assert.assertTrue(itemDao.findIdsOfUnleasedItemsToSubmit(providerId, 10).contains(itemE.getId()));
+	}
+
 //	@Test
 //	public void testOptimisticLock() {
 //		itemA = new ContentReviewItem(USER, "site", "task", "content-A", new Date(),
@@ -30,6 +30,7 @@ import org.apache.commons.lang.StringUtils;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.ContentReviewProviderException;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
@@ -151,6 +152,11 @@ public class ContentReviewFederatedServiceImpl implements ContentReviewService {
 		return getSelectedProvider().getAllContentReviewItems(arg0, arg1);
 	}
 
+	public Map<String, ContentReviewItemSummary> getItemSummaries(String siteId, String taskId)
+			throws QueueException, SubmissionException, ReportException {
+		return getSelectedProvider().getItemSummaries(siteId, taskId);
+	}
+
 	public Map getAssignment(String arg0, String arg1) throws SubmissionException, TransientSubmissionException {
 		return getSelectedProvider().getAssignment(arg0, arg1);
 	}
@@ -194,6 +200,11 @@ public class ContentReviewFederatedServiceImpl implements ContentReviewService {
 		return getSelectedProvider().getReviewReport(contentId, assignmentRef, userId);
 	}
 
+	public String getReviewReport(ContentReviewItemSummary item, String assignmentRef, String userId)
+			throws QueueException, ReportException {
+		return getSelectedProvider().getReviewReport(item, assignmentRef, userId);
+	}
+
 	public String getReviewReportInstructor(String contentId, String assignmentRef, String userId)
 			throws QueueException, ReportException {
 		return getSelectedProvider().getReviewReportInstructor(contentId, assignmentRef, userId);
@@ -254,6 +265,10 @@ public class ContentReviewFederatedServiceImpl implements ContentReviewService {
 		return getSelectedProvider().getReviewError(contentId);
 	}
 
+	public String getReviewError(ContentReviewItemSummary item) {
+		return getSelectedProvider().getReviewError(item);
+	}
+
 	public int getReviewScore(String contentId, String assignmentRef, String userId)
 			throws QueueException, ReportException, Exception {
 		return getSelectedProvider().getReviewScore(contentId, assignmentRef, userId);
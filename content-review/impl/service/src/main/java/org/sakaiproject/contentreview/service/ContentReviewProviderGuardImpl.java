@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.component.api.ServerConfigurationService;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps a {@link ProviderCallGuard} for each content review provider and registers it with the platform MBean
+ * server as org.sakaiproject.contentreview:type=ProviderGuard,name=&lt;provider&gt;.
+ *
+ * Limits are read from contentreview.guard.* properties, which can be overridden for a single provider with
+ * contentreview.guard.&lt;provider&gt;.*, eg. contentreview.guard.turnitin.ratePerSecond.
+ */
+@Slf4j
+public class ContentReviewProviderGuardImpl implements ContentReviewProviderGuard {
+
+	private static final String PROPERTY_PREFIX = "contentreview.guard.";
+	private static final String MBEAN_NAME_PREFIX = "org.sakaiproject.contentreview:type=ProviderGuard,name=";
+
+	@Setter
+	private ServerConfigurationService serverConfigurationService;
+
+	private MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+	private final Map<String, ProviderCallGuard> guards = new ConcurrentHashMap<>();
+
+	private long acquireTimeoutMillis;
+
+	public void init() {
+		acquireTimeoutMillis = TimeUnit.SECONDS.toMillis(serverConfigurationService.getInt(PROPERTY_PREFIX + "acquireTimeoutSeconds", 30));
+	}
+
+	public void destroy() {
+		for (String provider : guards.keySet()) {
+			try {
+				mBeanServer.unregisterMBean(getObjectName(provider));
+			} catch (JMException e) {
+				log.debug("Could not unregister provider guard for " + provider, e);
+			}
+		}
+		guards.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewProviderGuard#isCallPermitted(java.lang.String)
+	 */
+	@Override
+	public boolean isCallPermitted(String provider) {
+		return getGuard(provider).isCallPermitted(System.currentTimeMillis());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewProviderGuard#isRunPermitted(java.lang.String)
+	 */
+	@Override
+	public boolean isRunPermitted(String provider) {
+		if (isCallPermitted(provider)) {
+			return true;
+		}
+		log.warn(provider + " is unavailable, leaving the remaining items for a later run");
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewProviderGuard#acquire(java.lang.String)
+	 */
+	@Override
+	public long acquire(String provider) {
+		ProviderCallGuard guard = getGuard(provider);
+		long deadline = System.currentTimeMillis() + acquireTimeoutMillis;
+		while (true) {
+			long now = System.currentTimeMillis();
+			ProviderCallGuard.Permit permit = guard.tryAcquire(now, System.nanoTime());
+			if (permit.isGranted()) {
+				return permit.getGeneration();
+			}
+			if (permit == ProviderCallGuard.Permit.REFUSED || now >= deadline) {
+				guard.recordRejected();
+				return NO_PERMIT;
+			}
+			try {
+				Thread.sleep(Math.min(permit.getWaitMillis(), deadline - now));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				guard.recordRejected();
+				return NO_PERMIT;
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewProviderGuard#recordSuccess(java.lang.String, long, long)
+	 */
+	@Override
+	public void recordSuccess(String provider, long permit, long latencyMillis) {
+		getGuard(provider).recordSuccess(permit, latencyMillis, System.nanoTime());
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewProviderGuard#recordFailure(java.lang.String, long, long)
+	 */
+	@Override
+	public void recordFailure(String provider, long permit, long latencyMillis) {
+		getGuard(provider).recordFailure(permit, latencyMillis, System.currentTimeMillis());
+	}
+
+	private ProviderCallGuard getGuard(String provider) {
+		return guards.computeIfAbsent(provider, this::createGuard);
+	}
+
+	private ProviderCallGuard createGuard(String provider) {
+		double maxRate = getDouble(provider, "ratePerSecond", 5);
+		ProviderCallGuard guard = new ProviderCallGuard(provider,
+				maxRate,
+				getDouble(provider, "minRatePerSecond", 0.2),
+				getDouble(provider, "burst", Math.ceil(maxRate)),
+				(int) getDouble(provider, "failureThreshold", 5),
+				TimeUnit.SECONDS.toMillis((long) getDouble(provider, "openSeconds", 60)),
+				TimeUnit.SECONDS.toMillis((long) getDouble(provider, "maxOpenSeconds", 900)));
+
+		try {
+			mBeanServer.registerMBean(guard, getObjectName(provider));
+		} catch (JMException e) {
+			log.warn("Could not register provider guard for " + provider + " with JMX", e);
+		}
+		log.info("Content review provider " + provider + " limited to " + guard.getCurrentRatePerSecond() + " calls per second");
+		return guard;
+	}
+
+	private double getDouble(String provider, String name, double defaultValue) {
+		String value = serverConfigurationService.getString(PROPERTY_PREFIX + provider.toLowerCase() + "." + name, null);
+		if (StringUtils.isBlank(value)) {
+			value = serverConfigurationService.getString(PROPERTY_PREFIX + name, null);
+		}
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for " + PROPERTY_PREFIX + name + ": " + value + ", using " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private ObjectName getObjectName(String provider) throws JMException {
+		return new ObjectName(MBEAN_NAME_PREFIX + provider);
+	}
+}
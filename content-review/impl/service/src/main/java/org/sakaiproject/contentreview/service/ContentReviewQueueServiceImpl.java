@@ -15,20 +15,32 @@
  */
 package org.sakaiproject.contentreview.service;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
 import lombok.extern.slf4j.Slf4j;
+import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.contentreview.dao.ContentReviewConstants;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
 import org.sakaiproject.contentreview.dao.ContentReviewItemDao;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.event.api.NotificationService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.memory.api.SimpleConfiguration;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import lombok.Setter;
 
@@ -37,6 +49,27 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 
 	@Setter
 	private ContentReviewItemDao itemDao;
+
+	@Setter
+	private MemoryService memoryService;
+
+	@Setter
+	private ServerConfigurationService serverConfigurationService;
+
+	@Setter
+	private EventTrackingService eventTrackingService;
+
+	// item summaries per provider, site and task; see getItemSummaries
+	private Cache<String, HashMap<String, ContentReviewItemSummary>> summaryCache;
+
+	public void init() {
+		int ttlSeconds = serverConfigurationService == null ? 0 : serverConfigurationService.getInt("contentreview.statusCache.ttlSeconds", 120);
+		int maxTasks = serverConfigurationService == null ? 0 : serverConfigurationService.getInt("contentreview.statusCache.maxTasks", 1000);
+		if (memoryService != null && ttlSeconds > 0 && maxTasks > 0) {
+			summaryCache = memoryService.createCache("org.sakaiproject.contentreview.service.ContentReviewQueueService.summaryCache",
+					new SimpleConfiguration<>(maxTasks, ttlSeconds, -1));
+		}
+	}
 	
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.contentreview.common.service.ContentReviewCommonService#queueContent(java.lang.Integer, java.lang.String, java.lang.String, java.lang.String, java.util.List, int)
@@ -75,6 +108,9 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 			
 			itemDao.create(item);
 		}
+
+		evictSummaries(providerId, siteId, taskId);
+		postQueuedEvent(siteId, taskId);
 	}
 	
 	/* (non-Javadoc)
@@ -189,6 +225,33 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 		return itemDao.findBySearchParameters(params);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewQueueService#getItemSummaries(java.lang.Integer, java.lang.String, java.lang.String)
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public Map<String, ContentReviewItemSummary> getItemSummaries(Integer providerId, String siteId, String taskId) {
+		Objects.requireNonNull(providerId, "providerId cannot be null");
+		Objects.requireNonNull(siteId, "siteId cannot be null");
+		Objects.requireNonNull(taskId, "taskId cannot be null");
+
+		String key = summaryKey(providerId, siteId, taskId);
+		HashMap<String, ContentReviewItemSummary> summaries = summaryCache == null ? null : summaryCache.get(key);
+		if (summaries == null) {
+			List<ContentReviewItem> items = getContentReviewItems(providerId, siteId, taskId);
+			summaries = new HashMap<>(items.size() * 4 / 3 + 1);
+			for (ContentReviewItem item : items) {
+				summaries.put(item.getContentId(), ContentReviewItemSummary.of(item));
+			}
+			log.debug("Loaded " + summaries.size() + " item summaries for site: " + siteId + " task: " + taskId);
+			if (summaryCache != null) {
+				summaryCache.put(key, summaries);
+			}
+		}
+
+		return Collections.unmodifiableMap(summaries);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.contentreview.common.service.ContentReviewCommonService#getAllContentReviewItems(java.lang.Integer, java.lang.String, java.lang.String)
 	 */
@@ -221,6 +284,7 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 		for (ContentReviewItem item : lockedItems) {
 			item.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE);
 			itemDao.save(item);
+			evictSummaries(item);
 		}
 	}
 
@@ -236,6 +300,7 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 		Optional<ContentReviewItem> item = itemDao.findByProviderAndContentId(providerId, contentId);
 		if (item.isPresent()) {
 			itemDao.delete(item.get());
+			evictSummaries(item.get());
 		}
 	}
 
@@ -282,6 +347,16 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 		Objects.requireNonNull(providerId, "providerId cannot be null");
 		return itemDao.findByProviderAwaitingReports(providerId);
 	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewQueueService#getAwaitingReportsDueForRetry(java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly=true)
+	public List<ContentReviewItem> getAwaitingReportsDueForRetry(Integer providerId) {
+		Objects.requireNonNull(providerId, "providerId cannot be null");
+		return itemDao.findByProviderAwaitingReportsDueForRetry(providerId);
+	}
 	
 	
 	/* (non-Javadoc)
@@ -295,6 +370,7 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 		Objects.requireNonNull(item.getProviderId(), "providerId cannot be null");
 		
 		itemDao.save(item);
+		evictSummaries(item);
 	}
 
 	/* (non-Javadoc)
@@ -308,6 +384,7 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 		Objects.requireNonNull(item.getProviderId(), "providerId cannot be null");
 		
 		itemDao.delete(item);
+		evictSummaries(item);
 	}
 
 	@Override
@@ -328,4 +405,94 @@ public class ContentReviewQueueServiceImpl implements ContentReviewQueueService
 	{
 		return itemDao.findSingleItemToSubmitMissingExternalId(providerId);
 	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewQueueService#claimItemsToSubmit(java.lang.Integer, java.lang.String, int, int)
+	 */
+	@Override
+	@Transactional
+	public List<ContentReviewItem> claimItemsToSubmit(Integer providerId, String leaseOwner, int maxItems, int leaseSeconds)
+	{
+		Objects.requireNonNull(providerId, "providerId cannot be null");
+		Objects.requireNonNull(leaseOwner, "leaseOwner cannot be null");
+
+		List<Long> candidateIds = itemDao.findIdsOfUnleasedItemsToSubmit(providerId, maxItems);
+		if (candidateIds.isEmpty())
+		{
+			return Collections.emptyList();
+		}
+
+		Date leaseExpiry = new Date(System.currentTimeMillis() + leaseSeconds * 1000L);
+		int leased = itemDao.leaseItems(candidateIds, leaseOwner, leaseExpiry);
+		log.debug("Leased " + leased + " of " + candidateIds.size() + " items to " + leaseOwner);
+
+		// another node may have leased some of the candidates between the two statements, so only return what we now own
+		return itemDao.findByIdsAndLeaseOwner(candidateIds, leaseOwner);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.contentreview.service.ContentReviewQueueService#releaseLeases(java.lang.Integer, java.lang.String)
+	 */
+	@Override
+	@Transactional
+	public void releaseLeases(Integer providerId, String leaseOwner)
+	{
+		Objects.requireNonNull(providerId, "providerId cannot be null");
+		Objects.requireNonNull(leaseOwner, "leaseOwner cannot be null");
+
+		itemDao.releaseLeases(providerId, leaseOwner);
+	}
+
+	private void evictSummaries(ContentReviewItem item) {
+		if (item.getSiteId() != null && item.getTaskId() != null) {
+			evictSummaries(item.getProviderId(), item.getSiteId(), item.getTaskId());
+		}
+	}
+
+	/**
+	 * Drops the cached summaries for a task now, and again once the current transaction completes so that a
+	 * summary loaded by another thread before the change was committed is not kept.
+	 */
+	private void evictSummaries(Integer providerId, String siteId, String taskId) {
+		if (summaryCache == null) {
+			return;
+		}
+
+		String key = summaryKey(providerId, siteId, taskId);
+		summaryCache.remove(key);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					summaryCache.remove(key);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Posts the queued event once the current transaction commits, so whoever picks it up can see the new items
+	 */
+	private void postQueuedEvent(String siteId, String taskId) {
+		if (eventTrackingService == null) {
+			return;
+		}
+
+		Runnable post = () -> eventTrackingService.post(eventTrackingService.newEvent(EVENT_QUEUE_CONTENT, taskId, siteId, true,
+				NotificationService.NOTI_NONE));
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					post.run();
+				}
+			});
+		} else {
+			post.run();
+		}
+	}
+
+	private String summaryKey(Integer providerId, String siteId, String taskId) {
+		return providerId + ":" + siteId + ":" + taskId;
+	}
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the content review submission queue shortly after content is queued on this server, instead of leaving it
+ * for the next run of the queue job.
+ *
+ * Watches for the {@link ContentReviewQueueService#EVENT_QUEUE_CONTENT} events posted by queueContent and wakes a
+ * single worker thread, which waits contentreview.queue.wakeup.delaySeconds so content queued close together goes
+ * in one run. Only events from this server are observed, so a submission wakes the node that took it rather than
+ * every node in the cluster. Content queued while a run is in progress triggers one more run afterwards.
+ *
+ * The queue job also runs through {@link #processQueue()}, so the job and the worker never process the queue at the
+ * same time on one server. The job is still needed to retry failed items and to pick up anything queued on a server
+ * that went down before its run, but can be scheduled much less often.
+ */
+@Slf4j
+public class ContentReviewQueueWorker implements Observer {
+
+	@Setter
+	private EventTrackingService eventTrackingService;
+
+	@Setter
+	private ContentReviewService contentReviewService;
+
+	@Setter
+	private SessionManager sessionManager;
+
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+
+	@Setter
+	private ServerConfigurationService serverConfigurationService;
+
+	private final Lock runLock = new ReentrantLock();
+	private final AtomicBoolean wakeupPending = new AtomicBoolean();
+	private ScheduledExecutorService executor;
+	private long delaySeconds;
+
+	public void init() {
+		if (!serverConfigurationService.getBoolean("contentreview.queue.wakeup.enabled", true)) {
+			log.info("Content review queue wake-up is disabled, content is submitted by the queue job only");
+			return;
+		}
+
+		delaySeconds = Math.max(0, serverConfigurationService.getInt("contentreview.queue.wakeup.delaySeconds", 5));
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "contentreview-queue-worker");
+			t.setDaemon(true);
+			return t;
+		});
+		eventTrackingService.addLocalObserver(this);
+		log.info("Content review queue wake-up enabled, delay " + delaySeconds + "s");
+	}
+
+	public void destroy() {
+		if (executor != null) {
+			eventTrackingService.deleteObserver(this);
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void update(Observable o, Object arg) {
+		if (arg instanceof Event && ContentReviewQueueService.EVENT_QUEUE_CONTENT.equals(((Event) arg).getEvent())) {
+			wakeUp();
+		}
+	}
+
+	/**
+	 * Schedules a run of the queue, unless one is already waiting to start
+	 */
+	public void wakeUp() {
+		if (executor != null && wakeupPending.compareAndSet(false, true)) {
+			executor.schedule(this::runAfterWakeup, delaySeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Processes the submission queue for all enabled providers, waiting for any run already in progress on this
+	 * server to finish first
+	 */
+	public void processQueue() {
+		runLock.lock();
+		try {
+			contentReviewService.processQueue();
+		} finally {
+			runLock.unlock();
+		}
+	}
+
+	/**
+	 * Runs the queue as admin, like the queue job, in a session started for this run. The worker thread lives as long
+	 * as the worker, so the session and anything else the run left in its thread locals are cleared afterwards.
+	 */
+	void runAfterWakeup() {
+		// content queued from here on needs another run, as this one may already be past it
+		wakeupPending.set(false);
+		Session session = sessionManager.startSession();
+		try {
+			session.setUserId("admin");
+			session.setUserEid("admin");
+			sessionManager.setCurrentSession(session);
+			processQueue();
+		} catch (RuntimeException e) {
+			log.warn("Content review queue run after wake-up failed, the queue job will pick up what was missed", e);
+		} finally {
+			threadLocalManager.clear();
+			session.invalidate();
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Token bucket and circuit breaker for the calls made to a single content review provider.
+ *
+ * The bucket refills at the current rate, which starts at the configured maximum, halves on every failure (down to
+ * the minimum rate) and climbs back by a fixed step on every success. Once the failure threshold is reached the
+ * circuit opens for the open period. When that period is up a single trial call is let through: if it succeeds the
+ * circuit closes and calls resume at the minimum rate, ramping back up as they succeed; if it fails the circuit
+ * opens again for twice as long, up to the maximum open period.
+ *
+ * Every permit carries the generation it was granted in, and the generation moves on whenever the circuit changes
+ * state or a new trial call is let through. An outcome reported with an older permit is counted in the statistics but
+ * does not move the circuit, so a call that started before the circuit opened can't close it again.
+ */
+@Slf4j
+public class ProviderCallGuard implements ProviderCallGuardMBean {
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	/**
+	 * The answer to {@link ProviderCallGuard#tryAcquire(long, long)}
+	 */
+	public static final class Permit {
+
+		/** the circuit is open */
+		public static final Permit REFUSED = new Permit(-1L, 0L);
+
+		private final long generation;
+		private final long waitMillis;
+
+		private Permit(long generation, long waitMillis) {
+			this.generation = generation;
+			this.waitMillis = waitMillis;
+		}
+
+		/**
+		 * @return true if the call may go ahead
+		 */
+		public boolean isGranted() {
+			return generation >= 0;
+		}
+
+		/**
+		 * @return the generation to report the call's outcome with, when granted
+		 */
+		public long getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * @return the number of milliseconds to wait before trying again, when neither granted nor refused
+		 */
+		public long getWaitMillis() {
+			return waitMillis;
+		}
+	}
+
+	// how much of the maximum rate each successful call wins back
+	private static final double RATE_STEP = 0.05;
+	// how heavily the latest call counts towards the average latency and error rate
+	private static final double EWMA_WEIGHT = 0.1;
+	// how long a caller waits before checking again whether a trial call has finished
+	private static final long TRIAL_POLL_MILLIS = 250L;
+
+	private final String provider;
+	private final double maxRate;
+	private final double minRate;
+	private final double burst;
+	private final int failureThreshold;
+	private final long openMillis;
+	private final long maxOpenMillis;
+
+	private State state = State.CLOSED;
+	private double rate;
+	private double tokens;
+	private long lastRefillNanos;
+	private int consecutiveFailures;
+	private long currentOpenMillis;
+	private long openUntil;
+	private long trialStarted;
+	private boolean trialInFlight;
+	private long generation;
+
+	private long calls;
+	private long failures;
+	private long rejected;
+	private double errorRate;
+	private double averageLatency;
+	private long maxLatency;
+
+	/**
+	 * @param provider the provider's service name
+	 * @param maxRate the number of calls per second allowed while the provider is healthy
+	 * @param minRate the number of calls per second the rate is never cut below
+	 * @param burst the number of calls that can be made back to back before pacing starts
+	 * @param failureThreshold the number of consecutive failures that opens the circuit
+	 * @param openMillis how long the circuit first stays open
+	 * @param maxOpenMillis the longest the circuit stays open before the next trial call
+	 */
+	public ProviderCallGuard(String provider, double maxRate, double minRate, double burst, int failureThreshold,
+			long openMillis, long maxOpenMillis) {
+		this.provider = provider;
+		this.maxRate = Math.max(0.001, maxRate);
+		this.minRate = Math.min(this.maxRate, Math.max(0.001, minRate));
+		this.burst = Math.max(1, burst);
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = Math.max(1000L, openMillis);
+		this.maxOpenMillis = Math.max(this.openMillis, maxOpenMillis);
+
+		this.rate = this.maxRate;
+		this.tokens = this.burst;
+		this.lastRefillNanos = System.nanoTime();
+		this.currentOpenMillis = this.openMillis;
+	}
+
+	/**
+	 * @param now the current time in milliseconds
+	 * @return false if the circuit is open and the open period is not yet up
+	 */
+	public synchronized boolean isCallPermitted(long now) {
+		return state != State.OPEN || now >= openUntil;
+	}
+
+	/**
+	 * Takes a permit if one is available
+	 * @param now the current time in milliseconds
+	 * @param nowNanos the current value of {@link System#nanoTime()}
+	 * @return a granted permit if the call may go ahead, {@link Permit#REFUSED} if the circuit is open, otherwise
+	 * the time to wait before trying again
+	 */
+	public synchronized Permit tryAcquire(long now, long nowNanos) {
+		if (state == State.OPEN) {
+			if (now < openUntil) {
+				return Permit.REFUSED;
+			}
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+			log.info("Content review provider " + provider + " circuit half open, sending a trial call");
+		}
+
+		if (state == State.HALF_OPEN) {
+			// a trial that never reported back must not keep the circuit half open forever
+			if (trialInFlight && now - trialStarted < currentOpenMillis) {
+				return new Permit(-1L, TRIAL_POLL_MILLIS);
+			}
+			// only the latest trial's outcome decides the circuit
+			generation++;
+			trialInFlight = true;
+			trialStarted = now;
+			return new Permit(generation, 0L);
+		}
+
+		tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+		lastRefillNanos = nowNanos;
+		if (tokens >= 1) {
+			tokens -= 1;
+			return new Permit(generation, 0L);
+		}
+		return new Permit(-1L, Math.max(1L, (long) Math.ceil((1 - tokens) * 1000 / rate)));
+	}
+
+	/**
+	 * Counts a call that was refused
+	 */
+	public synchronized void recordRejected() {
+		rejected++;
+	}
+
+	/**
+	 * @param permit the generation of the permit the call was made with
+	 * @param latencyMillis how long the call took
+	 * @param nowNanos the current value of {@link System#nanoTime()}
+	 */
+	public synchronized void recordSuccess(long permit, long latencyMillis, long nowNanos) {
+		recordCall(latencyMillis, false);
+		if (permit != generation) {
+			return;
+		}
+		consecutiveFailures = 0;
+
+		if (state == State.HALF_OPEN) {
+			state = State.CLOSED;
+			generation++;
+			trialInFlight = false;
+			currentOpenMillis = openMillis;
+			rate = minRate;
+			tokens = 0;
+			lastRefillNanos = nowNanos;
+			log.info("Content review provider " + provider + " circuit closed, resuming at " + rate + " calls per second");
+		} else if (state == State.CLOSED) {
+			rate = Math.min(maxRate, rate + maxRate * RATE_STEP);
+		}
+	}
+
+	/**
+	 * @param permit the generation of the permit the call was made with
+	 * @param latencyMillis how long the call took
+	 * @param now the current time in milliseconds
+	 */
+	public synchronized void recordFailure(long permit, long latencyMillis, long now) {
+		recordCall(latencyMillis, true);
+		if (permit != generation) {
+			return;
+		}
+		consecutiveFailures++;
+
+		if (state == State.HALF_OPEN) {
+			open(Math.min(maxOpenMillis, currentOpenMillis * 2), now);
+		} else if (state == State.CLOSED) {
+			rate = Math.max(minRate, rate / 2);
+			if (consecutiveFailures >= failureThreshold) {
+				open(currentOpenMillis, now);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void reset() {
+		state = State.CLOSED;
+		generation++;
+		trialInFlight = false;
+		consecutiveFailures = 0;
+		currentOpenMillis = openMillis;
+		rate = maxRate;
+		tokens = burst;
+		lastRefillNanos = System.nanoTime();
+		log.info("Content review provider " + provider + " circuit reset");
+	}
+
+	private void open(long duration, long now) {
+		state = State.OPEN;
+		generation++;
+		trialInFlight = false;
+		currentOpenMillis = duration;
+		openUntil = now + duration;
+		log.warn("Content review provider " + provider + " circuit open after " + consecutiveFailures
+				+ " consecutive failures, no calls until " + new Date(openUntil));
+	}
+
+	private void recordCall(long latencyMillis, boolean failed) {
+		calls++;
+		if (failed) {
+			failures++;
+		}
+		if (calls == 1) {
+			averageLatency = latencyMillis;
+			errorRate = failed ? 1 : 0;
+		} else {
+			averageLatency += EWMA_WEIGHT * (latencyMillis - averageLatency);
+			errorRate += EWMA_WEIGHT * ((failed ? 1 : 0) - errorRate);
+		}
+		maxLatency = Math.max(maxLatency, latencyMillis);
+	}
+
+	@Override
+	public synchronized String getState() {
+		return state.name();
+	}
+
+	@Override
+	public synchronized double getCurrentRatePerSecond() {
+		return rate;
+	}
+
+	@Override
+	public synchronized long getCalls() {
+		return calls;
+	}
+
+	@Override
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	@Override
+	public synchronized long getRejected() {
+		return rejected;
+	}
+
+	@Override
+	public synchronized double getErrorRate() {
+		return errorRate;
+	}
+
+	@Override
+	public synchronized double getAverageLatencyMillis() {
+		return averageLatency;
+	}
+
+	@Override
+	public synchronized long getMaxLatencyMillis() {
+		return maxLatency;
+	}
+
+	@Override
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+}
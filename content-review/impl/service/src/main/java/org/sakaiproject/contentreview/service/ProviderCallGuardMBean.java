@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+/**
+ * Call metrics and circuit state for a single content review provider, as exposed over JMX
+ */
+public interface ProviderCallGuardMBean {
+
+	/**
+	 * @return CLOSED, OPEN or HALF_OPEN
+	 */
+	String getState();
+
+	/**
+	 * @return the rate calls are currently being let through at
+	 */
+	double getCurrentRatePerSecond();
+
+	/**
+	 * @return the number of calls made, successful or not
+	 */
+	long getCalls();
+
+	/**
+	 * @return the number of calls that failed
+	 */
+	long getFailures();
+
+	/**
+	 * @return the number of calls refused because the circuit was open or the rate limit was reached
+	 */
+	long getRejected();
+
+	/**
+	 * @return the recent proportion of calls that failed, weighted towards the latest calls
+	 */
+	double getErrorRate();
+
+	/**
+	 * @return the recent average call latency, weighted towards the latest calls
+	 */
+	double getAverageLatencyMillis();
+
+	/**
+	 * @return the slowest call seen
+	 */
+	long getMaxLatencyMillis();
+
+	/**
+	 * @return the number of failures since the last successful call
+	 */
+	int getConsecutiveFailures();
+
+	/**
+	 * Closes the circuit and restores the full call rate, eg. once an outage is known to be over
+	 */
+	void reset();
+}
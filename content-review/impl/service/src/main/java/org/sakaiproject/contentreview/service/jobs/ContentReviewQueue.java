@@ -20,7 +20,7 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.quartz.PersistJobDataAfterExecution;
 
-import org.sakaiproject.contentreview.service.ContentReviewService;
+import org.sakaiproject.contentreview.service.ContentReviewQueueWorker;
 import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionManager;
 
@@ -33,12 +33,13 @@ public class ContentReviewQueue implements Job {
 	private SessionManager sessionManager;
 	
 	@Setter
-	private ContentReviewService contentReviewService;
+	private ContentReviewQueueWorker contentReviewQueueWorker;
 	
 	public void execute(JobExecutionContext arg0) throws JobExecutionException {
 		Session sakaiSession = sessionManager.getCurrentSession();
 		sakaiSession.setUserId("admin");
 		sakaiSession.setUserEid("admin");
-		contentReviewService.processQueue();	
+		// shares the worker's lock, so this never overlaps a run started by queued content
+		contentReviewQueueWorker.processQueue();
 	}
 }
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+public class ContentReviewQueueWorkerTest {
+
+	private ContentReviewQueueWorker worker;
+	private ContentReviewService contentReviewService;
+	private SessionManager sessionManager;
+	private ThreadLocalManager threadLocalManager;
+	private Session session;
+
+	@Before
+	public void setUp() {
+		contentReviewService = mock(ContentReviewService.class);
+		sessionManager = mock(SessionManager.class);
+		threadLocalManager = mock(ThreadLocalManager.class);
+		session = mock(Session.class);
+		when(sessionManager.startSession()).thenReturn(session);
+
+		worker = new ContentReviewQueueWorker();
+		worker.setContentReviewService(contentReviewService);
+		worker.setSessionManager(sessionManager);
+		worker.setThreadLocalManager(threadLocalManager);
+	}
+
+	@Test
+	public void testWakeupRunUsesItsOwnAdminSession() {
+		worker.runAfterWakeup();
+
+		InOrder order = inOrder(session, sessionManager, contentReviewService, threadLocalManager);
+		order.verify(session).setUserId("admin");
+		order.verify(sessionManager).setCurrentSession(session);
+		order.verify(contentReviewService).processQueue();
+		order.verify(threadLocalManager).clear();
+		order.verify(session).invalidate();
+	}
+
+	@Test
+	public void testWakeupRunCleansUpWhenTheQueueFails() {
+		doThrow(new IllegalStateException("provider down")).when(contentReviewService).processQueue();
+
+		worker.runAfterWakeup();
+
+		verify(threadLocalManager).clear();
+		verify(session).invalidate();
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProviderCallGuardTest {
+
+	private static final double MAX_RATE = 10;
+	private static final double MIN_RATE = 1;
+	private static final long OPEN_MILLIS = 1000L;
+	private static final long MAX_OPEN_MILLIS = 4000L;
+
+	private ProviderCallGuard guard;
+	private long now;
+	private long nanos;
+
+	@Before
+	public void setUp() {
+		guard = new ProviderCallGuard("test", MAX_RATE, MIN_RATE, 2, 3, OPEN_MILLIS, MAX_OPEN_MILLIS);
+		now = 1000000L;
+		nanos = System.nanoTime();
+	}
+
+	@Test
+	public void testBurstThenPacing() {
+		assertTrue(guard.tryAcquire(now, nanos).isGranted());
+		assertTrue(guard.tryAcquire(now, nanos).isGranted());
+
+		ProviderCallGuard.Permit permit = guard.tryAcquire(now, nanos);
+		assertFalse(permit.isGranted());
+		assertEquals(100L, permit.getWaitMillis());
+
+		// one call every 100ms at 10 calls per second
+		assertTrue(guard.tryAcquire(now + 100, nanos + TimeUnit.MILLISECONDS.toNanos(100)).isGranted());
+		assertFalse(guard.tryAcquire(now + 100, nanos + TimeUnit.MILLISECONDS.toNanos(100)).isGranted());
+	}
+
+	@Test
+	public void testOpensAfterFailureThreshold() {
+		long permit = guard.tryAcquire(now, nanos).getGeneration();
+		guard.recordFailure(permit, 10, now);
+		guard.recordFailure(permit, 10, now);
+		assertEquals("CLOSED", guard.getState());
+		assertEquals(MAX_RATE / 4, guard.getCurrentRatePerSecond(), 0.001);
+
+		guard.recordFailure(permit, 10, now);
+		assertEquals("OPEN", guard.getState());
+		assertFalse(guard.isCallPermitted(now + OPEN_MILLIS - 1));
+		assertSame(ProviderCallGuard.Permit.REFUSED, guard.tryAcquire(now + OPEN_MILLIS - 1, nanos));
+		assertTrue(guard.isCallPermitted(now + OPEN_MILLIS));
+	}
+
+	@Test
+	public void testHalfOpenLetsOneTrialThrough() {
+		open();
+
+		ProviderCallGuard.Permit trial = guard.tryAcquire(now + OPEN_MILLIS, nanos);
+		assertTrue(trial.isGranted());
+		assertEquals("HALF_OPEN", guard.getState());
+
+		ProviderCallGuard.Permit other = guard.tryAcquire(now + OPEN_MILLIS, nanos);
+		assertFalse(other.isGranted());
+		assertTrue(other.getWaitMillis() > 0);
+
+		guard.recordSuccess(trial.getGeneration(), 10, nanos);
+		assertEquals("CLOSED", guard.getState());
+	}
+
+	@Test
+	public void testTrialThatNeverReportsBackTimesOut() {
+		open();
+
+		ProviderCallGuard.Permit trial = guard.tryAcquire(now + OPEN_MILLIS, nanos);
+		assertFalse(guard.tryAcquire(now + 2 * OPEN_MILLIS - 1, nanos).isGranted());
+
+		ProviderCallGuard.Permit retrial = guard.tryAcquire(now + 2 * OPEN_MILLIS, nanos);
+		assertTrue(retrial.isGranted());
+		assertNotEquals(trial.getGeneration(), retrial.getGeneration());
+
+		// the first trial reporting back late no longer decides the circuit
+		guard.recordSuccess(trial.getGeneration(), 10, nanos);
+		assertEquals("HALF_OPEN", guard.getState());
+
+		guard.recordSuccess(retrial.getGeneration(), 10, nanos);
+		assertEquals("CLOSED", guard.getState());
+	}
+
+	@Test
+	public void testStaleOutcomesDoNotMoveTheCircuit() {
+		long stale = guard.tryAcquire(now, nanos).getGeneration();
+		open();
+
+		ProviderCallGuard.Permit trial = guard.tryAcquire(now + OPEN_MILLIS, nanos);
+		guard.recordSuccess(stale, 10, nanos);
+		assertEquals("HALF_OPEN", guard.getState());
+		guard.recordFailure(stale, 10, now + OPEN_MILLIS);
+		assertEquals("HALF_OPEN", guard.getState());
+
+		// still counted
+		assertEquals(5, guard.getCalls());
+
+		guard.recordFailure(trial.getGeneration(), 10, now + OPEN_MILLIS);
+		assertEquals("OPEN", guard.getState());
+	}
+
+	@Test
+	public void testOpenPeriodDoublesUpToTheMaximum() {
+		open();
+		long openUntil = now + OPEN_MILLIS;
+
+		for (long period : new long[] { 2000L, 4000L, MAX_OPEN_MILLIS }) {
+			ProviderCallGuard.Permit trial = guard.tryAcquire(openUntil, nanos);
+			assertTrue(trial.isGranted());
+			guard.recordFailure(trial.getGeneration(), 10, openUntil);
+
+			assertSame(ProviderCallGuard.Permit.REFUSED, guard.tryAcquire(openUntil + period - 1, nanos));
+			openUntil += period;
+		}
+		assertTrue(guard.tryAcquire(openUntil, nanos).isGranted());
+	}
+
+	@Test
+	public void testResumesAtMinimumRate() {
+		open();
+		ProviderCallGuard.Permit trial = guard.tryAcquire(now + OPEN_MILLIS, nanos);
+		guard.recordSuccess(trial.getGeneration(), 10, nanos);
+		assertEquals(MIN_RATE, guard.getCurrentRatePerSecond(), 0.001);
+
+		ProviderCallGuard.Permit paced = guard.tryAcquire(now + OPEN_MILLIS, nanos);
+		assertFalse(paced.isGranted());
+		assertEquals(1000L, paced.getWaitMillis());
+
+		ProviderCallGuard.Permit permit = guard.tryAcquire(now + 2 * OPEN_MILLIS, nanos + TimeUnit.SECONDS.toNanos(1));
+		assertTrue(permit.isGranted());
+
+		// and ramps back up as calls succeed
+		guard.recordSuccess(permit.getGeneration(), 10, nanos);
+		assertEquals(MIN_RATE + MAX_RATE * 0.05, guard.getCurrentRatePerSecond(), 0.001);
+	}
+
+	private void open() {
+		long permit = guard.tryAcquire(now, nanos).getGeneration();
+		for (int i = 0; i < 3; i++) {
+			guard.recordFailure(permit, 10, now);
+		}
+		assertEquals("OPEN", guard.getState());
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.turnitin;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.sakaiproject.assignment.api.AssignmentService;
+import org.sakaiproject.assignment.api.model.Assignment;
+import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.user.api.UserNotDefinedException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the users and assignments looked up during a single run of the queue or reports job.
+ *
+ * Each batch of items is prefetched up front, so the users in the batch are loaded with one bulk call to the user
+ * directory and each distinct assignment is loaded once, no matter how many items belong to it. Lookups for anything
+ * not prefetched fall back to the individual service calls and are cached in turn. A failed assignment lookup is
+ * remembered too, so an assignment that has been deleted is only looked up once per run.
+ *
+ * A cache is meant to live only as long as the run that created it. It is safe to share between worker threads.
+ */
+@Slf4j
+public class QueueLookupCache
+{
+	private final AssignmentService assignmentService;
+	private final UserDirectoryService userDirectoryService;
+
+	private final Map<String, User> users = new ConcurrentHashMap<>();
+	private final Map<String, AssignmentLookup> assignments = new ConcurrentHashMap<>();
+
+	public QueueLookupCache(AssignmentService assignmentService, UserDirectoryService userDirectoryService)
+	{
+		this.assignmentService = assignmentService;
+		this.userDirectoryService = userDirectoryService;
+	}
+
+	/**
+	 * Loads the users and assignments for a batch of items that are not already cached
+	 * @param items the items about to be processed
+	 */
+	public void prefetch(List<ContentReviewItem> items)
+	{
+		Set<String> userIds = items.stream().map(ContentReviewItem::getUserId).filter(Objects::nonNull)
+				.filter(id -> !users.containsKey(id)).collect(Collectors.toSet());
+		if (!userIds.isEmpty())
+		{
+			try
+			{
+				for (User user : userDirectoryService.getUsers(userIds))
+				{
+					users.put(user.getId(), user);
+				}
+			}
+			catch (RuntimeException e)
+			{
+				// the users will be looked up one at a time instead
+				log.warn("Could not prefetch " + userIds.size() + " users", e);
+			}
+		}
+
+		items.stream().map(ContentReviewItem::getTaskId).filter(Objects::nonNull).distinct().forEach(taskId -> {
+			try
+			{
+				lookupAssignment(taskId);
+			}
+			catch (RuntimeException e)
+			{
+				log.warn("Could not prefetch assignment " + taskId, e);
+			}
+		});
+	}
+
+	/**
+	 * Gets a user, from the cache if possible
+	 * @param userId the user id
+	 * @return the user
+	 * @throws UserNotDefinedException if there is no such user
+	 */
+	public User getUser(String userId) throws UserNotDefinedException
+	{
+		User user = users.get(userId);
+		if (user == null)
+		{
+			user = userDirectoryService.getUser(userId);
+			users.put(userId, user);
+		}
+		return user;
+	}
+
+	/**
+	 * Gets an assignment, from the cache if possible
+	 * @param taskId the assignment reference
+	 * @return the assignment
+	 * @throws IdUnusedException if there is no such assignment
+	 * @throws PermissionException if the current user cannot read the assignment
+	 */
+	public Assignment getAssignment(String taskId) throws IdUnusedException, PermissionException
+	{
+		AssignmentLookup lookup = lookupAssignment(taskId);
+		if (lookup.idUnused != null)
+		{
+			throw lookup.idUnused;
+		}
+		if (lookup.permission != null)
+		{
+			throw lookup.permission;
+		}
+		return lookup.assignment;
+	}
+
+	private AssignmentLookup lookupAssignment(String taskId)
+	{
+		return assignments.computeIfAbsent(taskId, id -> {
+			try
+			{
+				return new AssignmentLookup(assignmentService.getAssignment(id), null, null);
+			}
+			catch (IdUnusedException e)
+			{
+				return new AssignmentLookup(null, e, null);
+			}
+			catch (PermissionException e)
+			{
+				return new AssignmentLookup(null, null, e);
+			}
+		});
+	}
+
+	private static class AssignmentLookup
+	{
+		private final Assignment assignment;
+		private final IdUnusedException idUnused;
+		private final PermissionException permission;
+
+		private AssignmentLookup(Assignment assignment, IdUnusedException idUnused, PermissionException permission)
+		{
+			this.assignment = assignment;
+			this.idUnused = idUnused;
+			this.permission = permission;
+		}
+	}
+}
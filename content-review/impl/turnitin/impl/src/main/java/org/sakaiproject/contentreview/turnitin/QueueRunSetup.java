@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.turnitin;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sakaiproject.contentreview.exception.SubmissionException;
+import org.sakaiproject.contentreview.exception.TransientSubmissionException;
+
+/**
+ * Runs the class creation, enrolment and assignment creation calls that legacy API submissions depend on once per
+ * site, user or assignment during a single run of the queue job.
+ *
+ * The first item that needs a step runs it. Other items that need the same step while it is running wait for it and
+ * share its outcome, and once it is done the submissions themselves can go ahead in parallel. A step that fails is
+ * forgotten, so a later item of the run tries it again.
+ *
+ * A setup is meant to live only as long as the run that created it. It is safe to share between worker threads.
+ */
+public class QueueRunSetup
+{
+	/** A call to Turnitin that later submissions depend on */
+	@FunctionalInterface
+	public interface Step
+	{
+		void run() throws SubmissionException, TransientSubmissionException;
+	}
+
+	private final Map<String, CompletableFuture<Void>> steps = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs a step unless it has already been done during this run, waiting for it if another thread is running it
+	 * @param key identifies the step, eg. "class:" and the site id
+	 * @param step the step
+	 * @throws SubmissionException if the step failed, here or on the thread that ran it
+	 * @throws TransientSubmissionException if the step failed, here or on the thread that ran it
+	 */
+	public void once(String key, Step step) throws SubmissionException, TransientSubmissionException
+	{
+		CompletableFuture<Void> ours = new CompletableFuture<>();
+		CompletableFuture<Void> running = steps.putIfAbsent(key, ours);
+		if (running == null)
+		{
+			try
+			{
+				step.run();
+				ours.complete(null);
+			}
+			catch (SubmissionException | TransientSubmissionException | RuntimeException | Error e)
+			{
+				steps.remove(key, ours);
+				ours.completeExceptionally(e);
+				throw e;
+			}
+			return;
+		}
+
+		try
+		{
+			running.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof SubmissionException)
+			{
+				throw (SubmissionException) cause;
+			}
+			if (cause instanceof TransientSubmissionException)
+			{
+				throw (TransientSubmissionException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.contentreview.turnitin;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.sakaiproject.contentreview.dao.ContentReviewItem;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides which assignments are worth polling for reports on a given run of the reports job.
+ *
+ * A watermark is kept per assignment recording when it was last polled and when it is next eligible. Every poll that
+ * returns no new reports doubles the wait (between the minimum and maximum intervals), and a poll that does return
+ * reports resets it. An assignment is also polled early if a paper was submitted to it since the last poll, once that
+ * paper is old enough that Turnitin could have produced a report for it.
+ *
+ * Watermarks are held in memory, so a restart simply polls everything once more.
+ */
+@Slf4j
+public class ReportPollScheduler
+{
+	private final long minIntervalMillis;
+	private final long maxIntervalMillis;
+	private final long minReportAgeMillis;
+
+	private final Map<String, Watermark> watermarks = new ConcurrentHashMap<>();
+
+	/**
+	 * @param minIntervalMillis the wait after a poll that returned new reports
+	 * @param maxIntervalMillis the longest an assignment is backed off for
+	 * @param minReportAgeMillis how long after submission a report can first be expected
+	 */
+	public ReportPollScheduler(long minIntervalMillis, long maxIntervalMillis, long minReportAgeMillis)
+	{
+		this.minIntervalMillis = Math.max(0, minIntervalMillis);
+		this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxIntervalMillis);
+		this.minReportAgeMillis = Math.max(0, minReportAgeMillis);
+	}
+
+	/**
+	 * Groups the items awaiting reports by assignment, preserving the order in which assignments first appear
+	 * @param items the items awaiting reports
+	 * @return the items keyed by task id
+	 */
+	public static Map<String, List<ContentReviewItem>> groupByAssignment(List<ContentReviewItem> items)
+	{
+		return items.stream().collect(Collectors.groupingBy(item -> String.valueOf(item.getTaskId()),
+				LinkedHashMap::new, Collectors.toList()));
+	}
+
+	/**
+	 * Whether the assignment should be polled now
+	 * @param taskId the assignment reference
+	 * @param items the items awaiting reports for the assignment
+	 * @param now the current time in milliseconds
+	 * @return true if the assignment has never been polled, its backoff has elapsed, or it has new submissions
+	 * that could have a report by now
+	 */
+	public boolean isDue(String taskId, List<ContentReviewItem> items, long now)
+	{
+		Watermark mark = watermarks.get(taskId);
+		if (mark == null || now >= mark.nextEligible)
+		{
+			return items.stream().anyMatch(item -> isReportExpected(item, now));
+		}
+
+		return items.stream().anyMatch(item -> isReportExpected(item, now)
+				&& item.getDateSubmitted() != null && item.getDateSubmitted().getTime() > mark.lastChecked);
+	}
+
+	/**
+	 * Records the outcome of polling an assignment and moves its watermark forward
+	 * @param taskId the assignment reference
+	 * @param reportsReceived true if the poll returned at least one new report
+	 * @param now the time the poll started, in milliseconds
+	 */
+	public void recordPoll(String taskId, boolean reportsReceived, long now)
+	{
+		Watermark previous = watermarks.get(taskId);
+		long interval;
+		if (reportsReceived || previous == null)
+		{
+			interval = minIntervalMillis;
+		}
+		else
+		{
+			interval = Math.min(maxIntervalMillis, Math.max(minIntervalMillis, previous.interval * 2));
+		}
+
+		watermarks.put(taskId, new Watermark(now, now + interval, interval));
+		log.debug("Next report poll for " + taskId + " no earlier than " + new Date(now + interval));
+	}
+
+	/**
+	 * Drops watermarks that have been eligible for longer than the maximum interval, ie. assignments that no
+	 * longer have items awaiting reports
+	 * @param now the current time in milliseconds
+	 */
+	public void prune(long now)
+	{
+		watermarks.values().removeIf(mark -> mark.nextEligible + maxIntervalMillis < now);
+	}
+
+	private boolean isReportExpected(ContentReviewItem item, long now)
+	{
+		return item.getDateSubmitted() == null || now - item.getDateSubmitted().getTime() >= minReportAgeMillis;
+	}
+
+	private static class Watermark
+	{
+		private final long lastChecked;
+		private final long nextEligible;
+		private final long interval;
+
+		private Watermark(long lastChecked, long nextEligible, long interval)
+		{
+			this.lastChecked = lastChecked;
+			this.nextEligible = nextEligible;
+			this.interval = interval;
+		}
+	}
+}
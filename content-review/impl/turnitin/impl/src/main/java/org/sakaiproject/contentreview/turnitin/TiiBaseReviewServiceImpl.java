@@ -50,15 +50,24 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.apache.commons.lang.StringUtils;
 
 import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.contentreview.exception.ProviderUnavailableException;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.service.ContentReviewService;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.service.ContentReviewQueueService;
 import org.sakaiproject.contentreview.advisors.ContentReviewSiteAdvisor;
 import org.sakaiproject.contentreview.dao.ContentReviewConstants;
@@ -98,10 +107,13 @@ import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.exception.TypeException;
 import org.sakaiproject.lti.api.LTIService;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserNotDefinedException;
 import org.sakaiproject.util.ResourceLoader;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.tsugi.basiclti.BasicLTIConstants;
 import org.w3c.dom.CharacterData;
 import org.w3c.dom.Document;
@@ -176,6 +188,12 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 	@Setter
 	protected SessionManager sessionManager;
 
+	@Setter
+	protected ThreadLocalManager threadLocalManager;
+
+	@Setter
+	protected ContentReviewProviderGuard providerGuard;
+
 	
 	private boolean studentAccountNotified = true;
 	private int sendSubmissionNotification = 0;
@@ -202,6 +220,24 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 
 	/** Use guest account eids as email addresses */
 	private boolean preferGuestEidEmail = true;
+
+	/** Number of items submitted to Turnitin in parallel by processQueue(); 1 processes the queue serially */
+	private int queueConcurrency = 1;
+
+	/** Number of items leased from the queue per query */
+	private int queueBatchSize = 50;
+
+	/** How long a leased item stays reserved for this node if the run dies before releasing it */
+	private int queueLeaseSeconds = 1800;
+
+	/** How long a queue run waits for in-flight submissions to finish before returning */
+	private static final long QUEUE_SHUTDOWN_WAIT_MINUTES = 10;
+
+	/** Decides which assignments are polled for reports on each run of the reports job */
+	private ReportPollScheduler reportPollScheduler;
+
+	/** Outcome of claiming or submitting a single queue item; REFUSED means the provider guard refused the call */
+	private enum QueueItemResult { CLAIMED, SUBMITTED, ERROR, SKIPPED, REFUSED }
 	
 	// Spring init
 	// TIITODO: wire this up as a Spring bean? Or is wiring up the subclass TurnitinReviewServiceImpl enough?
@@ -218,14 +254,21 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		maxRetry = turnitinConn.getMaxRetry();
 		defaultAssignId = turnitinConn.getDefaultAssignId();
 		defaultClassPassword = turnitinConn.getDefaultClassPassword();
-		
 		spoilEmailAddresses = serverConfigurationService.getBoolean("turnitin.spoilEmailAddresses", false);
 		preferSystemProfileEmail = serverConfigurationService.getBoolean("turnitin.preferSystemProfileEmail", true);
 		preferGuestEidEmail = serverConfigurationService.getBoolean("turnitin.preferGuestEidEmail", true);
+		queueConcurrency = Math.max(1, serverConfigurationService.getInt("turnitin.queue.concurrency", 1));
+		queueBatchSize = Math.max(1, serverConfigurationService.getInt("turnitin.queue.batchSize", 50));
+		queueLeaseSeconds = Math.max(60, serverConfigurationService.getInt("turnitin.queue.leaseSeconds", 1800));
+		reportPollScheduler = new ReportPollScheduler(
+				TimeUnit.MINUTES.toMillis(serverConfigurationService.getInt("turnitin.report.poll.minIntervalMinutes", 5)),
+				TimeUnit.MINUTES.toMillis(serverConfigurationService.getInt("turnitin.report.poll.maxIntervalMinutes", 240)),
+				TimeUnit.MINUTES.toMillis(serverConfigurationService.getInt("turnitin.report.minAgeMinutes", 2)));
 		
 		log.info("init(): spoilEmailAddresses=" + spoilEmailAddresses + 
 		          " preferSystemProfileEmail=" + preferSystemProfileEmail + 
-		          " preferGuestEidEmail=" + preferGuestEidEmail);
+		          " preferGuestEidEmail=" + preferGuestEidEmail +
+		          " queueConcurrency=" + queueConcurrency);
 		
 		String[] strTerminalQueueErrors = serverConfigurationService.getStrings("turnitin.terminalQueueErrors");
 		if (strTerminalQueueErrors == null)
@@ -488,8 +531,13 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		log.debug("getReviewReport for LTI integration");
 		//should have already checked lti integration on assignments tool
 
+		return getReviewReport(ContentReviewItemSummary.of(getItemByContentId(contentId)), assignmentRef, userId);
+	}
+
+	@Override
+	public String getReviewReport(ContentReviewItemSummary item, String assignmentRef, String userId) throws QueueException, ReportException
+	{
 		// check that the report is available
-		ContentReviewItem item = getItemByContentId(contentId);
 		Long status = item.getStatus();
 		if (ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE.equals(status)
 				|| ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE.equals(status))
@@ -504,7 +552,7 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 			throw new ReportException(msg);
 		}
 		
-		return getLTIReportAccess(item);
+		return getLTIReportAccess(item.getSiteId(), item.getTaskId(), item.getExternalId());
 	}
 	
 	/**
@@ -673,48 +721,236 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 	
 	@Override
 	public void processQueue()
-	{		
+	{
+		if (queueConcurrency > 1)
+		{
+			processQueueConcurrently(queueConcurrency);
+			return;
+		}
+
 		log.info("Processing submission queue");
 		int errors = 0;
 		int success = 0;
 
-		Optional<ContentReviewItem> nextItem;
-		
-		while ((nextItem = getNextItemInSubmissionQueue()).isPresent())
+		QueueLookupCache lookups = new QueueLookupCache(assignmentService, userDirectoryService);
+		QueueRunSetup setup = new QueueRunSetup();
+		String leaseOwner = getQueueLeaseOwner();
+		try
 		{
-			ContentReviewItem currentItem = nextItem.get();
-			log.debug("Attempting to submit content: " + currentItem.getContentId() + " for user: " + currentItem.getUserId() + " and site: " + currentItem.getSiteId());
+			List<ContentReviewItem> batch;
+			queue:
+			while (!(batch = getNextBatchInSubmissionQueue(leaseOwner)).isEmpty())
+			{
+				lookups.prefetch(batch);
+				for (ContentReviewItem currentItem : batch)
+				{
+					if (!isProviderAvailable())
+					{
+						break queue;
+					}
 
-			// Attempt to get the contentreview_item's associated assignment
-			org.sakaiproject.assignment.api.model.Assignment a = null;
-			try {
-				a = assignmentService.getAssignment(currentItem.getTaskId());
-			}
-			catch (IdUnusedException e) {
-				// If the assignment no longer exists, delete the contentreview_item and continue to next iteration
-				log.warn("No assignment with ID = " + currentItem.getTaskId() + ", deleting contentreview_item", e);
-				crqServ.delete(currentItem);
-				continue;
-			} catch (PermissionException e) {
-				log.warn("No permission for assignment with ID = " + currentItem.getTaskId(), e);
+					Long retryCount = currentItem.getRetryCount();
+					Date nextRetryTime = currentItem.getNextRetryTime();
+					QueueItemResult result = claimItem(currentItem);
+					if (result == QueueItemResult.CLAIMED)
+					{
+						result = submitItem(currentItem, lookups, setup);
+					}
+
+					if (result == QueueItemResult.REFUSED)
+					{
+						releaseClaim(currentItem, retryCount, nextRetryTime);
+						break queue;
+					}
+					else if (result == QueueItemResult.SUBMITTED)
+					{
+						success++;
+					}
+					else if (result == QueueItemResult.ERROR)
+					{
+						errors++;
+					}
+				}
 			}
+		}
+		finally
+		{
+			crqServ.releaseLeases(getProviderId(), leaseOwner);
+		}
 
-			// If associated assignment does not have content review enabled, delete the contentreview_item and continue to next iteration
-			if (a != null && !a.getContentReview())
+		log.info("Submission queue run completed: " + success + " items submitted, " + errors + " errors.");
+	} // end processQueue()
+
+	/**
+	 * Drains the submission queue using a pool of worker threads. Items are leased and claimed on the calling thread,
+	 * so a worker never sees an item that another worker (or another node) already owns. Submissions run in parallel,
+	 * including those for the same site and assignment; the class creation, enrolment and assignment creation they
+	 * depend on are done once per site, user and assignment by the first item that needs them (see QueueRunSetup).
+	 * Workers share a session of their own for the job's user, and their thread locals are cleared after each item.
+	 * @param concurrency the maximum number of items submitted to Turnitin at the same time
+	 */
+	private void processQueueConcurrently(int concurrency)
+	{
+		log.info("Processing submission queue with " + concurrency + " workers");
+		AtomicInteger errors = new AtomicInteger();
+		AtomicInteger success = new AtomicInteger();
+
+		// workers run as the same user as the job that started the run, in a session started for the run
+		Session runSession = sessionManager.startSession();
+		runSession.setUserId(sessionManager.getCurrentSessionUserId());
+		runSession.setUserEid(sessionManager.getCurrentSession().getUserEid());
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+			Thread t = new Thread(r, "turnitin-queue-worker-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+
+		// bound the number of claimed but unprocessed items so a large backlog isn't claimed all at once
+		Semaphore inFlight = new Semaphore(concurrency * 2);
+		// set by a worker whose call the provider guard refused, which ends the run
+		AtomicBoolean refused = new AtomicBoolean();
+
+		QueueLookupCache lookups = new QueueLookupCache(assignmentService, userDirectoryService);
+		QueueRunSetup setup = new QueueRunSetup();
+		String leaseOwner = getQueueLeaseOwner();
+		try
+		{
+			List<ContentReviewItem> batch;
+			queue:
+			while (!(batch = getNextBatchInSubmissionQueue(leaseOwner)).isEmpty())
 			{
-				log.warn("Assignment with ID = " + currentItem.getTaskId() + " does not have content review enabled; deleting contentreview_item");
-				crqServ.delete(currentItem);
-				continue;
+				lookups.prefetch(batch);
+				for (ContentReviewItem currentItem : batch)
+				{
+					if (refused.get() || !isProviderAvailable())
+					{
+						break queue;
+					}
+
+					Long retryCount = currentItem.getRetryCount();
+					Date nextRetryTime = currentItem.getNextRetryTime();
+					QueueItemResult claim = claimItem(currentItem);
+					if (claim == QueueItemResult.ERROR)
+					{
+						errors.incrementAndGet();
+					}
+					if (claim != QueueItemResult.CLAIMED)
+					{
+						continue;
+					}
+
+					inFlight.acquire();
+					executor.execute(() -> {
+						try
+						{
+							sessionManager.setCurrentSession(runSession);
+
+							// once a call has been refused the items still waiting for a worker are left for a later run too
+							QueueItemResult result = refused.get() ? QueueItemResult.REFUSED : submitItem(currentItem, lookups, setup);
+							if (result == QueueItemResult.REFUSED)
+							{
+								refused.set(true);
+								releaseClaim(currentItem, retryCount, nextRetryTime);
+							}
+							else if (result == QueueItemResult.SUBMITTED)
+							{
+								success.incrementAndGet();
+							}
+							else if (result == QueueItemResult.ERROR)
+							{
+								errors.incrementAndGet();
+							}
+						}
+						catch (RuntimeException e)
+						{
+							log.error("Unexpected error submitting content: " + currentItem.getContentId(), e);
+							errors.incrementAndGet();
+						}
+						finally
+						{
+							// nothing a submission left on this thread should be seen by the next one
+							threadLocalManager.clear();
+							inFlight.release();
+						}
+					});
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			log.warn("Submission queue run interrupted; waiting for in-flight submissions to finish");
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			// the submissions already handed to the workers are finished before the leases are released
+			executor.shutdown();
+			try
+			{
+				executor.awaitTermination(QUEUE_SHUTDOWN_WAIT_MINUTES, TimeUnit.MINUTES);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
 			}
+			runSession.invalidate();
+			crqServ.releaseLeases(getProviderId(), leaseOwner);
+		}
+
+		log.info("Submission queue run completed: " + success.get() + " items submitted, " + errors.get() + " errors.");
+	}
+
+	/**
+	 * Whether Turnitin is taking calls. While the provider guard's circuit is open the queue and report runs stop
+	 * before touching any more items, so their retry counts and retry times are left alone until Turnitin is back.
+	 */
+	private boolean isProviderAvailable()
+	{
+		return providerGuard == null || providerGuard.isRunPermitted(getServiceName());
+	}
+
+	/**
+	 * Undoes claimItem for an item whose call the provider guard refused, so it keeps the retry count and retry time
+	 * it had before this run and is picked up again as if this run had never seen it.
+	 * @param currentItem the claimed item
+	 * @param retryCount its retry count before it was claimed
+	 * @param nextRetryTime its next retry time before it was claimed
+	 */
+	private void releaseClaim(ContentReviewItem currentItem, Long retryCount, Date nextRetryTime)
+	{
+		currentItem.setRetryCount(retryCount);
+		currentItem.setNextRetryTime(nextRetryTime);
+		try
+		{
+			crqServ.update(currentItem);
+		}
+		catch (OptimisticLockingFailureException e)
+		{
+			log.debug("Content " + currentItem.getContentId() + " was modified since it was claimed, leaving it as it is");
+		}
+	}
 
+	/**
+	 * Claims a leased item for this run by bumping its retry count and pushing its next retry time forward, which
+	 * removes it from the set of items eligible for submission. The item is versioned, so if it has been changed
+	 * since it was leased (eg. by a callback) the update fails and the item is left for a later run.
+	 * @param currentItem the item to claim
+	 * @return CLAIMED if the item should be submitted, ERROR if it has exceeded the retry limit, or SKIPPED if
+	 * it changed underneath us
+	 */
+	private QueueItemResult claimItem(ContentReviewItem currentItem)
+	{
+		try
+		{
 			if (currentItem.getRetryCount() == null ) {
 				currentItem.setRetryCount(0L);
 				currentItem.setNextRetryTime(getNextRetryTime(0));
 				crqServ.update(currentItem);
 			} else if (currentItem.getRetryCount().intValue() > maxRetry) {
 				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_EXCEEDED_CODE, null, null );
-				errors++;
-				continue;
+				return QueueItemResult.ERROR;
 			} else {
 				long l = currentItem.getRetryCount();
 				l++;
@@ -722,421 +958,450 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 				currentItem.setNextRetryTime(this.getNextRetryTime(l));
 				crqServ.update(currentItem);
 			}
+		}
+		catch (OptimisticLockingFailureException e)
+		{
+			log.debug("Content " + currentItem.getContentId() + " was modified since it was leased, skipping");
+			return QueueItemResult.SKIPPED;
+		}
 
-			User user;
+		return QueueItemResult.CLAIMED;
+	}
 
-			try {
-				user = userDirectoryService.getUser(currentItem.getUserId());
-			} catch (UserNotDefinedException e1) {
-				log.error("Submission attempt unsuccessful - User not found.", e1);
-				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, "User not found", null);
-				errors++;
-				continue;
-			}
+	/**
+	 * Submits a single claimed item to Turnitin, updating its status according to the outcome
+	 * @param currentItem the item to submit
+	 * @param lookups the users and assignments already loaded during this run
+	 * @param setup the classes, enrolments and assignments already set up in Turnitin during this run
+	 * @return SUBMITTED, ERROR, SKIPPED if the item was removed from the queue, or REFUSED if the provider guard
+	 * refused a call, in which case the item has not been changed
+	 */
+	private QueueItemResult submitItem(ContentReviewItem currentItem, QueueLookupCache lookups, QueueRunSetup setup)
+	{
+		log.debug("Attempting to submit content: " + currentItem.getContentId() + " for user: " + currentItem.getUserId() + " and site: " + currentItem.getSiteId());
 
+		// Attempt to get the contentreview_item's associated assignment
+		org.sakaiproject.assignment.api.model.Assignment a = null;
+		try {
+			a = lookups.getAssignment(currentItem.getTaskId());
+		}
+		catch (IdUnusedException e) {
+			// If the assignment no longer exists, delete the contentreview_item and continue to next iteration
+			log.warn("No assignment with ID = " + currentItem.getTaskId() + ", deleting contentreview_item", e);
+			crqServ.delete(currentItem);
+			return QueueItemResult.SKIPPED;
+		} catch (PermissionException e) {
+			log.warn("No permission for assignment with ID = " + currentItem.getTaskId(), e);
+		}
 
-			String uem = getEmail(user);
-			if (uem == null ){
-				if( currentItem.getRetryCount() == 0 )
-				{
-					log.error("User: " + user.getEid() + " has no valid email");
-				}
-				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE, "no valid email", null );
-				errors++;
-				continue;
+		// If associated assignment does not have content review enabled, delete the contentreview_item and continue to next iteration
+		if (a != null && !a.getContentReview())
+		{
+			log.warn("Assignment with ID = " + currentItem.getTaskId() + " does not have content review enabled; deleting contentreview_item");
+			crqServ.delete(currentItem);
+			return QueueItemResult.SKIPPED;
+		}
+
+
+		User user;
+
+		try {
+			user = lookups.getUser(currentItem.getUserId());
+		} catch (UserNotDefinedException e1) {
+			log.error("Submission attempt unsuccessful - User not found.", e1);
+			processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, "User not found", null);
+			return QueueItemResult.ERROR;
+		}
+
+
+		String uem = getEmail(user);
+		if (uem == null ){
+			if( currentItem.getRetryCount() == 0 )
+			{
+				log.error("User: " + user.getEid() + " has no valid email");
 			}
+			processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE, "no valid email", null );
+			return QueueItemResult.ERROR;
+		}
 
-			String ufn = getUserFirstName(user);
-			if (ufn == null || ufn.equals("")) {
-				if( currentItem.getRetryCount() == 0 )
-				{
-					log.error("Submission attempt unsuccessful - User has no first name");
-				}
-				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE, "has no first name", null);
-				errors++;
-				continue;
+		String ufn = getUserFirstName(user);
+		if (ufn == null || ufn.equals("")) {
+			if( currentItem.getRetryCount() == 0 )
+			{
+				log.error("Submission attempt unsuccessful - User has no first name");
 			}
+			processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE, "has no first name", null);
+			return QueueItemResult.ERROR;
+		}
 
-			String uln = getUserLastName(user);
-			if (uln == null || uln.equals("")) {
-				if( currentItem.getRetryCount() == 0 )
-				{
-					log.error("Submission attempt unsuccessful - User has no last name");
-				}
-				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE, "has no last name", null);
-				errors++;
-				continue;
+		String uln = getUserLastName(user);
+		if (uln == null || uln.equals("")) {
+			if( currentItem.getRetryCount() == 0 )
+			{
+				log.error("Submission attempt unsuccessful - User has no last name");
 			}
-			
-			Site currentSite;
+			processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE, "has no last name", null);
+			return QueueItemResult.ERROR;
+		}
+		
+		Site currentSite;
+		try {
+			currentSite = siteService.getSite(currentItem.getSiteId());
+		}
+		catch (IdUnusedException iue) {
+			log.error("processQueue: Site " + currentItem.getSiteId() + " not found!" + iue.getMessage());
+			processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "site not found", null);
+			return QueueItemResult.ERROR;
+		}
+		
+		//to get the name of the initial submited file we need the title
+		ContentResource resource;
+		ResourceProperties resourceProperties;
+		String fileName;
+		try {
 			try {
-				currentSite = siteService.getSite(currentItem.getSiteId());
+				resource = contentHostingService.getResource(currentItem.getContentId());
+			} catch (IdUnusedException e4) {
+				// Remove this item
+				log.warn("IdUnusedException: no resource with id " + currentItem.getContentId());
+				crqServ.delete(currentItem);
+				return QueueItemResult.ERROR;
 			}
-			catch (IdUnusedException iue) {
-				log.error("processQueue: Site " + currentItem.getSiteId() + " not found!" + iue.getMessage());
-				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "site not found", null);
-				errors++;
-				continue;
+			resourceProperties = resource.getProperties();
+			fileName = resourceProperties.getProperty(resourceProperties.getNamePropDisplayName());
+			fileName = escapeFileName(fileName, resource.getId());
+		}
+		catch (PermissionException e2) {
+			log.error("Submission failed due to permission error.", e2);
+			processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, "permission exception", null);
+			return QueueItemResult.ERROR;
+		}
+		catch (TypeException e) {
+			log.error("Submission failed due to content Type error.", e);
+			processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, "Type Exception: " + e.getMessage(), null);
+			return QueueItemResult.ERROR;
+		}
+
+		//TII-97 filenames can't be longer than 200 chars
+		if (fileName != null && fileName.length() >=200 ) {
+			fileName = truncateFileName(fileName, 198);
+		}
+	
+		//////////////////////////////  NEW LTI INTEGRATION  ///////////////////////////////
+		Optional<Date> dateOpt = getAssignmentCreationDate(currentItem.getTaskId());
+		
+		// TIITODO: this code uses the submissionId and resubmission properties that were added to contentreviewitem for LTI support
+		// Determine if these properties make sense for general purpose content review items, or if they are specific to the Turnitin
+		// LTI implementation and belong in a separate table (with the isUrlAccessed property)
+		// for now, references to these properties are commented out
+		
+		if(dateOpt.isPresent() && siteAdvisor.siteCanUseLTIReviewServiceForAssignment(currentSite, dateOpt.get()) /* TIITODO: && currentItem.getSubmissionId()!=null*/){
+			
+			Map<String,String> ltiProps = new HashMap<>();
+			ltiProps.put("context_id", currentItem.getSiteId());
+			ltiProps.put("resource_link_id", currentItem.getTaskId());
+			ltiProps.put("roles", "Learner");
+			//student
+			ltiProps.put("lis_person_name_family", uln);
+			ltiProps.put("lis_person_contact_email_primary", uem);
+			ltiProps.put("lis_person_name_full", ufn + " " + uln);
+			ltiProps.put("lis_person_name_given", ufn);
+			ltiProps.put("user_id", currentItem.getUserId());
+
+			String[] parts = currentItem.getTaskId().split("/");
+			log.debug(parts[parts.length -1] + " " + parts.length);
+			String httpAccess = serverConfigurationService.getServerUrl() + "/access/assignment/s/" + currentItem.getSiteId() + "/" 
+					+ parts[parts.length -1] + "/"/* TIITODO: + currentItem.getSubmissionId()*/;
+			httpAccess += ":" + currentItem.getId() + ":" + currentItem.getContentId().hashCode();
+			log.debug("httpAccess url: " + httpAccess);//debug
+			ltiProps.put("submission_url", httpAccess);
+			ltiProps.put("submission_title", fileName);
+			// must have an extension or they can't process it
+			if (fileName.equals("Inline_Submission")) {
+				fileName = "Inline_Submission.html";
+			}
+			ltiProps.put("submission_filename", fileName);
+			ltiProps.put("ext_outcomes_tool_placement_url", serverConfigurationService.getServerUrl() + "/sakai-contentreview-tool-tii/submission-servlet");
+			ltiProps.put("lis_outcome_service_url", serverConfigurationService.getServerUrl() + "/sakai-contentreview-tool-tii/grading-servlet");
+			ltiProps.put("lis_result_sourcedid", currentItem.getContentId());
+			ltiProps.put("xmlresponse","1");//mandatatory
+
+			String tiiId = "";
+			if (a != null)
+			{
+				// TIITODO: re-evaluate the activity config table, consider a dedicated, properly-typed table just for Turnitin to store these values
+				/*tiiId = getActivityConfigValue(TurnitinConstants.TURNITIN_ASN_ID, a.getId(), TurnitinConstants.SAKAI_ASSIGNMENT_TOOL_ID,
+					TurnitinConstants.PROVIDER_ID);*/
+				
+				// TIITODO: strategy to determine which tool registration id to use?
+				Optional<TiiInternalActivityConfig> activityConfig = getInternalActivityConfig(TurnitinConstants.SAKAI_ASSIGNMENT_TOOL_ID, a.getId());
+				tiiId = activityConfig.map(TiiInternalActivityConfig::getTurnitinAssignmentId).orElse("");
+			}
+
+			if(tiiId.isEmpty()){
+				log.error("Could not find tiiId for assignment: " + currentItem.getTaskId());
+				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Could not find tiiId", null);
+				return QueueItemResult.ERROR;
 			}
 			
-			//to get the name of the initial submited file we need the title
-			ContentResource resource;
-			ResourceProperties resourceProperties;
-			String fileName;
-			try {
-				try {
-					resource = contentHostingService.getResource(currentItem.getContentId());
-				} catch (IdUnusedException e4) {
-					// Remove this item
-					log.warn("IdUnusedException: no resource with id " + currentItem.getContentId());
-					crqServ.delete(currentItem);
-					errors++;
-					continue;
+			TurnitinReturnValue result = new TurnitinReturnValue();
+			result.setResult( -1 );
+			boolean isResubmission = false;
+			// TIITODO: fix below
+			/*if(currentItem.isResubmission()) 
+			{
+				AssignmentContent ac = a.getContent();
+				// Resubmit only for submission types that allow only one file per submission
+				String tiiPaperId = currentItem.getExternalId();
+				// 1 - inline, 2 - attach, 3 - both, 4 - non elec, 5 - single file
+				int type = ac.getTypeOfSubmission();
+				if (tiiPaperId != null && (type == 1 || type == 5))
+				{
+					isResubmission = true;
+					result = tiiUtil.makeLTIcall(TurnitinLTIUtil.RESUBMIT, tiiPaperId, ltiProps);
 				}
-				resourceProperties = resource.getProperties();
-				fileName = resourceProperties.getProperty(resourceProperties.getNamePropDisplayName());
-				fileName = escapeFileName(fileName, resource.getId());
-			}
-			catch (PermissionException e2) {
-				log.error("Submission failed due to permission error.", e2);
-				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, "permission exception", null);
-				errors++;
-				continue;
-			}
-			catch (TypeException e) {
-				log.error("Submission failed due to content Type error.", e);
-				processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE, "Type Exception: " + e.getMessage(), null);
-				errors++;
-				continue;
+			}*/
+			if (!isResubmission)
+			{
+				result = tiiUtil.makeLTIcall(TurnitinLTIUtil.SUBMIT, tiiId, ltiProps);
 			}
 
-			//TII-97 filenames can't be longer than 200 chars
-			if (fileName != null && fileName.length() >=200 ) {
-				fileName = truncateFileName(fileName, 198);
+			if (result.getResult() == TurnitinLTIUtil.PROVIDER_UNAVAILABLE)
+			{
+				return QueueItemResult.REFUSED;
 			}
-		
-			//////////////////////////////  NEW LTI INTEGRATION  ///////////////////////////////
-			Optional<Date> dateOpt = getAssignmentCreationDate(currentItem.getTaskId());
-			
-			// TIITODO: this code uses the submissionId and resubmission properties that were added to contentreviewitem for LTI support
-			// Determine if these properties make sense for general purpose content review items, or if they are specific to the Turnitin
-			// LTI implementation and belong in a separate table (with the isUrlAccessed property)
-			// for now, references to these properties are commented out
-			
-			if(dateOpt.isPresent() && siteAdvisor.siteCanUseLTIReviewServiceForAssignment(currentSite, dateOpt.get()) /* TIITODO: && currentItem.getSubmissionId()!=null*/){
+
+			if(result.getResult() >= 0){
+				log.debug("LTI submission successful");
+				//problems overriding this on callback
+				//currentItem.setExternalId(externalId);
 				
-				Map<String,String> ltiProps = new HashMap<>();
-				ltiProps.put("context_id", currentItem.getSiteId());
-				ltiProps.put("resource_link_id", currentItem.getTaskId());
-				ltiProps.put("roles", "Learner");
-				//student
-				ltiProps.put("lis_person_name_family", uln);
-				ltiProps.put("lis_person_contact_email_primary", uem);
-				ltiProps.put("lis_person_name_full", ufn + " " + uln);
-				ltiProps.put("lis_person_name_given", ufn);
-				ltiProps.put("user_id", currentItem.getUserId());
-
-				String[] parts = currentItem.getTaskId().split("/");
-				log.debug(parts[parts.length -1] + " " + parts.length);
-				String httpAccess = serverConfigurationService.getServerUrl() + "/access/assignment/s/" + currentItem.getSiteId() + "/" 
-						+ parts[parts.length -1] + "/"/* TIITODO: + currentItem.getSubmissionId()*/;
-				httpAccess += ":" + currentItem.getId() + ":" + currentItem.getContentId().hashCode();
-				log.debug("httpAccess url: " + httpAccess);//debug
-				ltiProps.put("submission_url", httpAccess);
-				ltiProps.put("submission_title", fileName);
-				// must have an extension or they can't process it
-				if (fileName.equals("Inline_Submission")) {
-					fileName = "Inline_Submission.html";
-				}
-				ltiProps.put("submission_filename", fileName);
-				ltiProps.put("ext_outcomes_tool_placement_url", serverConfigurationService.getServerUrl() + "/sakai-contentreview-tool-tii/submission-servlet");
-				ltiProps.put("lis_outcome_service_url", serverConfigurationService.getServerUrl() + "/sakai-contentreview-tool-tii/grading-servlet");
-				ltiProps.put("lis_result_sourcedid", currentItem.getContentId());
-				ltiProps.put("xmlresponse","1");//mandatatory
-
-				String tiiId = "";
-				if (a != null)
+				// If assignment set to generate reports on due date, set status appropriately
+				// TIITODO: fix this to work with new Assignments API
+				/*if (ac != null && TurnitinConstants.GEN_REPORTS_ON_DUE_DATE_SETTING.equals(ac.getGenerateOriginalityReport()))*/
+				if (false)  // TIITODO: remove when above is fixed
 				{
-					// TIITODO: re-evaluate the activity config table, consider a dedicated, properly-typed table just for Turnitin to store these values
-					/*tiiId = getActivityConfigValue(TurnitinConstants.TURNITIN_ASN_ID, a.getId(), TurnitinConstants.SAKAI_ASSIGNMENT_TOOL_ID,
-						TurnitinConstants.PROVIDER_ID);*/
-					
-					// TIITODO: strategy to determine which tool registration id to use?
-					Optional<TiiInternalActivityConfig> activityConfig = getInternalActivityConfig(TurnitinConstants.SAKAI_ASSIGNMENT_TOOL_ID, a.getId());
-					tiiId = activityConfig.map(TiiInternalActivityConfig::getTurnitinAssignmentId).orElse("");
+					currentItem.setStatus(ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE);
 				}
-
-				if(tiiId.isEmpty()){
-					log.error("Could not find tiiId for assignment: " + currentItem.getTaskId());
-					processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Could not find tiiId", null);
-					errors++;
-					continue;
+				else
+				{
+					currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
 				}
 				
-				TurnitinReturnValue result = new TurnitinReturnValue();
-				result.setResult( -1 );
-				boolean isResubmission = false;
-				// TIITODO: fix below
-				/*if(currentItem.isResubmission()) 
-				{
-					AssignmentContent ac = a.getContent();
-					// Resubmit only for submission types that allow only one file per submission
-					String tiiPaperId = currentItem.getExternalId();
-					// 1 - inline, 2 - attach, 3 - both, 4 - non elec, 5 - single file
-					int type = ac.getTypeOfSubmission();
-					if (tiiPaperId != null && (type == 1 || type == 5))
-					{
-						isResubmission = true;
-						result = tiiUtil.makeLTIcall(TurnitinLTIUtil.RESUBMIT, tiiPaperId, ltiProps);
-					}
-				}*/
-				if (!isResubmission)
+				currentItem.setRetryCount(Long.valueOf(0));
+				currentItem.setLastError(null);
+				currentItem.setErrorCode(null);
+				currentItem.setDateSubmitted(new Date());
+				crqServ.update(currentItem);
+			} else {
+				Long errorCode = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
+				// TII-242 - evaluate result.getErrorMessage() to prevent unnecessary retries if the error is terminal
+				if (terminalQueueErrors.contains(result.getErrorMessage()))
 				{
-					result = tiiUtil.makeLTIcall(TurnitinLTIUtil.SUBMIT, tiiId, ltiProps);
+					errorCode = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE;
 				}
-
-				if(result.getResult() >= 0){
-					log.debug("LTI submission successful");
-					//problems overriding this on callback
-					//currentItem.setExternalId(externalId);
-					
-					// If assignment set to generate reports on due date, set status appropriately
-					// TIITODO: fix this to work with new Assignments API
-					/*if (ac != null && TurnitinConstants.GEN_REPORTS_ON_DUE_DATE_SETTING.equals(ac.getGenerateOriginalityReport()))*/
-					if (false)  // TIITODO: remove when above is fixed
-					{
-						currentItem.setStatus(ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE);
-					}
-					else
-					{
-						currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
-					}
-					
-					currentItem.setRetryCount(Long.valueOf(0));
-					currentItem.setLastError(null);
-					currentItem.setErrorCode(null);
-					currentItem.setDateSubmitted(new Date());
-					success++;
-					crqServ.update(currentItem);
-				} else {
-					Long errorCode = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
-					// TII-242 - evaluate result.getErrorMessage() to prevent unnecessary retries if the error is terminal
-					if (terminalQueueErrors.contains(result.getErrorMessage()))
-					{
-						errorCode = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE;
-					}
-					else
-					{
-						long l = currentItem.getRetryCount();
-						l++;
-						currentItem.setRetryCount(l);
-						currentItem.setNextRetryTime(this.getNextRetryTime(l));
-					}
-					processError( currentItem, errorCode, "Submission Error: " + result.getErrorMessage(), null );
-					errors++;
+				else
+				{
+					long l = currentItem.getRetryCount();
+					l++;
+					currentItem.setRetryCount(l);
+					currentItem.setNextRetryTime(this.getNextRetryTime(l));
 				}
-
-				continue;
+				processError( currentItem, errorCode, "Submission Error: " + result.getErrorMessage(), null );
 			}
-			
-			//////////////////////////////  OLD API INTEGRATION  ///////////////////////////////
 
-			if (!turnitinConn.isUseSourceParameter()) {
-				try {
-					createClass(currentItem.getSiteId());
-				} catch (SubmissionException t) {
-					log.error ("Submission attempt unsuccessful: Could not create class", t);
-					processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Class creation error: " + t.getMessage(), null );
-					errors++;
-					continue;
-				} catch (TransientSubmissionException tse) {
-					processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Class creation error: " + tse.getMessage(), null );
-					errors++;
-					continue;
-				}
-			}
+			return result.getResult() >= 0 ? QueueItemResult.SUBMITTED : QueueItemResult.ERROR;
+		}
+		
+		//////////////////////////////  OLD API INTEGRATION  ///////////////////////////////
 
+		if (!turnitinConn.isUseSourceParameter()) {
 			try {
-				enrollInClass(currentItem.getUserId(), uem, currentItem.getSiteId());
-			} catch (Exception t) {
-				log.error("Submission attempt unsuccessful: Could not enroll user in class", t);
-
-				Long status;
-				String error;
-				if (t.getClass() == IOException.class) {
-					error = "Enrolment error: " + t.getMessage();
-					status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
-				} else {
-					error = "Enrolment error: " + t.getMessage();
-					status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
-				}
+				setup.once("class:" + currentItem.getSiteId(), () -> createClass(currentItem.getSiteId()));
+			} catch (ProviderUnavailableException pue) {
+				return QueueItemResult.REFUSED;
+			} catch (SubmissionException t) {
+				log.error ("Submission attempt unsuccessful: Could not create class", t);
+				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Class creation error: " + t.getMessage(), null );
+				return QueueItemResult.ERROR;
+			} catch (TransientSubmissionException tse) {
+				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Class creation error: " + tse.getMessage(), null );
+				return QueueItemResult.ERROR;
+			}
+		}
 
-				processError( currentItem, status, error, null );
-				errors++;
-				continue;
+		try {
+			setup.once("enrolment:" + currentItem.getSiteId() + ":" + user.getId(), () -> enrollInClass(user, uem, currentItem.getSiteId()));
+		} catch (ProviderUnavailableException pue) {
+			return QueueItemResult.REFUSED;
+		} catch (Exception t) {
+			log.error("Submission attempt unsuccessful: Could not enroll user in class", t);
+
+			Long status;
+			String error;
+			if (t.getClass() == IOException.class) {
+				error = "Enrolment error: " + t.getMessage();
+				status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
+			} else {
+				error = "Enrolment error: " + t.getMessage();
+				status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
 			}
 
-			if (!turnitinConn.isUseSourceParameter()) {
-				try {
+			processError( currentItem, status, error, null );
+			return QueueItemResult.ERROR;
+		}
+
+		if (!turnitinConn.isUseSourceParameter()) {
+			try {
+				setup.once("assignment:" + currentItem.getSiteId() + ":" + currentItem.getTaskId(), () -> {
 					Map tiiresult = this.getAssignment(currentItem.getSiteId(), currentItem.getTaskId());
 					if (tiiresult.get("rcode") != null && !tiiresult.get("rcode").equals("85")) {
 						createAssignment(currentItem.getSiteId(), currentItem.getTaskId(), null);
 					}
-				} catch (SubmissionException se) {
-					processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE,
-							"Assignment creation error: " + se.getMessage(), se.getErrorCode() );
-					errors++;
-					continue;
-				} catch (TransientSubmissionException tse) {
-					if (tse.getErrorCode() != null) {
-						currentItem.setErrorCode(tse.getErrorCode());
-					}
+				});
+			} catch (ProviderUnavailableException pue) {
+				return QueueItemResult.REFUSED;
+			} catch (SubmissionException se) {
+				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE,
+						"Assignment creation error: " + se.getMessage(), se.getErrorCode() );
+				return QueueItemResult.ERROR;
+			} catch (TransientSubmissionException tse) {
+				if (tse.getErrorCode() != null) {
+					currentItem.setErrorCode(tse.getErrorCode());
+				}
 
-					processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE,
-							"Assignment creation error: " + tse.getMessage(), null );
-					errors++;
-					continue;
+				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE,
+						"Assignment creation error: " + tse.getMessage(), null );
+				return QueueItemResult.ERROR;
 
-				}
 			}
+		}
 
-			//get all the info for the api call
-			//we do this before connecting so that if there is a problem we can jump out - saves time
-			//these errors should probably be caught when a student is enrolled in a class
-			//but we check again here to be sure
+		//get all the info for the api call
+		//we do this before connecting so that if there is a problem we can jump out - saves time
+		//these errors should probably be caught when a student is enrolled in a class
+		//but we check again here to be sure
 
-			String fcmd = "2";
-			String fid = "5";
+		String fcmd = "2";
+		String fid = "5";
 
-			String userEid = currentItem.getUserId();
-			try {
-				userEid = userDirectoryService.getUserEid(currentItem.getUserId());
-			}
-			catch (UserNotDefinedException unde) {
-				//nothing realy to do?
-			}
+		String userEid = user.getEid();
 
-			String ptl =  userEid  + ":" + fileName;
-			String ptype = "2";
+		String ptl =  userEid  + ":" + fileName;
+		String ptype = "2";
 
-			String uid = currentItem.getUserId();
-			String cid = currentItem.getSiteId();
-			String assignid = currentItem.getTaskId();
+		String uid = currentItem.getUserId();
+		String cid = currentItem.getSiteId();
+		String assignid = currentItem.getTaskId();
 
-			// TODO ONC-1292 How to get this, and is it still required with src=9?
-			String tem = getTEM(cid);
+		// TODO ONC-1292 How to get this, and is it still required with src=9?
+		String tem = getTEM(cid);
 
-			String utp = "1";
+		String utp = "1";
+
+		log.debug("Using Emails: tem: " + tem + " uem: " + uem);
 
-			log.debug("Using Emails: tem: " + tem + " uem: " + uem);
+		String assign = getAssignmentTitle(currentItem.getTaskId());
+		String ctl = currentItem.getSiteId();
 
-			String assign = getAssignmentTitle(currentItem.getTaskId());
-			String ctl = currentItem.getSiteId();
+		Map params = TurnitinAPIUtil.packMap( turnitinConn.getBaseTIIOptions(),
+				"assignid", assignid,
+				"uid", uid,
+				"cid", cid,
+				"assign", assign,
+				"ctl", ctl,
+				"dis", sendSubmissionNotification > 0 ? "0" : "1", // dis=1 means disable sending email
+				"fcmd", fcmd,
+				"fid", fid,
+				"ptype", ptype,
+				"ptl", ptl,
+				"tem", tem,
+				"uem", uem,
+				"ufn", ufn,
+				"uln", uln,
+				"utp", utp,
+				"resource_obj", resource
+		);
+
+		Document document;
+		try {
+			document = turnitinConn.callTurnitinReturnDocument(params, true);
+		}
+		catch (ProviderUnavailableException e) {
+			return QueueItemResult.REFUSED;
+		}
+		catch (TransientSubmissionException | SubmissionException e) {
+			processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Error Submitting Assignment for Submission: " + e.getMessage() + ". Assume unsuccessful", null );
+			return QueueItemResult.ERROR;
+		}
 
-			Map params = TurnitinAPIUtil.packMap( turnitinConn.getBaseTIIOptions(),
-					"assignid", assignid,
-					"uid", uid,
-					"cid", cid,
-					"assign", assign,
-					"ctl", ctl,
-					"dis", sendSubmissionNotification > 0 ? "0" : "1", // dis=1 means disable sending email
-					"fcmd", fcmd,
-					"fid", fid,
-					"ptype", ptype,
-					"ptl", ptl,
-					"tem", tem,
-					"uem", uem,
-					"ufn", ufn,
-					"uln", uln,
-					"utp", utp,
-					"resource_obj", resource
-			);
+		Element root = document.getDocumentElement();
 
-			Document document;
-			try {
-				document = turnitinConn.callTurnitinReturnDocument(params, true);
-			}
-			catch (TransientSubmissionException | SubmissionException e) {
-				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE, "Error Submitting Assignment for Submission: " + e.getMessage() + ". Assume unsuccessful", null );
-				errors++;
-				continue;
-			}
+		String rMessage = ((CharacterData) (root.getElementsByTagName("rmessage").item(0).getFirstChild())).getData();
+		String rCode = ((CharacterData) (root.getElementsByTagName("rcode").item(0).getFirstChild())).getData();
 
-			Element root = document.getDocumentElement();
+		if (rCode == null)
+		{
+			rCode = "";
+		}
+		else
+		{
+			rCode = rCode.trim();
+		}
 
-			String rMessage = ((CharacterData) (root.getElementsByTagName("rmessage").item(0).getFirstChild())).getData();
-			String rCode = ((CharacterData) (root.getElementsByTagName("rcode").item(0).getFirstChild())).getData();
+		if (rMessage == null)
+		{
+			rMessage = rCode;
+		}
+		else
+		{
+			rMessage = rMessage.trim();
+		}
 
-			if (rCode == null)
-			{
-				rCode = "";
-			}
-			else
-			{
-				rCode = rCode.trim();
+		if (rCode.compareTo("51") == 0) {
+			String externalId = ((CharacterData) (root.getElementsByTagName("objectID").item(0).getFirstChild())).getData().trim();
+			if (externalId != null && externalId.length() >0 ) {
+				log.debug("Submission successful");
+				currentItem.setExternalId(externalId);
+				currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
+				currentItem.setRetryCount(Long.valueOf(0));
+				currentItem.setLastError(null);
+				currentItem.setErrorCode(null);
+				currentItem.setDateSubmitted(new Date());
+				crqServ.update(currentItem);
+				return QueueItemResult.SUBMITTED;
+			} else {
+				log.warn("invalid external id");
+				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE,
+						"Submission error: no external id received", null );
+				return QueueItemResult.ERROR;
 			}
+		} else {
+			log.debug("Submission not successful: " + ((CharacterData) (root.getElementsByTagName("rmessage").item(0).getFirstChild())).getData().trim());
 
-			if (rMessage == null)
-			{
-				rMessage = rCode;
-			}
-			else
-			{
-				rMessage = rMessage.trim();
+			Long status;
+			if (rMessage.equals("User password does not match user email")
+					|| "1001".equals(rCode) || "".equals(rMessage) || "413".equals(rCode) || "1025".equals(rCode) || "250".equals(rCode)) {
+				status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
+				log.warn("Submission not successful. It will be retried.");
+			} else if (rCode.equals("423")) {
+				status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE;
+			} else if (rCode.equals("301")) {
+				//this took a long time
+				log.warn("Submission not successful due to timeout. It will be retried.");
+				status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
+				Calendar cal = Calendar.getInstance();
+				cal.set(Calendar.HOUR_OF_DAY, 22);
+				currentItem.setNextRetryTime(cal.getTime());
+			}else {
+				log.error("Submission not successful. It will NOT be retried.");
+				status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE;
 			}
 
-			if (rCode.compareTo("51") == 0) {
-				String externalId = ((CharacterData) (root.getElementsByTagName("objectID").item(0).getFirstChild())).getData().trim();
-				if (externalId != null && externalId.length() >0 ) {
-					log.debug("Submission successful");
-					currentItem.setExternalId(externalId);
-					currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
-					currentItem.setRetryCount(Long.valueOf(0));
-					currentItem.setLastError(null);
-					currentItem.setErrorCode(null);
-					currentItem.setDateSubmitted(new Date());
-					success++;
-					crqServ.update(currentItem);
-				} else {
-					log.warn("invalid external id");
-					processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE,
-							"Submission error: no external id received", null );
-					errors++;
-				}
-			} else {
-				log.debug("Submission not successful: " + ((CharacterData) (root.getElementsByTagName("rmessage").item(0).getFirstChild())).getData().trim());
-
-				Long status;
-				if (rMessage.equals("User password does not match user email")
-						|| "1001".equals(rCode) || "".equals(rMessage) || "413".equals(rCode) || "1025".equals(rCode) || "250".equals(rCode)) {
-					status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
-					log.warn("Submission not successful. It will be retried.");
-				} else if (rCode.equals("423")) {
-					status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_USER_DETAILS_CODE;
-				} else if (rCode.equals("301")) {
-					//this took a long time
-					log.warn("Submission not successful due to timeout. It will be retried.");
-					status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE;
-					Calendar cal = Calendar.getInstance();
-					cal.set(Calendar.HOUR_OF_DAY, 22);
-					currentItem.setNextRetryTime(cal.getTime());
-				}else {
-					log.error("Submission not successful. It will NOT be retried.");
-					status = ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_NO_RETRY_CODE;
-				}
-
-				processError( currentItem, status, "Submission Error: " + rMessage + "(" + rCode + ")", Integer.valueOf(rCode) );
-				errors++;
-			}
-			// TIITODO: below is new code straight out of the 13.x implementation, is this right? won't it skip items?
-			// what does it have to do with releasing locks?
-			
-			// release the lock so the reports job can handle it
-			crqServ.getNextItemInQueueToSubmit(getProviderId());
+			processError( currentItem, status, "Submission Error: " + rMessage + "(" + rCode + ")", Integer.valueOf(rCode) );
+			return QueueItemResult.ERROR;
 		}
-
-		log.info("Submission queue run completed: " + success + " items submitted, " + errors + " errors.");
-	} // end processQueue()
+	}
 	
 	/**
 	 * This method was originally private, but is being made public for the
@@ -1199,6 +1464,19 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 	 */
 	public void enrollInClass(String userId, String uem, String siteId) throws SubmissionException, TransientSubmissionException {
 
+		User user;
+		try {
+			user = userDirectoryService.getUser(userId);
+		} catch (Exception t) {
+			throw new SubmissionException ("Cannot get user information", t);
+		}
+
+		enrollInClass(user, uem, siteId);
+	}
+
+	private void enrollInClass(User user, String uem, String siteId) throws SubmissionException, TransientSubmissionException {
+
+		String userId = user.getId();
 		String uid = userId;
 		String cid = siteId;
 
@@ -1207,13 +1485,6 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		String fcmd = "2";
 		String tem = getTEM(cid);
 
-		User user;
-		try {
-			user = userDirectoryService.getUser(userId);
-		} catch (Exception t) {
-			throw new SubmissionException ("Cannot get user information", t);
-		}
-
 		log.debug("Enrolling user " + user.getEid() + "(" + userId + ")  in class " + siteId);
 
 		String ufn = getUserFirstName(user);
@@ -1285,6 +1556,12 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		
 		return crqServ.getContentReviewItems(getProviderId(), siteId, taskId);
     }
+
+	@Override
+	public Map<String, ContentReviewItemSummary> getItemSummaries(String siteId, String taskId)
+	{
+		return crqServ.getItemSummaries(getProviderId(), siteId, taskId);
+	}
 	
 	@Override
 	public String getServiceName()
@@ -1510,6 +1787,12 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
     	return getLocalizedReviewErrorMessage(contentId);
     }
 
+	@Override
+	public String getReviewError(ContentReviewItemSummary item)
+	{
+		return getLocalizedReviewErrorMessage(item.getErrorCode(), item.getLastError());
+	}
+
 	@Override
 	public String getLocalizedStatusMessage(String messageCode, Locale locale)
 	{
@@ -1569,11 +1852,13 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 	
 	
 	protected String getLTIReportAccess(ContentReviewItem item)
+	{
+		return getLTIReportAccess(item.getSiteId(), item.getTaskId(), item.getExternalId());
+	}
+
+	private String getLTIReportAccess(String siteId, String assignmentId, String ltiResourceId)
 	{
 		String ltiReportsUrl = null;
-		String contentId = item.getContentId();
-		String assignmentId = item.getTaskId();
-		String siteId = item.getSiteId();
 		
 		// TIITODO: will we need to write a conversion script of sakai_site_property -> TiiActivityConfig?
 		// TIITODO: strategy to determine which tool registration id to use?
@@ -1581,7 +1866,6 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		if (activityConfig.isPresent())
 		{
 			String ltiReportsId = activityConfig.get().getStealthedLtiId();
-			String ltiResourceId = item.getExternalId();
 			if (ltiResourceId == null)
 			{
 				// Fallback: link to assignment
@@ -2089,354 +2373,387 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 
 		log.info("Fetching reports from Turnitin");
 		
-		// get the list of all items that are waiting for reports
+		// get the list of all items that are waiting for reports and have reached their next retry time
 		// but skip items with externalId = null, this happens when the LTI integration's callback fails. In this case, they'll be resubmitted by the queue job.
 		// For the Sakai API integration, we should never enter the report state with externalId = null
-		List<ContentReviewItem> awaitingReport = crqServ.getAwaitingReports(getProviderId()).stream()
-				.filter(item -> item.getExternalId() != null).collect(Collectors.toList());
+		List<ContentReviewItem> awaitingReport = crqServ.getAwaitingReportsDueForRetry(getProviderId());
 		
 		// Iterate through all items in status 10 (report pending, generated on due date)
 		//awaitingReport.addAll(dao.findAwaitingReportsOnDueDate(getProviderId()));
 		
-		Iterator<ContentReviewItem> listIterator = awaitingReport.iterator();
 		HashMap<String, Integer> reportTable = new HashMap<>();
 
 		log.debug("There are " + awaitingReport.size() + " submissions awaiting reports");
 
-		ContentReviewItem currentItem;
-		while (listIterator.hasNext()) {
-			currentItem = (ContentReviewItem) listIterator.next();
+		// Poll assignment by assignment, skipping assignments that are backed off because recent polls found nothing new
+		Map<String, List<ContentReviewItem>> awaitingByAssignment = ReportPollScheduler.groupByAssignment(awaitingReport);
+		reportPollScheduler.prune(System.currentTimeMillis());
+		int skippedAssignments = 0;
+		QueueLookupCache lookups = new QueueLookupCache(assignmentService, userDirectoryService);
+
+		assignments:
+		for (Map.Entry<String, List<ContentReviewItem>> assignmentItems : awaitingByAssignment.entrySet()) {
+			if (!isProviderAvailable()) {
+				break;
+			}
+
+			long pollStarted = System.currentTimeMillis();
+			if (!reportPollScheduler.isDue(assignmentItems.getKey(), assignmentItems.getValue(), pollStarted)) {
+				skippedAssignments++;
+				continue;
+			}
+
+			int reportsReceived = 0;
+			for (ContentReviewItem currentItem : assignmentItems.getValue()) {
 			
-			org.sakaiproject.assignment.api.model.Assignment assignment;
-			try
-			{
-				assignment = assignmentService.getAssignment(currentItem.getTaskId());
-				if (assignment != null)
+				org.sakaiproject.assignment.api.model.Assignment assignment;
+				try
 				{
-					// If the assignment is set to generate reports on the due date, and the effective due date is in the future,
-					// skip to next item without incrementing retry count
-					if (ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE.equals(currentItem.getStatus()))
+					assignment = lookups.getAssignment(currentItem.getTaskId());
+					if (assignment != null)
 					{
-						int dueDateBuffer = serverConfigurationService.getInt("contentreview.due.date.queue.job.buffer.minutes", 0);
-						if (System.currentTimeMillis() < getEffectiveDueDate(currentItem.getTaskId(),
-								assignment.getCloseDate().getTime(), assignment.getProperties(), dueDateBuffer))
+						// If the assignment is set to generate reports on the due date, and the effective due date is in the future,
+						// skip to next item without incrementing retry count
+						if (ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE.equals(currentItem.getStatus()))
 						{
-							continue;
+							int dueDateBuffer = serverConfigurationService.getInt("contentreview.due.date.queue.job.buffer.minutes", 0);
+							if (System.currentTimeMillis() < getEffectiveDueDate(currentItem.getTaskId(),
+									assignment.getCloseDate().getTime(), assignment.getProperties(), dueDateBuffer))
+							{
+								continue;
+							}
 						}
 					}
 				}
-			}
-			catch (IdUnusedException | PermissionException e)
-			{
-				// If the assignment no longer exists or if there was a permission exception, increment the item's retry count and skip to next item
-				String errorMsg = "Cant get assignment by taskID = " + currentItem.getTaskId() + ", skipping to next item";
-				log.warn(errorMsg, e);
-				incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), errorMsg, null);
-				continue;
-			}
-
-			// has the item reached its next retry time?
-			if (currentItem.getNextRetryTime() == null)
-			{
-				currentItem.setNextRetryTime(new Date());
-			}
-			else if (currentItem.getNextRetryTime().after(new Date()))
-			{
-				//we haven't reached the next retry time
-				log.info("next retry time not yet reached for item: " + currentItem.getId());
-				crqServ.update(currentItem);
-				continue;
-			}
-
-			if (currentItem.getRetryCount() == null )
-			{
-				currentItem.setRetryCount(Long.valueOf(0));
-				currentItem.setNextRetryTime(this.getNextRetryTime(0));
-			}
-			else if (currentItem.getRetryCount().intValue() > maxRetry)
-			{
-				processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_EXCEEDED_CODE, null, null );
-				continue;
-			}
-			else
-			{
-				// If associated assignment does not have content review enabled, increment the item's retry count and skip to next item
-				if (assignment != null && !assignment.getContentReview())
+				catch (IdUnusedException | PermissionException e)
 				{
-					String errorMsg = "Assignment with ID = " + currentItem.getTaskId() + " does not have content review enabled; skipping to next item";
-					log.warn(errorMsg);
+					// If the assignment no longer exists or if there was a permission exception, increment the item's retry count and skip to next item
+					String errorMsg = "Cant get assignment by taskID = " + currentItem.getTaskId() + ", skipping to next item";
+					log.warn(errorMsg, e);
 					incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), errorMsg, null);
 					continue;
 				}
-				
-				log.debug("Still have retries left, continuing. ItemID: " + currentItem.getId());
-			}
-
-			Site s;
-			try
-			{
-				s = siteService.getSite(currentItem.getSiteId());
-			}
-			catch (IdUnusedException iue)
-			{
-				log.warn("checkForReportsBulk: Site " + currentItem.getSiteId() + " not found!" + iue.getMessage());
-				// long l = currentItem.getRetryCount().longValue();
-				// l++;
-				// currentItem.setRetryCount(Long.valueOf(l));
-				// currentItem.setNextRetryTime(this.getNextRetryTime(Long.valueOf(l)));
-				// missing site is unrecoverable(?), skip to final retry immediately
-				// TIITODO: confirm for softly deleted sites, switch back to commented out logic above if required
-				currentItem.setRetryCount(maxRetry);
-				currentItem.setNextRetryTime(getNextRetryTime(maxRetry));
-				currentItem.setLastError("Site not found");
-				crqServ.update(currentItem);
-				continue;
-			}
-			//////////////////////////////  NEW LTI INTEGRATION  ///////////////////////////////
-			Optional<Date> dateOpt = getAssignmentCreationDate(currentItem.getTaskId());
-			if(dateOpt.isPresent() && siteAdvisor.siteCanUseLTIReviewServiceForAssignment(s, dateOpt.get())){			
-				log.debug("getReviewScore using the LTI integration");			
 
-				Map<String,String> ltiProps = new HashMap<> ();
-				ltiProps = putInstructorInfo(ltiProps, currentItem.getSiteId());
+				// has the item reached its next retry time?
+				if (currentItem.getNextRetryTime() == null)
+				{
+					currentItem.setNextRetryTime(new Date());
+				}
+				else if (currentItem.getNextRetryTime().after(new Date()))
+				{
+					//we haven't reached the next retry time
+					log.info("next retry time not yet reached for item: " + currentItem.getId());
+					crqServ.update(currentItem);
+					continue;
+				}
 
-				String paperId = currentItem.getExternalId();
+				if (currentItem.getRetryCount() == null )
+				{
+					currentItem.setRetryCount(Long.valueOf(0));
+					currentItem.setNextRetryTime(this.getNextRetryTime(0));
+				}
+				else if (currentItem.getRetryCount().intValue() > maxRetry)
+				{
+					processError( currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_EXCEEDED_CODE, null, null );
+					continue;
+				}
+				else
+				{
+					// If associated assignment does not have content review enabled, increment the item's retry count and skip to next item
+					if (assignment != null && !assignment.getContentReview())
+					{
+						String errorMsg = "Assignment with ID = " + currentItem.getTaskId() + " does not have content review enabled; skipping to next item";
+						log.warn(errorMsg);
+						incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), errorMsg, null);
+						continue;
+					}
+				
+					log.debug("Still have retries left, continuing. ItemID: " + currentItem.getId());
+				}
 
-				if(paperId == null){
-					String errorMsg = "Could not find TII paper id for the content " + currentItem.getContentId();
-					log.warn(errorMsg);
-					incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), errorMsg, null);
-					long l = currentItem.getRetryCount();
-					l++;
-					currentItem.setRetryCount(l);
-					currentItem.setNextRetryTime(this.getNextRetryTime(l));
-					currentItem.setLastError("Could not find TII paper id for the submission");
+				Site s;
+				try
+				{
+					s = siteService.getSite(currentItem.getSiteId());
+				}
+				catch (IdUnusedException iue)
+				{
+					log.warn("checkForReportsBulk: Site " + currentItem.getSiteId() + " not found!" + iue.getMessage());
+					// long l = currentItem.getRetryCount().longValue();
+					// l++;
+					// currentItem.setRetryCount(Long.valueOf(l));
+					// currentItem.setNextRetryTime(this.getNextRetryTime(Long.valueOf(l)));
+					// missing site is unrecoverable(?), skip to final retry immediately
+					// TIITODO: confirm for softly deleted sites, switch back to commented out logic above if required
+					currentItem.setRetryCount(maxRetry);
+					currentItem.setNextRetryTime(getNextRetryTime(maxRetry));
+					currentItem.setLastError("Site not found");
 					crqServ.update(currentItem);
 					continue;
 				}
+				//////////////////////////////  NEW LTI INTEGRATION  ///////////////////////////////
+				Optional<Date> dateOpt = getAssignmentCreationDate(currentItem.getTaskId());
+				if(dateOpt.isPresent() && siteAdvisor.siteCanUseLTIReviewServiceForAssignment(s, dateOpt.get())){			
+					log.debug("getReviewScore using the LTI integration");			
 
-				TurnitinReturnValue result = tiiUtil.makeLTIcall(TurnitinLTIUtil.INFO_SUBMISSION, paperId, ltiProps);
-				if(result.getResult() >= 0){
-					currentItem.setReviewScore(result.getResult());
-					currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_REPORT_AVAILABLE_CODE);
-					currentItem.setDateReportReceived(new Date());
-					currentItem.setLastError(null);
-					currentItem.setErrorCode(null);
-					crqServ.update(currentItem);
+					Map<String,String> ltiProps = new HashMap<> ();
+					ltiProps = putInstructorInfo(ltiProps, currentItem.getSiteId());
 
-					try
-					{
-						ContentResource resource = contentHostingService.getResource( currentItem.getContentId() );
-						boolean itemUpdated = updateItemAccess( resource.getId() );
-						if( !itemUpdated )
-						{
-							log.error( "Could not update cr item access status" );
-						}
-					}
-					catch( PermissionException | IdUnusedException | TypeException ex )
-					{
-						log.error( "Could not update cr item access status", ex );
+					String paperId = currentItem.getExternalId();
+
+					if(paperId == null){
+						String errorMsg = "Could not find TII paper id for the content " + currentItem.getContentId();
+						log.warn(errorMsg);
+						incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), errorMsg, null);
+						long l = currentItem.getRetryCount();
+						l++;
+						currentItem.setRetryCount(l);
+						currentItem.setNextRetryTime(this.getNextRetryTime(l));
+						currentItem.setLastError("Could not find TII paper id for the submission");
+						crqServ.update(currentItem);
+						continue;
 					}
 
-					//log.debug("new report received: " + currentItem.getExternalId() + " -> " + currentItem.getReviewScore());
-					log.debug("new report received: " + paperId + " -> " + currentItem.getReviewScore());
-				} else {
-					if(result.getResult() == -7){
-							// If assignment set to generate reports on due date, set status appropriately
-							String errorMsg = "";
-							// TIITODO: fix this so it works with the new Assignments API or TiiActivityConfig, depending on what we decide
-							/*if(assignmentContent != null && TurnitinConstants.GEN_REPORTS_ON_DUE_DATE_SETTING.equals(
-									assignmentContent.getGenerateOriginalityReport())) {
-								currentItem.setStatus(ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE);
-								errorMsg = "Report is still pending for paper " + paperId + "; will be generated on due date";
-							} else {
-								currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
-								errorMsg = "Report is still pending for paper " + paperId;
-							}*/
+					TurnitinReturnValue result = tiiUtil.makeLTIcall(TurnitinLTIUtil.INFO_SUBMISSION, paperId, ltiProps);
+					if(result.getResult() == TurnitinLTIUtil.PROVIDER_UNAVAILABLE){
+						// the call was not made; leave this item and the rest for a later run
+						break assignments;
+					}
+					if(result.getResult() >= 0){
+						currentItem.setReviewScore(result.getResult());
+						currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_REPORT_AVAILABLE_CODE);
+						currentItem.setDateReportReceived(new Date());
+						currentItem.setLastError(null);
+						currentItem.setErrorCode(null);
+						crqServ.update(currentItem);
+						reportsReceived++;
+
+						try
+						{
+							ContentResource resource = contentHostingService.getResource( currentItem.getContentId() );
+							boolean itemUpdated = updateItemAccess( resource.getId() );
+							if( !itemUpdated )
+							{
+								log.error( "Could not update cr item access status" );
+							}
+						}
+						catch( PermissionException | IdUnusedException | TypeException ex )
+						{
+							log.error( "Could not update cr item access status", ex );
+						}
 
-							log.debug(errorMsg);
-							processError(currentItem, currentItem.getStatus(), result.getErrorMessage(), result.getResult());
+						//log.debug("new report received: " + currentItem.getExternalId() + " -> " + currentItem.getReviewScore());
+						log.debug("new report received: " + paperId + " -> " + currentItem.getReviewScore());
 					} else {
-							String errorMsg = "Error making LTI call; report data error: " + result.getResult();
-							log.error(errorMsg);
-							incrementRetryCountAndProcessError(currentItem, ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE, errorMsg, null);
+						if(result.getResult() == -7){
+								// If assignment set to generate reports on due date, set status appropriately
+								String errorMsg = "";
+								// TIITODO: fix this so it works with the new Assignments API or TiiActivityConfig, depending on what we decide
+								/*if(assignmentContent != null && TurnitinConstants.GEN_REPORTS_ON_DUE_DATE_SETTING.equals(
+										assignmentContent.getGenerateOriginalityReport())) {
+									currentItem.setStatus(ContentReviewConstants.SUBMITTED_REPORT_ON_DUE_DATE_CODE);
+									errorMsg = "Report is still pending for paper " + paperId + "; will be generated on due date";
+								} else {
+									currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE);
+									errorMsg = "Report is still pending for paper " + paperId;
+								}*/
+
+								log.debug(errorMsg);
+								processError(currentItem, currentItem.getStatus(), result.getErrorMessage(), result.getResult());
+						} else {
+								String errorMsg = "Error making LTI call; report data error: " + result.getResult();
+								log.error(errorMsg);
+								incrementRetryCountAndProcessError(currentItem, ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE, errorMsg, null);
+						}
 					}
+
+					continue;
 				}
+				//////////////////////////////  OLD API INTEGRATION  ///////////////////////////////
 
-				continue;
-			}
-			//////////////////////////////  OLD API INTEGRATION  ///////////////////////////////
+				if (currentItem.getExternalId() == null || currentItem.getExternalId().equals("")) {
+					currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE);
+					crqServ.update(currentItem);
+					continue;
+				}
 
-			if (currentItem.getExternalId() == null || currentItem.getExternalId().equals("")) {
-				currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE);
-				crqServ.update(currentItem);
-				continue;
-			}
+				if (!reportTable.containsKey(currentItem.getExternalId())) {
+					// get the list from turnitin and see if the review is available
 
-			if (!reportTable.containsKey(currentItem.getExternalId())) {
-				// get the list from turnitin and see if the review is available
+					log.debug("Attempting to update hashtable with reports for site " + currentItem.getSiteId());
 
-				log.debug("Attempting to update hashtable with reports for site " + currentItem.getSiteId());
+					String fcmd = "2";
+					String fid = "10";
 
-				String fcmd = "2";
-				String fid = "10";
+					try {
+						User user = userDirectoryService.getUser(currentItem.getUserId());
+					} catch (Exception e) {
+						log.error("Unable to look up user: " + currentItem.getUserId() + " for contentItem: " + currentItem.getId(), e);
+					}
 
-				try {
-					User user = userDirectoryService.getUser(currentItem.getUserId());
-				} catch (Exception e) {
-					log.error("Unable to look up user: " + currentItem.getUserId() + " for contentItem: " + currentItem.getId(), e);
-				}
+					String cid = currentItem.getSiteId();
+					String tem = getTEM(cid);
 
-				String cid = currentItem.getSiteId();
-				String tem = getTEM(cid);
+					String utp = "2";
 
-				String utp = "2";
+					String assignid = currentItem.getTaskId();
 
-				String assignid = currentItem.getTaskId();
+					String assign = currentItem.getTaskId();
+					String ctl = currentItem.getSiteId();
 
-				String assign = currentItem.getTaskId();
-				String ctl = currentItem.getSiteId();
+					// TODO FIXME Current sgithens
+					// Move the update setRetryAttempts to here, and first call and
+					// check the assignment from TII to see if the generate until
+					// due is enabled. In that case we don't want to waste retry
+					// attempts and should just continue.
+					try {
+						// TODO FIXME This is broken at the moment because we need
+						// to have a userid, but this is assuming it's coming from
+						// the thread, but we're in a quartz job.
+						//Map curasnn = getAssignment(currentItem.getSiteId(), currentItem.getTaskId());
+						// TODO FIXME Parameterize getAssignment method to take user information
+						Map getAsnnParams = TurnitinAPIUtil.packMap(turnitinConn.getBaseTIIOptions(),
+								"assign", getAssignmentTitle(currentItem.getTaskId()), "assignid", currentItem.getTaskId(), "cid", currentItem.getSiteId(), "ctl", currentItem.getSiteId(),
+								"fcmd", "7", "fid", "4", "utp", "2" );
 
-				// TODO FIXME Current sgithens
-				// Move the update setRetryAttempts to here, and first call and
-				// check the assignment from TII to see if the generate until
-				// due is enabled. In that case we don't want to waste retry
-				// attempts and should just continue.
-				try {
-					// TODO FIXME This is broken at the moment because we need
-					// to have a userid, but this is assuming it's coming from
-					// the thread, but we're in a quartz job.
-					//Map curasnn = getAssignment(currentItem.getSiteId(), currentItem.getTaskId());
-					// TODO FIXME Parameterize getAssignment method to take user information
-					Map getAsnnParams = TurnitinAPIUtil.packMap(turnitinConn.getBaseTIIOptions(),
-							"assign", getAssignmentTitle(currentItem.getTaskId()), "assignid", currentItem.getTaskId(), "cid", currentItem.getSiteId(), "ctl", currentItem.getSiteId(),
-							"fcmd", "7", "fid", "4", "utp", "2" );
-
-					getAsnnParams.putAll(getInstructorInfo(currentItem.getSiteId()));
-
-					Map curasnn = turnitinConn.callTurnitinReturnMap(getAsnnParams);
-
-					if (curasnn.containsKey("object")) {
-						Map curasnnobj = (Map) curasnn.get("object");
-						String reportGenSpeed = (String) curasnnobj.get("generate");
-						String duedate = (String) curasnnobj.get("dtdue");
-						SimpleDateFormat retform = ((SimpleDateFormat) DateFormat.getDateInstance());
-						retform.applyPattern(TurnitinConstants.TURNITIN_DATETIME_FORMAT);
-						Date duedateObj = null;
+						getAsnnParams.putAll(getInstructorInfo(currentItem.getSiteId()));
+
+						Map curasnn;
 						try {
-							if (duedate != null) {
-								duedateObj = retform.parse(duedate);
-							}
-						} catch (ParseException pe) {
-							log.warn("Unable to parse turnitin dtdue: " + duedate, pe);
+							curasnn = turnitinConn.callTurnitinReturnMap(getAsnnParams);
+						} catch (ProviderUnavailableException e) {
+							break assignments;
 						}
-						if (reportGenSpeed != null && duedateObj != null &&
-							reportGenSpeed.equals("2") && duedateObj.after(new Date())) {
-							log.info("Report generate speed is 2, skipping for now. ItemID: " + currentItem.getId());
-							// If there was previously a transient error for this item, reset the status
-							if (ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE.equals(currentItem.getStatus())) {
-								processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE, null, null);
+
+						if (curasnn.containsKey("object")) {
+							Map curasnnobj = (Map) curasnn.get("object");
+							String reportGenSpeed = (String) curasnnobj.get("generate");
+							String duedate = (String) curasnnobj.get("dtdue");
+							SimpleDateFormat retform = ((SimpleDateFormat) DateFormat.getDateInstance());
+							retform.applyPattern(TurnitinConstants.TURNITIN_DATETIME_FORMAT);
+							Date duedateObj = null;
+							try {
+								if (duedate != null) {
+									duedateObj = retform.parse(duedate);
+								}
+							} catch (ParseException pe) {
+								log.warn("Unable to parse turnitin dtdue: " + duedate, pe);
+							}
+							if (reportGenSpeed != null && duedateObj != null &&
+								reportGenSpeed.equals("2") && duedateObj.after(new Date())) {
+								log.info("Report generate speed is 2, skipping for now. ItemID: " + currentItem.getId());
+								// If there was previously a transient error for this item, reset the status
+								if (ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE.equals(currentItem.getStatus())) {
+									processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_AWAITING_REPORT_CODE, null, null);
+								}
+								continue;
+							}
+							else {
+								log.debug("Incrementing retry count for currentItem: " + currentItem.getId());
+								incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), null, null);
 							}
-							continue;
-						}
-						else {
-							log.debug("Incrementing retry count for currentItem: " + currentItem.getId());
-							incrementRetryCountAndProcessError(currentItem, currentItem.getStatus(), null, null);
 						}
+					} catch (SubmissionException | TransientSubmissionException e) {
+						log.error("Unable to check the report gen speed of the asnn for item: " + currentItem.getId(), e);
 					}
-				} catch (SubmissionException | TransientSubmissionException e) {
-					log.error("Unable to check the report gen speed of the asnn for item: " + currentItem.getId(), e);
-				}
 
-				Map params = TurnitinAPIUtil.packMap(turnitinConn.getBaseTIIOptions(),
-							"fid", fid,
-							"fcmd", fcmd,
-							"tem", tem,
-							"assign", assign,
-							"assignid", assignid,
-							"cid", cid,
-							"ctl", ctl,
-							"utp", utp
-					);
-				params.putAll(getInstructorInfo(currentItem.getSiteId()));
-
-				Document document;
+					Map params = TurnitinAPIUtil.packMap(turnitinConn.getBaseTIIOptions(),
+								"fid", fid,
+								"fcmd", fcmd,
+								"tem", tem,
+								"assign", assign,
+								"assignid", assignid,
+								"cid", cid,
+								"ctl", ctl,
+								"utp", utp
+						);
+					params.putAll(getInstructorInfo(currentItem.getSiteId()));
+
+					Document document;
+
+					try {
+						document = turnitinConn.callTurnitinReturnDocument(params);
+					}
+					catch (ProviderUnavailableException e) {
+						break assignments;
+					}
+					catch (TransientSubmissionException e) {
+						log.warn("Update failed due to TransientSubmissionException error: " + e.toString(), e);
+						processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE, e.getMessage(), null);
+						break assignments;
+					}
+					catch (SubmissionException e) {
+						log.warn("Update failed due to SubmissionException error: " + e.toString(), e);
+						processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE, e.getMessage(), null);
+						break assignments;
+					}
 
-				try {
-					document = turnitinConn.callTurnitinReturnDocument(params);
-				}
-				catch (TransientSubmissionException e) {
-					log.warn("Update failed due to TransientSubmissionException error: " + e.toString(), e);
-					processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE, e.getMessage(), null);
-					break;
-				}
-				catch (SubmissionException e) {
-					log.warn("Update failed due to SubmissionException error: " + e.toString(), e);
-					processError(currentItem, ContentReviewConstants.CONTENT_REVIEW_REPORT_ERROR_RETRY_CODE, e.getMessage(), null);
-					break;
-				}
+					Element root = document.getDocumentElement();
+					if (((CharacterData) (root.getElementsByTagName("rcode").item(0).getFirstChild())).getData().trim().compareTo("72") == 0) {
+						log.debug("Report list returned successfully");
+
+						NodeList objects = root.getElementsByTagName("object");
+						String objectId;
+						String similarityScore;
+						String overlap = "";
+						log.debug(objects.getLength() + " objects in the returned list");
+						for (int i=0; i<objects.getLength(); i++) {
+							similarityScore = ((CharacterData) (((Element)(objects.item(i))).getElementsByTagName("similarityScore").item(0).getFirstChild())).getData().trim();
+							objectId = ((CharacterData) (((Element)(objects.item(i))).getElementsByTagName("objectID").item(0).getFirstChild())).getData().trim();
+							if (similarityScore.compareTo("-1") != 0) {
+								overlap = ((CharacterData) (((Element)(objects.item(i))).getElementsByTagName("overlap").item(0).getFirstChild())).getData().trim();
+								reportTable.put(objectId, Integer.valueOf(overlap));
+							} else {
+								reportTable.put(objectId, -1);
+							}
 
-				Element root = document.getDocumentElement();
-				if (((CharacterData) (root.getElementsByTagName("rcode").item(0).getFirstChild())).getData().trim().compareTo("72") == 0) {
-					log.debug("Report list returned successfully");
-
-					NodeList objects = root.getElementsByTagName("object");
-					String objectId;
-					String similarityScore;
-					String overlap = "";
-					log.debug(objects.getLength() + " objects in the returned list");
-					for (int i=0; i<objects.getLength(); i++) {
-						similarityScore = ((CharacterData) (((Element)(objects.item(i))).getElementsByTagName("similarityScore").item(0).getFirstChild())).getData().trim();
-						objectId = ((CharacterData) (((Element)(objects.item(i))).getElementsByTagName("objectID").item(0).getFirstChild())).getData().trim();
-						if (similarityScore.compareTo("-1") != 0) {
-							overlap = ((CharacterData) (((Element)(objects.item(i))).getElementsByTagName("overlap").item(0).getFirstChild())).getData().trim();
-							reportTable.put(objectId, Integer.valueOf(overlap));
-						} else {
-							reportTable.put(objectId, -1);
+							log.debug("objectId: " + objectId + " similarity: " + similarityScore + " overlap: " + overlap);
 						}
+					} else {
+						log.debug("Report list request not successful");
+						log.debug(document.getTextContent());
 
-						log.debug("objectId: " + objectId + " similarity: " + similarityScore + " overlap: " + overlap);
 					}
-				} else {
-					log.debug("Report list request not successful");
-					log.debug(document.getTextContent());
-
 				}
-			}
-
-			int reportVal;
-			// check if the report value is now there (there may have been a
-			// failure to get the list above)
-			if (reportTable.containsKey(currentItem.getExternalId())) {
-				reportVal = ((reportTable.get(currentItem.getExternalId())));
-				log.debug("reportVal for " + currentItem.getExternalId() + ": " + reportVal);
-				if (reportVal != -1) {
-					currentItem.setReviewScore(reportVal);
-					currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_REPORT_AVAILABLE_CODE);
-					currentItem.setDateReportReceived(new Date());
-					currentItem.setLastError(null);
-					currentItem.setErrorCode(null);
-					crqServ.update(currentItem);
 
-					try
-					{
-						ContentResource resource = contentHostingService.getResource( currentItem.getContentId() );
-						boolean itemUpdated = updateItemAccess( resource.getId() );
-						if( !itemUpdated )
+				int reportVal;
+				// check if the report value is now there (there may have been a
+				// failure to get the list above)
+				if (reportTable.containsKey(currentItem.getExternalId())) {
+					reportVal = ((reportTable.get(currentItem.getExternalId())));
+					log.debug("reportVal for " + currentItem.getExternalId() + ": " + reportVal);
+					if (reportVal != -1) {
+						currentItem.setReviewScore(reportVal);
+						currentItem.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMITTED_REPORT_AVAILABLE_CODE);
+						currentItem.setDateReportReceived(new Date());
+						currentItem.setLastError(null);
+						currentItem.setErrorCode(null);
+						crqServ.update(currentItem);
+						reportsReceived++;
+
+						try
 						{
-							log.error( "Could not update cr item access status" );
+							ContentResource resource = contentHostingService.getResource( currentItem.getContentId() );
+							boolean itemUpdated = updateItemAccess( resource.getId() );
+							if( !itemUpdated )
+							{
+								log.error( "Could not update cr item access status" );
+							}
+						}
+						catch( PermissionException | IdUnusedException | TypeException ex )
+						{
+							log.error( "Could not update cr item access status", ex );
 						}
-					}
-					catch( PermissionException | IdUnusedException | TypeException ex )
-					{
-						log.error( "Could not update cr item access status", ex );
-					}
 
-					log.debug("new report received: " + currentItem.getExternalId() + " -> " + currentItem.getReviewScore());
+						log.debug("new report received: " + currentItem.getExternalId() + " -> " + currentItem.getReviewScore());
+					}
 				}
 			}
+
+			reportPollScheduler.recordPoll(assignmentItems.getKey(), reportsReceived > 0, pollStarted);
 		}
 
+		log.debug("Skipped " + skippedAssignments + " assignments with no reports expected yet");
 		log.info("Finished fetching reports from Turnitin");
 	}
 	
@@ -2570,19 +2887,23 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		
 		if (item.isPresent())
 		{
-			// its possible the error code column is not populated
-			Integer errorCode = item.get().getErrorCode();
-			if (errorCode == null)
-			{
-				return item.get().getLastError();
-			}
-			
-			return getLocalizedStatusMessage(errorCode.toString());
+			return getLocalizedReviewErrorMessage(item.get().getErrorCode(), item.get().getLastError());
 		}
 
 		log.debug("Content " + contentId + " has not been queued previously");
 		return null;
 	}
+
+	private String getLocalizedReviewErrorMessage(Integer errorCode, String lastError)
+	{
+		// its possible the error code column is not populated
+		if (errorCode == null)
+		{
+			return lastError;
+		}
+
+		return getLocalizedStatusMessage(errorCode.toString());
+	}
 	
 	/**
 	 * Syncs an assignment and handles individual student extensions
@@ -2748,6 +3069,9 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 			ltiProps.put("ext_resource_tool_placement_url", callbackUrl);
 			
 			TurnitinReturnValue result = tiiUtil.makeLTIcall(TurnitinLTIUtil.BASIC_ASSIGNMENT, null, ltiProps);
+			if(result.getResult() == TurnitinLTIUtil.PROVIDER_UNAVAILABLE){
+				throw new ProviderUnavailableException("Create Assignment not sent: " + result.getErrorMessage());
+			}
 			if(result.getResult() < 0){
 				log.error("Error making LTI call");
 				throw new TransientSubmissionException("Create Assignment not successful. Check the logs to see message.");
@@ -3509,78 +3833,23 @@ public class TiiBaseReviewServiceImpl implements ContentReviewService
 		processError(item, status, error, errorCode);
 	}
 	
-	/*
-	 * Get the next item that needs to be submitted
-	 *
+	/**
+	 * Leases the next batch of items that need to be submitted, including items that were submitted but are still
+	 * missing an external id (required for the LTI integration)
+	 * @param leaseOwner the lease owner for this run
+	 * @return a possibly empty list of items leased to this run
 	 */
-	private Optional<ContentReviewItem> getNextItemInSubmissionQueue()
+	private List<ContentReviewItem> getNextBatchInSubmissionQueue(String leaseOwner)
 	{
-		Optional<ContentReviewItem> nextItem = crqServ.getNextItemInQueueToSubmit(getProviderId());
-		if (!nextItem.isPresent())
-		{
-			// try to resubmit items that are still missing an external id (required for the LTI integration)
-			nextItem = crqServ.getNextSubmittedItemMissingExternalId(getProviderId());
-		}
-		
-		// TIITODO: old code used to handle setting the retry time if it was null. Do we still need to do this?
-		// Possibly for items that have not yet been submitted?
-		
-		return nextItem;
-		
-		// TIITODO: remove commented out code (and methods) below once we know above code works		
-		
-		// Submit items that haven't yet been submitted
-		/*Search search = new Search();
-		search.addRestriction(new Restriction("status", ContentReviewItem.NOT_SUBMITTED_CODE));
-		List<ContentReviewItem> notSubmittedItems = dao.findBySearch(ContentReviewItem.class, search);
-		for( ContentReviewItem item : notSubmittedItems ) {
-
-			// can we get a lock?
-			if (obtainLock("item." + item.getId().toString())) {
-				return item;
-			}
-		}
-
-		// Submit items that should be retried
-		search = new Search();
-		search.addRestriction(new Restriction("status", ContentReviewItem.SUBMISSION_ERROR_RETRY_CODE));
-		notSubmittedItems = dao.findBySearch(ContentReviewItem.class, search);
-		ContentReviewItem nextItem = getNotSubmittedItemPastRetryTime( notSubmittedItems );
-		if( nextItem != null )
-		{
-			return nextItem;
-		}
-
-		// submit items that are awaiting reports, but the externalId is null (Ie. they've been submitted, but the callback to set the externalId failed).
-		search = new Search();
-		search.addRestriction(new Restriction("status", ContentReviewItem.SUBMITTED_AWAITING_REPORT_CODE));
-		search.addRestriction(new Restriction("externalId", "", Restriction.NULL));
-		notSubmittedItems = dao.findBySearch(ContentReviewItem.class, search);
-		nextItem = getNotSubmittedItemPastRetryTime(notSubmittedItems);
-		if (nextItem != null)
-		{
-			return nextItem;
-		}
-
-		// submit items that are awaiting reports in an errory_retry state, and the externalId is null (similar to above condition, just happens to be in an errory_retry state)
-		search = new Search();
-		search.addRestriction(new Restriction("status", ContentReviewItem.REPORT_ERROR_RETRY_CODE));
-		search.addRestriction(new Restriction("externalId", "", Restriction.NULL));
-		notSubmittedItems = dao.findBySearch(ContentReviewItem.class, search);
-		nextItem = getNotSubmittedItemPastRetryTime(notSubmittedItems);
-		if (nextItem != null)
-		{
-			return nextItem;
-		}
-
-		// Submit items that were previously marked as missing submitter details (first name, last name, email)
-		search = new Search();
-		search.addRestriction( new Restriction( "status", ContentReviewItem.SUBMISSION_ERROR_USER_DETAILS_CODE ) );
-		notSubmittedItems = dao.findBySearch( ContentReviewItem.class, search );
-		nextItem = getNotSubmittedItemPastRetryTime( notSubmittedItems );
+		return crqServ.claimItemsToSubmit(getProviderId(), leaseOwner, queueBatchSize, queueLeaseSeconds);
+	}
 
-		// At this point, nextItem could be null (indicating the submission queue is empty)
-		return nextItem;*/
+	/**
+	 * @return the lease owner for items claimed by this node
+	 */
+	private String getQueueLeaseOwner()
+	{
+		return serverConfigurationService.getServerIdInstance() + ":" + getProviderId();
 	}
 
 	/**
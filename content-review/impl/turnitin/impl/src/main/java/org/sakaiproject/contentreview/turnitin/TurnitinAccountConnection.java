@@ -20,6 +20,7 @@
  **********************************************************************************/
 package org.sakaiproject.contentreview.turnitin;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
@@ -28,9 +29,12 @@ import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.contentreview.exception.ProviderUnavailableException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
 import org.sakaiproject.contentreview.exception.TransientSubmissionException;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.turnitin.util.TurnitinAPIUtil;
 import org.w3c.dom.Document;
 
@@ -63,6 +67,7 @@ public class TurnitinAccountConnection {
 	private String defaultInstructorPassword = null;
 	private boolean useSourceParameter = false;
 	private int turnitinConnTimeout = 0; // Default to 0, no timeout.
+	private CloseableHttpClient httpClient = null;
 	private boolean studentAccountNotified = true;
 	private boolean instructorAccountNotified = true;
 	private int sendSubmissionNotification = 0;
@@ -157,6 +162,22 @@ public class TurnitinAccountConnection {
 		// Timeout period in ms for network connections (default 180s). Set to 0 to disable timeout.
 		turnitinConnTimeout = serverConfigurationService.getInt("turnitin.networkTimeout", 180000);
 
+		// Connections to Turnitin are pooled and reused across calls
+		int maxConnections = serverConfigurationService.getInt("turnitin.http.maxConnections", 10);
+		int connectTimeout = serverConfigurationService.getInt("turnitin.http.connectTimeout", turnitinConnTimeout);
+		int idleSeconds = serverConfigurationService.getInt("turnitin.http.idleSeconds", 60);
+		httpClient = TurnitinAPIUtil.createHttpClient(maxConnections, connectTimeout, turnitinConnTimeout, idleSeconds, proxy);
+
+	}
+
+	public void destroy() {
+		if (httpClient != null) {
+			try {
+				httpClient.close();
+			} catch (IOException e) {
+				log.debug("Error closing Turnitin HTTP client", e);
+			}
+		}
 	}
 
 	/*
@@ -190,30 +211,62 @@ public class TurnitinAccountConnection {
 	}
 
 	public Map callTurnitinReturnMap(Map params) throws TransientSubmissionException, SubmissionException {
-		return TurnitinAPIUtil.callTurnitinReturnMap(apiURL, params, secretKey, turnitinConnTimeout, proxy);
+		return guardedCall(() -> TurnitinAPIUtil.callTurnitinReturnMap(apiURL, params, secretKey, httpClient));
 	}
 
 	public Document callTurnitinReturnDocument(Map params) throws TransientSubmissionException, SubmissionException {
-		return TurnitinAPIUtil.callTurnitinReturnDocument(apiURL, params, secretKey, turnitinConnTimeout, proxy, false);
+		return guardedCall(() -> TurnitinAPIUtil.callTurnitinReturnDocument(apiURL, params, secretKey, httpClient, false));
 	}
 
 	public Document callTurnitinReturnDocument(Map params, boolean multiPart) throws TransientSubmissionException, SubmissionException {
-		return TurnitinAPIUtil.callTurnitinReturnDocument(apiURL, params, secretKey, turnitinConnTimeout, proxy, multiPart);
+		return guardedCall(() -> TurnitinAPIUtil.callTurnitinReturnDocument(apiURL, params, secretKey, httpClient, multiPart));
 	}
 
 	public Map callTurnitinWDefaultsReturnMap(Map params) throws SubmissionException, TransientSubmissionException {
 		params.putAll(getBaseTIIOptions());
-		return TurnitinAPIUtil.callTurnitinReturnMap(apiURL, params, secretKey, turnitinConnTimeout, proxy);
+		return guardedCall(() -> TurnitinAPIUtil.callTurnitinReturnMap(apiURL, params, secretKey, httpClient));
 	}
 
 	public InputStream callTurnitinWDefaultsReturnInputStream(Map params) throws SubmissionException, TransientSubmissionException {
 		params.putAll(getBaseTIIOptions());
-		return TurnitinAPIUtil.callTurnitinReturnInputStream(apiURL, params, secretKey, turnitinConnTimeout, proxy, false);
+		return guardedCall(() -> TurnitinAPIUtil.callTurnitinReturnInputStream(apiURL, params, secretKey, httpClient, false));
 	}
 
 	public Document callTurnitinWDefaultsReturnDocument(Map params) throws SubmissionException, TransientSubmissionException {
 		params.putAll(getBaseTIIOptions());
-		return TurnitinAPIUtil.callTurnitinReturnDocument(apiURL, params, secretKey, turnitinConnTimeout, proxy, false);
+		return guardedCall(() -> TurnitinAPIUtil.callTurnitinReturnDocument(apiURL, params, secretKey, httpClient, false));
+	}
+
+	/**
+	 * Makes a call to Turnitin once the provider guard allows it, and reports the outcome back to the guard.
+	 * Transient errors (connection failures, unparseable responses) count against Turnitin; a SubmissionException
+	 * is a problem with the request itself, so it doesn't. A refused call throws a ProviderUnavailableException, which
+	 * callers should treat as the call never having been made.
+	 */
+	private <T> T guardedCall(TurnitinCall<T> call) throws TransientSubmissionException, SubmissionException {
+		if (providerGuard == null) {
+			return call.call();
+		}
+
+		long permit = providerGuard.acquire(TurnitinConstants.SERVICE_NAME);
+		if (permit == ContentReviewProviderGuard.NO_PERMIT) {
+			throw new ProviderUnavailableException("Turnitin is unavailable or its call rate has been reached, the call will be retried");
+		}
+
+		long start = System.currentTimeMillis();
+		try {
+			T result = call.call();
+			providerGuard.recordSuccess(TurnitinConstants.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			return result;
+		} catch (TransientSubmissionException | RuntimeException e) {
+			providerGuard.recordFailure(TurnitinConstants.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			throw e;
+		}
+	}
+
+	@FunctionalInterface
+	private interface TurnitinCall<T> {
+		T call() throws TransientSubmissionException, SubmissionException;
 	}
 
 	public String buildTurnitinURL(Map params) {
@@ -254,6 +307,11 @@ public class TurnitinAccountConnection {
 		this.serverConfigurationService = serverConfigurationService;
 	}
 
+	private ContentReviewProviderGuard providerGuard;
+	public void setProviderGuard(ContentReviewProviderGuard providerGuard) {
+		this.providerGuard = providerGuard;
+	}
+
 	public boolean isStudentAccountNotified() {
 		return studentAccountNotified;
 	}
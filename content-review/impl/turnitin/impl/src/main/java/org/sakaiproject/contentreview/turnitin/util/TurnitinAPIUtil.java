@@ -21,15 +21,15 @@
 package org.sakaiproject.contentreview.turnitin.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.MalformedURLException;
-import java.net.ProtocolException;
+import java.net.InetSocketAddress;
 import java.net.Proxy;
-import java.net.URL;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
@@ -45,8 +45,8 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.HttpsURLConnection;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -55,6 +55,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.azeckoski.reflectutils.transcoders.XMLTranscoder;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.contentreview.exception.SubmissionException;
@@ -97,26 +108,40 @@ public class TurnitinAPIUtil {
 		+ name + "\"\r\n\r\n" + value + "\r\n";
 	}
 
-	private static HttpsURLConnection fetchConnection(String apiURL, int timeout, Proxy proxy)
-	throws MalformedURLException, IOException, ProtocolException {
-		HttpsURLConnection connection;
-		URL hostURL = new URL(apiURL);
-		if (proxy == null) {
-			connection = (HttpsURLConnection) hostURL.openConnection();
-		} else {
-			connection = (HttpsURLConnection) hostURL.openConnection(proxy);
-		}
-
-		// This actually turns into a POST since we are writing to the
-		// resource body. ( You can see this in Webscarab or some other HTTP
-		// interceptor.
-		connection.setRequestMethod("GET"); 
-		connection.setConnectTimeout(timeout);
-		connection.setReadTimeout(timeout);
-		connection.setDoOutput(true);
-		connection.setDoInput(true);
-
-		return connection;
+	/**
+	 * Builds the HTTP client used for all calls to Turnitin. Connections are pooled and kept alive between calls,
+	 * so a queue run doesn't pay for a new TLS handshake on every class create, enrolment, submission and report
+	 * fetch. The client should be shared and closed once it is no longer needed.
+	 * @param maxConnections the most connections kept open to Turnitin at once
+	 * @param connectTimeout connect timeout in ms, 0 for no timeout
+	 * @param readTimeout read timeout in ms, 0 for no timeout
+	 * @param idleSeconds how long an unused pooled connection is kept open
+	 * @param proxy the proxy to connect through, or null
+	 * @return the client
+	 */
+	public static CloseableHttpClient createHttpClient(int maxConnections, int connectTimeout, int readTimeout,
+			int idleSeconds, Proxy proxy) {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		// a connection Turnitin has closed while it sat in the pool is checked before it is reused
+		connectionManager.setValidateAfterInactivity(2000);
+
+		RequestConfig.Builder requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setConnectionRequestTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout);
+		if (proxy != null && proxy.address() instanceof InetSocketAddress) {
+			InetSocketAddress address = (InetSocketAddress) proxy.address();
+			requestConfig.setProxy(new HttpHost(address.getHostString(), address.getPort()));
+		}
+
+		return HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig.build())
+				.evictExpiredConnections()
+				.evictIdleConnections(idleSeconds, TimeUnit.SECONDS)
+				.build();
 	}
 
 	public static String getGMTime() {
@@ -181,11 +206,11 @@ public class TurnitinAPIUtil {
 	}
 
 	public static Map callTurnitinReturnMap(String apiURL, Map<String,Object> parameters, 
-			String secretKey, int timeout, Proxy proxy) throws TransientSubmissionException, SubmissionException 
+			String secretKey, CloseableHttpClient httpClient) throws TransientSubmissionException, SubmissionException 
 	{
 		XMLTranscoder xmlt = new XMLTranscoder();
 
-		try (InputStream inputStream = callTurnitinReturnInputStream(apiURL, parameters, secretKey, timeout, proxy, false))
+		try (InputStream inputStream = callTurnitinReturnInputStream(apiURL, parameters, secretKey, httpClient, false))
 		{
 			Map togo = xmlt.decode(IOUtils.toString(inputStream));
 			apiTraceLog.debug("Turnitin Result Payload: " + togo);
@@ -199,8 +224,8 @@ public class TurnitinAPIUtil {
 	}
 
 	public static Document callTurnitinReturnDocument(String apiURL, Map<String,Object> parameters, 
-			String secretKey, int timeout, Proxy proxy) throws TransientSubmissionException, SubmissionException {
-		return callTurnitinReturnDocument(apiURL, parameters, secretKey, timeout, proxy, false);
+			String secretKey, CloseableHttpClient httpClient) throws TransientSubmissionException, SubmissionException {
+		return callTurnitinReturnDocument(apiURL, parameters, secretKey, httpClient, false);
 	}
 	
 	public static String buildTurnitinURL(String apiURL, Map<String,Object> parameters, String secretKey) {
@@ -264,8 +289,8 @@ public class TurnitinAPIUtil {
 	}
 
 	public static Document callTurnitinReturnDocument(String apiURL, Map<String,Object> parameters, 
-			String secretKey, int timeout, Proxy proxy, boolean isMultipart) throws TransientSubmissionException, SubmissionException {
-		InputStream inputStream = callTurnitinReturnInputStream(apiURL, parameters, secretKey, timeout, proxy, isMultipart);
+			String secretKey, CloseableHttpClient httpClient, boolean isMultipart) throws TransientSubmissionException, SubmissionException {
+		InputStream inputStream = callTurnitinReturnInputStream(apiURL, parameters, secretKey, httpClient, isMultipart);
 
 		BufferedReader in;
 		in = new BufferedReader(new InputStreamReader(inputStream));
@@ -289,10 +314,12 @@ public class TurnitinAPIUtil {
 		return document;
 	}
 
+	/**
+	 * Makes a call to Turnitin. The response is read in full before returning, so the connection goes straight
+	 * back to the client's pool whether or not the caller closes the returned stream.
+	 */
 	public static InputStream callTurnitinReturnInputStream(String apiURL, Map<String,Object> parameters, 
-			String secretKey, int timeout, Proxy proxy, boolean isMultipart) throws TransientSubmissionException, SubmissionException {
-		InputStream togo = null;
-		
+			String secretKey, CloseableHttpClient httpClient, boolean isMultipart) throws TransientSubmissionException, SubmissionException {
 		StringBuilder apiDebugSB = new StringBuilder();
 
 		if (!parameters.containsKey("fid")) {
@@ -321,45 +348,41 @@ public class TurnitinAPIUtil {
 
 		String md5 = buildTurnitinMD5(parameters, secretKey, sortedkeys);
 
-		HttpsURLConnection connection;
+		HttpPost request = new HttpPost(apiURL);
 		String boundary = "";
 		try {
-			connection = fetchConnection(apiURL, timeout, proxy);
-
 			if (isMultipart) {
+				// the multipart body is assembled up front, except for the file itself which is streamed from
+				// content hosting, so that the request is sent with a known Content-Length instead of
+				// buffering the whole file on the heap
+				List<Object> multipartBody = new ArrayList<>();
 				Random rand = new Random();
 				//make up a boundary that should be unique
 				boundary = Long.toString(rand.nextLong(), 26)
 				+ Long.toString(rand.nextLong(), 26)
 				+ Long.toString(rand.nextLong(), 26);
-				connection.setRequestMethod("POST");
-				connection.setRequestProperty("Content-Type","multipart/form-data; boundary=" + boundary);
-			}
-
-			log.debug("HTTPS Connection made to Turnitin");
 
-			OutputStream outStream = connection.getOutputStream();
-
-			if (isMultipart) {
 				if (apiTraceLog.isDebugEnabled()) {
 					apiDebugSB.append("Starting Multipart TII CALL:\n");
 				}
+				long contentLength = 0;
 				for (int i = 0; i < sortedkeys.size(); i++) {
 					if (parameters.get(sortedkeys.get(i)) instanceof ContentResource) {
 						ContentResource resource = (ContentResource) parameters.get(sortedkeys.get(i));
-						outStream.write(("--" + boundary
+						if (resource.getContentLength() <= 0) {
+							throw new SubmissionException("zero length submission!");
+						}
+						byte[] partHeader = ("--" + boundary
 								+ "\r\nContent-Disposition: form-data; name=\"pdata\"; filename=\""
 								+ resource.getId() + "\"\r\n"
 								+ "Content-Type: " + resource.getContentType()
 								+ "\r\ncontent-transfer-encoding: binary" + "\r\n\r\n")
-								.getBytes());
-						//TODO this loads the doc into memory rather use the stream method
-						byte[] content = resource.getContent();
-						if (content == null) {
-							throw new SubmissionException("zero length submission!");
-						}
-						outStream.write(content);
-						outStream.write("\r\n".getBytes("UTF-8"));
+								.getBytes();
+						byte[] partFooter = "\r\n".getBytes("UTF-8");
+						multipartBody.add(partHeader);
+						multipartBody.add(resource);
+						multipartBody.add(partFooter);
+						contentLength += partHeader.length + resource.getContentLength() + partFooter.length;
 						if (apiTraceLog.isDebugEnabled()) {
 							apiDebugSB.append(sortedkeys.get(i));
 							apiDebugSB.append(" = ContentHostingResource: ");
@@ -374,12 +397,16 @@ public class TurnitinAPIUtil {
 							apiDebugSB.append(parameters.get(sortedkeys.get(i)).toString());
 							apiDebugSB.append("\n");
 						}
-						outStream.write(encodeParam(sortedkeys.get(i),parameters.get(sortedkeys.get(i)).toString(), boundary).getBytes());
+						byte[] part = encodeParam(sortedkeys.get(i),parameters.get(sortedkeys.get(i)).toString(), boundary).getBytes();
+						multipartBody.add(part);
+						contentLength += part.length;
 					}
 				}
-				outStream.write(encodeParam("md5",md5, boundary).getBytes());
-				outStream.write(("--" + boundary + "--").getBytes());
-				
+				byte[] closing = (encodeParam("md5",md5, boundary) + "--" + boundary + "--").getBytes();
+				multipartBody.add(closing);
+				contentLength += closing.length;
+				request.setEntity(new MultipartBodyEntity(multipartBody, contentLength, "multipart/form-data; boundary=" + boundary));
+
 				if (apiTraceLog.isDebugEnabled()) {
 					apiDebugSB.append("md5 = ");
 					apiDebugSB.append(md5);
@@ -388,6 +415,7 @@ public class TurnitinAPIUtil {
 				}
 			}
 			else {
+				ByteArrayOutputStream outStream = new ByteArrayOutputStream();
 				writeBytesToOutputStream(outStream, sortedkeys.get(0),"=",
 						parameters.get(sortedkeys.get(0)).toString());
 				if (apiTraceLog.isDebugEnabled()) {
@@ -415,21 +443,30 @@ public class TurnitinAPIUtil {
 					apiDebugSB.append(md5);
 					apiTraceLog.debug(apiDebugSB.toString());
 				}
-			}
 
-			outStream.close();
+				request.setEntity(new ByteArrayEntity(outStream.toByteArray(), ContentType.create("application/x-www-form-urlencoded")));
+			}
 
-			togo = connection.getInputStream();
+			try (CloseableHttpResponse response = httpClient.execute(request)) {
+				log.debug("HTTPS Connection made to Turnitin");
+				int status = response.getStatusLine().getStatusCode();
+				byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : new byte[0];
+				if (status >= 400) {
+					throw new IOException("Server returned HTTP response code: " + status + " for URL: " + apiURL);
+				}
+				return new ByteArrayInputStream(body);
+			}
+		}
+		catch (EmptyContentException t) {
+			throw new SubmissionException("zero length submission!");
+		}
+		catch (ContentUnavailableException t) {
+			throw new TransientSubmissionException("Unable to submit the content data from ContentHosting", t.getCause());
 		}
 		catch (IOException t) {
 			log.error("IOException making turnitin call.", t);
 			throw new TransientSubmissionException("IOException making turnitin call.", t);
 		}
-		catch (ServerOverloadException t) {
-			throw new TransientSubmissionException("Unable to submit the content data from ContentHosting", t);
-		}
-
-		return togo;
 
 	}
 
@@ -464,4 +501,123 @@ public class TurnitinAPIUtil {
 		+ name + "\"\r\n\r\n" + value + "\r\n";
 	}
 
+	/**
+	 * A multipart request body made of prebuilt parts and content hosting resources, which are streamed straight
+	 * from content hosting when the request is sent. Each call to getContent() opens the resources again, so the
+	 * body can be read or sent more than once, eg. when a request is retried.
+	 */
+	private static class MultipartBodyEntity extends AbstractHttpEntity {
+
+		private final List<Object> parts;
+		private final long contentLength;
+
+		private MultipartBodyEntity(List<Object> parts, long contentLength, String contentType) {
+			this.parts = parts;
+			this.contentLength = contentLength;
+			setContentType(contentType);
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return contentLength;
+		}
+
+		@Override
+		public InputStream getContent() {
+			return new PartsInputStream(parts.iterator());
+		}
+
+		@Override
+		public void writeTo(OutputStream outStream) throws IOException {
+			try (InputStream content = getContent()) {
+				IOUtils.copyLarge(content, outStream);
+			}
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the parts of a multipart body one after the other, opening each resource only once the parts before it
+	 * have been read, so at most one content hosting stream is open at a time
+	 */
+	private static class PartsInputStream extends InputStream {
+
+		private final Iterator<Object> remaining;
+		private InputStream current = null;
+
+		private PartsInputStream(Iterator<Object> remaining) {
+			this.remaining = remaining;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+			return n < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (current != null || remaining.hasNext()) {
+				if (current == null) {
+					current = open(remaining.next());
+				}
+				int n = current.read(b, off, len);
+				if (n > 0) {
+					return n;
+				}
+				if (n < 0) {
+					current.close();
+					current = null;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+		}
+
+		private static InputStream open(Object part) throws IOException {
+			if (!(part instanceof ContentResource)) {
+				return new ByteArrayInputStream((byte[]) part);
+			}
+			try {
+				InputStream content = ((ContentResource) part).streamContent();
+				if (content == null) {
+					throw new EmptyContentException();
+				}
+				return content;
+			} catch (ServerOverloadException e) {
+				throw new ContentUnavailableException(e);
+			}
+		}
+	}
+
+	// thrown while writing a request body, and turned back into the exceptions callers expect
+	private static class EmptyContentException extends IOException {
+	}
+
+	private static class ContentUnavailableException extends IOException {
+		private ContentUnavailableException(ServerOverloadException cause) {
+			super(cause);
+		}
+	}
+
 }
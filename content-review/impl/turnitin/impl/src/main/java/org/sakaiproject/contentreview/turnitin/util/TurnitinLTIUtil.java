@@ -23,8 +23,8 @@ import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.PostMethod;
-import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -34,6 +34,8 @@ import org.tsugi.basiclti.BasicLTIUtil;
 import org.tsugi.lti2.LTI2Vars;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
+import org.sakaiproject.contentreview.turnitin.TurnitinConstants;
 import org.sakaiproject.lti.api.LTIRoleAdvisor;
 import org.sakaiproject.lti.api.LTIService;
 import org.sakaiproject.site.api.SiteService;
@@ -59,6 +61,9 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 	public static final int SUBMIT = 3;
 	public static final int RESUBMIT = 4;
 	public static final int INFO_SUBMISSION = 5;
+
+	/** Result of a call the provider guard refused; it was never sent to Turnitin. */
+	public static final int PROVIDER_UNAVAILABLE = -10;
 	
 	private static final String basicAssignmentUrl = "assignment";
 	private static final String editAssignmentUrl = "assignment/edit/";//assignment_id
@@ -78,6 +83,10 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 	private static LTIRoleAdvisor ltiRoleAdvisor = null;
 
 	private static final String SUCCESS_TEXT = "fullsuccess";
+
+	/** Shared by all LTI calls, so connections to Turnitin are pooled and kept alive between calls. Created on first use. */
+	private HttpClient httpClient = null;
+	private MultiThreadedHttpConnectionManager connectionManager = null;
 	
 	private LTIService ltiService;
 	public void setLtiService(LTIService ltiService) {
@@ -98,6 +107,11 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 	public void setSiteService(SiteService siteService) {
 		this.siteService = siteService;
 	}
+
+	private ContentReviewProviderGuard providerGuard;
+	public void setProviderGuard(ContentReviewProviderGuard providerGuard) {
+		this.providerGuard = providerGuard;
+	}
 	
 	public void init() {
 		log.debug("init - TurnitinLTIUtil");
@@ -136,6 +150,27 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 		}
 	}
 	
+	public synchronized void destroy() {
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+			connectionManager = null;
+			httpClient = null;
+		}
+	}
+
+	private synchronized HttpClient getHttpClient() {
+		if (httpClient == null) {
+			int maxConnections = serverConfigurationService != null ? serverConfigurationService.getInt("turnitin.http.maxConnections", 10) : 10;
+			connectionManager = new MultiThreadedHttpConnectionManager();
+			connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+			connectionManager.getParams().setMaxTotalConnections(maxConnections);
+			httpClient = new HttpClient(connectionManager);
+			httpClient.getParams().setConnectionManagerTimeout(60000);
+			httpClient.getParams().setParameter("http.protocol.content-charset", "UTF-8");
+		}
+		return httpClient;
+	}
+
 	public TurnitinReturnValue makeLTIcall(int type, String urlParam, Map<String, String> ltiProps){
 		TurnitinReturnValue retVal = new TurnitinReturnValue();
 		Map<String, String> origLtiProps = ltiProps;
@@ -145,14 +180,8 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 			retVal.setErrorMessage( "TII global LTI tool doesn't exist or properties are wrongly configured" );
 			return retVal;
 		}
+		PostMethod method = null;
 		try {
-	        
-			HttpClientParams httpParams = new HttpClientParams();
-			httpParams.setConnectionManagerTimeout(60000);
-			HttpClient client = new HttpClient();
-			client.setParams(httpParams);
-			client.getParams().setParameter("http.protocol.content-charset", "UTF-8");
-			
 			Map<String,String> extra = new HashMap<> ();
 			
 			String defUrl = formUrl(type, urlParam);
@@ -163,7 +192,7 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 				return retVal;
 			}
 			
-			PostMethod method = new PostMethod(defUrl);
+			method = new PostMethod(defUrl);
 			ltiProps = cleanUpProperties(ltiProps);
 			ltiProps = BasicLTIUtil.signProperties(ltiProps, defUrl, "POST", aid, secret, null, null, null, null, null, extra);
 			if(ltiProps == null){
@@ -181,7 +210,24 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 				method.addParameter(key,value);
 			}
 			
-			int statusCode = client.executeMethod(method);
+			long permit = providerGuard != null ? providerGuard.acquire(TurnitinConstants.SERVICE_NAME) : ContentReviewProviderGuard.NO_PERMIT;
+			if(providerGuard != null && permit == ContentReviewProviderGuard.NO_PERMIT){
+				log.warn("makeLTIcall - Turnitin is unavailable or its call rate has been reached, skipping call of type " + type);
+				retVal.setResult( PROVIDER_UNAVAILABLE );
+				retVal.setErrorMessage( "Turnitin is unavailable or its call rate has been reached" );
+				return retVal;
+			}
+
+			// connection failures and server errors count against Turnitin; other responses mean it is up
+			long start = System.currentTimeMillis();
+			int statusCode;
+			try {
+				statusCode = getHttpClient().executeMethod(method);
+			} catch (IOException e) {
+				recordOutcome(false, permit, start);
+				throw e;
+			}
+			recordOutcome(statusCode < 500, permit, start);
 			if(statusCode == 400){
 				String errorMessage = parseSubmissionXMLResponse( method.getResponseBodyAsString() );
 				log.error("Status 400: Bad request: " + defUrl + "; message: " + errorMessage);
@@ -256,6 +302,11 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 			retVal.setResult( -4 );
 			retVal.setErrorMessage( "Exception while making TII LTI call " + e.getMessage() );
 			return retVal;
+		} finally {
+			// return the connection to the pool
+			if (method != null) {
+				method.releaseConnection();
+			}
 		}
 
 		retVal.setResult( -5 );
@@ -263,6 +314,17 @@ public class TurnitinLTIUtil implements TurnitinLTIAPI {
 		return retVal;
 	}
 	
+	private void recordOutcome(boolean success, long permit, long start) {
+		if (providerGuard == null) {
+			return;
+		}
+		if (success) {
+			providerGuard.recordSuccess(TurnitinConstants.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+		} else {
+			providerGuard.recordFailure(TurnitinConstants.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+		}
+	}
+
 	public boolean obtainGlobalTurnitinLTIToolData(){
 		log.debug("Setting global TII LTI tool properties");
 		List<Map<String, Object>> tools = ltiService.getToolsDao("lti_tools.site_id = '"+turnitinSite+"'", null, 0, 0, turnitinSite);
@@ -15,8 +15,22 @@
  */
 package org.sakaiproject.contentreview.logic;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.exception.TransientSubmissionException;
+import org.sakaiproject.contentreview.turnitin.QueueRunSetup;
+import org.sakaiproject.contentreview.turnitin.ReportPollScheduler;
 import org.sakaiproject.contentreview.turnitin.TurnitinReviewServiceImpl;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
@@ -36,4 +50,89 @@ public class TurnitinImplTest extends AbstractTransactionalJUnit4SpringContextTe
 		someEscaping = tiiService.escapeFileName("Practical3.docx", "contentId-3");
 		Assert.assertEquals("Practical3.docx", someEscaping);
 	}
+
+	@Test
+	public void testReportPollBackoff() {
+		ReportPollScheduler scheduler = new ReportPollScheduler(1000, 4000, 0);
+		ContentReviewItem item = new ContentReviewItem("content-1", 1);
+		item.setTaskId("task");
+		item.setDateSubmitted(new Date(0));
+		List<ContentReviewItem> items = Collections.singletonList(item);
+
+		long now = 10000;
+		Assert.assertTrue(scheduler.isDue("task", items, now));
+
+		// no reports: wait 1s, then 2s, then 4s, capped at 4s
+		scheduler.recordPoll("task", false, now);
+		Assert.assertFalse(scheduler.isDue("task", items, now + 999));
+		Assert.assertTrue(scheduler.isDue("task", items, now + 1000));
+		scheduler.recordPoll("task", false, now + 1000);
+		Assert.assertFalse(scheduler.isDue("task", items, now + 2999));
+		Assert.assertTrue(scheduler.isDue("task", items, now + 3000));
+		scheduler.recordPoll("task", false, now + 3000);
+		scheduler.recordPoll("task", false, now + 3000);
+		Assert.assertFalse(scheduler.isDue("task", items, now + 6999));
+		Assert.assertTrue(scheduler.isDue("task", items, now + 7000));
+
+		// a new submission makes the assignment due straight away
+		item.setDateSubmitted(new Date(now + 3500));
+		Assert.assertTrue(scheduler.isDue("task", items, now + 4000));
+
+		// receiving reports resets the backoff
+		scheduler.recordPoll("task", true, now + 4000);
+		Assert.assertTrue(scheduler.isDue("task", items, now + 5000));
+	}
+
+	@Test
+	public void testQueueRunSetupRunsEachStepOnce() throws Exception {
+		QueueRunSetup setup = new QueueRunSetup();
+		AtomicInteger classCreated = new AtomicInteger();
+		CountDownLatch creating = new CountDownLatch(1);
+		CountDownLatch created = new CountDownLatch(1);
+
+		// a second item of the site waits for the class being created by the first, and doesn't create it again
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> first = executor.submit(() -> {
+				setup.once("class:site", () -> {
+					creating.countDown();
+					try {
+						created.await();
+					} catch (InterruptedException e) {
+						throw new TransientSubmissionException(e);
+					}
+					classCreated.incrementAndGet();
+				});
+				return null;
+			});
+			Assert.assertTrue(creating.await(5, TimeUnit.SECONDS));
+			Future<?> second = executor.submit(() -> {
+				setup.once("class:site", classCreated::incrementAndGet);
+				return null;
+			});
+			Assert.assertFalse(second.isDone());
+			created.countDown();
+			first.get(5, TimeUnit.SECONDS);
+			second.get(5, TimeUnit.SECONDS);
+			Assert.assertEquals(1, classCreated.get());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// another site gets a class of its own
+		setup.once("class:other", classCreated::incrementAndGet);
+		Assert.assertEquals(2, classCreated.get());
+
+		// a step that failed is tried again by the next item
+		try {
+			setup.once("enrolment:site:user", () -> {
+				throw new TransientSubmissionException("unavailable");
+			});
+			Assert.fail("The step's exception should be thrown");
+		} catch (TransientSubmissionException e) {
+			Assert.assertEquals("unavailable", e.getMessage());
+		}
+		setup.once("enrolment:site:user", classCreated::incrementAndGet);
+		Assert.assertEquals(3, classCreated.get());
+	}
 }
@@ -21,10 +21,12 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.urkund.util.UrkundAPIUtil;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -85,14 +87,42 @@ public class UrkundAccountConnection {
 		submission.setMessage(""); // Insert assignment title?
 		submission.setAnon(false);
         
-		String jsonResponse = UrkundAPIUtil.postDocument(apiURL, receiverAddress, externalId, submission, username, password, connTimeout);
+		String jsonResponse = guardedCall(() -> UrkundAPIUtil.postDocument(apiURL, receiverAddress, externalId, submission, username, password, connTimeout));
 		return getSubmissionData(externalId, jsonResponse);
 	}
 	public List<UrkundSubmissionData> getReports(String externalId) {
-		String jsonResponse = UrkundAPIUtil.getFileInfo(apiURL, externalId, receiverAddress, username, password, connTimeout);
+		String jsonResponse = guardedCall(() -> UrkundAPIUtil.getFileInfo(apiURL, externalId, receiverAddress, username, password, connTimeout));
 		return getSubmissionDataList(jsonResponse);
 	}
 	
+	/*
+	 * Makes a call to Urkund once the provider guard allows it. UrkundAPIUtil returns null when the call fails,
+	 * which is also what is returned when the guard refuses the call.
+	 */
+	private String guardedCall(Supplier<String> call) {
+		if (providerGuard == null) {
+			return call.get();
+		}
+		long permit = providerGuard.acquire(UrkundReviewServiceImpl.SERVICE_NAME);
+		if (permit == ContentReviewProviderGuard.NO_PERMIT) {
+			log.warn("Urkund is unavailable or its call rate has been reached, skipping call");
+			return null;
+		}
+		
+		long start = System.currentTimeMillis();
+		String response = null;
+		try {
+			response = call.get();
+			return response;
+		} finally {
+			if (response != null) {
+				providerGuard.recordSuccess(UrkundReviewServiceImpl.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			} else {
+				providerGuard.recordFailure(UrkundReviewServiceImpl.SERVICE_NAME, permit, System.currentTimeMillis() - start);
+			}
+		}
+	}
+	
 	private UrkundSubmissionData getSubmissionData(String externalId, String jsonResponse){
 		ObjectMapper mapper = new ObjectMapper();
 		try {
@@ -136,5 +166,10 @@ public class UrkundAccountConnection {
 	public void setServerConfigurationService (ServerConfigurationService serverConfigurationService) {
 		this.serverConfigurationService = serverConfigurationService;
 	}
+	
+	private ContentReviewProviderGuard providerGuard;
+	public void setProviderGuard(ContentReviewProviderGuard providerGuard) {
+		this.providerGuard = providerGuard;
+	}
 
 }
@@ -51,6 +51,8 @@ import org.sakaiproject.contentreview.exception.TransientSubmissionException;
 import org.sakaiproject.contentreview.advisors.ContentReviewSiteAdvisor;
 import org.sakaiproject.contentreview.dao.ContentReviewConstants;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.service.ContentReviewQueueService;
 import org.sakaiproject.contentreview.service.ContentReviewService;
 import org.sakaiproject.entity.api.ResourceProperties;
@@ -76,7 +78,7 @@ public class UrkundReviewServiceImpl implements ContentReviewService {
 	private static final String STATE_ANALYZED = "Analyzed";
 	private static final String STATE_ERROR = "Error";
 	
-	private static final String SERVICE_NAME = "Urkund";
+	static final String SERVICE_NAME = "Urkund";
 	
 	// Site property to enable or disable use of Urkund for the site
 	private static final String URKUND_SITE_PROPERTY = "urkund";
@@ -140,6 +142,7 @@ public class UrkundReviewServiceImpl implements ContentReviewService {
 	@Setter	protected UrkundContentValidator urkundContentValidator;
 	@Setter protected ContentReviewSiteAdvisor siteAdvisor;
 	@Setter	protected ContentReviewQueueService crqs;
+	@Setter	protected ContentReviewProviderGuard providerGuard;
 	
 	public void init() {
 		maxRetry = Long.valueOf(serverConfigurationService.getInt("urkund.maxRetry", 20));
@@ -226,6 +229,12 @@ public class UrkundReviewServiceImpl implements ContentReviewService {
 		return crqs.getContentReviewItems(getProviderId(), siteId, taskId);
 	}
 
+	@Override
+	public Map<String, ContentReviewItemSummary> getItemSummaries(String siteId, String taskId)
+			throws QueueException, SubmissionException, ReportException {
+		return crqs.getItemSummaries(getProviderId(), siteId, taskId);
+	}
+
 	@Override
 	public void resetUserDetailsLockedItems(String userId) {
 		crqs.resetUserDetailsLockedItems(getProviderId(), userId);
@@ -328,7 +337,9 @@ public class UrkundReviewServiceImpl implements ContentReviewService {
 		int success = 0;
 		
 		Optional<ContentReviewItem> nextItem = null;
-		while ((nextItem = getNextItemInSubmissionQueue()).isPresent()) {
+		// stop while Urkund is unavailable, so the remaining items keep their retry times
+		while ((providerGuard == null || providerGuard.isRunPermitted(SERVICE_NAME))
+				&& (nextItem = getNextItemInSubmissionQueue()).isPresent()) {
 			ContentReviewItem currentItem = nextItem.get();
 			
 			//if document has no external id, we need to add it to urkund
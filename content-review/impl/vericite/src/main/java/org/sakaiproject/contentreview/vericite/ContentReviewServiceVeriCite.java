@@ -48,10 +48,12 @@ import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.contentreview.dao.ContentReviewConstants;
 import org.sakaiproject.contentreview.dao.ContentReviewItem;
+import org.sakaiproject.contentreview.dao.ContentReviewItemSummary;
 import org.sakaiproject.contentreview.exception.QueueException;
 import org.sakaiproject.contentreview.exception.ReportException;
 import org.sakaiproject.contentreview.exception.SubmissionException;
 import org.sakaiproject.contentreview.exception.TransientSubmissionException;
+import org.sakaiproject.contentreview.service.ContentReviewProviderGuard;
 import org.sakaiproject.contentreview.service.ContentReviewQueueService;
 import org.sakaiproject.contentreview.service.ContentReviewService;
 import com.vericite.client.ApiClient;
@@ -105,6 +107,9 @@ public class ContentReviewServiceVeriCite implements ContentReviewService {
 	
 	@Setter
 	private ContentHostingService contentHostingService;
+	
+	@Setter
+	private ContentReviewProviderGuard providerGuard;
 
 	private static final String PARAM_USER_ROLE_INSTRUCTOR = "Instructor";
 	private static final String PARAM_USER_ROLE_LEARNER = "Learner";
@@ -274,6 +279,12 @@ public class ContentReviewServiceVeriCite implements ContentReviewService {
 		return crqs.getContentReviewItems(getProviderId(), siteId, taskId);
 	}
 
+	public Map<String, ContentReviewItemSummary> getItemSummaries(String siteId,
+			String taskId) throws QueueException, SubmissionException,
+			ReportException {
+		return crqs.getItemSummaries(getProviderId(), siteId, taskId);
+	}
+
 	public Map getAssignment(String arg0, String arg1)
 			throws SubmissionException, TransientSubmissionException {
 		return null;
@@ -626,7 +637,9 @@ public class ContentReviewServiceVeriCite implements ContentReviewService {
 		int success = 0;
 		DefaultApi veriCiteApi = getVeriCiteAPI();
 		Optional<ContentReviewItem> nextItem = null;
-		while ((nextItem = crqs.getNextItemInQueueToSubmit(getProviderId())).isPresent()) {
+		// stop while VeriCite is unavailable, so the remaining items keep their retry times
+		while ((providerGuard == null || providerGuard.isRunPermitted(SERVICE_NAME))
+				&& (nextItem = crqs.getNextItemInQueueToSubmit(getProviderId())).isPresent()) {
 			ContentReviewItem item = nextItem.get();
 			Calendar cal = Calendar.getInstance();
 			cal.add(Calendar.MINUTE, VERICITY_RETRY_TIME_MINS);
@@ -718,14 +731,30 @@ public class ContentReviewServiceVeriCite implements ContentReviewService {
 			reportMetaData.setExternalContentData(externalContentDataList);
 
 			List<ExternalContentUploadInfo> uploadInfo = null;
+			long permit = providerGuard != null ? providerGuard.acquire(SERVICE_NAME) : ContentReviewProviderGuard.NO_PERMIT;
+			if (providerGuard != null && permit == ContentReviewProviderGuard.NO_PERMIT) {
+				log.warn("VeriCite is unavailable or its call rate has been reached, id: " + item.getContentId());
+				item.setLastError("VeriCite is unavailable, the submission will be retried");
+				item.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE);
+				crqs.update(item);
+				errors++;
+				continue;
+			}
+			long callStarted = System.currentTimeMillis();
 			try {
 				String assignmentParam = getAssignmentId(item.getTaskId(), isA2(item.getContentId(), null));
 				uploadInfo = veriCiteApi.reportsSubmitRequestContextIDAssignmentIDUserIDPost(item.getSiteId(), assignmentParam, item.getUserId(), consumer, consumerSecret, reportMetaData);
+				if (providerGuard != null) {
+					providerGuard.recordSuccess(SERVICE_NAME, permit, System.currentTimeMillis() - callStarted);
+				}
 				
 				if(assignmentParam != null && assignmentLastCheckedCache.containsKey(assignmentParam)) {
 					assignmentLastCheckedCache.remove(assignmentParam);
 				}
 			} catch (ApiException e) {
+				if (providerGuard != null) {
+					providerGuard.recordFailure(SERVICE_NAME, permit, System.currentTimeMillis() - callStarted);
+				}
 				log.error(e.getMessage()  + ", id: " + item.getContentId(), e);
 				item.setLastError(e.getMessage());
 				item.setStatus(ContentReviewConstants.CONTENT_REVIEW_SUBMISSION_ERROR_RETRY_CODE);
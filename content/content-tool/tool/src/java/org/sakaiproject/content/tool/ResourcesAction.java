@@ -21,7 +21,6 @@
 
 package org.sakaiproject.content.tool;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -91,6 +90,8 @@ import org.sakaiproject.content.api.GroupAwareEntity.AccessMode;
 import org.sakaiproject.content.api.ResourceToolAction.ActionType;
 import org.sakaiproject.content.api.providers.SiteContentAdvisor;
 import org.sakaiproject.content.api.providers.SiteContentAdvisorProvider;
+import org.sakaiproject.content.util.ZipContentUtil;
+import org.sakaiproject.content.util.ZipContentWriter;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentTypeImageService;
 import org.sakaiproject.entity.api.Entity;
@@ -143,8 +144,6 @@ import org.w3c.dom.Element;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.servlet.http.Cookie;
 import org.sakaiproject.api.app.scheduler.SchedulerManager;
@@ -10574,7 +10573,7 @@ protected static final String PARAM_PAGESIZE = "collections_per_page";
 		List<ListItem> zipDownloadItems = (List<ListItem>) state.getAttribute(STATE_ZIPDOWNLOAD_SET);
 
 		String collectionId = (String) request.getParameter("collectionId");
-		ZipOutputStream zipOut = null;
+		ZipContentWriter zipOut = null;
 		try
 		{
 			ContentCollection collection = contentHostingService.getCollection(collectionId);
@@ -10583,7 +10582,7 @@ protected static final String PARAM_PAGESIZE = "collections_per_page";
 
 			response.setContentType("application/zip;charset=UTF-8");
 			response.setHeader("Content-Disposition", "attachment; filename = "+rootFolderName.replace(" ","")+".zip");
-			zipOut = new ZipOutputStream(response.getOutputStream());
+			zipOut = new ZipContentWriter(response.getOutputStream(), ZipContentUtil.getZipStoredTypes());
 
 			Iterator<ListItem> it = zipDownloadItems.iterator();
 			while(it.hasNext())
@@ -10622,7 +10621,6 @@ protected static final String PARAM_PAGESIZE = "collections_per_page";
 			{
 				try
 				{
-					zipOut.flush();
 					zipOut.close();
 				}
 				catch (Throwable ignore)
@@ -10633,7 +10631,7 @@ protected static final String PARAM_PAGESIZE = "collections_per_page";
 		}
 	}
 
-	protected void compressResource(ZipOutputStream zipOut, String collectionId, String rootFolderName, String resourceId) throws Exception
+	protected void compressResource(ZipContentWriter zipOut, String collectionId, String rootFolderName, String resourceId) throws Exception
 	{
 		if (contentHostingService.isCollection(resourceId))
 		{
@@ -10663,34 +10661,13 @@ protected static final String PARAM_PAGESIZE = "collections_per_page";
 				String displayName = isolateName(resource.getId());
 				displayName = escapeInvalidCharsEntry(displayName);
 
-				InputStream content = resource.streamContent();
-				byte data[] = new byte[1024 * 10];
-				BufferedInputStream bContent = null;
+				String entryName = (resource.getContainingCollection().getId() + displayName);
+				entryName=entryName.replace(collectionId,rootFolderName+"/");
+				entryName = escapeInvalidCharsEntry(entryName);
 
 				try
 				{
-					bContent = new BufferedInputStream(content, data.length);
-					
-					String entryName = (resource.getContainingCollection().getId() + displayName);
-					entryName=entryName.replace(collectionId,rootFolderName+"/");
-					entryName = escapeInvalidCharsEntry(entryName);
-
-					ZipEntry resourceEntry = new ZipEntry(entryName);
-					zipOut.putNextEntry(resourceEntry); //A duplicate entry throw ZipException here.
-					int bCount;
-					while ((bCount = bContent.read(data, 0, data.length)) != -1)
-					{
-						zipOut.write(data, 0, bCount);
-					}
-
-					try
-					{
-						zipOut.closeEntry();
-					}
-					catch (IOException ioException)
-					{
-						logger.error("IOException when closing zip file entry",ioException);
-					}
+					zipOut.putResource(entryName, resource); //A duplicate entry throw ZipException here.
 				}
 				catch (IllegalArgumentException iException)
 				{
@@ -10699,28 +10676,6 @@ protected static final String PARAM_PAGESIZE = "collections_per_page";
 				catch (java.util.zip.ZipException e)
 				{
 					//Duplicate entry: ignore and continue.
-					try
-					{
-						zipOut.closeEntry();
-					}
-					catch (IOException ioException)
-					{
-						logger.error("IOException when closing zip file entry",ioException);
-					}
-				}
-				finally
-				{
-					if (bContent != null)
-					{
-						try
-						{
-							bContent.close();
-						}
-						catch (IOException ioException)
-						{
-							logger.error("IOException when closing zip file",ioException);
-						}
-					}
 				}
 			}
 			catch (PermissionException e)
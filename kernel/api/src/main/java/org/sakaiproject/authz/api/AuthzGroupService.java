@@ -328,6 +328,20 @@ public interface AuthzGroupService extends EntityProducer
 	 * @return true if this user is allowed to perform the function in the named AuthzGroups, false if not.
 	 */
 	boolean isAllowed(String userId, String function, Collection<String> azGroups);
+
+	/**
+	 * Test if this user is allowed to perform the function, for each of a number of collections of AuthzGroups. This gives the same answers
+	 * as calling isAllowed() for each collection, but lets the AuthzGroups be read together.
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param function
+	 *        The function to open.
+	 * @param azGroupsByKey
+	 *        Collections of AuthzGroup ids to consult, each under a key of the caller's choosing (such as an entity reference).
+	 * @return A Map of each key to true if this user is allowed to perform the function in its AuthzGroups, false if not.
+	 */
+	Map<String, Boolean> isAllowedByKey(String userId, String function, Map<String, Collection<String>> azGroupsByKey);
 	
 	/**
 	 * Encode the role id to form the dummy user id that will be used to perform role checks.
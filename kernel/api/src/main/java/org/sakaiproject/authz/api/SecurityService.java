@@ -23,6 +23,7 @@ package org.sakaiproject.authz.api;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.user.api.User;
@@ -89,6 +90,34 @@ public interface SecurityService
 	 */
 	boolean unlock(String userId, String lock, String reference, Collection<String> authzGroupIds);
 
+	/**
+	 * Which of these resources can the specified user id unlock the lock for? This gives the same answers as calling unlock() for each
+	 * reference, but checks that are not already cached are answered together, so use it when checking a list of resources.
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param lock
+	 *        The lock id string.
+	 * @param references
+	 *        The resource reference strings.
+	 * @return A Map of each reference to true if the user can unlock the lock for it, false otherwise.
+	 */
+	Map<String, Boolean> unlockAll(String userId, String lock, Collection<String> references);
+
+	/**
+	 * Which of these locks can the specified user id unlock for each of these resources? The multiple lock form of
+	 * unlockAll(String, String, Collection).
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param locks
+	 *        The lock id strings.
+	 * @param references
+	 *        The resource reference strings.
+	 * @return A Map of each lock to a Map of each reference to true if the user can unlock the lock for it, false otherwise.
+	 */
+	Map<String, Map<String, Boolean>> unlockAll(String userId, Collection<String> locks, Collection<String> references);
+
 	/**
 	 * Access the List of Users who can unlock the lock for use with this resource.
 	 * 
@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.sakaiproject.exception.ServerOverloadException;
 
@@ -121,6 +122,52 @@ public interface SqlService
 	 */
 	<T> List<T> dbRead(Connection conn, String sql, Object[] fields, SqlReader<T> reader);
 
+	/**
+	 * Process a query, filling in with fields, handing each record to the reader as it is read rather than collecting the results. The driver is asked to
+	 * fetch the records a batch at a time, so memory use stays the same however many records there are. Each non-null object the reader returns is
+	 * passed on to the consumer, if there is one. The reader can stop the read early by throwing SqlReaderFinishedException. The statement is closed and
+	 * the connection returned even if the reader or consumer throws.
+	 * <p>
+	 * The connection is held until the last record has been handed on. On MySQL the records are streamed from the server, so slow work for each
+	 * record (file I/O, remote calls) keeps the connection busy and the server may give up on it once net_write_timeout passes. Keep the per-record
+	 * work short, or collect what is needed and do the slow part after the read.
+	 * </p>
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param consumer
+	 *        Receives the objects read, may be null.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 * @return The number of records read.
+	 */
+	<T> int dbReadEach(String sql, Object[] fields, SqlReader<T> reader, Consumer<? super T> consumer);
+
+	/**
+	 * Process a query, filling in with fields, handing each record to the reader as it is read rather than collecting the results. See
+	 * {@link #dbReadEach(String, Object[], SqlReader, Consumer)}. While the records are being read the reader and consumer must not use the
+	 * connection for anything else.
+	 * 
+	 * @param conn
+	 *        The db connection object to use.
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param consumer
+	 *        Receives the objects read, may be null.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 * @return The number of records read.
+	 */
+	<T> int dbReadEach(Connection conn, String sql, Object[] fields, SqlReader<T> reader, Consumer<? super T> consumer);
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
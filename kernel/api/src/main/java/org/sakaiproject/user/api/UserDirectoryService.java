@@ -410,6 +410,16 @@ public interface UserDirectoryService extends EntityProducer
 	 * @return A list of user objects corresponding to the valid EIDs
 	 */
 	List<User> getUsersByEids(Collection<String> eids);
+
+	/**
+	 * Find all the active members of an authz group (such as a site's realm). Any members not already cached are looked up
+	 * together, so this can be used to warm the user cache before working through a whole site's membership.
+	 *
+	 * @param azGroupId
+	 *        The authz group id.
+	 * @return A list of user objects for the members who could be found.
+	 */
+	List<User> getAuthzGroupUsers(String azGroupId);
 	
 	/**
 	 * Add a new user to the directory, from a definition in XML. Must commitEdit() to make official, or cancelEdit() when done!
@@ -64,5 +64,9 @@ public interface FlatStorageSql
 
 	public String getSelectNameValueSql(String table, String idField);
 
+	public String getSelectIdNameValueSql(String table, String idField, int numIds);
+
+	public int getMaxInputsForSelectWhereInQueries();
+
 	public String getUpdateSql(String table, String fieldList, String idField);
 }
@@ -24,14 +24,23 @@ package org.sakaiproject.util;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +49,8 @@ import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
 
 /**
  * <p>
@@ -51,8 +62,17 @@ public class ComponentsLoader
 	/** Our logger */
 	private static Logger M_log = LoggerFactory.getLogger(ComponentsLoader.class);
 
+	/**
+	 * System property: prepare the component packages (class loader and parsed xml) in parallel, "true" for a thread per
+	 * processor or the number of threads to use. The bean definitions are still registered one package at a time, in order.
+	 */
+	public static final String PARALLEL_LOAD_PROPERTY = "sakai.components.parallel.load";
+
 	/** Folder containing override definitions for beans */
 	private File overridesFolder;
+
+	/** The packages registered by the current load, with their load times */
+	private final List<ComponentPackage> loadedPackages = new ArrayList<ComponentPackage>();
 	
 	public ComponentsLoader()
 	{
@@ -100,25 +120,128 @@ public class ComponentsLoader
  			}
 			M_log.info("load: loading components from: " + componentsRoot);
 
-			// process the packages
-			for (File packageDir : packages)
+			long start = System.currentTimeMillis();
+			int threads = getParallelThreads();
+			loadedPackages.clear();
+			if (threads > 1)
 			{
-				// if a valid components directory
-				if (validComponentsPackage(packageDir))
+				List<File> valid = new ArrayList<File>();
+				for (File packageDir : packages)
 				{
-					loadComponentPackage(packageDir, ac);
+					if (validComponentsPackage(packageDir))
+					{
+						valid.add(packageDir);
+					}
+					else
+					{
+						M_log.warn("load: skipping non-package entry: " + packageDir);
+					}
 				}
-				else
+				loadComponentPackages(valid, ac, threads);
+			}
+			else
+			{
+				// process the packages
+				for (File packageDir : packages)
 				{
-					M_log.warn("load: skipping non-package entry: " + packageDir);
+					// if a valid components directory
+					if (validComponentsPackage(packageDir))
+					{
+						loadComponentPackage(packageDir, ac);
+					}
+					else
+					{
+						M_log.warn("load: skipping non-package entry: " + packageDir);
+					}
 				}
 			}
+			logLoadTimes(loadedPackages, System.currentTimeMillis() - start, threads);
+			loadedPackages.clear();
 		}
 		catch (Exception e) {
 			M_log.error("load: exception: " + e, e);
 		}
 	}
 
+	/**
+	 * @return the number of threads to prepare component packages with, 1 unless {@link #PARALLEL_LOAD_PROPERTY} is set.
+	 */
+	protected int getParallelThreads()
+	{
+		String value = System.getProperty(PARALLEL_LOAD_PROPERTY);
+		if (value == null || "false".equalsIgnoreCase(value)) return 1;
+		if ("true".equalsIgnoreCase(value)) return Runtime.getRuntime().availableProcessors();
+		try
+		{
+			return Math.max(1, Integer.parseInt(value.trim()));
+		}
+		catch (NumberFormatException e)
+		{
+			M_log.warn("load: ignoring invalid " + PARALLEL_LOAD_PROPERTY + ": " + value);
+			return 1;
+		}
+	}
+
+	/**
+	 * Prepare the component packages on a pool of threads, registering each one into the AC in the given order as soon as
+	 * it and those before it are ready.
+	 * 
+	 * @param dirs
+	 *        The valid component package directories, in load order
+	 * @param ac
+	 *        The ApplicationContext to load into
+	 * @param threads
+	 *        The number of threads to prepare packages with
+	 */
+	protected void loadComponentPackages(List<File> dirs, final ConfigurableApplicationContext ac, int threads)
+	{
+		final AtomicInteger count = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "ComponentsLoader-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try
+		{
+			List<Future<ComponentPackage>> prepared = new ArrayList<Future<ComponentPackage>>();
+			for (final File dir : dirs)
+			{
+				prepared.add(executor.submit(new Callable<ComponentPackage>()
+				{
+					public ComponentPackage call()
+					{
+						return prepareComponentPackage(dir, ac);
+					}
+				}));
+			}
+
+			for (int i = 0; i < dirs.size(); i++)
+			{
+				try
+				{
+					registerComponentPackage(prepared.get(i).get());
+				}
+				catch (ExecutionException e)
+				{
+					M_log.error("loadComponentPackages: exception preparing: " + dirs.get(i) + " : " + e.getCause(), e.getCause());
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			M_log.error("loadComponentPackages: interrupted");
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
 	/**
 	 * Load one component package into the AC
 	 * 
@@ -129,59 +252,91 @@ public class ComponentsLoader
 	 */
 	protected void loadComponentPackage(File dir, ConfigurableApplicationContext ac)
 	{
-		// setup the classloader onto the thread
-		ClassLoader current = Thread.currentThread().getContextClassLoader();
-		ClassLoader loader = newPackageClassLoader(dir);
+		registerComponentPackage(prepareComponentPackage(dir, ac));
+	}
 
-		M_log.info("loadComponentPackage: " + dir);
+	/**
+	 * Create the class loader for one component package and parse its xml, without registering anything in the AC. This may
+	 * run on any thread.
+	 * 
+	 * @param dir
+	 *        The file path to the component package
+	 * @param ac
+	 *        The ApplicationContext the package will be loaded into
+	 * @return The prepared package.
+	 */
+	protected ComponentPackage prepareComponentPackage(File dir, ConfigurableApplicationContext ac)
+	{
+		ComponentPackage componentPackage = new ComponentPackage(dir);
 
-		Thread.currentThread().setContextClassLoader(loader);
+		// setup the classloader onto the thread
+		ClassLoader current = Thread.currentThread().getContextClassLoader();
+		long start = System.currentTimeMillis();
+		componentPackage.loader = newPackageClassLoader(dir);
+		componentPackage.classLoaderTime = System.currentTimeMillis() - start;
 
-		File xml = null;
+		Thread.currentThread().setContextClassLoader(componentPackage.loader);
 
 		try
 		{
-			// load this xml file
-			File webinf = new File(dir, "WEB-INF");
-			xml = new File(webinf, "components.xml");
+			start = System.currentTimeMillis();
 
 			// make a reader
-			XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader((BeanDefinitionRegistry) ac.getBeanFactory());
+			componentPackage.reader = new PackageBeanDefinitionReader((BeanDefinitionRegistry) ac.getBeanFactory());
 			
 			// In Spring 2, classes aren't loaded during bean parsing unless this
 			// classloader property is set.
-			reader.setBeanClassLoader(loader);
-			
-			List<Resource> beanDefList = new ArrayList<Resource>();
-			beanDefList.add(new FileSystemResource(xml.getCanonicalPath()));
-			
-			// Load the demo components, if necessary
-			File demoXml = new File(webinf, "components-demo.xml");
-			if("true".equalsIgnoreCase(System.getProperty("sakai.demo")))
+			componentPackage.reader.setBeanClassLoader(componentPackage.loader);
+
+			for (Resource resource : getBeanDefinitionResources(dir))
 			{
-				if(M_log.isDebugEnabled()) M_log.debug("Attempting to load demo components");
-				if(demoXml.exists())
-				{
-					if(M_log.isInfoEnabled()) M_log.info("Loading demo components from " + dir);
-					beanDefList.add(new FileSystemResource(demoXml.getCanonicalPath()));
-				}
+				componentPackage.documents.add(componentPackage.reader.loadDocument(resource));
+				componentPackage.resources.add(resource);
 			}
-			else
+		}
+		catch (Exception e)
+		{
+			// anything parsed before the failure is still registered, as it would be when loading the xml directly
+			componentPackage.failure = e;
+		}
+		finally
+		{
+			componentPackage.parseTime = System.currentTimeMillis() - start;
+
+			// restore the context loader
+			Thread.currentThread().setContextClassLoader(current);
+		}
+
+		return componentPackage;
+	}
+
+	/**
+	 * Register the bean definitions of a prepared component package into the AC.
+	 * 
+	 * @param componentPackage
+	 *        The package from {@link #prepareComponentPackage(File, ConfigurableApplicationContext)}
+	 */
+	protected void registerComponentPackage(ComponentPackage componentPackage)
+	{
+		M_log.info("loadComponentPackage: " + componentPackage.dir);
+
+		// setup the classloader onto the thread
+		ClassLoader current = Thread.currentThread().getContextClassLoader();
+		Thread.currentThread().setContextClassLoader(componentPackage.loader);
+		long start = System.currentTimeMillis();
+
+		File xml = new File(new File(componentPackage.dir, "WEB-INF"), "components.xml");
+
+		try
+		{
+			for (int i = 0; i < componentPackage.documents.size(); i++)
 			{
-				if(demoXml.exists())
-				{
-					// Only log that we're skipping the demo components if they exist
-					if(M_log.isInfoEnabled()) M_log.info("Skipping demo components from " + dir);
-				}
+				componentPackage.reader.registerBeanDefinitions(componentPackage.documents.get(i), componentPackage.resources.get(i));
 			}
-			if (overridesFolder != null) {
-				File override = new File(overridesFolder, dir.getName()+ ".xml");
-				if (override.isFile()) {
-					beanDefList.add(new FileSystemResource(override.getCanonicalPath()));
-					if(M_log.isInfoEnabled()) M_log.info("Overriding component definitions with "+ override);
-				}
+			if (componentPackage.failure != null)
+			{
+				throw componentPackage.failure;
 			}
-			reader.loadBeanDefinitions(beanDefList.toArray(new Resource[0]));
 		}
 		catch (Exception e)
 		{
@@ -189,11 +344,95 @@ public class ComponentsLoader
 		}
 		finally
 		{
+			componentPackage.registerTime = System.currentTimeMillis() - start;
+			loadedPackages.add(componentPackage);
+
+			// the parsed xml is not needed any more
+			componentPackage.documents.clear();
+			componentPackage.reader = null;
+
 			// restore the context loader
 			Thread.currentThread().setContextClassLoader(current);
 		}
 	}
 
+	/**
+	 * Find the bean definition files of a component package: components.xml, the demo components if running as a demo, and
+	 * any overrides.
+	 * 
+	 * @param dir
+	 *        The file path to the component package
+	 * @return The files, in the order they are to be loaded.
+	 */
+	protected List<Resource> getBeanDefinitionResources(File dir) throws IOException
+	{
+		File webinf = new File(dir, "WEB-INF");
+		File xml = new File(webinf, "components.xml");
+
+		List<Resource> beanDefList = new ArrayList<Resource>();
+		beanDefList.add(new FileSystemResource(xml.getCanonicalPath()));
+		
+		// Load the demo components, if necessary
+		File demoXml = new File(webinf, "components-demo.xml");
+		if("true".equalsIgnoreCase(System.getProperty("sakai.demo")))
+		{
+			if(M_log.isDebugEnabled()) M_log.debug("Attempting to load demo components");
+			if(demoXml.exists())
+			{
+				if(M_log.isInfoEnabled()) M_log.info("Loading demo components from " + dir);
+				beanDefList.add(new FileSystemResource(demoXml.getCanonicalPath()));
+			}
+		}
+		else
+		{
+			if(demoXml.exists())
+			{
+				// Only log that we're skipping the demo components if they exist
+				if(M_log.isInfoEnabled()) M_log.info("Skipping demo components from " + dir);
+			}
+		}
+		if (overridesFolder != null) {
+			File override = new File(overridesFolder, dir.getName()+ ".xml");
+			if (override.isFile()) {
+				beanDefList.add(new FileSystemResource(override.getCanonicalPath()));
+				if(M_log.isInfoEnabled()) M_log.info("Overriding component definitions with "+ override);
+			}
+		}
+		return beanDefList;
+	}
+
+	/**
+	 * Log how long loading took, and the time spent on each package, slowest first.
+	 */
+	protected void logLoadTimes(List<ComponentPackage> loaded, long elapsed, int threads)
+	{
+		if (!M_log.isInfoEnabled()) return;
+
+		List<ComponentPackage> slowest = new ArrayList<ComponentPackage>(loaded);
+		Collections.sort(slowest, new Comparator<ComponentPackage>()
+		{
+			public int compare(ComponentPackage a, ComponentPackage b)
+			{
+				return Long.compare(b.getTotalTime(), a.getTotalTime());
+			}
+		});
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("load: loaded ").append(loaded.size()).append(" component packages in ").append(elapsed).append("ms");
+		if (threads > 1)
+		{
+			buf.append(", prepared on ").append(threads).append(" threads");
+		}
+		for (ComponentPackage componentPackage : slowest)
+		{
+			buf.append("\n    ").append(componentPackage.dir.getName())
+				.append(": class loader ").append(componentPackage.classLoaderTime)
+				.append("ms, parse ").append(componentPackage.parseTime)
+				.append("ms, register ").append(componentPackage.registerTime).append("ms");
+		}
+		M_log.info(buf.toString());
+	}
+
 	/**
 	 * Test if this File is a valid components package directory.
 	 * 
@@ -297,4 +536,60 @@ public class ComponentsLoader
 		return loader;
 	}
 
+
+	/**
+	 * A component package on its way into the AC, and the time (ms) each step of loading it took.
+	 */
+	protected static class ComponentPackage
+	{
+		protected final File dir;
+		protected ClassLoader loader;
+		protected PackageBeanDefinitionReader reader;
+		protected final List<Resource> resources = new ArrayList<Resource>();
+		protected final List<Document> documents = new ArrayList<Document>();
+		protected Exception failure;
+		protected long classLoaderTime;
+		protected long parseTime;
+		protected long registerTime;
+
+		protected ComponentPackage(File dir)
+		{
+			this.dir = dir;
+		}
+
+		public File getDir()
+		{
+			return dir;
+		}
+
+		public long getTotalTime()
+		{
+			return classLoaderTime + parseTime + registerTime;
+		}
+	}
+
+	/**
+	 * A reader that can parse an xml file separately from registering its bean definitions, so the parsing can be done ahead.
+	 */
+	protected static class PackageBeanDefinitionReader extends XmlBeanDefinitionReader
+	{
+		public PackageBeanDefinitionReader(BeanDefinitionRegistry registry)
+		{
+			super(registry);
+		}
+
+		public Document loadDocument(Resource resource) throws Exception
+		{
+			InputStream in = resource.getInputStream();
+			try
+			{
+				return doLoadDocument(new InputSource(in), resource);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
 }
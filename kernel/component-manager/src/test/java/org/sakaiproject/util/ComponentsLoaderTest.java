@@ -335,6 +335,43 @@ public class ComponentsLoaderTest {
 	}
 
 	
+	/**
+	 * Verifies that when the packages are prepared in parallel they are still all registered,
+	 * in the same order as a sequential load, and the thread's context class loader is left alone.
+	 */
+	@Test
+	public void testParallelLoad() {
+		if ( !(builder.isUseable()) ) {
+			sayUnusableBuilder("testParallelLoad()");
+			return;
+		}
+		List<String> expectedJournal = new ArrayList<String>() {{
+			add("sakai-a-pack"); add("sakai-b-pack"); add("sakai-c-pack"); add("sakai-z-pack");
+		}};
+		final List<Component> components = Arrays.asList(builder.buildComponent("z"), builder.buildComponent("b"),
+				builder.buildComponent("c"), builder.buildComponent("a"));
+		final List<String> journal = Collections.synchronizedList(new ArrayList<String>());
+		loader = new ComponentsLoader() {
+			protected void registerComponentPackage(ComponentPackage componentPackage) {
+				journal.add(componentPackage.getDir().getName());
+				super.registerComponentPackage(componentPackage);
+			}
+		};
+		ClassLoader existingContextClassLoader = Thread.currentThread().getContextClassLoader();
+		try {
+			System.setProperty(ComponentsLoader.PARALLEL_LOAD_PROPERTY, "3");
+			loader.load(componentMgr.getApplicationContext(), builder.getComponentsRootDir().getAbsolutePath());
+		} finally {
+			System.clearProperty(ComponentsLoader.PARALLEL_LOAD_PROPERTY);
+		}
+		Assert.assertEquals("The components were not registered in order.", expectedJournal, journal);
+		Assert.assertSame(existingContextClassLoader, Thread.currentThread().getContextClassLoader());
+		componentMgr.getApplicationContext().refresh();
+		for (Component component : components) {
+			Assert.assertNotNull(componentMgr.getApplicationContext().getBean(component.getBeanId()));
+		}
+	}
+
 	private void sayUnusableBuilder(String invokingMethod) {
 		System.out.println("Unable to execute " + invokingMethod +", probably b/c necessary code generation tools are not available. Please see http://maven.apache.org/general.html#tools-jar-dependency for information on making tools.jar visible in the Maven classpaths.");
 	}
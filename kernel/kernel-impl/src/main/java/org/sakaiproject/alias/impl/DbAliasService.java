@@ -659,30 +659,24 @@ public abstract class DbAliasService extends BaseAliasService
 
 		public List getAll(String target)
 		{
-			List all = super.getAllResources();
-
 			// pick out from all those that are for this target
 			List found = new Vector();
-			for (Iterator iAll = all.iterator(); iAll.hasNext();)
-			{
-				BaseAliasEdit a = (BaseAliasEdit) iAll.next();
+			super.getAllResources(entity -> {
+				BaseAliasEdit a = (BaseAliasEdit) entity;
 				if (a.getTarget().equals(target)) found.add(a);
-			}
+			});
 
 			return found;
 		}
 
 		public List getAll(String target, int first, int last)
 		{
-			List all = super.getAllResources();
-
 			// pick out from all those that are for this target
 			List found = new Vector();
-			for (Iterator iAll = all.iterator(); iAll.hasNext();)
-			{
-				BaseAliasEdit a = (BaseAliasEdit) iAll.next();
+			super.getAllResources(entity -> {
+				BaseAliasEdit a = (BaseAliasEdit) entity;
 				if (a.getTarget().equals(target)) found.add(a);
-			}
+			});
 
 			// sort for position check
 			Collections.sort(found);
@@ -709,17 +703,14 @@ public abstract class DbAliasService extends BaseAliasService
 		 */
 		public List search(String criteria, int first, int last)
 		{
-			List all = super.getAllResources();
-
 			List rv = new Vector();
-			for (Iterator i = all.iterator(); i.hasNext();)
-			{
-				Alias a = (Alias) i.next();
+			super.getAllResources(entity -> {
+				Alias a = (Alias) entity;
 				if (StringUtil.containsIgnoreCase(a.getId(), criteria) || StringUtil.containsIgnoreCase(a.getTarget(), criteria))
 				{
 					rv.add(a);
 				}
-			}
+			});
 
 			Collections.sort(rv);
 
@@ -741,19 +732,16 @@ public abstract class DbAliasService extends BaseAliasService
 		 */
 		public int countSearch(String criteria)
 		{
-			List all = super.getAllResources();
-
-			Vector rv = new Vector();
-			for (Iterator i = all.iterator(); i.hasNext();)
-			{
-				Alias a = (Alias) i.next();
+			int[] count = new int[1];
+			super.getAllResources(entity -> {
+				Alias a = (Alias) entity;
 				if (StringUtil.containsIgnoreCase(a.getId(), criteria) || StringUtil.containsIgnoreCase(a.getTarget(), criteria))
 				{
-					rv.add(a);
+					count[0]++;
 				}
-			}
+			});
 
-			return rv.size();
+			return count[0];
 		}
 
 		/**
@@ -954,6 +954,14 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		return m_storage.isAllowed(user, function, azGroups);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> isAllowedByKey(String user, String function, Map<String, Collection<String>> azGroupsByKey)
+	{
+		return m_storage.isAllowedByKey(user, function, azGroupsByKey);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -1470,6 +1478,19 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		 */
 		boolean isAllowed(String userId, String function, Collection<String> realms);
 
+		/**
+		 * Test if this user is allowed to perform the function, for each of a number of collections of AuthzGroups.
+		 * 
+		 * @param userId
+		 *        The user id.
+		 * @param function
+		 *        The function to open.
+		 * @param realmsByKey
+		 *        Collections of AuthzGroup ids to consult, each under a key of the caller's choosing.
+		 * @return A Map of each key to true if this user is allowed to perform the function in its AuthzGroups, false if not.
+		 */
+		Map<String, Boolean> isAllowedByKey(String userId, String function, Map<String, Collection<String>> realmsByKey);
+
 		/**
 		 * Get the set of user ids of users who are allowed to perform the function in the named AuthzGroups.
 		 * 
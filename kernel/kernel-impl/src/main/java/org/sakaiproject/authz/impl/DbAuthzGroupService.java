@@ -110,6 +110,11 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
     private Cache maintainRolesCache;
 
+	/** Role functions and grants per realm, for permission checks without SQL */
+	public static final String PERMISSION_MATRIX_PROPKEY = "authz.permissionMatrix.enabled";
+	public static final String PERMISSION_MATRIX_MAX_REALMS_PROPKEY = "authz.permissionMatrix.maxRealms";
+	private RealmPermissionMatrix m_permissionMatrix;
+
 	/** KNL-1325 provide a more efficent refreshAuthzGroup */
     public static final String REFRESH_MAX_TIME_PROPKEY = "authzgroup.refresh.max.time";
     public static final String REFRESH_INTERVAL_PROPKEY = "authzgroup.refresh.interval";
@@ -245,6 +250,12 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
             //get the set of maintain roles and cache them on startup
             getMaintainRoles();
 
+            if (serverConfigurationService().getBoolean(PERMISSION_MATRIX_PROPKEY, true)) {
+                // held on this server only, the rows refer to function bit positions of this server
+                int maxRealms = serverConfigurationService().getInt(PERMISSION_MATRIX_MAX_REALMS_PROPKEY, 10000);
+                m_permissionMatrix = new RealmPermissionMatrix(maxRealms, this::readPermissionRows);
+            }
+
             refreshTaskInterval = initConfig(REFRESH_INTERVAL_PROPKEY, serverConfigurationService().getString(REFRESH_INTERVAL_PROPKEY), refreshTaskInterval);
             refreshMaxTime = initConfig(REFRESH_MAX_TIME_PROPKEY, serverConfigurationService().getString(REFRESH_MAX_TIME_PROPKEY), refreshMaxTime);
 
@@ -295,6 +306,10 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
         maintainRolesCache.close();
 
+        if (m_permissionMatrix != null) {
+            m_permissionMatrix.clear();
+        }
+
 		M_log.info(this +".destroy()");
 	}
 
@@ -465,6 +480,72 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 		}
 	}
 
+	/**
+	 * Read the role functions and active role grants of realms into permission matrix rows
+	 *
+	 * @param rows
+	 *        the rows to fill in, keyed by realm id; a row is left empty if there is no such realm.
+	 */
+	protected void readPermissionRows(final Map<String, RealmPermissionMatrix.Row> rows)
+	{
+		List<String> realmIds = new ArrayList<String>(rows.keySet());
+		for (int start = 0; start < realmIds.size(); start += MAX_IN_CLAUSE)
+		{
+			Object[] fields = realmIds.subList(start, Math.min(start + MAX_IN_CLAUSE, realmIds.size())).toArray();
+			String inClause = orInClause(fields.length, "SAKAI_REALM.REALM_ID");
+
+			String statement = dbAuthzGroupSql.getSelectRealmPermissionFunctionsSql(inClause);
+			sqlService().dbRead(statement, fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						RealmPermissionMatrix.Row row = rows.get(result.getString(1));
+						if (row != null)
+						{
+							row.setRealmKey(result.getInt(2));
+							String roleName = result.getString(3);
+							String functionName = result.getString(4);
+
+							// a realm with no role functions comes back as a single row of nulls
+							if (roleName != null && functionName != null)
+							{
+								row.allowFunction(roleName, functionName);
+							}
+						}
+					}
+					catch (SQLException ignore)
+					{
+					}
+
+					return null;
+				}
+			});
+
+			statement = dbAuthzGroupSql.getSelectRealmPermissionGrantsSql(inClause);
+			sqlService().dbRead(statement, fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						RealmPermissionMatrix.Row row = rows.get(result.getString(1));
+						if (row != null)
+						{
+							row.addGrant(result.getString(2), result.getString(3));
+						}
+					}
+					catch (SQLException ignore)
+					{
+					}
+
+					return null;
+				}
+			});
+		}
+	}
+
 	/*************************************************************************************************************************************************
 	 * Storage implementation
 	 ************************************************************************************************************************************************/
@@ -612,6 +693,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 					M_log.debug("DbAuthzGroupService update(): clear realm role cache for " + realmId);
 				}
 				m_realmRoleGRCache.remove(realmId);
+				if (m_permissionMatrix != null) {
+					m_permissionMatrix.invalidate(realmId);
+				}
 			} else {
 				// This should never happen as the events we generate should always have
 				// a /realm/ prefix on the resource.
@@ -1984,26 +2068,10 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				M_log.debug("isAllowed: userId=" + userId + " lock=" + lock + " realms=" + realms
 						+ " roles="+ StringUtils.join(roles, ','));
 
-			String inClause = orInClause(realms.size(), "SAKAI_REALM.REALM_ID");
-			Set<Integer> roleIds = getRealmRoleKeys(roles);
-
-			// any of the grant or role realms
-			String statement = dbAuthzGroupSql.getCountRealmRoleFunctionSql(roleIds, inClause);
-			Object[] fields = new Object[2 + (2 * realms.size()) + roleIds.size()];
-			int pos = 0;
-
 			// for roleswap
 			String userSiteRef = null;
 			String siteRef = null;
 
-			// oracle query has different order of parameters
-			String dbAuthzGroupSqlClassName=dbAuthzGroupSql.getClass().getName();
-
-			if(dbAuthzGroupSqlClassName.equals("org.sakaiproject.authz.impl.DbAuthzGroupSqlOracle")) {
-					fields[pos++] = userId;
-			}
-
-			// populate values for fields
 			for (String realmId : realms)
 			{
 				// These checks for roleswap assume there is at most one of each type of site in the realms collection,
@@ -2017,23 +2085,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 						siteRef = realmId; // set this variable for potential use later
 					}
 				}
-				fields[pos++] = realmId;
-			}
-			fields[pos++] = lock;
-			if(!dbAuthzGroupSqlClassName.equals("org.sakaiproject.authz.impl.DbAuthzGroupSqlOracle")) {
-				fields[pos++] = userId;
-			}
-			for (String realmId : realms)
-			{
-				fields[pos++] = realmId;
-			}
-
-			for (Integer roleId : roleIds)
-			{
-				fields[pos++] = roleId;
 			}
 
-			
 			/* Delegated access essentially behaves like roleswap except instead of just specifying which role, you can also specify
 			 * the realm as well.  The access map is populated by an Event Listener that listens for dac.checkaccess and is stored in the session
 			 * attribute: delegatedaccess.accessmap.  This is a map of: SiteRef -> String[]{realmId, roleId}.  Delegated access
@@ -2081,7 +2134,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				    fields2[0] = delegatedAccessGroupAndRole[1];
 				}
 				fields2[1] = lock;
-				pos = 2;
+				int pos = 2;
 				if (roleswap == null
 				        && delegatedAccess
 				        && delegatedAccessGroupAndRole != null
@@ -2098,10 +2151,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				if (!delegatedAccess) fields2[pos] = userId;
 				if (M_log.isDebugEnabled()) M_log.debug("roleswap/dac fields: "+Arrays.toString(fields2));
 				// In delegated access use a single in clause
-				if (roleswap==null) {
-					inClause = orInClause(1, "SAKAI_REALM.REALM_ID");
-				}
-				statement = dbAuthzGroupSql.getCountRoleFunctionSql(inClause,delegatedAccess);
+				String inClause = orInClause(roleswap != null ? realms.size() : 1, "SAKAI_REALM.REALM_ID");
+				String statement = dbAuthzGroupSql.getCountRoleFunctionSql(inClause,delegatedAccess);
 
 				results = m_sql.dbRead(statement, fields2, new SqlReader()
 				{
@@ -2131,6 +2182,45 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 			// Regular lookup (not roleswap)
 
+			if (m_permissionMatrix != null)
+			{
+				return m_permissionMatrix.isAllowed(userId, lock, realms, roles);
+			}
+
+			String inClause = orInClause(realms.size(), "SAKAI_REALM.REALM_ID");
+			Set<Integer> roleIds = getRealmRoleKeys(roles);
+
+			// any of the grant or role realms
+			String statement = dbAuthzGroupSql.getCountRealmRoleFunctionSql(roleIds, inClause);
+			Object[] fields = new Object[2 + (2 * realms.size()) + roleIds.size()];
+			int pos = 0;
+
+			// oracle query has different order of parameters
+			String dbAuthzGroupSqlClassName=dbAuthzGroupSql.getClass().getName();
+
+			if(dbAuthzGroupSqlClassName.equals("org.sakaiproject.authz.impl.DbAuthzGroupSqlOracle")) {
+					fields[pos++] = userId;
+			}
+
+			// populate values for fields
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+			fields[pos++] = lock;
+			if(!dbAuthzGroupSqlClassName.equals("org.sakaiproject.authz.impl.DbAuthzGroupSqlOracle")) {
+				fields[pos++] = userId;
+			}
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+
+			for (Integer roleId : roleIds)
+			{
+				fields[pos++] = roleId;
+			}
+
 			results = m_sql.dbRead(statement, fields, new SqlReader()
 			{
 				public Object readSqlResultRecord(ResultSet result)
@@ -2158,6 +2248,31 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			return rv;
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		public Map<String, Boolean> isAllowedByKey(String userId, String lock, Map<String, Collection<String>> realmsByKey)
+		{
+			// read every realm not yet in the permission matrix together, the checks below then run in memory
+			if (m_permissionMatrix != null)
+			{
+				Set<String> realms = new HashSet<String>();
+				for (Collection<String> keyRealms : realmsByKey.values())
+				{
+					if (keyRealms != null) realms.addAll(keyRealms);
+				}
+				m_permissionMatrix.preload(realms);
+			}
+
+			Map<String, Boolean> rv = new HashMap<String, Boolean>();
+			for (Map.Entry<String, Collection<String>> entry : realmsByKey.entrySet())
+			{
+				rv.put(entry.getKey(), isAllowed(userId, lock, entry.getValue()));
+			}
+
+			return rv;
+		}
+
 		/**
 		 * Delegated access essentially behaves like roleswap except instead of just specifying which role, you can also specify
 		 * the realm as well.  The access map is populated by an Event Listener that listens for dac.checkaccess and is stored in the session
@@ -2566,6 +2681,17 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 					batchInserts.add(fields);
 				}
 				m_sql.dbWriteBatch(sql, batchInserts);
+
+				// provider grants are written without a realm event, so drop the rows here
+				if (m_permissionMatrix != null)
+				{
+					Set<Integer> changed = new HashSet<Integer>(toDelete);
+					for (RealmAndRole rar : toInsert)
+					{
+						changed.add(rar.realmId);
+					}
+					m_permissionMatrix.invalidateKeys(changed);
+				}
 			}
 		}
 
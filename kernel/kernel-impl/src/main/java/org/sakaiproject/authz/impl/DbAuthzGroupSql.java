@@ -125,6 +125,10 @@ public interface DbAuthzGroupSql
 
 	String getSelectRealmRoleGroup1Sql();
 
+	String getSelectRealmPermissionFunctionsSql(String inClause);
+
+	String getSelectRealmPermissionGrantsSql(String inClause);
+
 	String getSelectRealmRoleGroup2Sql();
 
 	String getSelectRealmRoleGroup3Sql();
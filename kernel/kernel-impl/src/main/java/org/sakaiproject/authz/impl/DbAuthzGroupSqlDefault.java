@@ -418,6 +418,23 @@ public class DbAuthzGroupSqlDefault implements DbAuthzGroupSql
 				+ " INNER JOIN SAKAI_REALM_ROLE ON SAKAI_REALM_ROLE.ROLE_KEY = SAKAI_REALM_RL_GR.ROLE_KEY";
 	}
 
+	public String getSelectRealmPermissionFunctionsSql(String inClause)
+	{
+		return "SELECT SAKAI_REALM.REALM_ID, SAKAI_REALM.REALM_KEY, SAKAI_REALM_ROLE.ROLE_NAME, SAKAI_REALM_FUNCTION.FUNCTION_NAME FROM SAKAI_REALM"
+				+ " LEFT OUTER JOIN SAKAI_REALM_RL_FN ON SAKAI_REALM_RL_FN.REALM_KEY = SAKAI_REALM.REALM_KEY"
+				+ " LEFT OUTER JOIN SAKAI_REALM_ROLE ON SAKAI_REALM_ROLE.ROLE_KEY = SAKAI_REALM_RL_FN.ROLE_KEY"
+				+ " LEFT OUTER JOIN SAKAI_REALM_FUNCTION ON SAKAI_REALM_FUNCTION.FUNCTION_KEY = SAKAI_REALM_RL_FN.FUNCTION_KEY"
+				+ " WHERE " + inClause;
+	}
+
+	public String getSelectRealmPermissionGrantsSql(String inClause)
+	{
+		return "SELECT SAKAI_REALM.REALM_ID, SAKAI_REALM_RL_GR.USER_ID, SAKAI_REALM_ROLE.ROLE_NAME FROM SAKAI_REALM_RL_GR"
+				+ " INNER JOIN SAKAI_REALM ON SAKAI_REALM.REALM_KEY = SAKAI_REALM_RL_GR.REALM_KEY"
+				+ " INNER JOIN SAKAI_REALM_ROLE ON SAKAI_REALM_ROLE.ROLE_KEY = SAKAI_REALM_RL_GR.ROLE_KEY"
+				+ " WHERE SAKAI_REALM_RL_GR.ACTIVE = '1' AND " + inClause;
+	}
+
 	public String getSelectRealmRoleGroup2Sql()
 	{
 		return "SELECT RRG.USER_ID, RR.ROLE_NAME, RRG.ACTIVE, RRG.PROVIDED FROM SAKAI_REALM_RL_GR RRG "
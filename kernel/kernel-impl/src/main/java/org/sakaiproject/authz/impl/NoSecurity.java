@@ -21,7 +21,10 @@
 
 package org.sakaiproject.authz.impl;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -150,6 +153,32 @@ public abstract class NoSecurity implements SecurityService
 		return true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> unlockAll(String userId, String lock, Collection<String> references)
+	{
+		Map<String, Boolean> rv = new HashMap<String, Boolean>();
+		for (String reference : references)
+		{
+			rv.put(reference, Boolean.TRUE);
+		}
+		return rv;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Map<String, Boolean>> unlockAll(String userId, Collection<String> locks, Collection<String> references)
+	{
+		Map<String, Map<String, Boolean>> rv = new HashMap<String, Map<String, Boolean>>();
+		for (String lock : locks)
+		{
+			rv.put(lock, unlockAll(userId, lock, references));
+		}
+		return rv;
+	}
+
 	/**
 	 * Access the List of Users who can unlock the lock for use with this resource.
 	 * 
@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory view of the role functions and active role grants of realms, used to answer the regular (not roleswap,
+ * not delegated access) permission check without going to the database.
+ *
+ * Each realm is held as one row: a bit set of allowed functions for every role defined in the realm, plus the role of
+ * every user with an active grant. Function names are mapped to bit positions by an index shared by all rows. Rows are
+ * read on first use and dropped when the realm changes, so a realm edit costs one row rather than a cache entry per
+ * member and function.
+ *
+ * Bit positions are only meaningful on this server, so rows are held in a bounded map on this server rather than in a
+ * memory service cache, which may be distributed. The least recently used rows are dropped once the bound is reached.
+ */
+public class RealmPermissionMatrix
+{
+	/**
+	 * Reads the role functions and active grants of realms into rows
+	 */
+	public interface RowLoader
+	{
+		/**
+		 * @param rows the empty rows to fill in, keyed by realm id
+		 */
+		void load(Map<String, Row> rows);
+	}
+
+	/** Function name to bit position, shared by every row. */
+	private final Map<String, Integer> functionIndex = new ConcurrentHashMap<>();
+	private final AtomicInteger nextFunctionIndex = new AtomicInteger();
+
+	/** Realm key to realm id, for changes that only know the realm key. */
+	private final Map<Integer, String> realmIds = new ConcurrentHashMap<>();
+
+	/** Bumped on every invalidation, so a row read while its realm changed is not cached. */
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Realm id to row, in access order. */
+	private final Map<String, Row> rows;
+	private final RowLoader loader;
+
+	/**
+	 * @param maxRows the most realm rows to hold, the least recently used are dropped beyond this
+	 * @param loader reads a realm row that is not held
+	 */
+	public RealmPermissionMatrix(final int maxRows, RowLoader loader)
+	{
+		this.rows = Collections.synchronizedMap(new LinkedHashMap<String, Row>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Row> eldest)
+			{
+				if (size() <= maxRows) return false;
+				forgetRealmKey(eldest.getValue());
+				return true;
+			}
+		});
+		this.loader = loader;
+	}
+
+	/**
+	 * Checks whether the user may perform the function in any of the realms. Mirrors the regular lookup in the database:
+	 * the function must be granted in one of the realms to one of the given roles, or to a role the user holds an active
+	 * grant for in any of the realms.
+	 *
+	 * @param userId the user id
+	 * @param function the function (lock)
+	 * @param realms the realm ids
+	 * @param roles the roles the user has regardless of membership (.anon, .auth and provided additional roles)
+	 * @return true if allowed
+	 */
+	public boolean isAllowed(String userId, String function, Collection<String> realms, Set<String> roles)
+	{
+		List<Row> realmRows = new ArrayList<>(realms.size());
+		Set<String> userRoles = new HashSet<>(roles);
+		for (String realmId : realms)
+		{
+			Row row = getRow(realmId);
+			realmRows.add(row);
+			if (userId != null)
+			{
+				String role = row.grants.get(userId);
+				if (role != null) userRoles.add(role);
+			}
+		}
+
+		// read after loading, the rows above may have added the function
+		Integer bit = functionIndex.get(function);
+		if (bit == null) return false;
+
+		for (Row row : realmRows)
+		{
+			for (String role : userRoles)
+			{
+				BitSet functions = row.roles.get(role);
+				if (functions != null && functions.get(bit)) return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Reads the rows of any of the realms that are not already held, all together
+	 * @param realmIds the realm ids
+	 */
+	public void preload(Collection<String> realmIds)
+	{
+		Map<String, Row> missing = new LinkedHashMap<>();
+		for (String realmId : realmIds)
+		{
+			if (!missing.containsKey(realmId) && !rows.containsKey(realmId))
+			{
+				missing.put(realmId, new Row(this));
+			}
+		}
+
+		if (!missing.isEmpty()) load(missing);
+	}
+
+	/**
+	 * Drops the row of a realm, it is read again on next use
+	 * @param realmId the realm id
+	 */
+	public void invalidate(String realmId)
+	{
+		generation.incrementAndGet();
+		forgetRealmKey(rows.remove(realmId));
+	}
+
+	/**
+	 * Drops the rows of realms identified by realm key, skipping realms that were never read
+	 * @param realmKeys the realm keys
+	 */
+	public void invalidateKeys(Collection<Integer> realmKeys)
+	{
+		generation.incrementAndGet();
+		for (Integer realmKey : realmKeys)
+		{
+			String realmId = realmIds.remove(realmKey);
+			if (realmId != null) rows.remove(realmId);
+		}
+	}
+
+	/**
+	 * Drops every row
+	 */
+	public void clear()
+	{
+		generation.incrementAndGet();
+		rows.clear();
+		realmIds.clear();
+	}
+
+	/**
+	 * @return the number of realm rows held
+	 */
+	int size()
+	{
+		return rows.size();
+	}
+
+	/**
+	 * @return the number of realm keys remembered for the rows held
+	 */
+	int realmKeyCount()
+	{
+		return realmIds.size();
+	}
+
+	private Row getRow(String realmId)
+	{
+		Row row = rows.get(realmId);
+		if (row == null)
+		{
+			row = new Row(this);
+			load(Collections.singletonMap(realmId, row));
+		}
+		return row;
+	}
+
+	private void load(Map<String, Row> missing)
+	{
+		long before = generation.get();
+		loader.load(missing);
+
+		// realms that do not exist still get an empty row, entity references name many of those
+		boolean current = generation.get() == before;
+		for (Map.Entry<String, Row> entry : missing.entrySet())
+		{
+			Row row = entry.getValue();
+			if (current)
+			{
+				if (row.realmKey != null) realmIds.put(row.realmKey, entry.getKey());
+				rows.put(entry.getKey(), row);
+			}
+		}
+	}
+
+	private void forgetRealmKey(Row row)
+	{
+		if (row != null && row.realmKey != null) realmIds.remove(row.realmKey);
+	}
+
+	private int indexOf(String function)
+	{
+		return functionIndex.computeIfAbsent(function, f -> nextFunctionIndex.getAndIncrement());
+	}
+
+	/**
+	 * The role functions and active grants of one realm. Only changed by the loader, before the row is shared.
+	 */
+	public static class Row
+	{
+		private final RealmPermissionMatrix matrix;
+		private final Map<String, BitSet> roles = new HashMap<>();
+		private final Map<String, String> grants = new HashMap<>();
+		private Integer realmKey;
+
+		private Row(RealmPermissionMatrix matrix)
+		{
+			this.matrix = matrix;
+		}
+
+		/**
+		 * @param realmKey the database key of the realm
+		 */
+		public void setRealmKey(Integer realmKey)
+		{
+			this.realmKey = realmKey;
+		}
+
+		/**
+		 * Records that the role is allowed the function in this realm
+		 * @param role the role name
+		 * @param function the function name
+		 */
+		public void allowFunction(String role, String function)
+		{
+			roles.computeIfAbsent(role, r -> new BitSet()).set(matrix.indexOf(function));
+		}
+
+		/**
+		 * Records an active grant of the role to the user in this realm
+		 * @param userId the user id
+		 * @param role the role name
+		 */
+		public void addGrant(String userId, String role)
+		{
+			grants.put(userId, role);
+		}
+	}
+}
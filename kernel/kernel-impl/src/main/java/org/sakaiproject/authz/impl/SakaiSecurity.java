@@ -740,9 +740,36 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 			azgs = ref.getAuthzGroups(userId);
 		}
 
-		// need to know whether role swap is in effect, since we can't share the cache entry between sessions
-		// that are swapped and not swapped
+		// check the cache
+		String command = makeCacheKey(userId, getRoleswap(userId, azgs), function, entityRef, false);
+		
+		if (m_callCache != null)
+		{
+			final Boolean value = getFromCache(command, false);
+			if(value != null) return value.booleanValue();
+		}
 
+
+		boolean rv = authzGroupService().isAllowed(userId, function, azgs);
+
+		// cache
+		addToCache(command, rv, false);
+
+		return rv;
+	}
+
+	/**
+	 * Find the role swap in effect for a check against these AuthzGroups, since we can't share the cache entry between sessions
+	 * that are swapped and not swapped
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param azgs
+	 *        The AuthzGroups being checked.
+	 * @return the effective role, or null if no role swap applies.
+	 */
+	protected String getRoleswap(String userId, Collection<String> azgs)
+	{
 		String siteRef = null;
 		String roleswap = null;
 
@@ -776,20 +803,93 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 
 		}
 
-		// check the cache
-		String command = makeCacheKey(userId, roleswap, function, entityRef, false);
-		
-		if (m_callCache != null)
+		return roleswap;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> unlockAll(String userId, String function, Collection<String> entityRefs)
+	{
+		return unlockAll(userId, Collections.singleton(function), entityRefs).get(function);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Map<String, Boolean>> unlockAll(String userId, Collection<String> functions, Collection<String> entityRefs)
+	{
+		Map<String, Map<String, Boolean>> rv = new HashMap<String, Map<String, Boolean>>();
+		if (functions == null || entityRefs == null) return rv;
+
+		boolean superUser = userId != null && isSuperUser(userId);
+
+		// AuthzGroups and role swap do not depend on the function, so only work them out once per entity
+		Map<String, Collection<String>> azgsByRef = new HashMap<String, Collection<String>>();
+		Map<String, String> roleswapByRef = new HashMap<String, String>();
+
+		for (String function : functions)
 		{
-			final Boolean value = getFromCache(command, false);
-			if(value != null) return value.booleanValue();
-		}
+			Map<String, Boolean> allowed = new HashMap<String, Boolean>();
+			Map<String, Collection<String>> misses = new HashMap<String, Collection<String>>();
+			rv.put(function, allowed);
 
+			for (String entityRef : entityRefs)
+			{
+				if (userId == null || function == null || entityRef == null)
+				{
+					M_log.warn("unlockAll(): null: " + userId + " " + function + " " + entityRef);
+					if (entityRef != null) allowed.put(entityRef, Boolean.FALSE);
+					continue;
+				}
 
-		boolean rv = authzGroupService().isAllowed(userId, function, azgs);
+				if (superUser)
+				{
+					allowed.put(entityRef, Boolean.TRUE);
+					continue;
+				}
 
-		// cache
-		addToCache(command, rv, false);
+				if (hasAdvisors())
+				{
+					SecurityAdvisor.SecurityAdvice advice = adviseIsAllowed(userId, function, entityRef);
+					if (advice != SecurityAdvisor.SecurityAdvice.PASS)
+					{
+						allowed.put(entityRef, advice == SecurityAdvisor.SecurityAdvice.ALLOWED);
+						continue;
+					}
+				}
+
+				Collection<String> azgs = azgsByRef.get(entityRef);
+				if (azgs == null)
+				{
+					azgs = entityManager().newReference(entityRef).getAuthzGroups(userId);
+					azgsByRef.put(entityRef, azgs);
+					roleswapByRef.put(entityRef, getRoleswap(userId, azgs));
+				}
+
+				Boolean value = getFromCache(makeCacheKey(userId, roleswapByRef.get(entityRef), function, entityRef, false), false);
+				if (value != null)
+				{
+					allowed.put(entityRef, value);
+				}
+				else
+				{
+					misses.put(entityRef, azgs);
+				}
+			}
+
+			// everything not cached goes to the AuthzGroupService in one go
+			if (!misses.isEmpty())
+			{
+				Map<String, Boolean> results = authzGroupService().isAllowedByKey(userId, function, misses);
+				for (String entityRef : misses.keySet())
+				{
+					boolean value = Boolean.TRUE.equals(results.get(entityRef));
+					allowed.put(entityRef, value);
+					addToCache(makeCacheKey(userId, roleswapByRef.get(entityRef), function, entityRef, false), value, false);
+				}
+			}
+		}
 
 		return rv;
 	}
@@ -468,6 +468,15 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
          * (which includes variable replacement)
          */
         //return getString(name, dflt, properties);
+        ConfigSnapshot.Resolved resolved = getConfigSnapshot().get(name);
+        if (resolved != null) {
+            // registered item, the value was trimmed and dereferenced when the snapshot was built
+            trackRequest(resolved.item, dflt);
+            if (!resolved.useDefault) {
+                return resolved.value;
+            }
+            return StringUtils.isNotEmpty(dflt) ? dereferenceValue(dflt) : dflt;
+        }
         String value = dflt;
         // retrieve a registered config item for this name
         ConfigItemImpl ci = findConfigItem(name, dflt);
@@ -506,16 +515,11 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
     protected String dereferenceValue(String value) {
         if (M_log.isDebugEnabled()) M_log.debug("dereferenceValue("+value+")");
         /*
-         * NOTE: if the performance of this becomes an issue then the right way to handle it is
-         * to place a flag on the ConfigItem to indicate if there is replaceable refs in it
-         * (probably when this runs the first time) and if there are none then skip this
-         * until the value is changed and then reset the flag so it will be checked again,
-         * if there are still issues then adding a "lastChecked" timestamp and 
-         * a cache of the processed value to the ConfigItem which is used as long as the timestamp
-         * has not expired (maybe 15 mins or something), with automatic expiration when the value changes
+         * NOTE: the values of registered items are only dereferenced when the config snapshot
+         * is rebuilt (see getConfigSnapshot()), so this mostly runs for caller supplied defaults
          */
         String drValue = value;
-        if (value != null && value.length() >= 4) { // min length of a replaceable value - "${a}"
+        if (value != null && value.length() >= 4 && value.contains("${")) { // min length of a replaceable value - "${a}"
             Matcher matcher = referencePattern.matcher(value);
             if (matcher.find()) {
                 if (M_log.isDebugEnabled()) M_log.debug("dereferenceValue("+value+"), found refs to replace");
@@ -575,6 +579,9 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
                 }
             }
         }
+        if (counter > 0) {
+            invalidateConfigSnapshot();
+        }
         return counter;
     }
 
@@ -624,6 +631,13 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
      */
     public int getInt(String name, int dflt)
     {
+        ConfigSnapshot.Resolved resolved = getConfigSnapshot().get(name);
+        if (resolved != null && !resolved.useDefault) {
+            trackRequest(resolved.item, "");
+            if (StringUtils.isEmpty(resolved.value)) return dflt;
+            return resolved.intValid ? resolved.intValue : Integer.parseInt(resolved.value);
+        }
+
         String value = getString(name);
 
         if (StringUtils.isEmpty(value)) return dflt;
@@ -636,6 +650,13 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
      */
     public boolean getBoolean(String name, boolean dflt)
     {
+        ConfigSnapshot.Resolved resolved = getConfigSnapshot().get(name);
+        if (resolved != null && !resolved.useDefault) {
+            trackRequest(resolved.item, "");
+            if (StringUtils.isEmpty(resolved.value)) return dflt;
+            return resolved.booleanValue;
+        }
+
         String value = getString(name);
 
         if (StringUtils.isEmpty(value)) return dflt;
@@ -893,6 +914,12 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
     private ConcurrentHashMap<String, ConfigItemImpl> configurationItems = new ConcurrentHashMap<String, ConfigItemImpl>();
     private HashSet<String> secureConfigurationKeys = new HashSet<String>();
     protected ConcurrentHashMap<String, WeakReference<ConfigurationListener>> listeners = new ConcurrentHashMap<String, WeakReference<ConfigurationListener>>();
+    /**
+     * resolved values of the registered config items, null when an item changed and it has to be rebuilt
+     */
+    private volatile ConfigSnapshot configSnapshot = null;
+    private final Object configSnapshotLock = new Object();
+    private long configSnapshotVersion = 0;
 
     /**
      * INTERNAL
@@ -1010,6 +1037,11 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
                     changed = true;
                 }
 
+                if (changed && ci.isRegistered()) {
+                    // any resolved value may refer to this item so the whole snapshot is replaced
+                    invalidateConfigSnapshot();
+                }
+
                 // notify the after listeners (only if something changed)
                 if (changed) {
                     if (this.listeners != null && !this.listeners.isEmpty()) {
@@ -1053,14 +1085,7 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
                 configItemImpl.setSource("get");
                 this.addConfigItem(configItemImpl, "get");
             } else {
-                // update the access log
-                ci.requested();
-                // https://jira.sakaiproject.org/browse/KNL-1130 - assume string has no default in cases where it is "" or null
-                if (ServerConfigurationService.TYPE_STRING.equals(ci.type)) {
-                    ci.defaulted = !(defaultValue == null || "".equals(defaultValue));
-                } else if (defaultValue != null) {
-                    ci.defaulted = true;
-                }
+                trackRequest(ci, defaultValue);
                 if (!ci.isRegistered()) {
                     // we do not return unregistered config values
                     ci = null;
@@ -1070,6 +1095,89 @@ public class BasicConfigurationService implements ServerConfigurationService, Ap
         return ci;
     }
 
+    /**
+     * INTERNAL
+     * Updates the access log of a config item which was looked up
+     * 
+     * @param ci the config item
+     * @param defaultValue the default value the caller supplied
+     */
+    private void trackRequest(ConfigItemImpl ci, Object defaultValue) {
+        ci.requested();
+        // https://jira.sakaiproject.org/browse/KNL-1130 - assume string has no default in cases where it is "" or null
+        if (ServerConfigurationService.TYPE_STRING.equals(ci.type)) {
+            ci.defaulted = !(defaultValue == null || "".equals(defaultValue));
+        } else if (defaultValue != null) {
+            ci.defaulted = true;
+        }
+    }
+
+    /**
+     * INTERNAL
+     * Gets the resolved values of all registered config items, this is rebuilt on the first
+     * lookup after any registered config item changes (so a burst of changes only rebuilds once)
+     * 
+     * @return the current config snapshot (never null)
+     */
+    protected ConfigSnapshot getConfigSnapshot() {
+        ConfigSnapshot snapshot = configSnapshot;
+        if (snapshot == null) {
+            long version;
+            synchronized (configSnapshotLock) {
+                version = configSnapshotVersion;
+            }
+            snapshot = buildConfigSnapshot();
+            synchronized (configSnapshotLock) {
+                // only keep it if nothing changed while it was being built
+                if (version == configSnapshotVersion) {
+                    configSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * INTERNAL
+     * Drops the current config snapshot so the next lookup resolves all the values again
+     */
+    protected void invalidateConfigSnapshot() {
+        synchronized (configSnapshotLock) {
+            configSnapshotVersion++;
+            configSnapshot = null;
+        }
+    }
+
+    /**
+     * INTERNAL
+     * Resolves (trims and dereferences) the values of all registered config items the same way
+     * {@link #getString(String, String)} always has
+     * 
+     * @return a new config snapshot
+     */
+    protected ConfigSnapshot buildConfigSnapshot() {
+        Map<String, ConfigSnapshot.Resolved> resolved = new HashMap<String, ConfigSnapshot.Resolved>(configurationItems.size() * 4 / 3 + 1);
+        for (ConfigItemImpl ci : configurationItems.values()) {
+            if (!ci.isRegistered() || StringUtils.isEmpty(ci.getName())) {
+                continue;
+            }
+            String value;
+            if (ci.getValue() != null) {
+                value = StringUtils.trimToNull(ci.getValue().toString());
+            } else if (ci.getDefaultValue() != null) {
+                value = StringUtils.trimToNull(ci.getDefaultValue().toString());
+            } else {
+                resolved.put(ci.getName(), new ConfigSnapshot.Resolved(ci));
+                continue;
+            }
+            if (StringUtils.isNotEmpty(value)) {
+                value = dereferenceValue(value);
+            }
+            resolved.put(ci.getName(), new ConfigSnapshot.Resolved(ci, value));
+        }
+        return new ConfigSnapshot(resolved);
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.component.api.ServerConfigurationService#getConfig(java.lang.String, java.lang.Object)
      */
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.component.impl;
+
+import java.util.Map;
+
+/**
+ * An immutable view of the resolved (trimmed and dereferenced) values of all registered config items.
+ * The {@link BasicConfigurationService} replaces the whole snapshot whenever a config item changes,
+ * so a lookup is a single hash probe with no locking, string processing or allocation.
+ */
+public class ConfigSnapshot {
+
+    private final Map<String, Resolved> items;
+
+    ConfigSnapshot(Map<String, Resolved> items) {
+        this.items = items;
+    }
+
+    /**
+     * @param name the config name
+     * @return the resolved value for a registered config item OR null if the item is not registered
+     */
+    Resolved get(String name) {
+        return (name == null || name.isEmpty()) ? null : items.get(name);
+    }
+
+    /**
+     * @return the number of resolved config items in this snapshot
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * @return true if this snapshot holds a resolved value for the given config name
+     */
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * The resolved value of a single config item along with the typed forms of it
+     */
+    static final class Resolved {
+        /**
+         * the config item the value was resolved from (used to keep the request tracking current)
+         */
+        final ConfigItemImpl item;
+        /**
+         * true if the item has neither a value nor a default value so the caller supplied default applies
+         */
+        final boolean useDefault;
+        /**
+         * the trimmed and dereferenced value, null if the value is blank
+         */
+        final String value;
+        final boolean intValid;
+        final int intValue;
+        final boolean booleanValue;
+
+        /**
+         * Creates a resolved item which has no value of its own
+         */
+        Resolved(ConfigItemImpl item) {
+            this.item = item;
+            this.useDefault = true;
+            this.value = null;
+            this.intValid = false;
+            this.intValue = 0;
+            this.booleanValue = false;
+        }
+
+        Resolved(ConfigItemImpl item, String value) {
+            this.item = item;
+            this.useDefault = false;
+            this.value = value;
+            int parsed = 0;
+            boolean valid = false;
+            if (isInteger(value)) {
+                try {
+                    parsed = Integer.parseInt(value);
+                    valid = true;
+                } catch (NumberFormatException e) {
+                    // out of range, getInt() will parse it again and fail the same way it always has
+                }
+            }
+            this.intValid = valid;
+            this.intValue = parsed;
+            this.booleanValue = Boolean.parseBoolean(value);
+        }
+
+        /**
+         * Cheap check so building a snapshot does not throw an exception for every non numeric value
+         */
+        private static boolean isInteger(String value) {
+            if (value == null || value.isEmpty()) {
+                return false;
+            }
+            int start = (value.charAt(0) == '-' || value.charAt(0) == '+') ? 1 : 0;
+            if (start == value.length()) {
+                return false;
+            }
+            for (int i = start; i < value.length(); i++) {
+                if (!Character.isDigit(value.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -4825,7 +4825,7 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, EntityTransferrerRef
 			addDeleteResource(id, 
 				content_type, content, resource_type, edit.getReleaseDate(), edit.getRetractDate(), 
 				properties, uuid, userId,
-				NotificationService.NOTI_OPTIONAL);
+				NotificationService.NOTI_OPTIONAL, edit);
 		}
 		finally
 		{
@@ -4844,6 +4844,14 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, EntityTransferrerRef
 	}
 
 	public ContentResource addDeleteResource(String id, String type, InputStream inputStream, String resourceType, Time releaseDate, Time retractDate, ResourceProperties properties, String uuid, String userId, int priority) throws PermissionException, ServerOverloadException
+	{
+		return addDeleteResource(id, type, inputStream, resourceType, releaseDate, retractDate, properties, uuid, userId, priority, null);
+	}
+
+	/**
+	 * Store a deleted resource, sharing the stored body of bodySource rather than copying inputStream if storage allows.
+	 */
+	protected ContentResource addDeleteResource(String id, String type, InputStream inputStream, String resourceType, Time releaseDate, Time retractDate, ResourceProperties properties, String uuid, String userId, int priority, ContentResource bodySource) throws PermissionException, ServerOverloadException
 			{
 		id = (String) fixTypeAndId(id, type).get("id");
 		// resource must also NOT end with a separator characters (fix it)
@@ -4880,7 +4888,11 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, EntityTransferrerRef
 		edit.setResourceType(resourceType);
 		edit.setReleaseDate(releaseDate);
 		edit.setRetractDate(retractDate);
-		if (inputStream != null)
+		if ((bodySource != null) && m_storage.shareResourceBody(bodySource, edit))
+		{
+			// the deleted copy uses the same stored body
+		}
+		else if (inputStream != null)
 		{
 			edit.setContent(inputStream);
 		}
@@ -5705,6 +5717,9 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, EntityTransferrerRef
 				    // do a reference copy so the actual content is not duplicated
 				    ((BaseResourceEdit)edit).setReferenceCopy(resource.getId());
                     if (M_log.isDebugEnabled()) M_log.debug("copyResource doing a reference copy of "+resource.getId());
+				} else if (m_storage.shareResourceBody(resource, edit)) {
+				    // the copy uses the same stored body, so only the metadata is written
+                    if (M_log.isDebugEnabled()) M_log.debug("copyResource sharing the body of "+resource.getId());
 				} else {
 	                // use stream instead of byte array
 	                // edit.setContent(resource.getContent());
@@ -13722,6 +13737,13 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, EntityTransferrerRef
 		 */
 		public InputStream streamResourceBody(ContentResource resource) throws ServerOverloadException;
 
+		/**
+		 * Point the edit at the stored body of the resource rather than copying the bytes, if storage keeps shared bodies.
+		 * 
+		 * @return true if the body is now shared, false if it has to be copied.
+		 */
+		public boolean shareResourceBody(ContentResource resource, ContentResourceEdit edit);
+
 		/**
 		 * Return a single character representing the access mode of the resource or collection identified by the parameter, or null if not found.
 		 * @param id
@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sakaiproject.content.api.FileSystemHandler;
+import org.sakaiproject.db.api.SqlService;
+
+/**
+ * Content addressed storage for file system stored resource bodies.
+ *
+ * Each distinct body is kept once, in the file of the first resource that stored it, and recorded in
+ * CONTENT_RESOURCE_BODY_HASH by its SHA-256 along with the number of resources using it. A resource storing bytes that
+ * are already held is pointed at the existing file and its own copy is dropped. The file is deleted when the last
+ * resource using it releases it.
+ *
+ * The FileSystemHandler must locate files by their file path, not by resource id, since one file serves many resources. Only
+ * a {@link DefaultFileSystemHandler} that is not set to use the id for the file path is known to do that, see
+ * {@link #create(SqlService, ContentServiceSql, FileSystemHandler, String)}.
+ */
+public class ContentBodyStore
+{
+	/** Our logger. */
+	private static final Logger M_log = LoggerFactory.getLogger(ContentBodyStore.class);
+
+	/** How many times to try sharing a body that another node is adding or releasing at the same moment. */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final SqlService sqlService;
+	private final ContentServiceSql contentServiceSql;
+	private final FileSystemHandler fileSystemHandler;
+	private final String root;
+
+	/**
+	 * @param sqlService the database access
+	 * @param contentServiceSql the vendor's content statements
+	 * @param fileSystemHandler reads and writes the body files
+	 * @param root the body path all shared bodies are kept under
+	 */
+	public ContentBodyStore(SqlService sqlService, ContentServiceSql contentServiceSql, FileSystemHandler fileSystemHandler, String root)
+	{
+		if (!canShare(fileSystemHandler))
+		{
+			throw new IllegalArgumentException("FileSystemHandler " + fileSystemHandler + " does not locate bodies by file path");
+		}
+		this.sqlService = sqlService;
+		this.contentServiceSql = contentServiceSql;
+		this.fileSystemHandler = fileSystemHandler;
+		this.root = root;
+	}
+
+	/**
+	 * Make a store for the file system handler, if it can share bodies.
+	 *
+	 * @return the store, or null (with a warning) if the handler might locate bodies by resource id
+	 */
+	public static ContentBodyStore create(SqlService sqlService, ContentServiceSql contentServiceSql, FileSystemHandler fileSystemHandler, String root)
+	{
+		if (!canShare(fileSystemHandler))
+		{
+			M_log.warn("Identical bodies will not be shared: the FileSystemHandler " + fileSystemHandler
+					+ " is not a DefaultFileSystemHandler locating bodies by file path, and deleting a duplicate by id would delete the only copy");
+			return null;
+		}
+		return new ContentBodyStore(sqlService, contentServiceSql, fileSystemHandler, root);
+	}
+
+	/**
+	 * Check that a file system handler reads, writes and deletes bodies by their file path, so one file can serve many
+	 * resources.
+	 */
+	static boolean canShare(FileSystemHandler fileSystemHandler)
+	{
+		return (fileSystemHandler instanceof DefaultFileSystemHandler) && !((DefaultFileSystemHandler) fileSystemHandler).isUseIdForFilePath();
+	}
+
+	/**
+	 * The root all shared bodies are kept under
+	 */
+	public String getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * Write a body to the file system, sharing it with any resource that already holds the same bytes.
+	 *
+	 * @param id the resource id
+	 * @param filePath a file path that no other resource uses, to write the body to
+	 * @param stream the body
+	 * @return the file path the resource's body is now at, and its length
+	 * @throws IOException if the body could not be written
+	 */
+	public StoredBody store(String id, String filePath, InputStream stream) throws IOException
+	{
+		MessageDigest digest = newDigest();
+		long length = fileSystemHandler.saveInputStream(id, root, filePath, new DigestInputStream(stream, digest));
+
+		String sharedPath = share(id, filePath, toHex(digest.digest()), length);
+		if (!sharedPath.equals(filePath))
+		{
+			fileSystemHandler.delete(id, root, filePath);
+		}
+		return new StoredBody(sharedPath, length);
+	}
+
+	/**
+	 * Record a body that was stored before sharing was enabled. The file is left in place; if another file already holds
+	 * the same bytes, the caller is expected to point the resource at it and then drop this one with
+	 * {@link #deleteUnshared(String, String)}.
+	 *
+	 * @param id the resource id
+	 * @param filePath the file path the body is at
+	 * @return the file path the resource's body should be at
+	 * @throws IOException if the body could not be read
+	 */
+	public String shareExisting(String id, String filePath) throws IOException
+	{
+		MessageDigest digest = newDigest();
+		long length = 0;
+		InputStream in = fileSystemHandler.getInputStream(id, root, filePath);
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1)
+			{
+				digest.update(buffer, 0, n);
+				length += n;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return share(id, filePath, toHex(digest.digest()), length);
+	}
+
+	/**
+	 * Whether the file is a shared body.
+	 */
+	public boolean isShared(String filePath)
+	{
+		List<?> found = sqlService.dbRead(contentServiceSql.getBodyHashByFilePathSql(), new Object[] {filePath}, null);
+		return (found != null) && !found.isEmpty();
+	}
+
+	/**
+	 * Take another reference on a shared body, for a resource that is to use it without writing a copy.
+	 *
+	 * @return false if the file is not a shared body, or is being released, in which case nothing was taken
+	 */
+	public boolean addReference(String filePath)
+	{
+		return sqlService.dbWriteCount(contentServiceSql.getAddBodyHashReferenceByFilePathSql(), new Object[] {filePath}, null, null, true) > 0;
+	}
+
+	/**
+	 * Drop a reference on a shared body, deleting the file once nothing uses it.
+	 *
+	 * @param id the id of the resource that was using the body
+	 * @param filePath the file path
+	 * @return false if the file is not a shared body, in which case it is left to the caller
+	 */
+	public boolean release(String id, String filePath)
+	{
+		Object[] fields = new Object[] {filePath};
+		if (sqlService.dbWriteCount(contentServiceSql.getReleaseBodyHashReferenceSql(), fields, null, null, false) <= 0)
+		{
+			return false;
+		}
+
+		// only the release that finds the count at zero removes the record, so only one deletes the file
+		if (sqlService.dbWriteCount(contentServiceSql.getDeleteUnreferencedBodyHashSql(), fields, null, null, false) > 0)
+		{
+			M_log.debug("release: deleting unreferenced body " + filePath);
+			fileSystemHandler.delete(id, root, filePath);
+		}
+		return true;
+	}
+
+	/**
+	 * Delete a file that was found to duplicate a shared body, once its resource points elsewhere.
+	 */
+	public void deleteUnshared(String id, String filePath)
+	{
+		if (!isShared(filePath))
+		{
+			fileSystemHandler.delete(id, root, filePath);
+		}
+	}
+
+	/**
+	 * Record the body with this hash as being at filePath, or take a reference on the body already recorded for it.
+	 *
+	 * @return the file path to use, which is filePath unless the bytes were already held elsewhere
+	 */
+	protected String share(String id, String filePath, String sha256, long length)
+	{
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+		{
+			List<?> found = sqlService.dbRead(contentServiceSql.getBodyHashFilePathSql(), new Object[] {sha256}, null);
+			if ((found == null) || found.isEmpty())
+			{
+				if (sqlService.dbWriteFailQuiet(null, contentServiceSql.getInsertBodyHashSql(), new Object[] {sha256, filePath, Long.valueOf(length)}))
+				{
+					return filePath;
+				}
+			}
+			else if (sqlService.dbWriteCount(contentServiceSql.getAddBodyHashReferenceSql(), new Object[] {sha256}, null, null, true) > 0)
+			{
+				return (String) found.get(0);
+			}
+
+			// another node recorded or released the same body between our read and write, so look again
+		}
+
+		M_log.warn("share: could not share the body of " + id + ", leaving it unshared at " + filePath);
+		return filePath;
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// every JRE has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	protected static String toHex(byte[] bytes)
+	{
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Where a stored body ended up.
+	 */
+	public static class StoredBody
+	{
+		private final String filePath;
+		private final long length;
+
+		StoredBody(String filePath, long length)
+		{
+			this.filePath = filePath;
+			this.length = length;
+		}
+
+		public String getFilePath()
+		{
+			return filePath;
+		}
+
+		public long getLength()
+		{
+			return length;
+		}
+	}
+}
@@ -206,4 +206,69 @@ public interface ContentServiceSql
 	 */
 	String getSelectByResourceTypeQuerySql();
 
+	/**
+	 * returns the sql statement which retrieves the SHA256 of a shared body from the content_resource_body_hash table, by file path.
+	 */
+	String getBodyHashByFilePathSql();
+
+	/**
+	 * returns the sql statement which retrieves the file path of a shared body from the content_resource_body_hash table, by SHA256.
+	 */
+	String getBodyHashFilePathSql();
+
+	/**
+	 * returns the sql statement which inserts a shared body, with one reference, into the content_resource_body_hash table.
+	 */
+	String getInsertBodyHashSql();
+
+	/**
+	 * returns the sql statement which adds a reference to a shared body that is still referenced, by SHA256.
+	 */
+	String getAddBodyHashReferenceSql();
+
+	/**
+	 * returns the sql statement which adds a reference to a shared body that is still referenced, by file path.
+	 */
+	String getAddBodyHashReferenceByFilePathSql();
+
+	/**
+	 * returns the sql statement which drops a reference to a shared body, by file path.
+	 */
+	String getReleaseBodyHashReferenceSql();
+
+	/**
+	 * returns the sql statement which deletes a shared body from the content_resource_body_hash table once nothing references it.
+	 */
+	String getDeleteUnreferencedBodyHashSql();
+
+	/**
+	 * returns the sql statement which retrieves the id and file path of the file stored resources whose bodies are not yet shared.
+	 */
+	String getResourceIdFilePathUnsharedSql();
+
+	/**
+	 * returns the sql statement which retrieves the stored file size of a resource.
+	 */
+	String getResourceFileSizeSql(String table);
+
+	/**
+	 * returns the sql statement which retrieves the total number of bytes recorded for a context in the content_resource_usage table.
+	 */
+	String getUsageSql();
+
+	/**
+	 * returns the sql statement which records the total number of bytes for a context in the content_resource_usage table.
+	 */
+	String getInsertUsageSql();
+
+	/**
+	 * returns the sql statement which adds to the total number of bytes recorded for a context in the content_resource_usage table.
+	 */
+	String getAddUsageSql();
+
+	/**
+	 * returns the sql statement which retrieves all the contexts recorded in the content_resource_usage table.
+	 */
+	String getUsageKeysSql();
+
 }
@@ -321,4 +321,108 @@ public class ContentServiceSqlDefault implements ContentServiceSql
 	    return "select SUM(FILE_SIZE) from CONTENT_RESOURCE where IN_COLLECTION LIKE ? and not exists (select 1 from SAKAI_USER_ID_MAP where USER_ID = substr(in_collection,length(?)+1,instr(substr(in_collection,length(?)+1),'/')-1))";
 	}
 
+	/**
+	 * returns the sql statement which retrieves the SHA256 of a shared body from the content_resource_body_hash table, by file path.
+	 */
+	public String getBodyHashByFilePathSql()
+	{
+		return "select SHA256 from CONTENT_RESOURCE_BODY_HASH where FILE_PATH = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the file path of a shared body from the content_resource_body_hash table, by SHA256.
+	 */
+	public String getBodyHashFilePathSql()
+	{
+		return "select FILE_PATH from CONTENT_RESOURCE_BODY_HASH where SHA256 = ?";
+	}
+
+	/**
+	 * returns the sql statement which inserts a shared body, with one reference, into the content_resource_body_hash table.
+	 */
+	public String getInsertBodyHashSql()
+	{
+		return "insert into CONTENT_RESOURCE_BODY_HASH (SHA256, FILE_PATH, FILE_SIZE, REF_COUNT) values (?, ?, ?, 1)";
+	}
+
+	/**
+	 * returns the sql statement which adds a reference to a shared body that is still referenced, by SHA256.
+	 */
+	public String getAddBodyHashReferenceSql()
+	{
+		return "update CONTENT_RESOURCE_BODY_HASH set REF_COUNT = REF_COUNT + 1 where SHA256 = ? and REF_COUNT > 0";
+	}
+
+	/**
+	 * returns the sql statement which adds a reference to a shared body that is still referenced, by file path.
+	 */
+	public String getAddBodyHashReferenceByFilePathSql()
+	{
+		return "update CONTENT_RESOURCE_BODY_HASH set REF_COUNT = REF_COUNT + 1 where FILE_PATH = ? and REF_COUNT > 0";
+	}
+
+	/**
+	 * returns the sql statement which drops a reference to a shared body, by file path.
+	 */
+	public String getReleaseBodyHashReferenceSql()
+	{
+		return "update CONTENT_RESOURCE_BODY_HASH set REF_COUNT = REF_COUNT - 1 where FILE_PATH = ? and REF_COUNT > 0";
+	}
+
+	/**
+	 * returns the sql statement which deletes a shared body from the content_resource_body_hash table once nothing references it.
+	 */
+	public String getDeleteUnreferencedBodyHashSql()
+	{
+		return "delete from CONTENT_RESOURCE_BODY_HASH where FILE_PATH = ? and REF_COUNT <= 0";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the id and file path of the file stored resources whose bodies are not yet shared.
+	 */
+	public String getResourceIdFilePathUnsharedSql()
+	{
+		return "select RESOURCE_ID, FILE_PATH from CONTENT_RESOURCE where FILE_PATH IS NOT NULL and FILE_PATH not in (select FILE_PATH from CONTENT_RESOURCE_BODY_HASH)";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the stored file size of a resource.
+	 */
+	public String getResourceFileSizeSql(String table)
+	{
+		return "select FILE_SIZE from " + table + " where RESOURCE_ID = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves the total number of bytes recorded for a context in the content_resource_usage table.
+	 */
+	public String getUsageSql()
+	{
+		return "select TOTAL_SIZE from CONTENT_RESOURCE_USAGE where USAGE_KEY = ?";
+	}
+
+	/**
+	 * returns the sql statement which records the total number of bytes for a context in the content_resource_usage table.
+	 */
+	public String getInsertUsageSql()
+	{
+		return "insert into CONTENT_RESOURCE_USAGE (USAGE_KEY, TOTAL_SIZE) values (?, ?)";
+	}
+
+	/**
+	 * returns the sql statement which adds to the total number of bytes recorded for a context in the content_resource_usage table.
+	 */
+	public String getAddUsageSql()
+	{
+		return "update CONTENT_RESOURCE_USAGE set TOTAL_SIZE = TOTAL_SIZE + ? where USAGE_KEY = ?";
+	}
+
+	/**
+	 * returns the sql statement which retrieves all the contexts recorded in the content_resource_usage table.
+	 */
+	public String getUsageKeysSql()
+	{
+		return "select USAGE_KEY from CONTENT_RESOURCE_USAGE";
+	}
+
 }
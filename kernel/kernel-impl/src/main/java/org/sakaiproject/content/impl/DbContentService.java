@@ -42,6 +42,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -304,6 +306,68 @@ public class DbContentService extends BaseContentService
         m_convertToFile = Boolean.valueOf(value).booleanValue();
     }
 
+    /** Set if file system bodies are to be stored once per distinct content, shared by the resources holding it. */
+    protected boolean m_dedupBodies = false;
+
+    /**
+     * Configuration: share identical file system bodies between resources.
+     * 
+     * @param value
+     *        The sharing desired value.
+     */
+    public void setDedupBodies(String value)
+    {
+        m_dedupBodies = Boolean.valueOf(value).booleanValue();
+    }
+
+    /** Set if we are to share the file system bodies stored before sharing was enabled. */
+    protected boolean m_dedupExistingBodies = false;
+
+    /**
+     * Configuration: run the sharing of existing file system bodies, in the background.
+     * 
+     * @param value
+     *        The conversion desired value.
+     */
+    public void setDedupExistingBodies(String value)
+    {
+        m_dedupExistingBodies = Boolean.valueOf(value).booleanValue();
+    }
+
+    /** The content addressed store for file system bodies, if sharing is enabled. */
+    protected ContentBodyStore m_bodyStore = null;
+
+    /** Set if the bytes used by each context are kept as running totals, rather than summed for each quota check. */
+    protected boolean m_usageLedger = false;
+
+    /**
+     * Configuration: keep running totals of the bytes used by each context.
+     * 
+     * @param value
+     *        The ledger desired value.
+     */
+    public void setUsageLedger(String value)
+    {
+        m_usageLedger = Boolean.valueOf(value).booleanValue();
+    }
+
+    /** How often (seconds) the running totals are checked against the resources, 0 to never check. */
+    protected int m_usageReconcilePeriod = 86400;
+
+    /**
+     * Configuration: how often (seconds) the running totals are checked against the resources.
+     * 
+     * @param value
+     *        The period in seconds, 0 to disable.
+     */
+    public void setUsageReconcilePeriod(String value)
+    {
+        m_usageReconcilePeriod = Integer.parseInt(value);
+    }
+
+    /** Runs the check of the running totals. */
+    protected Timer m_usageTimer = null;
+
     /** Configuration: to run the ddl on init or not. */
     protected boolean m_autoDdl = false;
 
@@ -394,6 +458,18 @@ public class DbContentService extends BaseContentService
 
                 // add the delete table
                 m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_delete");
+
+                // add the shared body table
+                if (m_dedupBodies)
+                {
+                    m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_body_hash");
+                }
+
+                // add the usage table
+                if (m_usageLedger)
+                {
+                    m_sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_usage");
+                }
             }
 
             // Check for the existence of the FILE_SIZE column
@@ -470,8 +546,36 @@ public class DbContentService extends BaseContentService
                 throw new IllegalStateException("There is no FileSystemHandler set for the ContentService!");
             }
 
+            // share identical file system bodies?
+            if (m_dedupBodies && m_bodyPath != null)
+            {
+                m_bodyStore = ContentBodyStore.create(m_sqlService, contentServiceSql, fileSystemHandler, m_bodyPath);
+
+                if (m_bodyStore != null && m_dedupExistingBodies)
+                {
+                    m_dedupExistingBodies = false;
+                    Thread dedup = new Thread(this::dedupBodies, "ContentHostingService dedup");
+                    dedup.setDaemon(true);
+                    dedup.start();
+                }
+            }
+
+            // check the running totals now and then
+            if (m_usageLedger && m_usageReconcilePeriod > 0)
+            {
+                m_usageTimer = new Timer("ContentHostingService usage", true);
+                m_usageTimer.schedule(new TimerTask()
+                {
+                    public void run()
+                    {
+                        reconcileUsage();
+                    }
+                }, m_usageReconcilePeriod * 1000L, m_usageReconcilePeriod * 1000L);
+            }
+
             M_log.info("init(): tables: " + m_collectionTableName + " " + m_resourceTableName + " " + m_resourceBodyTableName + " "
-                    + m_groupTableName + " locks-in-db: " + m_locksInDb + " bodyPath: " + m_bodyPath + " storage: " + m_storage);
+                    + m_groupTableName + " locks-in-db: " + m_locksInDb + " bodyPath: " + m_bodyPath + " storage: " + m_storage
+                    + " usageLedger: " + m_usageLedger);
 
         }
         catch (Exception t)
@@ -1858,7 +1962,13 @@ public class DbContentService extends BaseContentService
                     {
                         insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
                     }
+                    String usageKey = m_usageLedger ? getUsageKey(edit.getId()) : null;
+                    long storedSize = (usageKey == null) ? 0L : getStoredFileSize(edit.getId());
                     m_resourceStore.commitResource(edit);
+                    if (usageKey != null)
+                    {
+                        addUsage(usageKey, edit.getContentLength() - storedSize);
+                    }
                 }
 
             }
@@ -2144,7 +2254,13 @@ public class DbContentService extends BaseContentService
 				   {
 					   insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
 				   }
+				   String usageKey = m_usageLedger ? getUsageKey(edit.getId()) : null;
+				   long storedSize = (usageKey == null) ? 0L : getStoredFileSize(edit.getId());
 				   m_resourceStore.removeResource(edit);
+				   if (usageKey != null)
+				   {
+					   addUsage(usageKey, -storedSize);
+				   }
 
 			   }
 		   }
@@ -2352,6 +2468,12 @@ public class DbContentService extends BaseContentService
                 return null;
             }
 
+            // shared bodies of deleted resources are kept with the live ones
+            if ((m_bodyStore != null) && !m_bodyStore.getRoot().equals(rootFolder) && m_bodyStore.isShared(((BaseResourceEdit) resource).m_filePath))
+            {
+                rootFolder = m_bodyStore.getRoot();
+            }
+
             try
             {
                 return fileSystemHandler.getInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
@@ -2495,6 +2617,11 @@ public class DbContentService extends BaseContentService
          */
         private boolean putResourceBodyFilesystem(ContentResourceEdit resource, InputStream stream, String rootFolder)
         {
+            if (m_bodyStore != null)
+            {
+                return putResourceBodyShared(resource, stream);
+            }
+
             try
             {
                 long byteCount = fileSystemHandler.saveInputStream(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath, stream);
@@ -2514,6 +2641,110 @@ public class DbContentService extends BaseContentService
             }
         }
 
+        /**
+         * Write the resource body to the shared body store, which keeps it under the m_bodyPath whether the resource is live or deleted.
+         * 
+         * @param resource
+         *        The resource whose body is being written.
+         * @param stream
+         *        The body.
+         * @return true if the resource body is written successfully, false otherwise.
+         */
+        private boolean putResourceBodyShared(ContentResourceEdit resource, InputStream stream)
+        {
+            BaseResourceEdit edit = (BaseResourceEdit) resource;
+
+            // a shared body must not be written over in place, so the new body gets a file of its own
+            String oldPath = edit.m_filePath;
+            boolean oldShared = (oldPath != null) && m_bodyStore.isShared(oldPath);
+            if ((oldPath == null) || oldShared)
+            {
+                edit.setFilePath(timeService.newTime());
+            }
+
+            try
+            {
+                ContentBodyStore.StoredBody body = m_bodyStore.store(edit.m_id, edit.m_filePath, stream);
+                edit.m_filePath = body.getFilePath();
+                if (oldShared)
+                {
+                    m_bodyStore.release(edit.m_id, oldPath);
+                }
+
+                resource.setContentLength(body.getLength());
+                ResourcePropertiesEdit props = resource.getPropertiesEdit();
+                props.addProperty(ResourceProperties.PROP_CONTENT_LENGTH, Long.toString(body.getLength()));
+                if (resource.getContentType() != null)
+                {
+                    props.addProperty(ResourceProperties.PROP_CONTENT_TYPE, resource.getContentType());
+                }
+                return true;
+            }
+            catch (IOException e)
+            {
+                M_log.error("IOException", e);
+                if (oldShared)
+                {
+                    edit.m_filePath = oldPath;
+                }
+                return false;
+            }
+        }
+
+        /**
+         * Point a new resource, or a deleted copy of a resource, at the shared body of another rather than writing the bytes again.
+         * 
+         * @param resource
+         *        The resource whose body is to be shared.
+         * @param edit
+         *        The resource to share it with, which must not have had a body set.
+         * @return true if the body is now shared, false if the body has to be copied.
+         */
+        public boolean shareResourceBody(ContentResource resource, ContentResourceEdit edit)
+        {
+            if ((m_bodyStore == null) || !(resource instanceof BaseResourceEdit) || !(edit instanceof BaseResourceEdit)) return false;
+
+            // only a body that is already stored can be shared, not one still being edited
+            BaseResourceEdit source = (BaseResourceEdit) resource;
+            if ((source.m_body != null) || (source.m_contentStream != null) || (source.m_filePath == null)) return false;
+
+            if (!m_bodyStore.addReference(source.m_filePath)) return false;
+
+            BaseResourceEdit target = (BaseResourceEdit) edit;
+            target.m_filePath = source.m_filePath;
+            target.m_body = null;
+            target.m_contentStream = null;
+            target.setContentLength(source.m_contentLength);
+            return true;
+        }
+
+        /**
+         * Point a resource whose body was found to duplicate a shared body at the shared file.
+         * 
+         * @param id
+         *        The resource id.
+         * @param filePath
+         *        The file path the resource is expected to have now.
+         * @param sharedPath
+         *        The file path of the shared body.
+         * @return true if the resource was updated, false if it is locked, gone or has changed its body since.
+         */
+        protected boolean repointResourceBody(String id, String filePath, String sharedPath)
+        {
+            BaseResourceEdit edit = (BaseResourceEdit) m_resourceStore.editResource(id);
+            if (edit == null) return false;
+
+            if (!filePath.equals(edit.m_filePath))
+            {
+                m_resourceStore.cancelResource(edit);
+                return false;
+            }
+
+            edit.m_filePath = sharedPath;
+            m_resourceStore.commitResource(edit);
+            return true;
+        }
+
         /**
          * Write the resource body to the external file system. The file name is the m_bodyPath with the resource id appended.
          * 
@@ -2561,6 +2792,12 @@ public class DbContentService extends BaseContentService
          */
         protected void delResourceBodyFilesystem(String rootFolder, ContentResourceEdit resource)
         {
+            // a shared body is only deleted once the last resource using it lets it go
+            if ((m_bodyStore != null) && m_bodyStore.release(((BaseResourceEdit) resource).m_id, ((BaseResourceEdit) resource).m_filePath))
+            {
+                return;
+            }
+
             fileSystemHandler.delete(((BaseResourceEdit) resource).m_id, rootFolder, ((BaseResourceEdit) resource).m_filePath);
         }
 
@@ -2859,7 +3096,7 @@ public class DbContentService extends BaseContentService
 
             // read content_resource records that have null file path
             String sql = contentServiceSql.getResourceIdXmlSql();
-            m_sqlService.dbRead(sql, null, new SqlReader()
+            m_sqlService.dbReadEach(sql, null, new SqlReader()
             {
                 public Object readSqlResultRecord(ResultSet result)
                 {
@@ -3048,7 +3285,7 @@ public class DbContentService extends BaseContentService
                         return null;
                     }
                 }
-            });
+            }, null);
 
             connection.commit();
 
@@ -3067,6 +3304,74 @@ public class DbContentService extends BaseContentService
         M_log.info("convertToFile: done");
     }
 
+    /**
+     * Share the file system bodies stored before sharing was enabled: record each distinct body, and point resources whose body
+     * duplicates one already recorded at that file, deleting their own copy. Resources that are locked or change while this runs
+     * are left as they are, and picked up on the next run.
+     */
+    protected void dedupBodies()
+    {
+        M_log.info("dedupBodies");
+
+        final Counter count = new Counter();
+        final Counter dropped = new Counter();
+        try
+        {
+            String sql = contentServiceSql.getResourceIdFilePathUnsharedSql();
+            m_sqlService.dbReadEach(sql, null, new SqlReader<String[]>()
+            {
+                public String[] readSqlResultRecord(ResultSet result)
+                {
+                    try
+                    {
+                        return new String[] { result.getString(1), result.getString(2) };
+                    }
+                    catch (SQLException e)
+                    {
+                        M_log.warn("dedupBodies(): " + e);
+                        return null;
+                    }
+                }
+            }, record -> {
+                if (record == null) return;
+                String id = record[0];
+                String filePath = record[1];
+                try
+                {
+                    String sharedPath = m_bodyStore.shareExisting(id, filePath);
+                    if (!sharedPath.equals(filePath))
+                    {
+                        if (((DbStorage) m_storage).repointResourceBody(id, filePath, sharedPath))
+                        {
+                            m_bodyStore.deleteUnshared(id, filePath);
+                            dropped.value++;
+                        }
+                        else
+                        {
+                            m_bodyStore.release(id, sharedPath);
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    M_log.warn("dedupBodies(): unable to read body of " + id + " at " + filePath + ": " + e);
+                }
+
+                count.value++;
+                if ((count.value % 1000) == 0)
+                {
+                    M_log.info(" ** checked: " + count.value + " duplicates dropped: " + dropped.value);
+                }
+            });
+        }
+        catch (Exception t)
+        {
+            M_log.warn("dedupBodies: failed: " + t);
+        }
+
+        M_log.info("dedupBodies: done, checked: " + count.value + " duplicates dropped: " + dropped.value);
+    }
+
     /**
      * <p>
      * Counter is is a counter that can be marked final.
@@ -3198,10 +3503,10 @@ public class DbContentService extends BaseContentService
     public void populateNewColumns()
     {
         String sql1 = contentServiceSql.getAccessResourceIdAndXmlSql(m_resourceTableName);
-        m_sqlService.dbRead(sql1, null, new ContextAndFilesizeReader(m_resourceTableName));
+        m_sqlService.dbReadEach(sql1, null, new ContextAndFilesizeReader(m_resourceTableName), null);
 
         String sql2 = contentServiceSql.getAccessResourceIdAndXmlSql(m_resourceDeleteTableName);
-        m_sqlService.dbRead(sql2, null, new ContextAndFilesizeReader(m_resourceDeleteTableName));
+        m_sqlService.dbReadEach(sql2, null, new ContextAndFilesizeReader(m_resourceDeleteTableName), null);
     }
 
 
@@ -3342,6 +3647,39 @@ public class DbContentService extends BaseContentService
     }
 
     protected long getSizeForContext(String context) 
+    {
+        if (!m_usageLedger || !isUsageKey(context))
+        {
+            return sumSizeForContext(context);
+        }
+
+        List list = m_sqlService.dbRead(contentServiceSql.getUsageSql(), new Object[] {context}, null);
+        if (list != null && !list.isEmpty())
+        {
+            try
+            {
+                return Long.parseLong((String) list.get(0));
+            }
+            catch (NumberFormatException e)
+            {
+                M_log.warn("getSizeForContext() unable to parse long from \"" + list.get(0) + "\" for context \"" + context + "\"");
+            }
+        }
+
+        // the first check for this context, start its running total (if another node has not just done so)
+        long size = sumSizeForContext(context);
+        m_sqlService.dbWriteFailQuiet(null, contentServiceSql.getInsertUsageSql(), new Object[] {context, Long.valueOf(size)});
+        return size;
+    }
+
+    /**
+     * Sum the bytes used by a context from the resources, rather than from its running total.
+     * 
+     * @param context
+     *        The context, or a dropbox collection id.
+     * @return The bytes used.
+     */
+    protected long sumSizeForContext(String context) 
     {
         long size = 0L;
 
@@ -3368,13 +3706,143 @@ public class DbContentService extends BaseContentService
             }
             catch(Exception e)
             {
-                M_log.warn("getSizeForContext() unable to parse long from \"" + result + "\" for context \"" + context + "\"");
+                M_log.warn("sumSizeForContext() unable to parse long from \"" + result + "\" for context \"" + context + "\"");
             }
         }
 
         return size;
     }
 
+    /**
+     * Find the running total a resource counts towards, the same key {@link #getSizeForContext(String)} is asked for.
+     * 
+     * @param resourceId
+     *        The resource id.
+     * @return The site or user context, the individual dropbox collection id or null if the resource is not counted.
+     */
+    protected String getUsageKey(String resourceId)
+    {
+        if (resourceId.startsWith(COLLECTION_DROPBOX))
+        {
+            // counted towards the individual dropbox it is in: /group-user/site/user/
+            String[] parts = resourceId.split(Entity.SEPARATOR);
+            if (parts.length <= 4) return null;
+            return Entity.SEPARATOR + parts[1] + Entity.SEPARATOR + parts[2] + Entity.SEPARATOR + parts[3] + Entity.SEPARATOR;
+        }
+
+        Matcher contextMatcher = contextPattern.matcher(resourceId);
+        if (!contextMatcher.find()) return null;
+        return contextMatcher.group(1).equals("group/") ? contextMatcher.group(2) : "~" + contextMatcher.group(2);
+    }
+
+    /**
+     * @param context
+     *        The context, or a dropbox collection id.
+     * @return true if a running total is kept for this context, false if it is always summed.
+     */
+    protected boolean isUsageKey(String context)
+    {
+        // the dropbox root excludes the individual dropboxes of current users, so is left to the sum
+        return !context.startsWith(COLLECTION_DROPBOX) || context.split(Entity.SEPARATOR).length == 4;
+    }
+
+    /**
+     * Read the size of a resource as it is stored now.
+     * 
+     * @param id
+     *        The resource id.
+     * @return The stored size, 0 if the resource is not stored yet.
+     */
+    protected long getStoredFileSize(String id)
+    {
+        List list = m_sqlService.dbRead(contentServiceSql.getResourceFileSizeSql(m_resourceTableName), new Object[] {id}, null);
+        if (list == null || list.isEmpty() || list.get(0) == null) return 0L;
+        try
+        {
+            return Long.parseLong((String) list.get(0));
+        }
+        catch (NumberFormatException e)
+        {
+            return 0L;
+        }
+    }
+
+    /**
+     * Change the running total of a context, if one is being kept for it yet.
+     * 
+     * @param key
+     *        The context, or individual dropbox collection id.
+     * @param delta
+     *        The change in bytes.
+     */
+    protected void addUsage(String key, long delta)
+    {
+        if (delta == 0L) return;
+        m_sqlService.dbWrite(contentServiceSql.getAddUsageSql(), new Object[] {Long.valueOf(delta), key});
+    }
+
+    /**
+     * Read the running total of a context as it is stored.
+     * 
+     * @param context
+     *        The context, or individual dropbox collection id.
+     * @return The total, or null if none is kept for the context yet.
+     */
+    protected String readUsage(String context)
+    {
+        List list = m_sqlService.dbRead(contentServiceSql.getUsageSql(), new Object[] {context}, null);
+        return (list == null || list.isEmpty()) ? null : (String) list.get(0);
+    }
+
+    /**
+     * Check every running total against the sum of its resources, correcting any that have drifted.
+     */
+    protected void reconcileUsage()
+    {
+        try
+        {
+            List keys = m_sqlService.dbRead(contentServiceSql.getUsageKeysSql());
+            int corrected = 0;
+            for (Object key : keys)
+            {
+                String context = (String) key;
+                String before = readUsage(context);
+                if (before == null) continue;
+
+                long size = sumSizeForContext(context);
+
+                // leave a total that changed while it was being summed to the next run, the sum may or may not include the change
+                if (!before.equals(readUsage(context))) continue;
+
+                // correct by the drift rather than writing the sum, so a change made from here on is not lost
+                long drift = size - Long.parseLong(before);
+                if (drift != 0L)
+                {
+                    addUsage(context, drift);
+                    corrected++;
+                }
+            }
+            M_log.info("reconcileUsage(): checked " + keys.size() + " contexts, corrected " + corrected);
+        }
+        catch (Exception e)
+        {
+            M_log.warn("reconcileUsage(): " + e);
+        }
+    }
+
+    /**
+     * Returns to uninitialized state.
+     */
+    public void destroy()
+    {
+        if (m_usageTimer != null)
+        {
+            m_usageTimer.cancel();
+            m_usageTimer = null;
+        }
+        super.destroy();
+    }
+
     /**
      * @throws Exception 
      * 
@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 import javax.sql.DataSource;
 
@@ -177,6 +178,34 @@ public abstract class BasicSqlService implements SqlService
 		m_deadlockRetries = Integer.parseInt(value);
 	}
 
+	/** Configuration: number of records the driver fetches at a time for dbReadEach(). */
+	protected int m_fetchSize = 1000;
+
+	/**
+	 * Configuration: number of records the driver fetches at a time for dbReadEach().
+	 * 
+	 * @param value
+	 *        the fetch size.
+	 */
+	public void setFetchSize(String value)
+	{
+		m_fetchSize = Integer.parseInt(value);
+	}
+
+	/** Counts and timings of the statements run, exported over JMX. */
+	protected SqlStatistics m_statistics = new SqlStatistics();
+
+	/**
+	 * Configuration: where to keep statement counts and timings.
+	 * 
+	 * @param statistics
+	 *        the statistics.
+	 */
+	public void setStatistics(SqlStatistics statistics)
+	{
+		m_statistics = statistics;
+	}
+
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
 
@@ -235,7 +264,7 @@ public abstract class BasicSqlService implements SqlService
 			ddl(getClass().getClassLoader(), "sakai_locks");
 		}
 
-		LOG.info("init(): vendor: " + m_vendor + " autoDDL: " + m_autoDdl + " deadlockRetries: " + m_deadlockRetries);
+		LOG.info("init(): vendor: " + m_vendor + " autoDDL: " + m_autoDdl + " deadlockRetries: " + m_deadlockRetries + " fetchSize: " + m_fetchSize);
 	}
 
 	/**
@@ -259,7 +288,15 @@ public abstract class BasicSqlService implements SqlService
 
 		if (defaultDataSource != null)
 		{
-			return defaultDataSource.getConnection();
+			long statStart = System.nanoTime();
+			try
+			{
+				return defaultDataSource.getConnection();
+			}
+			finally
+			{
+				m_statistics.recordBorrow(System.nanoTime() - statStart);
+			}
 		}
 		else
 		{
@@ -530,6 +567,7 @@ public abstract class BasicSqlService implements SqlService
 		ResultSetMetaData meta = null;
 		List rv = new Vector();
 
+        long statStart = System.nanoTime();
         try {
             if (m_showSql) {
                 start = System.currentTimeMillis();
@@ -589,6 +627,7 @@ public abstract class BasicSqlService implements SqlService
         } catch (UnsupportedEncodingException e) {
             LOG.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } finally {
+            m_statistics.record(SqlStatistics.Kind.READ, sql, System.nanoTime() - statStart);
             if (m_showSql) {
                 resultsTime = System.currentTimeMillis() - start;
             }
@@ -629,6 +668,136 @@ public abstract class BasicSqlService implements SqlService
 		return rv;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public <T> int dbReadEach(String sql, Object[] fields, SqlReader<T> reader, Consumer<? super T> consumer)
+	{
+		return dbReadEach(null, sql, fields, reader, consumer);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> int dbReadEach(Connection callerConn, String sql, Object[] fields, SqlReader<T> reader, Consumer<? super T> consumer)
+	{
+		// check for a transaction conncetion
+		if (callerConn == null)
+		{
+			callerConn = (Connection) threadLocalManager().get(TRANSACTION_CONNECTION);
+		}
+
+		if (LOG.isDebugEnabled())
+		{
+			LOG.debug("dbReadEach(Connection " + callerConn + ", String " + sql + ", Object[] " + Arrays.toString(fields) + ", SqlReader " + reader + ")");
+		}
+
+		long start = System.currentTimeMillis();
+		int count = 0;
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		ResultSet result = null;
+
+		long statStart = System.nanoTime();
+		try
+		{
+			conn = (callerConn != null) ? callerConn : borrowConnection();
+			pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+			// Only a connection of our own is put into the driver's streaming mode: some drivers (MySQL) can run nothing else on the
+			// connection until the whole result is read, which a caller holding the connection might not expect.
+			pstmt.setFetchSize(callerConn == null ? sqlServiceSql.getStreamingFetchSize(m_fetchSize) : m_fetchSize);
+
+			prepareStatement(pstmt, fields);
+			result = pstmt.executeQuery();
+
+			while (result.next())
+			{
+				count++;
+
+				// without a reader, we read the first String from each record
+				Object obj;
+				if (reader == null)
+				{
+					obj = result.getString(1);
+				}
+				else
+				{
+					try
+					{
+						obj = reader.readSqlResultRecord(result);
+					}
+					catch (SqlReaderFinishedException e)
+					{
+						break;
+					}
+				}
+
+				if (obj != null && consumer != null)
+				{
+					consumer.accept((T) obj);
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			LOG.warn("Sql.dbReadEach: sql: " + sql + debugFields(fields), e);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			LOG.warn("Sql.dbReadEach: sql: " + sql + debugFields(fields), e);
+		}
+		finally
+		{
+			m_statistics.record(SqlStatistics.Kind.STREAM, sql, System.nanoTime() - statStart);
+			if (null != result)
+			{
+				try
+				{
+					result.close();
+				}
+				catch (SQLException e)
+				{
+					LOG.warn("Sql.dbReadEach: sql: " + sql + debugFields(fields), e);
+				}
+			}
+			if (null != pstmt)
+			{
+				try
+				{
+					pstmt.close();
+				}
+				catch (SQLException e)
+				{
+					LOG.warn("Sql.dbReadEach: sql: " + sql + debugFields(fields), e);
+				}
+			}
+
+			// return the connection only if we have borrowed a new one for this call
+			if (callerConn == null && null != conn)
+			{
+				if (m_commitAfterRead)
+				{
+					try
+					{
+						conn.commit();
+					}
+					catch (SQLException e)
+					{
+						LOG.warn("Sql.dbReadEach: sql: " + sql + debugFields(fields), e);
+					}
+				}
+				returnConnection(conn);
+			}
+		}
+
+		if (m_showSql) debug("Sql.dbReadEach: time: " + (System.currentTimeMillis() - start) + " #: " + count, sql, fields);
+
+		return count;
+	}
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
@@ -690,6 +859,7 @@ public abstract class BasicSqlService implements SqlService
 		ResultSet result = null;
 		ResultSetMetaData meta = null;
 
+		long statStart = System.nanoTime();
 		try
 		{
 			if (m_showSql) start = System.currentTimeMillis();
@@ -723,6 +893,7 @@ public abstract class BasicSqlService implements SqlService
         } catch (Exception e) {
             LOG.warn("Sql.dbReadBinary(): " + e);
         } finally {
+            m_statistics.record(SqlStatistics.Kind.BINARY, sql, System.nanoTime() - statStart);
             if (null != result) {
                 try {
                     result.close();
@@ -796,6 +967,7 @@ public abstract class BasicSqlService implements SqlService
 		PreparedStatement pstmt = null;
 		ResultSet result = null;
 
+        long statStart = System.nanoTime();
         try {
             if (m_showSql) {
                 start = System.currentTimeMillis();
@@ -831,6 +1003,7 @@ public abstract class BasicSqlService implements SqlService
         } catch (UnsupportedEncodingException e) {
             LOG.warn("Sql.dbReadBinary(): " + e);
         } finally {
+            m_statistics.record(SqlStatistics.Kind.BINARY, sql, System.nanoTime() - statStart);
             // ONLY if we didn't make the rv - else let the rv hold these OPEN!
             if (rv == null) {
                 if (null != result) {
@@ -949,6 +1122,7 @@ public abstract class BasicSqlService implements SqlService
 
 		boolean success = false;
 
+		long statStart = System.nanoTime();
 		try
 		{
 			if (m_showSql) start = System.currentTimeMillis();
@@ -998,6 +1172,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_statistics.record(SqlStatistics.Kind.BINARY, sql, System.nanoTime() - statStart);
 			//try
 			//{
 			if (null != pstmt)
@@ -1199,6 +1374,7 @@ public abstract class BasicSqlService implements SqlService
 		boolean success = false;
 		PreparedStatement pstmt = null;
 
+		long statStart = System.nanoTime();
 		try
 		{
 			pstmt = callerConnection.prepareStatement(sql);
@@ -1220,6 +1396,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_statistics.record(SqlStatistics.Kind.BATCH, sql, System.nanoTime() - statStart);
 			try
 			{
 				pstmt.close();
@@ -1288,6 +1465,7 @@ public abstract class BasicSqlService implements SqlService
 
 		boolean success = false;
 
+		long statStart = System.nanoTime();
 		try
 		{
 			if (callerConnection != null)
@@ -1381,6 +1559,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_statistics.record(SqlStatistics.Kind.WRITE, sql, System.nanoTime() - statStart);
 			try
 			{
 				if (null != pstmt) pstmt.close();
@@ -1488,6 +1667,7 @@ public abstract class BasicSqlService implements SqlService
 		boolean success = false;
 		Long rv = null;
 
+		long statStart = System.nanoTime();
 		try
 		{
 			if (callerConnection != null)
@@ -1578,6 +1758,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			m_statistics.record(SqlStatistics.Kind.INSERT, sql, System.nanoTime() - statStart);
 			try
 			{
 				if (null != pstmt) pstmt.close();
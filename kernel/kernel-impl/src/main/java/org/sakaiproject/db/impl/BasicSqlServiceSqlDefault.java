@@ -50,6 +50,14 @@ public class BasicSqlServiceSqlDefault implements SqlServiceSql
 		return value ? "1" : "0";
 	}
 
+	/**
+	 * returns the JDBC fetch size that makes the driver read a large result a batch at a time rather than all at once.
+	 */
+	public int getStreamingFetchSize(int fetchSize)
+	{
+		return fetchSize;
+	}
+
 	/**
 	 * returns the sql statement which returns the next number in a sequence. <br/><br/>
 	 * 
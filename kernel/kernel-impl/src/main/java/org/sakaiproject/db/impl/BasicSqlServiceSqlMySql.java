@@ -48,6 +48,16 @@ public class BasicSqlServiceSqlMySql extends BasicSqlServiceSqlDefault
 		return ex.getErrorCode() == 1062;
 	}
 
+	/**
+	 * returns the JDBC fetch size that makes the driver read a large result a batch at a time rather than all at once.
+	 * Connector/J (and MariaDB) read the whole result into memory unless the fetch size is Integer.MIN_VALUE, which streams it row by row.
+	 */
+	@Override
+	public int getStreamingFetchSize(int fetchSize)
+	{
+		return Integer.MIN_VALUE;
+	}
+
 	/**
 	 * sets the value of a bytes field in the specified column. <br/><br/>
 	 * 
@@ -131,4 +131,12 @@ public interface SqlServiceSql
 	 */
 	public Long getGeneratedKey(PreparedStatement pstmt, String sql) throws SQLException;
 
+	/**
+	 * returns the JDBC fetch size that makes the driver read a large result a batch at a time rather than all at once.
+	 * 
+	 * @param fetchSize
+	 *      The configured number of records per batch
+	 */
+	public int getStreamingFetchSize(int fetchSize);
+
 }
@@ -0,0 +1,452 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * SqlStatistics keeps counts and latency histograms for the statements run through the SqlService, and samples the slowest single executions
+ * together with the code that ran them.
+ * </p>
+ * <p>
+ * Statements are grouped once they are normalized: whitespace is collapsed, literals become ?, and IN lists of any length look the same. The number
+ * of distinct statements is capped, as is the number of raw statements remembered for each kind; anything past either cap is counted under
+ * "(other)". Recording costs a map lookup and a few adds, so it can stay
+ * on in production; only an execution slow enough to join the sample captures a stack trace.
+ * </p>
+ */
+public class SqlStatistics implements SqlStatisticsMXBean
+{
+	/** What kind of call ran the statement. */
+	public enum Kind
+	{
+		READ, STREAM, WRITE, BATCH, BINARY, INSERT
+	}
+
+	/** Upper bounds of the histogram buckets, in milliseconds; a last bucket holds everything slower. */
+	static final long[] BUCKET_MILLIS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+	private static final String OTHER = "(other)";
+	private static final int MAX_SQL_LENGTH = 1000;
+	private static final int STACK_DEPTH = 12;
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\s?\\?(?:\\s?,\\s?\\?)+\\s?\\)");
+
+	private volatile boolean enabled = true;
+	private int maxStatements = 1000;
+	private int slowSamples = 20;
+	private long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/** The statements by kind and normalized sql, and for each kind the same by the sql as it was run, to save normalizing it every time. */
+	private final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+	private final Map<Kind, Map<String, StatementStats>> bySql = new EnumMap<>(Kind.class);
+
+	public SqlStatistics()
+	{
+		for (Kind kind : Kind.values())
+		{
+			bySql.put(kind, new ConcurrentHashMap<>());
+		}
+	}
+
+	private final Histogram borrowWait = new Histogram();
+
+	/** The slowest executions, quickest first; the floor is the time an execution must beat to get in. */
+	private final PriorityQueue<SlowSample> slowest = new PriorityQueue<>(Comparator.comparingLong((SlowSample s) -> s.nanos));
+	private volatile long slowFloorNanos = slowThresholdNanos;
+
+	/**
+	 * Configuration: keep statistics or not.
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Configuration: the most distinct statements to track.
+	 */
+	public void setMaxStatements(int maxStatements)
+	{
+		this.maxStatements = maxStatements;
+	}
+
+	/**
+	 * Configuration: how many of the slowest executions to keep.
+	 */
+	public void setSlowSamples(int slowSamples)
+	{
+		this.slowSamples = slowSamples;
+	}
+
+	/**
+	 * Configuration: how slow an execution must be to be sampled at all.
+	 */
+	public void setSlowThresholdMillis(long slowThresholdMillis)
+	{
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+		this.slowFloorNanos = slowThresholdNanos;
+	}
+
+	/**
+	 * Record one execution of a statement.
+	 * 
+	 * @param kind
+	 *        The kind of call.
+	 * @param sql
+	 *        The sql as it was run.
+	 * @param nanos
+	 *        How long it took.
+	 */
+	public void record(Kind kind, String sql, long nanos)
+	{
+		if (!enabled || sql == null) return;
+
+		Map<String, StatementStats> raw = bySql.get(kind);
+		StatementStats stats = raw.get(sql);
+		if (stats == null)
+		{
+			stats = statementFor(kind, sql, raw);
+		}
+		stats.latency.add(nanos);
+
+		if (nanos >= slowFloorNanos && slowSamples > 0)
+		{
+			sample(stats, nanos);
+		}
+	}
+
+	/**
+	 * Record the wait for a pooled connection.
+	 * 
+	 * @param nanos
+	 *        How long the borrow took.
+	 */
+	public void recordBorrow(long nanos)
+	{
+		if (enabled) borrowWait.add(nanos);
+	}
+
+	private StatementStats statementFor(Kind kind, String sql, Map<String, StatementStats> raw)
+	{
+		// some callers build a new statement every time, once there is no more room to remember the raw sql count them as other
+		// rather than normalizing every call
+		if (raw.size() >= maxStatements * 4)
+		{
+			return statements.computeIfAbsent(kind + " " + OTHER, k -> new StatementStats(kind, OTHER));
+		}
+
+		String normalized = normalize(sql);
+		String key = kind + " " + normalized;
+		StatementStats stats = statements.get(key);
+		if (stats == null)
+		{
+			stats = (statements.size() >= maxStatements) ? statements.computeIfAbsent(kind + " " + OTHER, k -> new StatementStats(kind, OTHER))
+					: statements.computeIfAbsent(key, k -> new StatementStats(kind, normalized));
+		}
+
+		raw.put(sql, stats);
+		return stats;
+	}
+
+	private void sample(StatementStats stats, long nanos)
+	{
+		SlowSample sample = new SlowSample(stats, nanos, System.currentTimeMillis(), Thread.currentThread().getName(), callerStack());
+		synchronized (slowest)
+		{
+			slowest.add(sample);
+			while (slowest.size() > slowSamples)
+			{
+				slowest.poll();
+			}
+			if (slowest.size() >= slowSamples)
+			{
+				slowFloorNanos = Math.max(slowThresholdNanos, slowest.peek().nanos);
+			}
+		}
+	}
+
+	/**
+	 * @return The frames that led to the statement, leaving out the SqlService itself.
+	 */
+	private static String[] callerStack()
+	{
+		List<String> frames = new ArrayList<>();
+		for (StackTraceElement frame : new Throwable().getStackTrace())
+		{
+			String className = frame.getClassName();
+			if (className.equals(SqlStatistics.class.getName()) || className.startsWith(BasicSqlService.class.getName())) continue;
+			frames.add(frame.toString());
+			if (frames.size() >= STACK_DEPTH) break;
+		}
+		return frames.toArray(new String[frames.size()]);
+	}
+
+	/**
+	 * Reduce a statement to its shape, so executions that differ only in their values are counted together.
+	 * 
+	 * @param sql
+	 *        The sql as it was run.
+	 * @return The normalized sql.
+	 */
+	static String normalize(String sql)
+	{
+		String rv = WHITESPACE.matcher(sql).replaceAll(" ").trim();
+		rv = STRING_LITERAL.matcher(rv).replaceAll("?");
+		rv = NUMBER_LITERAL.matcher(rv).replaceAll("?");
+		rv = IN_LIST.matcher(rv).replaceAll("(?...)");
+		return rv.length() > MAX_SQL_LENGTH ? rv.substring(0, MAX_SQL_LENGTH) + "..." : rv;
+	}
+
+	public int getStatementCount()
+	{
+		return statements.size();
+	}
+
+	public long getBorrowCount()
+	{
+		return borrowWait.count.sum();
+	}
+
+	public double getBorrowWaitMeanMillis()
+	{
+		return borrowWait.meanMillis();
+	}
+
+	public long getBorrowWaitMaxMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(borrowWait.max.get());
+	}
+
+	public String[] getTopStatements()
+	{
+		List<String> rv = new ArrayList<>();
+		for (StatementStats stats : sortedStatements())
+		{
+			rv.add(stats.toString());
+			if (rv.size() >= 50) break;
+		}
+		return rv.toArray(new String[rv.size()]);
+	}
+
+	public String[] getSlowestStatements()
+	{
+		List<String> rv = new ArrayList<>();
+		for (SlowSample sample : sortedSamples())
+		{
+			rv.add(sample.toString());
+		}
+		return rv.toArray(new String[rv.size()]);
+	}
+
+	public String dump()
+	{
+		StringBuilder buf = new StringBuilder();
+		buf.append("connection borrow: ").append(borrowWait).append('\n');
+		buf.append('\n').append("statements by total time (").append(statements.size()).append("):\n");
+		for (StatementStats stats : sortedStatements())
+		{
+			buf.append(stats).append('\n');
+		}
+		buf.append('\n').append("slowest executions:\n");
+		for (SlowSample sample : sortedSamples())
+		{
+			buf.append(sample).append('\n');
+		}
+		return buf.toString();
+	}
+
+	public void reset()
+	{
+		statements.clear();
+		for (Map<String, StatementStats> raw : bySql.values())
+		{
+			raw.clear();
+		}
+		borrowWait.reset();
+		synchronized (slowest)
+		{
+			slowest.clear();
+			slowFloorNanos = slowThresholdNanos;
+		}
+	}
+
+	private List<StatementStats> sortedStatements()
+	{
+		List<StatementStats> rv = new ArrayList<>(statements.values());
+		rv.sort(Comparator.comparingLong((StatementStats s) -> s.latency.totalNanos.sum()).reversed());
+		return rv;
+	}
+
+	private List<SlowSample> sortedSamples()
+	{
+		List<SlowSample> rv;
+		synchronized (slowest)
+		{
+			rv = new ArrayList<>(slowest);
+		}
+		rv.sort(Collections.reverseOrder(Comparator.comparingLong((SlowSample s) -> s.nanos)));
+		return rv;
+	}
+
+	/**
+	 * Counts, total and maximum time, and a histogram of times.
+	 */
+	static class Histogram
+	{
+		final LongAdder count = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final AtomicLong max = new AtomicLong();
+		final LongAdder[] buckets = new LongAdder[BUCKET_MILLIS.length + 1];
+
+		Histogram()
+		{
+			for (int i = 0; i < buckets.length; i++)
+			{
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void add(long nanos)
+		{
+			count.increment();
+			totalNanos.add(nanos);
+			max.accumulateAndGet(nanos, Math::max);
+
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = 0;
+			while (bucket < BUCKET_MILLIS.length && millis >= BUCKET_MILLIS[bucket])
+			{
+				bucket++;
+			}
+			buckets[bucket].increment();
+		}
+
+		double meanMillis()
+		{
+			long n = count.sum();
+			return n == 0 ? 0 : totalNanos.sum() / (double) n / 1000000d;
+		}
+
+		/**
+		 * @return The upper bound of the bucket holding the given fraction of executions, -1 if past the last bound.
+		 */
+		long percentileMillis(double fraction)
+		{
+			long n = count.sum();
+			long wanted = (long) Math.ceil(n * fraction);
+			long seen = 0;
+			for (int i = 0; i < BUCKET_MILLIS.length; i++)
+			{
+				seen += buckets[i].sum();
+				if (seen >= wanted) return BUCKET_MILLIS[i];
+			}
+			return -1;
+		}
+
+		void reset()
+		{
+			count.reset();
+			totalNanos.reset();
+			max.set(0);
+			for (LongAdder bucket : buckets)
+			{
+				bucket.reset();
+			}
+		}
+
+		public String toString()
+		{
+			return String.format("count: %d total: %dms mean: %.2fms p50: <%s p95: <%s p99: <%s max: %dms", count.sum(),
+					TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()), meanMillis(), bound(percentileMillis(0.5)), bound(percentileMillis(0.95)),
+					bound(percentileMillis(0.99)), TimeUnit.NANOSECONDS.toMillis(max.get()));
+		}
+
+		private static String bound(long millis)
+		{
+			return millis < 0 ? "inf" : millis + "ms";
+		}
+	}
+
+	private static class StatementStats
+	{
+		final Kind kind;
+		final String sql;
+		final Histogram latency = new Histogram();
+
+		StatementStats(Kind kind, String sql)
+		{
+			this.kind = kind;
+			this.sql = sql;
+		}
+
+		public String toString()
+		{
+			return kind + " " + latency + " : " + sql;
+		}
+	}
+
+	private static class SlowSample
+	{
+		final StatementStats stats;
+		final long nanos;
+		final long when;
+		final String thread;
+		final String[] stack;
+
+		SlowSample(StatementStats stats, long nanos, long when, String thread, String[] stack)
+		{
+			this.stats = stats;
+			this.nanos = nanos;
+			this.when = when;
+			this.thread = thread;
+			this.stack = stack;
+		}
+
+		public String toString()
+		{
+			StringBuilder buf = new StringBuilder();
+			buf.append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms ").append(stats.kind).append(" at ").append(new Date(when)).append(" [")
+					.append(thread).append("] ").append(stats.sql);
+			for (String frame : stack)
+			{
+				buf.append("\n\tat ").append(frame);
+			}
+			return buf.toString();
+		}
+	}
+}
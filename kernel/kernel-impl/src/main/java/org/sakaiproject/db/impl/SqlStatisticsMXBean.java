@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+/**
+ * JMX view of the SQL statistics kept by the SqlService.
+ */
+public interface SqlStatisticsMXBean
+{
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/** @return the number of distinct (normalized) statements being tracked */
+	int getStatementCount();
+
+	long getBorrowCount();
+
+	double getBorrowWaitMeanMillis();
+
+	long getBorrowWaitMaxMillis();
+
+	/** @return the statements that have taken the most time in total, one line each */
+	String[] getTopStatements();
+
+	/** @return the slowest single executions seen, with the code that ran them */
+	String[] getSlowestStatements();
+
+	/** @return a text report of everything collected */
+	String dump();
+
+	/** Forget everything collected so far. */
+	void reset();
+}
@@ -35,6 +35,15 @@ import org.sakaiproject.event.api.SimpleEvent;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 
+import com.hazelcast.core.HazelcastInstance;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -47,6 +56,8 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * ClusterEventTracking is the implmentation for the EventTracking service for use in a clustered multi-app server configuration.<br />
  * Events are backed in the cluster database, and this database is polled to read and process locally events posted by the other cluster members.
+ * If a cluster transport is configured (events.cluster.transport), the other members push their events instead, and the database is only polled
+ * now and then for events the transport lost.
  * </p>
  */
 public abstract class ClusterEventTracking extends BaseEventTrackingService implements Runnable
@@ -71,7 +82,15 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
     protected long m_totalEventsCount = 0;
 
 	/** Queue of events to write if we are batching. */
-	protected Collection<Event> m_eventQueue = null;
+	protected EventWriteQueue m_eventQueue = null;
+	/** The JMX name of the event queue metrics. */
+	protected static final String EVENT_QUEUE_MBEAN_NAME = "org.sakaiproject:name=EventWriteQueue";
+	/** Pushes events to and from the other cluster servers, if configured; the db is then only checked now and then, for the events it lost. */
+	protected ClusterEventTransport m_clusterTransport = null;
+	/** The most events pushed by the transport that are remembered until the db check sees them. */
+	protected static final int MAX_PUSHED_EVENTS = 10000;
+	/** Events pushed by the transport that the db check has not seen yet, counted by event and resource. */
+	protected final Map<String, Integer> m_pushedEvents = new HashMap<>();
 	/** Unless false, check the db for events from the other cluster servers. */
 	protected boolean m_checkDb = true;
 	/** If true, batch events for bulk write. */
@@ -217,11 +236,18 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 			if (m_batchWrite)
 			{
-				m_eventQueue = new Vector<Event>();
+				initEventQueue();
 			}
 
-			// startup the event checking
-			if (m_checkDb)
+			initClusterTransport();
+
+			// startup the event checking; if the other servers push their events to us, only check now and then for any that were lost
+			int period = m_period;
+			if (m_clusterTransport != null)
+			{
+				period = serverConfigurationService().getInt("events.cluster.catchup.period", 60);
+			}
+			if (m_checkDb && period > 0)
 			{
 				initLastEvent();
 
@@ -230,10 +256,14 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 				scheduler.scheduleWithFixedDelay(
 						this,
 						60, // minimally wait 60 seconds for sakai to start
-						m_period, // run every
+						period, // run every
 						TimeUnit.SECONDS
 				);
 			}
+			else if (m_checkDb)
+			{
+				M_log.warn("events.cluster.catchup.period is 0: events the cluster transport loses are never seen here, and caches may stay stale");
+			}
 
 			boolean eventsSizeCheck = serverConfigurationService().getBoolean("events.size.check", true);
 			if (eventsSizeCheck) {
@@ -252,7 +282,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
     			}
 			}
 
-			M_log.info("period: {}, batch: {}, checkDb: {}", m_period, m_batchWrite, m_checkDb);
+			M_log.info("period: {}, batch: {}, checkDb: {}, transport: {}", m_period, m_batchWrite, m_checkDb,
+					m_clusterTransport == null ? "none" : m_clusterTransport.getClass().getSimpleName());
 
             String sakaiVersion = serverConfigurationService().getString("version.sakai", "unknown") + "/" + serverConfigurationService().getString("version.service", "unknown");
             M_log.info("Server Start: serverId={}, serverInstance={}, serverIdInstance={}, version={}",
@@ -304,10 +335,238 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	public void destroy()
 	{
-		scheduler.shutdown();
+		if (scheduler != null)
+		{
+			scheduler.shutdown();
+		}
+		if (m_clusterTransport != null)
+		{
+			m_clusterTransport.stop();
+			m_clusterTransport = null;
+		}
+		if (m_eventQueue != null)
+		{
+			m_eventQueue.stop(30000);
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(EVENT_QUEUE_MBEAN_NAME));
+			}
+			catch (Exception e)
+			{
+				M_log.debug("Could not unregister {}: {}", EVENT_QUEUE_MBEAN_NAME, e.getMessage());
+			}
+		}
 		super.destroy();
 	}
 
+	/**
+	 * Set up the queue that batches events for writing, and its writer thread.
+	 */
+	protected void initEventQueue()
+	{
+		int capacity = serverConfigurationService().getInt("events.queue.capacity", 65536);
+		int batchSize = serverConfigurationService().getInt("events.queue.batch.size", 500);
+		long flushMillis = serverConfigurationService().getInt("events.queue.flush.millis", 1000);
+		EventWriteQueue.OverflowPolicy policy = EventWriteQueue.OverflowPolicy.fromString(
+				serverConfigurationService().getString("events.queue.overflow", "block"), EventWriteQueue.OverflowPolicy.BLOCK);
+		String spillPath = serverConfigurationService().getString("events.queue.spill.file", null);
+		File spillFile = StringUtils.isNotBlank(spillPath) ? new File(spillPath)
+				: new File(serverConfigurationService().getSakaiHomePath(), "events-spill-" + serverConfigurationService().getServerId() + ".log");
+
+		m_eventQueue = new EventWriteQueue(capacity, batchSize, flushMillis, policy, spillFile, new EventWriteQueue.Store()
+		{
+			public void write(List<Event> events)
+			{
+				writeBatchEvents(events);
+			}
+
+			public String encode(Event event)
+			{
+				return encodeEvent(event);
+			}
+
+			public Event decode(String line)
+			{
+				return decodeEvent(line);
+			}
+		});
+		m_eventQueue.start();
+
+		try
+		{
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(EVENT_QUEUE_MBEAN_NAME);
+			if (mbs.isRegistered(name))
+			{
+				mbs.unregisterMBean(name);
+			}
+			mbs.registerMBean(m_eventQueue, name);
+		}
+		catch (Exception e)
+		{
+			M_log.warn("Could not register {}: {}", EVENT_QUEUE_MBEAN_NAME, e.getMessage());
+		}
+
+		M_log.info("event queue capacity: {}, batch: {}, flush: {}ms, overflow: {}", m_eventQueue.getCapacity(), batchSize, flushMillis,
+				m_eventQueue.getOverflowPolicy());
+	}
+
+	/**
+	 * Set up the transport that pushes events between the cluster servers, as configured by events.cluster.transport.
+	 * If none is configured, or it cannot be started, the other servers' events are read from the db.
+	 */
+	protected void initClusterTransport()
+	{
+		String type = StringUtils.lowerCase(StringUtils.trimToNull(serverConfigurationService().getString("events.cluster.transport", "none")));
+		ClusterEventTransport transport = null;
+		if ("hazelcast".equals(type))
+		{
+			Object instance = memoryService().unwrap(Object.class);
+			if (instance instanceof HazelcastInstance)
+			{
+				transport = new HazelcastEventTransport((HazelcastInstance) instance,
+						serverConfigurationService().getString("events.cluster.topic", "sakai.events"));
+			}
+			else
+			{
+				M_log.warn("events.cluster.transport=hazelcast needs memory.cachemanager=hazelcast, checking the db for events instead");
+			}
+		}
+		else if ("udp".equals(type))
+		{
+			String bind = serverConfigurationService().getString("events.cluster.udp.bind", null);
+			int port = serverConfigurationService().getInt("events.cluster.udp.port", 7651);
+			if (StringUtils.isBlank(bind))
+			{
+				M_log.warn("events.cluster.udp.bind is not set, listening for events on the loopback address only");
+			}
+			transport = new UdpEventTransport(StringUtils.isBlank(bind) ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+					: new InetSocketAddress(bind, port),
+					UdpEventTransport.parsePeers(serverConfigurationService().getString("events.cluster.udp.peers", "")));
+		}
+		else if (type != null && !"none".equals(type))
+		{
+			M_log.warn("Unknown events.cluster.transport: {}, checking the db for events instead", type);
+		}
+
+		if (transport == null) return;
+
+		try
+		{
+			transport.start(new ClusterEventTransport.Receiver()
+			{
+				public void receive(String message)
+				{
+					receiveClusterEvent(message);
+				}
+			});
+			m_clusterTransport = transport;
+		}
+		catch (Exception e)
+		{
+			M_log.warn("Could not start the cluster event transport, checking the db for events instead: {}", e.getMessage(), e);
+			transport.stop();
+		}
+	}
+
+	/**
+	 * Send an event posted here to the other cluster servers.
+	 * 
+	 * @param event
+	 *        The event.
+	 */
+	protected void publishClusterEvent(Event event)
+	{
+		BaseEvent be = (BaseEvent) event;
+		m_clusterTransport.publish(EventWriteQueue.encodeLine(serverInstance, String.valueOf(be.m_time.getTime()), event.getEvent(),
+				event.getResource(), event.getContext(), event.getModify() ? "m" : "a", event.getSessionId(), event.getUserId()));
+	}
+
+	/**
+	 * Notify observers of an event pushed by another cluster server.
+	 * 
+	 * @param message
+	 *        The message, as formed by publishClusterEvent().
+	 */
+	protected void receiveClusterEvent(String message)
+	{
+		String[] values;
+		try
+		{
+			values = EventWriteQueue.decodeLine(message);
+		}
+		catch (Exception e)
+		{
+			M_log.warn("Could not read cluster event: {}", message);
+			return;
+		}
+
+		// our own events were notified when they were posted
+		if (values.length < 8 || serverInstance.equals(values[0])) return;
+
+		// Note: events from outside the server don't need notification info, as with the events read from the db
+		BaseEvent event = new BaseEvent(0, values[2], values[3], values[4], "m".equals(values[5]), NotificationService.NOTI_NONE,
+				new Date(Long.parseLong(values[1])));
+		event.setSessionId(values[6]);
+		event.setUserId(values[7]);
+		rememberPushed(event);
+
+		try
+		{
+			notifyObservers(event, false);
+		}
+		catch (Exception t)
+		{
+			M_log.warn("receiveClusterEvent, notifyObservers(), event: {}", event.toString(), t);
+		}
+	}
+
+	/**
+	 * Remember an event the transport pushed, so the db check does not notify it again.
+	 * 
+	 * @param event
+	 *        The event.
+	 */
+	protected void rememberPushed(Event event)
+	{
+		synchronized (m_pushedEvents)
+		{
+			// events the db check never matches, such as those pushed before it started, should not pile up
+			if (m_pushedEvents.size() >= MAX_PUSHED_EVENTS)
+			{
+				M_log.debug("Forgetting {} pushed events", m_pushedEvents.size());
+				m_pushedEvents.clear();
+			}
+			m_pushedEvents.merge(event.getEvent() + " " + event.getResource(), 1, Integer::sum);
+		}
+	}
+
+	/**
+	 * Check for an event read from the db among those the transport pushed, forgetting it if found.
+	 * 
+	 * @param event
+	 *        The event.
+	 * @return true if the transport already pushed it.
+	 */
+	protected boolean forgetPushed(Event event)
+	{
+		String key = event.getEvent() + " " + event.getResource();
+		synchronized (m_pushedEvents)
+		{
+			Integer count = m_pushedEvents.get(key);
+			if (count == null) return false;
+			if (count > 1)
+			{
+				m_pushedEvents.put(key, count - 1);
+			}
+			else
+			{
+				m_pushedEvents.remove(key);
+			}
+			return true;
+		}
+	}
+
 	/*************************************************************************************************************************************************
 	 * Event post / flow
 	 ************************************************************************************************************************************************/
@@ -334,13 +593,16 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			M_log.warn("postEvent, notifyObservers(), event: {}", event.toString(), t);
 		}
 
+		// push the event to the other servers, if they are not reading it from the db
+		if (m_clusterTransport != null)
+		{
+			publishClusterEvent(event);
+		}
+
 		// batch the event if we are batching
 		if (m_batchWrite)
 		{
-			synchronized (m_eventQueue)
-			{
-				m_eventQueue.add(event);
-			}
+			m_eventQueue.offer(event);
 		}
 
 		// if not batching, write out the individual event
@@ -474,6 +736,55 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 	}
 
+	/**
+	 * Turn an event into a line for the event queue spill file, holding the values that get written to the db.
+	 * 
+	 * @param event
+	 *        The event.
+	 * @return The line.
+	 */
+	protected String encodeEvent(Event event)
+	{
+		Object fields[] = new Object[6];
+		bindValues(event, fields);
+		return EventWriteQueue.encodeLine(String.valueOf(((Date) fields[0]).getTime()), (String) fields[1], (String) fields[2],
+				(String) fields[3], (String) fields[4], (String) fields[5]);
+	}
+
+	/**
+	 * Read an event back from a line of the event queue spill file.
+	 * 
+	 * @param line
+	 *        The line.
+	 * @return The event, or null if the line is not a spilled event.
+	 */
+	protected Event decodeEvent(String line)
+	{
+		try
+		{
+			String[] values = EventWriteQueue.decodeLine(line);
+			Date date = new Date(Long.parseLong(values[0]));
+			String session = values[3];
+
+			BaseEvent event = new BaseEvent(0, values[1], values[2], values[5], "m".equals(values[4]), NotificationService.NOTI_NONE, date);
+			if (session != null && session.startsWith("~"))
+			{
+				String[] parts = StringUtils.split(session, "~");
+				event.setUserId(parts.length > 1 ? parts[1] : null);
+			}
+			else
+			{
+				event.setSessionId(session);
+			}
+			return event;
+		}
+		catch (Exception e)
+		{
+			M_log.warn("Could not read spilled event: {}", line);
+			return null;
+		}
+	}
+
 	/**
 	 * Form the proper event insert statement for the database technology.
 	 * 
@@ -533,18 +844,6 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// wait for sakai's ComponentManager to finish starting before processing events
 			ComponentManager.waitTillConfigured();
 
-			// write any events we have
-			if (m_batchWrite)
-			{
-				Collection<Event> batchEvents;
-				synchronized (m_eventQueue)
-				{
-					batchEvents = new ArrayList<>(m_eventQueue);
-					m_eventQueue.clear();
-				}
-				writeBatchEvents(batchEvents);
-			}
-
 			M_log.debug("checking for events > {}", m_lastEventSeq);
 			// check the db for new events
 			// We do a left join which gets us records from non-sessions also (SESSION_SERVER may be null when non-session events are returned)
@@ -647,10 +946,18 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 					}
 				});
 			}
-			// for each new event found, notify observers
+			// for each new event found, notify observers, unless the transport already pushed it
+			int missed = 0;
 			for (Event event : events) {
+				if (m_clusterTransport != null) {
+					if (forgetPushed(event)) continue;
+					missed++;
+				}
 				notifyObservers(event, false);
 			}
+			if (missed > 0) {
+				M_log.info("{}caught up on {} events the cluster transport did not deliver", m_logId, missed);
+			}
 		}
 		catch (Throwable t)
 		{
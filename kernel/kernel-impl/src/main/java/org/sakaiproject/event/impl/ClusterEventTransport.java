@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+/**
+ * <p>
+ * ClusterEventTransport pushes the events posted on one server to the other servers in the cluster, so they can notify their observers
+ * without waiting to read the events back from the SAKAI_EVENT table.
+ * </p>
+ * <p>
+ * Messages are single lines of text, so a transport does not need to know anything about events, and may deliver a server's own
+ * messages back to it; the receiver sorts that out.
+ * </p>
+ */
+public interface ClusterEventTransport
+{
+	/**
+	 * Handles the messages that arrive from the cluster.
+	 */
+	interface Receiver
+	{
+		/**
+		 * @param message a message published by some server in the cluster, possibly this one
+		 */
+		void receive(String message);
+	}
+
+	/**
+	 * Join the cluster and start handing arriving messages to the receiver.
+	 * 
+	 * @param receiver
+	 *        The receiver.
+	 * @throws Exception
+	 *         if the transport cannot be started.
+	 */
+	void start(Receiver receiver) throws Exception;
+
+	/**
+	 * Send a message to the other servers. Delivery is best effort; failures are logged rather than thrown.
+	 * 
+	 * @param message
+	 *        The message.
+	 */
+	void publish(String message);
+
+	/**
+	 * Leave the cluster.
+	 */
+	void stop();
+}
@@ -21,7 +21,6 @@
 
 package org.sakaiproject.event.impl;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
 
@@ -183,15 +182,13 @@ public abstract class DbNotificationService extends BaseNotificationService
 			List rv = new Vector();
 			if (function == null) return rv;
 
-			List all = super.getAllResources();
-			for (Iterator it = all.iterator(); it.hasNext();)
-			{
-				Notification notification = (Notification) it.next();
+			super.getAllResources(entity -> {
+				Notification notification = (Notification) entity;
 				if (notification.containsFunction(function))
 				{
 					rv.add(notification);
 				}
-			}
+			});
 
 			return rv;
 		}
@@ -0,0 +1,594 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sakaiproject.event.api.Event;
+
+/**
+ * <p>
+ * EventWriteQueue collects the events posted on this server and hands them to a dedicated writer thread in batches.
+ * </p>
+ * <p>
+ * Posting threads claim a slot in a bounded ring buffer with a single compare-and-set, so they never wait on a monitor. The writer
+ * drains the buffer when it holds a full batch or when the flush interval passes, whichever comes first. When the buffer is full
+ * the overflow policy decides what happens: block the posting thread until there is space, drop the event (counted), or append it
+ * to a spill file on local disk which the writer replays once it has caught up. Spilled events keep their original time but are
+ * written after the events that were already queued.
+ * </p>
+ */
+public class EventWriteQueue implements EventWriteQueueMXBean
+{
+	/** Our logger. */
+	private static Logger M_log = LoggerFactory.getLogger(EventWriteQueue.class);
+
+	/** How long a blocked posting thread waits before trying again. */
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/** What to do with an event when the queue is full. */
+	public enum OverflowPolicy
+	{
+		BLOCK, DROP, SPILL;
+
+		/**
+		 * @param value the configured policy name
+		 * @param defaultPolicy the policy to use if the value is missing or unknown
+		 * @return the policy
+		 */
+		public static OverflowPolicy fromString(String value, OverflowPolicy defaultPolicy)
+		{
+			if (value == null) return defaultPolicy;
+			try
+			{
+				return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+			}
+			catch (IllegalArgumentException e)
+			{
+				M_log.warn("Unknown event queue overflow policy: {}, using {}", value, defaultPolicy);
+				return defaultPolicy;
+			}
+		}
+	}
+
+	/**
+	 * Where batches of events end up, and how an event is kept in the spill file.
+	 */
+	public interface Store
+	{
+		/**
+		 * @param events a batch of events to write
+		 */
+		void write(List<Event> events);
+
+		/**
+		 * @param event the event to spill
+		 * @return the event as a single line
+		 */
+		String encode(Event event);
+
+		/**
+		 * @param line a line from the spill file
+		 * @return the event, or null if the line cannot be read
+		 */
+		Event decode(String line);
+	}
+
+	/** The ring buffer: slots, and the producer and consumer positions, which only ever increase. */
+	private final AtomicReferenceArray<Event> slots;
+	private final int mask;
+	private final AtomicLong producerIndex = new AtomicLong();
+	private final AtomicLong consumerIndex = new AtomicLong();
+
+	private final int batchSize;
+	private final long flushNanos;
+	private final OverflowPolicy overflowPolicy;
+	private final File spillFile;
+	private final Store store;
+
+	private volatile boolean running = false;
+	private volatile Thread writer = null;
+
+	/** Guards the spill file. */
+	private final Object spillLock = new Object();
+	private Writer spillWriter = null;
+	private volatile boolean spillPending = false;
+
+	private final LongAdder offered = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder blocked = new LongAdder();
+	private final LongAdder blockedNanos = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder spilled = new LongAdder();
+	private volatile long lastBatchMillis = 0;
+	private volatile int highWaterMark = 0;
+
+	/**
+	 * @param capacity the most events to hold, rounded up to a power of two
+	 * @param batchSize the most events to write at once; reaching it wakes the writer
+	 * @param flushMillis the longest an event waits before the writer looks at the queue
+	 * @param overflowPolicy what to do when the queue is full
+	 * @param spillFile where events go under the spill policy, may be null for the other policies
+	 * @param store writes the batches
+	 */
+	public EventWriteQueue(int capacity, int batchSize, long flushMillis, OverflowPolicy overflowPolicy, File spillFile, Store store)
+	{
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+		this.batchSize = Math.max(1, Math.min(batchSize, size));
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushMillis));
+		this.overflowPolicy = (overflowPolicy == OverflowPolicy.SPILL && spillFile == null) ? OverflowPolicy.DROP : overflowPolicy;
+		this.spillFile = spillFile;
+		this.store = store;
+	}
+
+	/**
+	 * Start the writer thread, replaying anything left in the spill file by a previous run.
+	 */
+	public void start()
+	{
+		if (spillFile != null && (spillFile.exists() || replayFile().exists()))
+		{
+			spillPending = true;
+		}
+
+		running = true;
+		Thread thread = new Thread(this::runWriter, "EventWriteQueue");
+		thread.setDaemon(true);
+		writer = thread;
+		thread.start();
+	}
+
+	/**
+	 * Stop the writer thread once it has written everything that is queued.
+	 * 
+	 * @param timeoutMillis how long to wait for the writer to finish
+	 */
+	public void stop(long timeoutMillis)
+	{
+		running = false;
+		Thread thread = writer;
+		if (thread != null)
+		{
+			LockSupport.unpark(thread);
+			try
+			{
+				thread.join(timeoutMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			if (thread.isAlive())
+			{
+				M_log.warn("Event writer did not finish within {}ms, {} events not written", timeoutMillis, getQueueSize());
+			}
+		}
+		closeSpill();
+	}
+
+	/**
+	 * Queue an event for writing. Never waits unless the queue is full and the policy is to block.
+	 * 
+	 * @param event the event
+	 */
+	public void offer(Event event)
+	{
+		offered.increment();
+		if (tryOffer(event)) return;
+
+		switch (overflowPolicy)
+		{
+			case BLOCK:
+				block(event);
+				break;
+			case SPILL:
+				spill(event);
+				break;
+			default:
+				drop();
+		}
+	}
+
+	private boolean tryOffer(Event event)
+	{
+		while (true)
+		{
+			long p = producerIndex.get();
+			if (p - consumerIndex.get() >= slots.length()) return false;
+			if (producerIndex.compareAndSet(p, p + 1))
+			{
+				slots.lazySet((int) p & mask, event);
+
+				// wake the writer once a full batch is waiting, otherwise it comes round on the flush interval
+				if (p + 1 - consumerIndex.get() == batchSize) wakeWriter();
+				return true;
+			}
+		}
+	}
+
+	private void block(Event event)
+	{
+		blocked.increment();
+		long start = System.nanoTime();
+		while (!tryOffer(event))
+		{
+			if (!running)
+			{
+				drop();
+				break;
+			}
+			wakeWriter();
+			LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+		}
+		blockedNanos.add(System.nanoTime() - start);
+	}
+
+	private void drop()
+	{
+		dropped.increment();
+		long count = dropped.sum();
+		// log the first drop and then less and less often
+		if (Long.bitCount(count) == 1)
+		{
+			M_log.warn("Event queue is full, {} events dropped so far", count);
+		}
+	}
+
+	private void spill(Event event)
+	{
+		synchronized (spillLock)
+		{
+			try
+			{
+				if (spillWriter == null)
+				{
+					spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), StandardCharsets.UTF_8));
+					M_log.warn("Event queue is full, spilling events to {}", spillFile);
+				}
+				spillWriter.write(store.encode(event));
+				spillWriter.write('\n');
+				spillWriter.flush();
+				spilled.increment();
+				spillPending = true;
+				return;
+			}
+			catch (IOException e)
+			{
+				M_log.warn("Could not spill event to {}: {}", spillFile, e.getMessage());
+			}
+		}
+		drop();
+	}
+
+	private void wakeWriter()
+	{
+		Thread thread = writer;
+		if (thread != null) LockSupport.unpark(thread);
+	}
+
+	private void runWriter()
+	{
+		List<Event> batch = new ArrayList<>(batchSize);
+		while (running)
+		{
+			try
+			{
+				// keep going while full batches are waiting
+				if (writeBatch(batch) == batchSize) continue;
+
+				if (spillPending && getQueueSize() == 0)
+				{
+					replaySpill(batch);
+				}
+			}
+			catch (Throwable t)
+			{
+				M_log.warn("Event writer: {}", t.getMessage(), t);
+			}
+			LockSupport.parkNanos(this, flushNanos);
+		}
+
+		// write whatever is left before stopping
+		try
+		{
+			while (writeBatch(batch) > 0)
+			{
+			}
+			if (spillPending)
+			{
+				replaySpill(batch);
+			}
+		}
+		catch (Throwable t)
+		{
+			M_log.warn("Event writer: {}", t.getMessage(), t);
+		}
+	}
+
+	/**
+	 * Drain up to one batch and write it. Only called from the writer thread.
+	 */
+	private int writeBatch(List<Event> batch)
+	{
+		int waiting = getQueueSize();
+		if (waiting > highWaterMark) highWaterMark = waiting;
+
+		batch.clear();
+		long c = consumerIndex.get();
+		while (batch.size() < batchSize)
+		{
+			int i = (int) c & mask;
+			Event event = slots.get(i);
+			// an empty slot is either the end of the queue or a post still being published, pick it up next time
+			if (event == null) break;
+			slots.lazySet(i, null);
+			batch.add(event);
+			c++;
+		}
+		consumerIndex.lazySet(c);
+
+		if (!batch.isEmpty()) write(batch);
+		return batch.size();
+	}
+
+	private void write(List<Event> batch)
+	{
+		long start = System.currentTimeMillis();
+		store.write(batch);
+		lastBatchMillis = System.currentTimeMillis() - start;
+		batches.increment();
+		written.add(batch.size());
+	}
+
+	/**
+	 * Write the events in the spill file, then remove it. Only called from the writer thread.
+	 */
+	private void replaySpill(List<Event> batch) throws IOException
+	{
+		File replay = replayFile();
+		synchronized (spillLock)
+		{
+			closeSpill();
+			spillPending = false;
+			// a replay file is left over from a run that stopped part way through, finish it before taking the spill file
+			if (!replay.exists())
+			{
+				if (!spillFile.exists()) return;
+				if (!spillFile.renameTo(replay))
+				{
+					M_log.warn("Could not move {} to {} for replay", spillFile, replay);
+					return;
+				}
+			}
+			else if (spillFile.exists())
+			{
+				spillPending = true;
+			}
+		}
+
+		int count = 0;
+		batch.clear();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(replay), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				Event event = store.decode(line);
+				if (event == null) continue;
+				batch.add(event);
+				if (batch.size() == batchSize)
+				{
+					write(batch);
+					count += batch.size();
+					batch.clear();
+				}
+			}
+		}
+		if (!batch.isEmpty())
+		{
+			write(batch);
+			count += batch.size();
+			batch.clear();
+		}
+
+		if (!replay.delete())
+		{
+			M_log.warn("Could not remove {} after replay, its events may be written again", replay);
+		}
+		M_log.info("Wrote {} spilled events from {}", count, spillFile);
+	}
+
+	private File replayFile()
+	{
+		return new File(spillFile.getPath() + ".replay");
+	}
+
+	private void closeSpill()
+	{
+		synchronized (spillLock)
+		{
+			if (spillWriter != null)
+			{
+				try
+				{
+					spillWriter.close();
+				}
+				catch (IOException e)
+				{
+					M_log.warn("Could not close {}: {}", spillFile, e.getMessage());
+				}
+				spillWriter = null;
+			}
+		}
+	}
+
+	/**
+	 * Join values into one spill file line, escaping tabs, line breaks and backslashes. Nulls are kept distinct from empty strings.
+	 * 
+	 * @param values the values
+	 * @return the line
+	 */
+	public static String encodeLine(String... values)
+	{
+		StringBuilder buf = new StringBuilder();
+		for (int v = 0; v < values.length; v++)
+		{
+			if (v > 0) buf.append('\t');
+			String value = values[v];
+			if (value == null)
+			{
+				buf.append("\\0");
+				continue;
+			}
+			for (int i = 0; i < value.length(); i++)
+			{
+				char ch = value.charAt(i);
+				switch (ch)
+				{
+					case '\\': buf.append("\\\\"); break;
+					case '\t': buf.append("\\t"); break;
+					case '\n': buf.append("\\n"); break;
+					case '\r': buf.append("\\r"); break;
+					default: buf.append(ch);
+				}
+			}
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Split a line made by encodeLine back into its values.
+	 * 
+	 * @param line the line
+	 * @return the values
+	 */
+	public static String[] decodeLine(String line)
+	{
+		List<String> values = new ArrayList<>();
+		StringBuilder buf = new StringBuilder();
+		boolean isNull = false;
+		for (int i = 0; i < line.length(); i++)
+		{
+			char ch = line.charAt(i);
+			if (ch == '\t')
+			{
+				values.add(isNull ? null : buf.toString());
+				buf.setLength(0);
+				isNull = false;
+			}
+			else if (ch == '\\' && i + 1 < line.length())
+			{
+				char next = line.charAt(++i);
+				switch (next)
+				{
+					case 't': buf.append('\t'); break;
+					case 'n': buf.append('\n'); break;
+					case 'r': buf.append('\r'); break;
+					case '0': isNull = true; break;
+					default: buf.append(next);
+				}
+			}
+			else
+			{
+				buf.append(ch);
+			}
+		}
+		values.add(isNull ? null : buf.toString());
+		return values.toArray(new String[values.size()]);
+	}
+
+	public String getOverflowPolicy()
+	{
+		return overflowPolicy.name().toLowerCase(Locale.ENGLISH);
+	}
+
+	public int getCapacity()
+	{
+		return slots.length();
+	}
+
+	public int getQueueSize()
+	{
+		return (int) Math.max(0, producerIndex.get() - consumerIndex.get());
+	}
+
+	public int getHighWaterMark()
+	{
+		return highWaterMark;
+	}
+
+	public long getEventsOffered()
+	{
+		return offered.sum();
+	}
+
+	public long getEventsWritten()
+	{
+		return written.sum();
+	}
+
+	public long getBatchesWritten()
+	{
+		return batches.sum();
+	}
+
+	public long getLastBatchMillis()
+	{
+		return lastBatchMillis;
+	}
+
+	public long getEventsBlocked()
+	{
+		return blocked.sum();
+	}
+
+	public long getBlockedMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(blockedNanos.sum());
+	}
+
+	public long getEventsDropped()
+	{
+		return dropped.sum();
+	}
+
+	public long getEventsSpilled()
+	{
+		return spilled.sum();
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+/**
+ * Backpressure metrics for the queue of events waiting to be written to the database, exported over JMX.
+ */
+public interface EventWriteQueueMXBean
+{
+	/** @return the overflow policy in use: block, drop or spill */
+	String getOverflowPolicy();
+
+	/** @return how many events the queue holds */
+	int getCapacity();
+
+	/** @return how many events are waiting to be written */
+	int getQueueSize();
+
+	/** @return the most events that have been waiting at once */
+	int getHighWaterMark();
+
+	/** @return events posted to the queue */
+	long getEventsOffered();
+
+	/** @return events written to the database */
+	long getEventsWritten();
+
+	/** @return batches written to the database */
+	long getBatchesWritten();
+
+	/** @return how long the last batch took to write, in milliseconds */
+	long getLastBatchMillis();
+
+	/** @return posts that found the queue full and had to wait (block policy) */
+	long getEventsBlocked();
+
+	/** @return total time posting threads have waited for space, in milliseconds (block policy) */
+	long getBlockedMillis();
+
+	/** @return events lost because the queue was full (drop policy, or a failed spill) */
+	long getEventsDropped();
+
+	/** @return events written to the spill file because the queue was full (spill policy) */
+	long getEventsSpilled();
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * HazelcastEventTransport publishes event messages on a topic of the Hazelcast instance that the MemoryService already runs when
+ * memory.cachemanager=hazelcast.
+ * </p>
+ */
+public class HazelcastEventTransport implements ClusterEventTransport
+{
+	/** Our logger. */
+	private static Logger M_log = LoggerFactory.getLogger(HazelcastEventTransport.class);
+
+	private final HazelcastInstance hcInstance;
+	private final String topicName;
+
+	private ITopic<String> topic = null;
+	private String listenerId = null;
+
+	/**
+	 * @param hcInstance the running Hazelcast instance
+	 * @param topicName the name of the topic shared by the cluster
+	 */
+	public HazelcastEventTransport(HazelcastInstance hcInstance, String topicName)
+	{
+		this.hcInstance = hcInstance;
+		this.topicName = topicName;
+	}
+
+	public void start(final Receiver receiver)
+	{
+		topic = hcInstance.getTopic(topicName);
+		listenerId = topic.addMessageListener(new MessageListener<String>()
+		{
+			public void onMessage(Message<String> message)
+			{
+				receiver.receive(message.getMessageObject());
+			}
+		});
+		M_log.info("publishing events on hazelcast topic: {}", topicName);
+	}
+
+	public void publish(String message)
+	{
+		try
+		{
+			topic.publish(message);
+		}
+		catch (Exception e)
+		{
+			M_log.warn("Could not publish event to topic {}: {}", topicName, e.getMessage());
+		}
+	}
+
+	public void stop()
+	{
+		if (topic != null && listenerId != null)
+		{
+			try
+			{
+				topic.removeMessageListener(listenerId);
+			}
+			catch (Exception e)
+			{
+				M_log.debug("Could not remove listener from topic {}: {}", topicName, e.getMessage());
+			}
+		}
+		topic = null;
+		listenerId = null;
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * UdpEventTransport sends each event message as a datagram to a fixed list of peers, and listens for theirs on a local port. It
+ * needs no other infrastructure, and several servers on one machine can talk to each other by listening on different ports.
+ * </p>
+ * <p>
+ * Delivery is not guaranteed: a datagram that is lost or arrives while a server is down is simply not seen there.
+ * </p>
+ * <p>
+ * Only datagrams sent from the address of one of the peers are passed on; anything else reaching the port is dropped, as it could
+ * otherwise post events that invalidate caches or change what the observers believe about users and sites.
+ * </p>
+ */
+public class UdpEventTransport implements ClusterEventTransport
+{
+	/** Our logger. */
+	private static Logger M_log = LoggerFactory.getLogger(UdpEventTransport.class);
+
+	/** The largest payload a UDP datagram can carry. */
+	private static final int MAX_DATAGRAM = 65507;
+
+	private final InetSocketAddress bindAddress;
+	private final List<InetSocketAddress> peers;
+	private final Set<InetAddress> peerAddresses = new HashSet<>();
+
+	private DatagramSocket socket = null;
+	private Thread listener = null;
+
+	/**
+	 * @param bindAddress the local address and port to listen on, port 0 picks a free one
+	 * @param peers the servers to send to
+	 */
+	public UdpEventTransport(InetSocketAddress bindAddress, List<InetSocketAddress> peers)
+	{
+		this.bindAddress = bindAddress;
+		this.peers = new ArrayList<>(peers);
+		for (InetSocketAddress peer : peers)
+		{
+			if (peer.isUnresolved())
+			{
+				M_log.warn("Cannot resolve event peer {}, datagrams from it will be dropped", peer.getHostString());
+			}
+			else
+			{
+				peerAddresses.add(peer.getAddress());
+			}
+		}
+	}
+
+	/**
+	 * @param address
+	 *        Where a datagram came from.
+	 * @return true if it is the address of one of the peers.
+	 */
+	boolean isPeer(InetAddress address)
+	{
+		return peerAddresses.contains(address);
+	}
+
+	/**
+	 * Read a peer list.
+	 * 
+	 * @param value
+	 *        Comma separated host:port pairs.
+	 * @return The peers; entries that cannot be read are logged and skipped.
+	 */
+	public static List<InetSocketAddress> parsePeers(String value)
+	{
+		List<InetSocketAddress> peers = new ArrayList<>();
+		for (String peer : StringUtils.split(StringUtils.trimToEmpty(value), ", "))
+		{
+			int colon = peer.lastIndexOf(':');
+			try
+			{
+				peers.add(new InetSocketAddress(peer.substring(0, colon), Integer.parseInt(peer.substring(colon + 1))));
+			}
+			catch (Exception e)
+			{
+				M_log.warn("Ignoring event peer that is not host:port: {}", peer);
+			}
+		}
+		return peers;
+	}
+
+	public void start(final Receiver receiver) throws SocketException
+	{
+		socket = new DatagramSocket(bindAddress);
+		final DatagramSocket listening = socket;
+		listener = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				byte[] buffer = new byte[MAX_DATAGRAM];
+				while (!listening.isClosed())
+				{
+					DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+					try
+					{
+						listening.receive(packet);
+						if (!isPeer(packet.getAddress()))
+						{
+							M_log.debug("Dropping event datagram from {}, which is not a peer", packet.getAddress());
+							continue;
+						}
+						receiver.receive(new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8));
+					}
+					catch (IOException e)
+					{
+						if (!listening.isClosed())
+						{
+							M_log.warn("Could not receive event datagram: {}", e.getMessage());
+						}
+					}
+					catch (Exception e)
+					{
+						M_log.warn("Could not handle event datagram: {}", e.getMessage(), e);
+					}
+				}
+			}
+		}, "UdpEventTransport");
+		listener.setDaemon(true);
+		listener.start();
+		M_log.info("listening for events on {}, sending to {}", socket.getLocalSocketAddress(), peers);
+	}
+
+	public void publish(String message)
+	{
+		byte[] data = message.getBytes(StandardCharsets.UTF_8);
+		if (data.length > MAX_DATAGRAM)
+		{
+			M_log.warn("Event message of {} bytes is too large to send", data.length);
+			return;
+		}
+
+		for (InetSocketAddress peer : peers)
+		{
+			try
+			{
+				socket.send(new DatagramPacket(data, data.length, peer));
+			}
+			catch (Exception e)
+			{
+				M_log.warn("Could not send event to {}: {}", peer, e.getMessage());
+			}
+		}
+	}
+
+	public void stop()
+	{
+		if (socket != null)
+		{
+			socket.close();
+		}
+		if (listener != null)
+		{
+			try
+			{
+				listener.join(5000);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		listener = null;
+	}
+
+	/**
+	 * @return The port being listened on, or -1 if not started.
+	 */
+	public int getLocalPort()
+	{
+		return socket == null ? -1 : socket.getLocalPort();
+	}
+}
@@ -134,6 +134,9 @@ public class BaseSite implements Site
 	/** The properties. */
 	protected ResourcePropertiesEdit m_properties = null;
 
+	/** The sites read in the same list as this one, whose lazy properties are read together. */
+	protected transient Collection<BaseSite> m_propertiesBatch = null;
+
 	/** The list of site pages for this site. */
 	protected ResourceVector m_pages = null;
 
@@ -26,6 +26,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -1136,7 +1137,7 @@ public abstract class DbSiteService extends BaseSiteService
 				if (i.next() == null) i.remove();
 			}
 
-			return new ArrayList<>(siteMap.values());
+			return batchLazyProperties(new ArrayList<>(siteMap.values()));
 		}
 
 		/**
@@ -1181,7 +1182,7 @@ public abstract class DbSiteService extends BaseSiteService
 			
 			rv = getSelectedResources(where, order, fields, null);
 
-			return rv;
+			return batchLazyProperties(rv);
 			
 		}
 		
@@ -2015,7 +2016,61 @@ public abstract class DbSiteService extends BaseSiteService
 		 */
 		public void readSiteProperties(Site site, ResourcePropertiesEdit props)
 		{
-			super.readProperties(site, props);
+			Collection<BaseSite> batch = (site instanceof BaseSite) ? ((BaseSite) site).m_propertiesBatch : null;
+			if (batch == null)
+			{
+				super.readProperties(site, props);
+				return;
+			}
+
+			// read the properties of the other sites in the batch that are still lazy along with this one
+			Map<String, ResourcePropertiesEdit> propsById = new HashMap<String, ResourcePropertiesEdit>();
+			propsById.put(site.getId(), props);
+			for (BaseSite other : batch)
+			{
+				if (other.m_propertiesBatch != batch) continue;
+				other.m_propertiesBatch = null;
+
+				BaseResourcePropertiesEdit otherProps = (BaseResourcePropertiesEdit) other.m_properties;
+				if ((other.getId() != null) && otherProps.isLazy() && !propsById.containsKey(other.getId()))
+				{
+					otherProps.setLazy(false);
+					propsById.put(other.getId(), otherProps);
+				}
+			}
+			super.readProperties(propsById);
+		}
+
+		/**
+		 * Link the sites read in one list so that the first to have its lazy properties resolved reads them for all the
+		 * others still lazy, with a few IN clause queries rather than a query per site.
+		 *
+		 * @param sites
+		 *        The sites just read.
+		 * @return The same list.
+		 */
+		protected List batchLazyProperties(List sites)
+		{
+			if ((sites == null) || (sites.size() < 2)) return sites;
+
+			List<BaseSite> batch = new ArrayList<BaseSite>(sites.size());
+			for (Object site : sites)
+			{
+				if ((site instanceof BaseSite) && ((BaseResourcePropertiesEdit) ((BaseSite) site).m_properties).isLazy())
+				{
+					batch.add((BaseSite) site);
+				}
+			}
+
+			if (batch.size() > 1)
+			{
+				for (BaseSite site : batch)
+				{
+					site.m_propertiesBatch = batch;
+				}
+			}
+
+			return sites;
 		}
 
 		/**
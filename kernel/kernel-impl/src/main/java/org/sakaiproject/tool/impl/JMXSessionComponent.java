@@ -94,6 +94,26 @@ public class JMXSessionComponent {
         return ids;
     }
 
+    @ManagedAttribute(description="Sessions checked for expiration by the maintenance thread", currencyTimeLimit=0)
+    public long getExpiryChecksCount() {
+        return sessionComponent != null ? sessionComponent.getExpiryChecksCount() : 0;
+    }
+
+    @ManagedAttribute(description="Sessions invalidated by the maintenance thread", currencyTimeLimit=0)
+    public long getExpiredSessionsCount() {
+        return sessionComponent != null ? sessionComponent.getExpiredSessionsCount() : 0;
+    }
+
+    @ManagedAttribute(description="Sessions waiting in the expiration index", currencyTimeLimit=0)
+    public int getExpiryScheduledCount() {
+        return sessionComponent != null ? sessionComponent.getExpiryScheduledCount() : 0;
+    }
+
+    @ManagedAttribute(description="Time taken by the last expiration check (ms)", currencyTimeLimit=0)
+    public long getExpiryLastRunTime() {
+        return sessionComponent != null ? sessionComponent.getExpiryLastRunTime() : 0;
+    }
+
     @ManagedOperation(description="Sessions active in the past N seconds")
     public int getActive(int seconds) {
         return sessionManager.getActiveUserCount(seconds);
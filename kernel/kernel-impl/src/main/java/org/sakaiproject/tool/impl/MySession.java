@@ -494,7 +494,13 @@ public class MySession implements Session, HttpSession, Serializable
 
 	protected void resetExpirationTimeSuggestion()
 	{
-		expirationTimeSuggestion.setValue(System.currentTimeMillis() + getMaxInactiveIntervalMillis());
+		long expiresAt = System.currentTimeMillis() + getMaxInactiveIntervalMillis();
+		expirationTimeSuggestion.setValue(expiresAt);
+		// keep the session manager's expiration index in step
+		if (sessionStore instanceof SessionComponent)
+		{
+			((SessionComponent) sessionStore).scheduleExpiration(m_id, expiresAt);
+		}
 	}
 
 	protected long getMaxInactiveIntervalMillis()
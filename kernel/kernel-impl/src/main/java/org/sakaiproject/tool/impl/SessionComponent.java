@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -81,6 +82,11 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	protected Map<String,MutableLong> expirationTimeSuggestionMap = new ConcurrentHashMap<String, MutableLong>();
 	/** The maintenance. */
 	protected Maintenance m_maintenance = null;
+	/** Expiry statistics: sessions checked and sessions invalidated by the maintenance thread. */
+	protected AtomicLong m_expiryChecks = new AtomicLong();
+	protected AtomicLong m_expiredSessions = new AtomicLong();
+	/** Expiry statistics: how long the last maintenance run took (ms). */
+	protected volatile long m_lastExpiryRunTime = 0;
 	/** The set of tool ids that represent tools that can be clustered */
 	protected Set<String> clusterableTools = new HashSet<String>();
 	/** Salt for predictable session IDs */
@@ -286,6 +292,62 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	public void remove(String sessionId) {
 		m_sessions.remove(sessionId);
 		expirationTimeSuggestionMap.remove(sessionId);
+		Maintenance maintenance = m_maintenance;
+		if (maintenance != null)
+		{
+			maintenance.m_expiry.cancel(sessionId);
+		}
+	}
+
+	/**
+	 * Index a stored session by the time it may expire, so the maintenance thread only looks at it once that time has passed.
+	 * Sessions which are not stored (only bound to the current thread) are ignored.
+	 *
+	 * @param sessionId
+	 *        The session id.
+	 * @param expiresAt
+	 *        The expiration time suggestion for the session (ms).
+	 */
+	protected void scheduleExpiration(String sessionId, long expiresAt)
+	{
+		Maintenance maintenance = m_maintenance;
+		if (maintenance != null && expirationTimeSuggestionMap.containsKey(sessionId))
+		{
+			maintenance.m_expiry.schedule(sessionId, expiresAt);
+		}
+	}
+
+	/**
+	 * @return the number of sessions checked for expiration by the maintenance thread.
+	 */
+	public long getExpiryChecksCount()
+	{
+		return m_expiryChecks.get();
+	}
+
+	/**
+	 * @return the number of sessions invalidated by the maintenance thread.
+	 */
+	public long getExpiredSessionsCount()
+	{
+		return m_expiredSessions.get();
+	}
+
+	/**
+	 * @return the number of sessions waiting in the expiration index.
+	 */
+	public int getExpiryScheduledCount()
+	{
+		Maintenance maintenance = m_maintenance;
+		return (maintenance == null) ? 0 : maintenance.m_expiry.size();
+	}
+
+	/**
+	 * @return how long the last maintenance run took (ms).
+	 */
+	public long getExpiryLastRunTime()
+	{
+		return m_lastExpiryRunTime;
 	}
 
 	/**
@@ -376,6 +438,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 
 		// Place an entry in the expirationTimeSuggestionMap that corresponds to the entry in m_sessions
 		expirationTimeSuggestionMap.put(id, currentTime);
+		scheduleExpiration(id, currentTime.longValue());
 
 		// check for id conflict
 		if (old != null)
@@ -520,11 +583,18 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		/** Signal to the timeout checker to stop. */
 		protected boolean m_maintenanceCheckerStop = false;
 
+		/** The sessions indexed by when they may expire, with one slot per maintenance cycle. */
+		protected SessionExpiryWheel m_expiry;
+
 		/**
 		 * Construct.
 		 */
 		public Maintenance()
 		{
+			long tick = Math.max(1, m_checkEvery) * 1000L;
+			// enough slots that sessions with the default inactive period are found in their first round
+			int slots = (int) Math.min(4096, Math.max(64, (2L * m_defaultInactiveInterval) / Math.max(1, m_checkEvery) + 1));
+			m_expiry = new SessionExpiryWheel(tick, slots, System.currentTimeMillis());
 		}
 
 		/**
@@ -562,7 +632,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		}
 
 		/**
-		 * Run the maintenance thread. Every m_checkEvery seconds, check for expired sessions.
+		 * Run the maintenance thread. Every m_checkEvery seconds, check the sessions which may have expired since the last run.
 		 */
 		public void run()
 		{
@@ -570,28 +640,33 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 			// startup, wait here for a complete component manager
 			ComponentManager.waitTillConfigured();
 
+			// index any sessions which were started before this thread, later ones are indexed as they start
+			try
+			{
+				for (Map.Entry<String, MutableLong> entry: expirationTimeSuggestionMap.entrySet()) {
+					m_expiry.schedule(entry.getKey(), entry.getValue().longValue());
+				}
+			}
+			catch (Exception e)
+			{
+				M_log.warn("run(): exception indexing sessions: " + e);
+			}
+
 			while (!m_maintenanceCheckerStop)
 			{
+				long start = System.currentTimeMillis();
 				try
 				{
-					for (Map.Entry<String, MutableLong> entry: expirationTimeSuggestionMap.entrySet()) {
-						if (entry.getValue().longValue() < System.currentTimeMillis()) {
-							MySession s = (MySession)m_sessions.get(entry.getKey());
-							if (M_log.isDebugEnabled()) M_log.debug("checking session " + s.getId());
-							if (s.isInactive())
-							{
-								if (M_log.isDebugEnabled()) M_log.debug("invalidating session " + s.getId());
-								synchronized(s) {
-									s.invalidate();
-								}
-							}
-						}
+					for (String id : m_expiry.advance(start))
+					{
+						checkExpiration(id);
 					}
 				}
 				catch (Exception e)
 				{
 					M_log.warn("run(): exception: " + e);
 				}
+				m_lastExpiryRunTime = System.currentTimeMillis() - start;
 
 				// cycle every REFRESH seconds
 				if (!m_maintenanceCheckerStop)
@@ -606,6 +681,47 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 				}
 			}
 		}
+
+		/**
+		 * Invalidate a session which has come due in the expiration index if it is inactive, otherwise index it again.
+		 *
+		 * @param id
+		 *        The session id.
+		 */
+		protected void checkExpiration(String id)
+		{
+			MutableLong suggestion = expirationTimeSuggestionMap.get(id);
+			MySession s = (MySession) m_sessions.get(id);
+			if (suggestion == null || s == null) return;
+
+			m_expiryChecks.incrementAndGet();
+			long now = System.currentTimeMillis();
+			long expiresAt = suggestion.longValue();
+			if (expiresAt < now)
+			{
+				if (M_log.isDebugEnabled()) M_log.debug("checking session " + s.getId());
+				if (s.isInactive())
+				{
+					if (M_log.isDebugEnabled()) M_log.debug("invalidating session " + s.getId());
+					synchronized(s) {
+						s.invalidate();
+					}
+					m_expiredSessions.incrementAndGet();
+					return;
+				}
+
+				// still active, or it never expires - look again once it could have expired
+				if (s.getMaxInactiveInterval() > 0)
+				{
+					expiresAt = s.getLastAccessedTime() + s.getMaxInactiveInterval() * 1000L;
+				}
+				else
+				{
+					expiresAt = now + m_defaultInactiveInterval * 1000L;
+				}
+			}
+			m_expiry.schedule(id, Math.max(expiresAt, now + 1));
+		}
 	}
 
 }
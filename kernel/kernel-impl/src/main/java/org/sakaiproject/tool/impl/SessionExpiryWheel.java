@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>
+ * A hashed timing wheel of session ids, keyed by the time each session may expire. Each slot covers one tick (the
+ * maintenance period), so the maintenance thread only has to look at the sessions which could have expired since its
+ * last run rather than every session on the server.
+ * </p>
+ * <p>
+ * Ids scheduled more than one rotation ahead stay in their slot until their round comes up. Rescheduling an id leaves
+ * nothing behind, any entry in a slot which does not match the tick currently recorded for the id is stale and is dropped
+ * when the slot is processed.
+ * </p>
+ */
+class SessionExpiryWheel
+{
+	/** The time covered by each slot (ms). */
+	private final long tickMillis;
+
+	/** The slots, each holding the ids which are due in a tick that maps to the slot. */
+	private final List<Set<String>> slots;
+
+	/** The tick each id is currently scheduled for. */
+	private final Map<String, Long> scheduled = new ConcurrentHashMap<String, Long>();
+
+	/** Ids which were scheduled for a tick that has already been processed. */
+	private final Queue<String> overdue = new ConcurrentLinkedQueue<String>();
+
+	/** The last tick which has been (or is being) processed. */
+	private volatile long processedTick;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param tickMillis
+	 *        The time covered by each slot (ms).
+	 * @param size
+	 *        The number of slots.
+	 * @param now
+	 *        The current time (ms), nothing earlier than this will be processed.
+	 */
+	SessionExpiryWheel(long tickMillis, int size, long now)
+	{
+		this.tickMillis = Math.max(1L, tickMillis);
+		this.slots = new ArrayList<Set<String>>(size);
+		for (int i = 0; i < size; i++)
+		{
+			this.slots.add(ConcurrentHashMap.<String> newKeySet());
+		}
+		this.processedTick = now / this.tickMillis;
+	}
+
+	/**
+	 * Schedule (or reschedule) a session to be checked once the given time has passed.
+	 * 
+	 * @param id
+	 *        The session id.
+	 * @param expiresAt
+	 *        The earliest time the session may expire (ms).
+	 */
+	void schedule(String id, long expiresAt)
+	{
+		// the session is looked at in the first run within its tick, which may be a little early (the caller checks)
+		long tick = expiresAt / tickMillis;
+		Long previous = scheduled.put(id, tick);
+		if (previous != null)
+		{
+			if (previous.longValue() == tick) return;
+			slot(previous.longValue()).remove(id);
+		}
+
+		if (tick > processedTick)
+		{
+			slot(tick).add(id);
+		}
+
+		// the slot may have been processed while we were adding to it
+		if (tick <= processedTick)
+		{
+			overdue.add(id);
+		}
+	}
+
+	/**
+	 * Stop tracking a session.
+	 * 
+	 * @param id
+	 *        The session id.
+	 */
+	void cancel(String id)
+	{
+		Long tick = scheduled.remove(id);
+		if (tick != null)
+		{
+			slot(tick.longValue()).remove(id);
+		}
+	}
+
+	/**
+	 * Move the wheel forward to the current time, collecting the ids which are now due. Due ids are no longer tracked, they
+	 * need to be scheduled again if the session turns out to still be active. Only one thread should advance the wheel.
+	 * 
+	 * @param now
+	 *        The current time (ms).
+	 * @return The ids of the sessions which may have expired.
+	 */
+	List<String> advance(long now)
+	{
+		long nowTick = now / tickMillis;
+		List<String> due = new ArrayList<String>();
+
+		String id;
+		while ((id = overdue.poll()) != null)
+		{
+			Long tick = scheduled.get(id);
+			if (tick != null && tick.longValue() <= nowTick && scheduled.remove(id, tick))
+			{
+				slot(tick.longValue()).remove(id);
+				due.add(id);
+			}
+		}
+
+		long from = processedTick + 1;
+		if (nowTick - from >= slots.size())
+		{
+			// more than a full rotation behind, every slot only needs to be visited once
+			from = nowTick - slots.size() + 1;
+		}
+		for (long t = from; t <= nowTick; t++)
+		{
+			// mark the tick first so anything scheduled into it from now on goes to the overdue queue
+			processedTick = t;
+			int index = index(t);
+			for (Iterator<String> i = slots.get(index).iterator(); i.hasNext();)
+			{
+				id = i.next();
+				Long tick = scheduled.get(id);
+				if (tick == null || index(tick.longValue()) != index)
+				{
+					// stale entry, the id was cancelled or rescheduled
+					i.remove();
+				}
+				else if (tick.longValue() <= nowTick)
+				{
+					i.remove();
+					if (scheduled.remove(id, tick))
+					{
+						due.add(id);
+					}
+				}
+			}
+		}
+
+		return due;
+	}
+
+	/**
+	 * @return The number of sessions currently scheduled.
+	 */
+	int size()
+	{
+		return scheduled.size();
+	}
+
+	private Set<String> slot(long tick)
+	{
+		return slots.get(index(tick));
+	}
+
+	private int index(long tick)
+	{
+		return (int) (tick % slots.size());
+	}
+}
@@ -82,6 +82,9 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 
 	/** A cache of users */
 	protected Cache<String, UserEdit> m_callCache = null;
+
+	/** EIDs the provider recently failed to find, null when not caching provider misses. */
+	protected ProviderMissCache m_providerMissCache = null;
 	
 	/** Optional service to provide site-specific aliases for a user's display ID and display name. */
 	protected ContextualUserDisplayService m_contextualUserDisplayService = null;
@@ -548,6 +551,15 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
                 eventTrackingService().addObserver(m_userCacheObserver);
             }
 
+			// remember provider misses for a short time, <= 0 for either setting turns this off
+			int missCacheSize = serverConfigurationService().getInt("user.provider.missCache.size", 10000);
+			int missCacheSeconds = serverConfigurationService().getInt("user.provider.missCache.ttl", 60);
+			if (missCacheSize > 0 && missCacheSeconds > 0)
+			{
+				m_providerMissCache = new ProviderMissCache(missCacheSize, missCacheSeconds * 1000L);
+				M_log.info("init(): caching up to " + missCacheSize + " provider misses for " + missCacheSeconds + " seconds");
+			}
+
 			// register as an entity producer
 			entityManager().registerEntityProducer(this, REFERENCE_ROOT);
 
@@ -640,6 +652,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		m_passwordPolicyProvider = null;
         m_callCache.close();
         m_userCacheObserver = null;
+		m_providerMissCache = null;
 
 		M_log.info("destroy()");
 	}
@@ -694,6 +707,9 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 				//theres no point in asking a provider if we have no eid
 				return null;
 			}
+
+			// or if it told us a moment ago that it doesn't know this user
+			if (isProviderMiss(eid)) return null;
 			
 			// make a new edit to hold the provider's info, hoping it will be filled in
 			// Since the provider may actually want to fill in the user ID itself,
@@ -709,6 +725,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 			}
 			else
 			{
+				recordProviderMiss(eid);
 				return null;
 			}
 		}
@@ -907,7 +924,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		// check the provider, all at once
 		if (!fromProvider.isEmpty())
 		{
-			m_provider.getUsers(fromProvider);
+			getProvidedUsers(fromProvider);
 
 			// for each User in the collection that was filled in (and not removed) by the provider, cache and return it
 			for (Iterator i = fromProvider.iterator(); i.hasNext();)
@@ -944,6 +961,21 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		return m_storage.getUsersByEids(searchEids);
 	}
 
+	/**
+	 * @see org.sakaiproject.user.api.UserDirectoryService#getAuthzGroupUsers(java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	public List<User> getAuthzGroupUsers(String azGroupId)
+	{
+		if (azGroupId == null) return new ArrayList<User>();
+
+		// one query for the member ids, then one provider call for any members not yet cached
+		Collection<String> ids = authzGroupService().getAuthzUsersInGroups(Collections.singleton(azGroupId));
+		if (ids.isEmpty()) return new ArrayList<User>();
+
+		return getUsers(ids);
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -1455,6 +1487,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		{
 			throw new UserAlreadyDefinedException(id + " -" + eid);
 		}
+		forgetProviderMiss(eid);
 
 		((BaseUserEdit) user).setEvent(SECURE_ADD_USER);
 
@@ -1682,6 +1715,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		if (user != null)
 		{
 			checkAndEnsureMappedIdForProvidedUser(user);
+			forgetProviderMiss(user.getEid());
 			putCachedUser(user.getReference(), user);
 			return user;
 		}
@@ -1793,6 +1827,80 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		}
 	}
 
+	/**
+	 * Check if the provider recently failed to find a user, in which case there's no point asking it again yet.
+	 * 
+	 * @param eid
+	 *        The user EID.
+	 * @return true if the provider should not be asked about this user.
+	 */
+	protected boolean isProviderMiss(String eid)
+	{
+		return (m_providerMissCache != null) && (eid != null) && m_providerMissCache.contains(eid, System.currentTimeMillis());
+	}
+
+	protected void recordProviderMiss(String eid)
+	{
+		if ((m_providerMissCache != null) && (eid != null))
+		{
+			m_providerMissCache.add(eid, System.currentTimeMillis());
+		}
+	}
+
+	protected void forgetProviderMiss(String eid)
+	{
+		if ((m_providerMissCache != null) && (eid != null))
+		{
+			m_providerMissCache.remove(eid);
+		}
+	}
+
+	/**
+	 * Ask the provider about a batch of users, skipping any it recently failed to find. As with
+	 * {@link UserDirectoryProvider#getUsers(Collection)}, users which are not found are removed from the collection, and
+	 * are remembered as misses.
+	 * 
+	 * @param users
+	 *        The UserEdit objects (with id and eid set) to fill in or remove.
+	 */
+	protected void getProvidedUsers(Collection<UserEdit> users)
+	{
+		if (m_provider == null)
+		{
+			users.clear();
+			return;
+		}
+
+		Set<String> asked = new HashSet<String>();
+		for (Iterator<UserEdit> i = users.iterator(); i.hasNext();)
+		{
+			String eid = i.next().getEid();
+			if (isProviderMiss(eid))
+			{
+				i.remove();
+			}
+			else
+			{
+				asked.add(eid);
+			}
+		}
+		if (users.isEmpty()) return;
+
+		m_provider.getUsers(users);
+
+		if (m_providerMissCache != null)
+		{
+			for (UserEdit user : users)
+			{
+				asked.remove(user.getEid());
+			}
+			for (String eid : asked)
+			{
+				recordProviderMiss(eid);
+			}
+		}
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * EntityProducer implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -2035,6 +2143,9 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		/** The properties. */
 		protected ResourcePropertiesEdit m_properties = null;
 
+		/** The users read in the same list as this one, whose lazy properties are read together. */
+		protected transient Collection<BaseUserEdit> m_propertiesBatch = null;
+
 		/** The user type. */
 		protected String m_type = null;
 
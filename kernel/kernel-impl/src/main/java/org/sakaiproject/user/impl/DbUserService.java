@@ -33,6 +33,7 @@ import org.sakaiproject.time.api.Time;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserEdit;
 import org.sakaiproject.util.BaseDbFlatStorage;
+import org.sakaiproject.util.BaseResourcePropertiesEdit;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -244,14 +245,14 @@ public abstract class DbUserService extends BaseUserDirectoryService
 		{
 			// let the db do range selection
 			List all = super.getAllResources();
-			return all;
+			return batchLazyProperties(all);
 		}
 
 		public List getAll(int first, int last)
 		{
 			// let the db do range selection
 			List all = super.getAllResources(first, last);
-			return all;
+			return batchLazyProperties(all);
 		}
 
 		public int count()
@@ -312,7 +313,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 
 			List rv = super.getSelectedResources(userServiceSql.getUserWhereSql(), "SAKAI_USER_ID_MAP.EID", fields, first, last, "SAKAI_USER_ID_MAP");
 
-			return rv;
+			return batchLazyProperties(rv);
 		}
 
 		public int countSearch(String criteria)
@@ -342,7 +343,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			List users = super.getSelectedResources("EMAIL_LC = ?", fields);
 			if (users != null)
 			{
-				rv.addAll(users);
+				rv.addAll(batchLazyProperties(users));
 			}
 
 			return rv;
@@ -356,7 +357,61 @@ public abstract class DbUserService extends BaseUserDirectoryService
 		 */
 		public void readProperties(UserEdit edit, ResourcePropertiesEdit props)
 		{
-			super.readProperties(edit, props);
+			Collection<BaseUserEdit> batch = (edit instanceof BaseUserEdit) ? ((BaseUserEdit) edit).m_propertiesBatch : null;
+			if (batch == null)
+			{
+				super.readProperties(edit, props);
+				return;
+			}
+
+			// read the properties of the other users in the batch that are still lazy along with this one
+			Map<String, ResourcePropertiesEdit> propsById = new HashMap<String, ResourcePropertiesEdit>();
+			propsById.put(edit.getId(), props);
+			for (BaseUserEdit user : batch)
+			{
+				if (user.m_propertiesBatch != batch) continue;
+				user.m_propertiesBatch = null;
+
+				BaseResourcePropertiesEdit userProps = (BaseResourcePropertiesEdit) user.m_properties;
+				if ((user.getId() != null) && userProps.isLazy() && !propsById.containsKey(user.getId()))
+				{
+					userProps.setLazy(false);
+					propsById.put(user.getId(), userProps);
+				}
+			}
+			super.readProperties(propsById);
+		}
+
+		/**
+		 * Link the users read in one list so that the first to have its lazy properties resolved reads them for all the
+		 * others still lazy, with a few IN clause queries rather than a query per user.
+		 *
+		 * @param users
+		 *        The users just read.
+		 * @return The same list.
+		 */
+		protected List batchLazyProperties(List users)
+		{
+			if ((users == null) || (users.size() < 2)) return users;
+
+			List<BaseUserEdit> batch = new ArrayList<BaseUserEdit>(users.size());
+			for (Object user : users)
+			{
+				if ((user instanceof BaseUserEdit) && ((BaseResourcePropertiesEdit) ((BaseUserEdit) user).m_properties).isLazy())
+				{
+					batch.add((BaseUserEdit) user);
+				}
+			}
+
+			if (batch.size() > 1)
+			{
+				for (BaseUserEdit user : batch)
+				{
+					user.m_propertiesBatch = batch;
+				}
+			}
+
+			return users;
 		}
 
 		/**
@@ -690,7 +745,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			List<UserEdit> usersToQueryProvider = userWithEidReader.getUsersToQueryProvider();
 			if ((m_provider != null) && !usersToQueryProvider.isEmpty())
 			{
-				m_provider.getUsers(usersToQueryProvider);
+				getProvidedUsers(usersToQueryProvider);
 
 				// Make sure that returned users are mapped and cached correctly.
 				for (UserEdit user : usersToQueryProvider)
@@ -700,7 +755,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 				}
 			}
 
-			return foundUsers;
+			return batchLazyProperties(foundUsers);
 		}
 
 		public List<User> getUsersByEids(Collection<String> eids)
@@ -748,7 +803,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			// Finally, fill in the provided user records.
 			if ((m_provider != null) && !usersToQueryProvider.isEmpty())
 			{
-				m_provider.getUsers(usersToQueryProvider);
+				getProvidedUsers(usersToQueryProvider);
 
 				// Make sure that returned users are mapped and cached correctly.
 				for (UserEdit user : usersToQueryProvider)
@@ -759,7 +814,7 @@ public abstract class DbUserService extends BaseUserDirectoryService
 				}
 			}
 
-			return foundUsers;
+			return batchLazyProperties(foundUsers);
 		}
 
 		protected void putUserInCaches(UserEdit user)
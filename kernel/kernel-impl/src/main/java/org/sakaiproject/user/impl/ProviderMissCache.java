@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A bounded cache of EIDs which the user directory provider recently said it did not know about. Users who are still
+ * listed in a site but have gone from the provider would otherwise be asked for again on every lookup.
+ * </p>
+ * <p>
+ * Entries are only kept for a short time, so a user who later appears in the provider is found again once their entry
+ * expires. When the cache is full the oldest entry is dropped.
+ * </p>
+ */
+class ProviderMissCache
+{
+	/** How long a miss is remembered for (ms). */
+	private final long ttlMillis;
+
+	/** The EIDs which were not found, with the time (ms) each entry expires, oldest first. */
+	private final LinkedHashMap<String, Long> misses;
+
+	/**
+	 * Construct.
+	 * 
+	 * @param maxSize
+	 *        The most EIDs to remember.
+	 * @param ttlMillis
+	 *        How long a miss is remembered for (ms).
+	 */
+	ProviderMissCache(final int maxSize, long ttlMillis)
+	{
+		this.ttlMillis = ttlMillis;
+		this.misses = new LinkedHashMap<String, Long>(Math.min(maxSize, 1024))
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Check if the provider recently failed to find a user.
+	 * 
+	 * @param eid
+	 *        The user EID.
+	 * @param now
+	 *        The current time (ms).
+	 * @return true if a miss for this EID has been recorded and has not yet expired.
+	 */
+	synchronized boolean contains(String eid, long now)
+	{
+		Long expires = misses.get(eid);
+		if (expires == null) return false;
+		if (expires.longValue() > now) return true;
+
+		misses.remove(eid);
+		return false;
+	}
+
+	/**
+	 * Record that the provider did not find a user.
+	 * 
+	 * @param eid
+	 *        The user EID.
+	 * @param now
+	 *        The current time (ms).
+	 */
+	synchronized void add(String eid, long now)
+	{
+		// remove first so a repeated miss moves to the back of the eviction order
+		misses.remove(eid);
+		misses.put(eid, Long.valueOf(now + ttlMillis));
+
+		// entries are in expiry order, so anything already expired is at the front
+		for (Iterator<Long> i = misses.values().iterator(); i.hasNext();)
+		{
+			if (i.next().longValue() > now) break;
+			i.remove();
+		}
+	}
+
+	/**
+	 * Forget any miss recorded for a user.
+	 * 
+	 * @param eid
+	 *        The user EID.
+	 */
+	synchronized void remove(String eid)
+	{
+		misses.remove(eid);
+	}
+
+	/**
+	 * Forget all the recorded misses.
+	 */
+	synchronized void clear()
+	{
+		misses.clear();
+	}
+
+	/**
+	 * @return The number of misses currently remembered, some of which may have expired.
+	 */
+	synchronized int size()
+	{
+		return misses.size();
+	}
+}
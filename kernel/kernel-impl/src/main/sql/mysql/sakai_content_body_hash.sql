@@ -0,0 +1,17 @@
+-----------------------------------------------------------------------------
+-- CONTENT_RESOURCE_BODY_HASH
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_RESOURCE_BODY_HASH
+(
+    SHA256 VARCHAR (64) NOT NULL,
+	FILE_PATH VARCHAR (128) NOT NULL,
+	FILE_SIZE BIGINT,
+	REF_COUNT INT NOT NULL,
+	PRIMARY KEY (SHA256)
+);
+
+CREATE UNIQUE INDEX CONTENT_RESOURCE_BODY_HASH_FP ON CONTENT_RESOURCE_BODY_HASH
+(
+	FILE_PATH
+);
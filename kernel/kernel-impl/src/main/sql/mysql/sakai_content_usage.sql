@@ -0,0 +1,10 @@
+-----------------------------------------------------------------------------
+-- CONTENT_RESOURCE_USAGE
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_RESOURCE_USAGE
+(
+	USAGE_KEY VARCHAR (255) NOT NULL,
+	TOTAL_SIZE BIGINT NOT NULL,
+	PRIMARY KEY (USAGE_KEY)
+);
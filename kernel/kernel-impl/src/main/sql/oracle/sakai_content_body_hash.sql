@@ -0,0 +1,17 @@
+-----------------------------------------------------------------------------
+-- CONTENT_RESOURCE_BODY_HASH
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_RESOURCE_BODY_HASH
+(
+	SHA256 VARCHAR2 (64) NOT NULL,
+	FILE_PATH VARCHAR2 (128) NOT NULL,
+	FILE_SIZE NUMBER(18),
+	REF_COUNT NUMBER(10) NOT NULL,
+	PRIMARY KEY (SHA256)
+);
+
+CREATE UNIQUE INDEX CONTENT_RESOURCE_BODY_HASH_FP ON CONTENT_RESOURCE_BODY_HASH
+(
+	FILE_PATH
+);
@@ -0,0 +1,10 @@
+-----------------------------------------------------------------------------
+-- CONTENT_RESOURCE_USAGE
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_RESOURCE_USAGE
+(
+	USAGE_KEY VARCHAR2 (255) NOT NULL,
+	TOTAL_SIZE NUMBER(18) NOT NULL,
+	PRIMARY KEY (USAGE_KEY)
+);
@@ -2,6 +2,7 @@ package org.sakai.memory.impl.test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -153,6 +154,14 @@ public class MockAuthzGroupService implements AuthzGroupService {
 		// TODO Auto-generated method stub
 		return false;
 	}
+
+	public Map<String, Boolean> isAllowedByKey(String userId, String function, Map<String, Collection<String>> azGroupsByKey) {
+		Map<String, Boolean> rv = new HashMap<String, Boolean>();
+		for (Map.Entry<String, Collection<String>> entry : azGroupsByKey.entrySet()) {
+			rv.put(entry.getKey(), isAllowed(userId, function, entry.getValue()));
+		}
+		return rv;
+	}
 	
 	public String encodeDummyUserForRole(String roleId) throws IllegalArgumentException {
 		return roleId;
@@ -22,7 +22,9 @@
 package org.sakai.memory.impl.test;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.sakaiproject.authz.api.SecurityAdvisor;
 import org.sakaiproject.authz.api.SecurityService;
@@ -118,6 +120,32 @@ public class MockSecurityService implements SecurityService
 		return false;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.authz.api.SecurityService#unlockAll(java.lang.String, java.lang.String, java.util.Collection)
+	 */
+	public Map<String, Boolean> unlockAll(String userId, String lock, Collection<String> references)
+	{
+		Map<String, Boolean> rv = new HashMap<String, Boolean>();
+		for (String reference : references)
+		{
+			rv.put(reference, unlock(userId, lock, reference));
+		}
+		return rv;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.authz.api.SecurityService#unlockAll(java.lang.String, java.util.Collection, java.util.Collection)
+	 */
+	public Map<String, Map<String, Boolean>> unlockAll(String userId, Collection<String> locks, Collection<String> references)
+	{
+		Map<String, Map<String, Boolean>> rv = new HashMap<String, Map<String, Boolean>>();
+		for (String lock : locks)
+		{
+			rv.put(lock, unlockAll(userId, lock, references));
+		}
+		return rv;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.authz.api.SecurityService#unlockUsers(java.lang.String, java.lang.String)
 	 */
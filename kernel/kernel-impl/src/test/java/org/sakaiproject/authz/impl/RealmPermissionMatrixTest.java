@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RealmPermissionMatrixTest {
+
+    private Map<String, Integer> loads;
+    private int batches;
+    private Set<String> authRoles;
+    private RealmPermissionMatrix.RowLoader siteLoader;
+    private RealmPermissionMatrix matrix;
+
+    @Before
+    public void setUp() {
+        loads = new HashMap<>();
+        authRoles = new HashSet<>(Arrays.asList(".anon", ".auth"));
+
+        siteLoader = rows -> rows.forEach((realmId, row) -> {
+            loads.merge(realmId, 1, Integer::sum);
+            switch (realmId) {
+                case "/site/a":
+                    row.setRealmKey(1);
+                    row.allowFunction("maintain", "site.upd");
+                    row.allowFunction("maintain", "content.read");
+                    row.allowFunction("access", "content.read");
+                    row.allowFunction(".auth", "site.visit");
+                    row.addGrant("alice", "maintain");
+                    row.addGrant("bob", "access");
+                    break;
+                case "/site/a/group/g":
+                    row.setRealmKey(2);
+                    row.allowFunction("access", "section.read");
+                    break;
+                default:
+                    // no such realm
+            }
+        });
+        matrix = new RealmPermissionMatrix(100, siteLoader);
+    }
+
+    @Test
+    public void testRoleGrants() {
+        assertTrue(matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles));
+        assertTrue(matrix.isAllowed("bob", "content.read", Collections.singletonList("/site/a"), authRoles));
+        assertFalse(matrix.isAllowed("bob", "site.upd", Collections.singletonList("/site/a"), authRoles));
+        assertFalse(matrix.isAllowed("carol", "content.read", Collections.singletonList("/site/a"), authRoles));
+    }
+
+    @Test
+    public void testAdditionalRoles() {
+        assertTrue(matrix.isAllowed("carol", "site.visit", Collections.singletonList("/site/a"), authRoles));
+        assertFalse(matrix.isAllowed(null, "site.visit", Collections.singletonList("/site/a"), Collections.singleton(".anon")));
+    }
+
+    @Test
+    public void testRoleFromAnotherRealmInTheList() {
+        // matches the SQL, a grant in any of the realms applies to the role functions of all of them
+        assertTrue(matrix.isAllowed("bob", "section.read", Arrays.asList("/site/a/group/g", "/site/a"), authRoles));
+        assertFalse(matrix.isAllowed("bob", "section.read", Collections.singletonList("/site/a/group/g"), authRoles));
+    }
+
+    @Test
+    public void testUnknownRealmsAndFunctions() {
+        assertFalse(matrix.isAllowed("alice", "site.upd", Collections.singletonList("/content/x"), authRoles));
+        assertFalse(matrix.isAllowed("alice", "no.such.function", Collections.singletonList("/site/a"), authRoles));
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/content/x"), authRoles);
+        assertEquals(Integer.valueOf(1), loads.get("/content/x"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles);
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles);
+        assertEquals(Integer.valueOf(1), loads.get("/site/a"));
+
+        matrix.invalidate("/site/a");
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles);
+        assertEquals(Integer.valueOf(2), loads.get("/site/a"));
+
+        matrix.invalidateKeys(Collections.singleton(1));
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles);
+        assertEquals(Integer.valueOf(3), loads.get("/site/a"));
+    }
+
+    @Test
+    public void testInvalidateForgetsRealmKeys() {
+        matrix.preload(Arrays.asList("/site/a", "/site/a/group/g", "/content/x"));
+        assertEquals(3, matrix.size());
+        assertEquals(2, matrix.realmKeyCount());
+
+        matrix.invalidate("/site/a");
+        assertEquals(2, matrix.size());
+        assertEquals(1, matrix.realmKeyCount());
+
+        matrix.invalidateKeys(Collections.singleton(2));
+        assertEquals(1, matrix.size());
+        assertEquals(0, matrix.realmKeyCount());
+
+        matrix.preload(Arrays.asList("/site/a", "/site/a/group/g"));
+        matrix.clear();
+        assertEquals(0, matrix.size());
+        assertEquals(0, matrix.realmKeyCount());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRowsAreDropped() {
+        matrix = new RealmPermissionMatrix(2, siteLoader);
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles);
+        matrix.isAllowed("bob", "section.read", Collections.singletonList("/site/a/group/g"), authRoles);
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles);
+
+        // the group realm was used least recently
+        matrix.isAllowed("alice", "site.upd", Collections.singletonList("/content/x"), authRoles);
+        assertEquals(2, matrix.size());
+        assertEquals(1, matrix.realmKeyCount());
+
+        assertTrue(matrix.isAllowed("alice", "site.upd", Collections.singletonList("/site/a"), authRoles));
+        assertEquals(Integer.valueOf(1), loads.get("/site/a"));
+        matrix.isAllowed("bob", "section.read", Collections.singletonList("/site/a/group/g"), authRoles);
+        assertEquals(Integer.valueOf(2), loads.get("/site/a/group/g"));
+    }
+
+    @Test
+    public void testPreload() {
+        RealmPermissionMatrix.RowLoader loader = rows -> {
+            batches++;
+            rows.forEach((realmId, row) -> {
+                loads.merge(realmId, 1, Integer::sum);
+                if ("/site/a".equals(realmId)) {
+                    row.allowFunction("access", "content.read");
+                    row.addGrant("bob", "access");
+                }
+            });
+        };
+        matrix = new RealmPermissionMatrix(100, loader);
+
+        matrix.preload(Arrays.asList("/site/a", "/site/a/group/g", "/content/x", "/site/a"));
+        assertEquals(1, batches);
+        assertEquals(3, loads.size());
+
+        assertTrue(matrix.isAllowed("bob", "content.read", Arrays.asList("/content/x", "/site/a"), authRoles));
+        assertFalse(matrix.isAllowed("bob", "site.upd", Arrays.asList("/content/x", "/site/a"), authRoles));
+        assertEquals(1, batches);
+        assertEquals(Integer.valueOf(1), loads.get("/site/a"));
+        assertEquals(Integer.valueOf(1), loads.get("/content/x"));
+
+        // nothing left to read
+        matrix.preload(Arrays.asList("/site/a", "/content/x"));
+        assertEquals(1, batches);
+    }
+}
@@ -29,19 +29,27 @@ import org.sakaiproject.authz.api.FunctionManager;
 import org.sakaiproject.authz.api.GroupNotDefinedException;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.SessionManager;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.singleton;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.eq;
@@ -57,6 +65,8 @@ public class SakaiSecurityTest {
     @Mock private MemoryService memoryService;
     @Mock private ServerConfigurationService serverConfigurationService;
     @Mock private EventTrackingService eventTrackingService;
+    @Mock private ThreadLocalManager threadLocalManager;
+    @Mock private SessionManager sessionManager;
 
 
     private SakaiSecurity sakaiSecurity;
@@ -70,6 +80,8 @@ public class SakaiSecurityTest {
         sakaiSecurity.setMemoryService(memoryService);
         sakaiSecurity.setServerConfigurationService(serverConfigurationService);
         sakaiSecurity.setEventTrackingService(eventTrackingService);
+        sakaiSecurity.setThreadLocalManager(threadLocalManager);
+        sakaiSecurity.setSessionManager(sessionManager);
 
         // Always return default
         when(serverConfigurationService.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
@@ -150,4 +162,36 @@ public class SakaiSecurityTest {
         assertThat(flushed, containsInAnyOrder("unlock@1@@function@/site/1", "unlock@2@@function@/site/1"));
     }
 
+    @Test
+    public void testUnlockAllSendsMissesTogether() {
+
+        Cache cache = mock(Cache.class);
+        when(memoryService.getCache(anyString())).thenReturn(cache);
+        sakaiSecurity.init();
+
+        Reference reference = mock(Reference.class);
+        when(reference.getAuthzGroups("user")).thenReturn(Arrays.asList("/content/group/1/", "/site/1"));
+        when(entityManager.newReference(anyString())).thenReturn(reference);
+
+        // One answer is already cached, the other two are not
+        when(cache.get("unlock@user@@function@/content/group/1/a")).thenReturn(Boolean.TRUE);
+        Map<String, Boolean> answers = new HashMap<>();
+        answers.put("/content/group/1/b", false);
+        answers.put("/content/group/1/c", true);
+        when(authzGroupService.isAllowedByKey(eq("user"), eq("function"), any())).thenReturn(answers);
+
+        Map<String, Boolean> allowed = sakaiSecurity.unlockAll("user", "function",
+                Arrays.asList("/content/group/1/a", "/content/group/1/b", "/content/group/1/c"));
+
+        assertEquals(Boolean.TRUE, allowed.get("/content/group/1/a"));
+        assertEquals(Boolean.FALSE, allowed.get("/content/group/1/b"));
+        assertEquals(Boolean.TRUE, allowed.get("/content/group/1/c"));
+
+        verify(authzGroupService, times(1)).isAllowedByKey(eq("user"), eq("function"),
+                argThat((Map<String, Collection<String>> misses) -> misses.keySet().equals(answers.keySet())));
+        verify(authzGroupService, never()).isAllowed(anyString(), anyString(), anyCollection());
+        verify(cache).put("unlock@user@@function@/content/group/1/b", false);
+        verify(cache).put("unlock@user@@function@/content/group/1/c", true);
+    }
+
 }
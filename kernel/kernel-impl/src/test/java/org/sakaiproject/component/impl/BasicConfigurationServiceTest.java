@@ -286,4 +286,47 @@ public class BasicConfigurationServiceTest {
         Assert.assertEquals(ServerConfigurationService.TYPE_BOOLEAN, basicConfigurationService.getConfigItem("defaultedVal4").getType());
     }
 
+    @Test
+    public void testConfigSnapshot() {
+        // resolved values come from the snapshot
+        Assert.assertEquals("testing name=Aaron testing", basicConfigurationService.getString("testKeyNested", "default"));
+        Assert.assertEquals(11, basicConfigurationService.getInt("intVal", -1));
+        Assert.assertTrue(basicConfigurationService.getBoolean("booleanVal", false));
+        ConfigSnapshot snapshot = basicConfigurationService.getConfigSnapshot();
+        Assert.assertTrue(snapshot.contains("testKeyNested"));
+        Assert.assertFalse(snapshot.contains("invalid"));
+        Assert.assertSame(snapshot, basicConfigurationService.getConfigSnapshot());
+
+        // changing a value replaces the snapshot, including values which refer to it
+        basicConfigurationService.addConfigItem( new ConfigItemImpl("name", "Zeckoski"), SOURCE);
+        Assert.assertNotSame(snapshot, basicConfigurationService.getConfigSnapshot());
+        Assert.assertEquals("Zeckoski", basicConfigurationService.getString("name", "default"));
+        Assert.assertEquals("testing name=Zeckoski testing", basicConfigurationService.getString("testKeyNested", "default"));
+        basicConfigurationService.addConfigItem( new ConfigItemImpl("intVal", 22), SOURCE);
+        Assert.assertEquals(22, basicConfigurationService.getInt("intVal", -1));
+        basicConfigurationService.addConfigItem( new ConfigItemImpl("booleanVal", false), SOURCE);
+        Assert.assertFalse(basicConfigurationService.getBoolean("booleanVal", true));
+
+        // looking up unknown names only tracks them and leaves the snapshot alone
+        snapshot = basicConfigurationService.getConfigSnapshot();
+        Assert.assertEquals("default", basicConfigurationService.getString("unknownVal", "default"));
+        Assert.assertEquals("Aaron Zeckoski", basicConfigurationService.getString("unknownVal2", "${AZ}"));
+        Assert.assertSame(snapshot, basicConfigurationService.getConfigSnapshot());
+
+        // blank values and values which are not numbers behave as they did before
+        Assert.assertNull(basicConfigurationService.getString("testKeyEmpty", "default"));
+        Assert.assertEquals(5, basicConfigurationService.getInt("testKeyEmpty", 5));
+        try {
+            basicConfigurationService.getInt("name", 5);
+            Assert.fail("should have thrown an exception");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+
+        // lookups are still counted
+        int requested = basicConfigurationService.getConfigItem("test1").getRequested();
+        basicConfigurationService.getString("test1", "default");
+        Assert.assertEquals(requested + 1, basicConfigurationService.getConfigItem("test1").getRequested());
+    }
+
 }
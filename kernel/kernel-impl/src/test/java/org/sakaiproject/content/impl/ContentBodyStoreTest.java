@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.content.api.FileSystemHandler;
+import org.sakaiproject.db.api.SqlService;
+
+public class ContentBodyStoreTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ContentServiceSql sql = new ContentServiceSqlDefault();
+
+	/** CONTENT_RESOURCE_BODY_HASH, as SHA256 to FILE_PATH and FILE_PATH to REF_COUNT. */
+	private final Map<String, String> pathByHash = new HashMap<String, String>();
+	private final Map<String, Integer> refCounts = new HashMap<String, Integer>();
+
+	private File root;
+	private ContentBodyStore store;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		root = folder.newFolder("body");
+
+		SqlService sqlService = mock(SqlService.class);
+		when(sqlService.dbRead(eq(sql.getBodyHashFilePathSql()), any(Object[].class), isNull())).thenAnswer(invocation -> {
+			String path = pathByHash.get(((Object[]) invocation.getArgument(1))[0]);
+			return path == null ? Collections.emptyList() : Collections.singletonList(path);
+		});
+		when(sqlService.dbRead(eq(sql.getBodyHashByFilePathSql()), any(Object[].class), isNull())).thenAnswer(invocation -> {
+			String path = (String) ((Object[]) invocation.getArgument(1))[0];
+			return refCounts.containsKey(path) ? Collections.singletonList("hash") : Collections.emptyList();
+		});
+		when(sqlService.dbWriteFailQuiet(isNull(), eq(sql.getInsertBodyHashSql()), any(Object[].class))).thenAnswer(invocation -> {
+			Object[] fields = invocation.getArgument(2);
+			if (pathByHash.containsKey(fields[0])) return false;
+			pathByHash.put((String) fields[0], (String) fields[1]);
+			refCounts.put((String) fields[1], 1);
+			return true;
+		});
+		when(sqlService.dbWriteCount(eq(sql.getAddBodyHashReferenceSql()), any(Object[].class), isNull(), isNull(), anyBoolean())).thenAnswer(invocation -> {
+			String path = pathByHash.get(((Object[]) invocation.getArgument(1))[0]);
+			return adjust(path, 1);
+		});
+		when(sqlService.dbWriteCount(eq(sql.getAddBodyHashReferenceByFilePathSql()), any(Object[].class), isNull(), isNull(), anyBoolean())).thenAnswer(invocation -> {
+			return adjust((String) ((Object[]) invocation.getArgument(1))[0], 1);
+		});
+		when(sqlService.dbWriteCount(eq(sql.getReleaseBodyHashReferenceSql()), any(Object[].class), isNull(), isNull(), anyBoolean())).thenAnswer(invocation -> {
+			return adjust((String) ((Object[]) invocation.getArgument(1))[0], -1);
+		});
+		when(sqlService.dbWriteCount(eq(sql.getDeleteUnreferencedBodyHashSql()), any(Object[].class), isNull(), isNull(), anyBoolean())).thenAnswer(invocation -> {
+			String path = (String) ((Object[]) invocation.getArgument(1))[0];
+			if (!refCounts.containsKey(path) || refCounts.get(path) > 0) return 0;
+			refCounts.remove(path);
+			pathByHash.values().remove(path);
+			return 1;
+		});
+
+		store = new ContentBodyStore(sqlService, sql, new DefaultFileSystemHandler(), root.getPath());
+	}
+
+	/** Change the REF_COUNT of a body that is still referenced, returning the number of records updated. */
+	private int adjust(String path, int delta)
+	{
+		if (path == null || !refCounts.containsKey(path) || refCounts.get(path) <= 0) return 0;
+		refCounts.put(path, refCounts.get(path) + delta);
+		return 1;
+	}
+
+	private ContentBodyStore.StoredBody store(String id, String filePath, String body) throws IOException
+	{
+		return store.store(id, filePath, new ByteArrayInputStream(body.getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testIdenticalBodiesShareOneFile() throws IOException
+	{
+		ContentBodyStore.StoredBody first = store("/a.txt", "/2018/001/01/a", "syllabus");
+		ContentBodyStore.StoredBody second = store("/b.txt", "/2018/001/01/b", "syllabus");
+
+		assertEquals("/2018/001/01/a", first.getFilePath());
+		assertEquals("/2018/001/01/a", second.getFilePath());
+		assertEquals(8, second.getLength());
+		assertFalse(new File(root, "/2018/001/01/b").exists());
+		assertEquals(Integer.valueOf(2), refCounts.get("/2018/001/01/a"));
+
+		ContentBodyStore.StoredBody other = store("/c.txt", "/2018/001/01/c", "something else");
+		assertEquals("/2018/001/01/c", other.getFilePath());
+		assertTrue(new File(root, "/2018/001/01/c").exists());
+	}
+
+	@Test
+	public void testFileDeletedWithLastReference() throws IOException
+	{
+		store("/a.txt", "/a", "body");
+		store("/b.txt", "/b", "body");
+		assertTrue(store.isShared("/a"));
+
+		assertTrue(store.release("/a.txt", "/a"));
+		assertTrue(new File(root, "/a").exists());
+
+		assertTrue(store.release("/b.txt", "/a"));
+		assertFalse(new File(root, "/a").exists());
+		assertFalse(store.isShared("/a"));
+	}
+
+	@Test
+	public void testSharingNeedsASharedBody() throws IOException
+	{
+		assertFalse(store.addReference("/unknown"));
+		assertFalse(store.release("/x.txt", "/unknown"));
+
+		store("/a.txt", "/a", "body");
+		assertTrue(store.addReference("/a"));
+		assertEquals(Integer.valueOf(2), refCounts.get("/a"));
+	}
+
+	@Test
+	public void testShareExisting() throws IOException
+	{
+		File legacy = new File(root, "/old/1");
+		legacy.getParentFile().mkdirs();
+		Files.write(legacy.toPath(), "body".getBytes("UTF-8"));
+		File duplicate = new File(root, "/old/2");
+		Files.write(duplicate.toPath(), "body".getBytes("UTF-8"));
+
+		// the first is recorded where it is
+		assertEquals("/old/1", store.shareExisting("/1.txt", "/old/1"));
+		assertTrue(store.isShared("/old/1"));
+
+		// the duplicate should move to the first, its file stays until the resource has been pointed there
+		String sharedPath = store.shareExisting("/2.txt", "/old/2");
+		assertEquals("/old/1", sharedPath);
+		assertTrue(duplicate.exists());
+		store.deleteUnshared("/2.txt", "/old/2");
+		assertFalse(duplicate.exists());
+
+		// a shared file is never dropped as a duplicate
+		store.deleteUnshared("/1.txt", "/old/1");
+		assertTrue(legacy.exists());
+		assertArrayEquals("body".getBytes("UTF-8"), Files.readAllBytes(legacy.toPath()));
+	}
+
+	@Test
+	public void testOnlyPathBasedHandlersShare() throws IOException
+	{
+		DefaultFileSystemHandler byId = new DefaultFileSystemHandler();
+		byId.setUseIdForFilePath(true);
+		assertNull(ContentBodyStore.create(mock(SqlService.class), sql, byId, root.getPath()));
+		assertNull(ContentBodyStore.create(mock(SqlService.class), sql, mock(FileSystemHandler.class), root.getPath()));
+		assertNotNull(ContentBodyStore.create(mock(SqlService.class), sql, new DefaultFileSystemHandler(), root.getPath()));
+
+		try
+		{
+			new ContentBodyStore(mock(SqlService.class), sql, byId, root.getPath());
+			fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testHex()
+	{
+		assertEquals("00ff10", ContentBodyStore.toHex(new byte[] {0, (byte) 0xff, 0x10}));
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.sakaiproject.content.api.ContentCollectionEdit;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResourceEdit;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.exception.IdUsedException;
+import org.sakaiproject.test.SakaiKernelTestBase;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the running totals of CONTENT_RESOURCE_USAGE against the sums they replace, on the test database.
+ */
+public class ContentUsageLedgerTest extends SakaiKernelTestBase {
+	private static final Logger log = LoggerFactory.getLogger(ContentUsageLedgerTest.class);
+
+	private static DbContentService contentService;
+	private static SqlService sqlService;
+
+	@BeforeClass
+	public static void beforeClass() {
+		try {
+			Properties properties = new Properties();
+			properties.put("org.sakaiproject.content.api.ContentHostingService@usageLedger", "true");
+			// reconcile only when the test asks
+			properties.put("org.sakaiproject.content.api.ContentHostingService@usageReconcilePeriod", "0");
+			oneTimeSetup(null, null, properties);
+			contentService = (DbContentService) getService(ContentHostingService.class);
+			sqlService = getService(SqlService.class);
+		} catch (Exception e) {
+			log.warn(e.getMessage(), e);
+		}
+	}
+
+	@Before
+	public void workAsAdmin() {
+		Session session = getService(SessionManager.class).getCurrentSession();
+		session.setUserEid("admin");
+		session.setUserId("admin");
+	}
+
+	@Test
+	public void testFirstUseSeedsFromTheResources() throws Exception {
+		addCollection("/group/usage-seed/");
+		addResource("/group/usage-seed/a.txt", 10);
+		addResource("/group/usage-seed/b.txt", 5);
+
+		// nothing is kept until the context is first asked for
+		Assert.assertNull(readUsage("usage-seed"));
+
+		Assert.assertEquals(15L, contentService.getSizeForContext("usage-seed"));
+		Assert.assertEquals("15", readUsage("usage-seed"));
+	}
+
+	@Test
+	public void testCommitUpdateAndRemove() throws Exception {
+		addCollection("/group/usage-site/");
+		Assert.assertEquals(0L, contentService.getSizeForContext("usage-site"));
+
+		addResource("/group/usage-site/a.txt", 5);
+		assertUsage("usage-site", 5L);
+
+		// a new body replaces the old size
+		ContentResourceEdit edit = contentService.editResource("/group/usage-site/a.txt");
+		edit.setContent(new byte[12]);
+		contentService.commitResource(edit);
+		assertUsage("usage-site", 12L);
+
+		addResource("/group/usage-site/b.txt", 3);
+		assertUsage("usage-site", 15L);
+
+		contentService.removeResource("/group/usage-site/a.txt");
+		assertUsage("usage-site", 3L);
+	}
+
+	@Test
+	public void testUserContext() throws Exception {
+		addCollection("/user/usage-user/");
+		Assert.assertEquals("~usage-user", contentService.getUsageKey("/user/usage-user/a.txt"));
+		Assert.assertEquals(0L, contentService.getSizeForContext("~usage-user"));
+
+		addResource("/user/usage-user/a.txt", 7);
+		assertUsage("~usage-user", 7L);
+	}
+
+	@Test
+	public void testDropboxKeys() throws Exception {
+		Assert.assertEquals("/group-user/usage-drop/u1/", contentService.getUsageKey("/group-user/usage-drop/u1/sub/a.txt"));
+		Assert.assertNull(contentService.getUsageKey("/group-user/usage-drop/"));
+		Assert.assertTrue(contentService.isUsageKey("/group-user/usage-drop/u1/"));
+		// the dropbox root leaves out current users' folders, so is always summed
+		Assert.assertFalse(contentService.isUsageKey("/group-user/usage-drop/"));
+
+		addCollection("/group-user/usage-drop/");
+		addCollection("/group-user/usage-drop/u1/");
+		addCollection("/group-user/usage-drop/u2/");
+		Assert.assertEquals(0L, contentService.getSizeForContext("/group-user/usage-drop/u1/"));
+		Assert.assertEquals(0L, contentService.getSizeForContext("/group-user/usage-drop/u2/"));
+
+		addResource("/group-user/usage-drop/u1/a.txt", 4);
+		addResource("/group-user/usage-drop/u2/b.txt", 6);
+		assertUsage("/group-user/usage-drop/u1/", 4L);
+		assertUsage("/group-user/usage-drop/u2/", 6L);
+		Assert.assertNull(readUsage("/group-user/usage-drop/"));
+	}
+
+	@Test
+	public void testReconcileCorrectsDrift() throws Exception {
+		addCollection("/group/usage-drift/");
+		addResource("/group/usage-drift/a.txt", 8);
+		Assert.assertEquals(8L, contentService.getSizeForContext("usage-drift"));
+
+		sqlService.dbWrite("update CONTENT_RESOURCE_USAGE set TOTAL_SIZE = 999 where USAGE_KEY = ?", new Object[] {"usage-drift"});
+		Assert.assertEquals(999L, contentService.getSizeForContext("usage-drift"));
+
+		contentService.reconcileUsage();
+		assertUsage("usage-drift", 8L);
+	}
+
+	private void assertUsage(String context, long expected) {
+		Assert.assertEquals(expected, contentService.getSizeForContext(context));
+		Assert.assertEquals(expected, contentService.sumSizeForContext(context));
+	}
+
+	private String readUsage(String context) {
+		List<String> rows = sqlService.dbRead("select TOTAL_SIZE from CONTENT_RESOURCE_USAGE where USAGE_KEY = ?", new Object[] {context}, null);
+		return rows.isEmpty() ? null : rows.get(0);
+	}
+
+	private void addCollection(String id) throws Exception {
+		try {
+			ContentCollectionEdit edit = contentService.addCollection(id);
+			contentService.commitCollection(edit);
+		} catch (IdUsedException e) {
+			// already there
+		}
+	}
+
+	private void addResource(String id, int length) throws Exception {
+		ContentResourceEdit edit = contentService.addResource(id);
+		edit.setContent(new byte[length]);
+		contentService.commitResource(edit);
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlReaderFinishedException;
+import org.sakaiproject.db.api.SqlService;
+import org.sakaiproject.test.SakaiKernelTestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs dbReadEach against the test database, with the pool wrapped so the test can see how the connection and result set are used.
+ */
+public class DbReadEachTest extends SakaiKernelTestBase {
+	private static final Logger log = LoggerFactory.getLogger(DbReadEachTest.class);
+
+	private static final int ROWS = 5;
+	private static final String SELECT = "SELECT ID, NAME FROM DBREADEACH_TEST ORDER BY ID";
+
+	private static BasicSqlService sqlService;
+
+	private DataSource pool;
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final List<Integer> fetchSizes = new ArrayList<Integer>();
+	private final List<String> calls = new ArrayList<String>();
+
+	private final SqlReader<String> nameReader = new SqlReader<String>() {
+		public String readSqlResultRecord(ResultSet result) {
+			try {
+				return result.getString(2);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	@BeforeClass
+	public static void beforeClass() {
+		try {
+			oneTimeSetup(null);
+			sqlService = (BasicSqlService) getService(SqlService.class);
+			sqlService.dbWrite("CREATE TABLE DBREADEACH_TEST (ID INTEGER, NAME VARCHAR(99))");
+			for (int i = 0; i < ROWS; i++) {
+				sqlService.dbWrite("INSERT INTO DBREADEACH_TEST (ID, NAME) VALUES (?, ?)", new Object[] { i, "name" + i });
+			}
+		} catch (Exception e) {
+			log.warn(e.getMessage(), e);
+		}
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		if (sqlService != null) {
+			sqlService.dbWrite("DROP TABLE DBREADEACH_TEST");
+		}
+	}
+
+	@Before
+	public void wrapPool() {
+		// only watch this thread, the kernel's own background threads use the same pool
+		Thread testThread = Thread.currentThread();
+		pool = sqlService.defaultDataSource;
+		sqlService.setDefaultDataSource(proxy(DataSource.class, pool, (target, method, args) -> {
+			Object rv = method.invoke(target, args);
+			if ("getConnection".equals(method.getName()) && Thread.currentThread() == testThread) {
+				openConnections.incrementAndGet();
+				return proxy(Connection.class, rv, this::connectionCall);
+			}
+			return rv;
+		}));
+	}
+
+	@After
+	public void restorePool() {
+		sqlService.setDefaultDataSource(pool);
+	}
+
+	@Test
+	public void testRecordsHandedOnAsRead() {
+		List<String> names = new ArrayList<String>();
+		int count = sqlService.dbReadEach(SELECT, null, nameReader, name -> {
+			calls.add("accept");
+			names.add(name);
+		});
+
+		Assert.assertEquals(ROWS, count);
+		Assert.assertEquals("name0", names.get(0));
+		Assert.assertEquals("name" + (ROWS - 1), names.get(ROWS - 1));
+
+		// each record reaches the consumer before the next one is read
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < ROWS; i++) {
+			expected.add("next");
+			expected.add("accept");
+		}
+		expected.add("next");
+		Assert.assertEquals(expected, calls);
+
+		// a connection of our own gets the streaming fetch size
+		Assert.assertEquals(1, fetchSizes.size());
+		Assert.assertEquals(sqlService.sqlServiceSql.getStreamingFetchSize(sqlService.m_fetchSize), fetchSizes.get(0).intValue());
+		Assert.assertEquals(0, openConnections.get());
+	}
+
+	@Test
+	public void testConnectionReturnedWhenConsumerThrows() {
+		try {
+			sqlService.dbReadEach(SELECT, null, nameReader, name -> {
+				throw new IllegalStateException(name);
+			});
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals("name0", e.getMessage());
+		}
+		Assert.assertEquals(0, openConnections.get());
+	}
+
+	@Test
+	public void testReaderFinishedStopsEarly() {
+		List<Integer> ids = new ArrayList<Integer>();
+		int count = sqlService.dbReadEach(SELECT, null, result -> {
+			try {
+				if (result.getInt(1) == 2) throw new SqlReaderFinishedException();
+				return result.getInt(1);
+			} catch (java.sql.SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}, ids::add);
+
+		// the record that finished the read is counted but not handed on
+		Assert.assertEquals(3, count);
+		Assert.assertEquals(2, ids.size());
+		Assert.assertEquals(0, openConnections.get());
+	}
+
+	private Object connectionCall(Object target, java.lang.reflect.Method method, Object[] args) throws Exception {
+		if ("close".equals(method.getName())) {
+			openConnections.decrementAndGet();
+		}
+		Object rv = method.invoke(target, args);
+		if ("prepareStatement".equals(method.getName())) {
+			return proxy(PreparedStatement.class, rv, (stmt, stmtMethod, stmtArgs) -> {
+				if ("setFetchSize".equals(stmtMethod.getName())) {
+					fetchSizes.add((Integer) stmtArgs[0]);
+				}
+				Object stmtRv = stmtMethod.invoke(stmt, stmtArgs);
+				if ("executeQuery".equals(stmtMethod.getName())) {
+					return proxy(ResultSet.class, stmtRv, (rs, rsMethod, rsArgs) -> {
+						if ("next".equals(rsMethod.getName())) {
+							calls.add("next");
+						}
+						return rsMethod.invoke(rs, rsArgs);
+					});
+				}
+				return stmtRv;
+			});
+		}
+		return rv;
+	}
+
+	private interface Call {
+		Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Exception;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, Object target, Call call) {
+		InvocationHandler handler = (p, method, args) -> {
+			try {
+				return call.invoke(target, method, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		};
+		return (T) Proxy.newProxyInstance(DbReadEachTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+}
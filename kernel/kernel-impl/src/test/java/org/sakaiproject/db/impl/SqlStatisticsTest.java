@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SqlStatisticsTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testNormalize() {
+        assertEquals("SELECT A FROM T WHERE ID = ? AND NAME = ? AND X IN (?...)",
+                SqlStatistics.normalize("SELECT A\n  FROM T WHERE ID = 42 AND NAME = 'it''s' AND X IN (?, ?,?)"));
+        assertEquals("select * from SAKAI_REALM_RL_FN where REALM_KEY = ?",
+                SqlStatistics.normalize("select * from SAKAI_REALM_RL_FN where REALM_KEY = ?"));
+    }
+
+    @Test
+    public void testStatementsGroupedAfterNormalizing() {
+        SqlStatistics stats = new SqlStatistics();
+        stats.record(SqlStatistics.Kind.READ, "select A from T where ID = 1", 3 * MS);
+        stats.record(SqlStatistics.Kind.READ, "select A from T where ID = 2", 7 * MS);
+        stats.record(SqlStatistics.Kind.WRITE, "update T set A = ?", 1 * MS);
+
+        assertEquals(2, stats.getStatementCount());
+        String top = stats.getTopStatements()[0];
+        assertTrue(top, top.startsWith("READ count: 2 total: 10ms"));
+        assertTrue(top, top.endsWith(": select A from T where ID = ?"));
+    }
+
+    @Test
+    public void testStatementsPastTheCapAreOther() {
+        SqlStatistics stats = new SqlStatistics();
+        stats.setMaxStatements(2);
+        stats.record(SqlStatistics.Kind.READ, "select A from T1", MS);
+        stats.record(SqlStatistics.Kind.READ, "select A from T2", MS);
+        stats.record(SqlStatistics.Kind.READ, "select A from T3", MS);
+        stats.record(SqlStatistics.Kind.READ, "select A from T4", MS);
+
+        assertEquals(3, stats.getStatementCount());
+        assertTrue(stats.dump().contains("READ count: 2 total: 2ms"));
+        assertTrue(stats.dump().contains("(other)"));
+    }
+
+    @Test
+    public void testRawStatementsPastTheCapAreOther() {
+        SqlStatistics stats = new SqlStatistics();
+        stats.setMaxStatements(1);
+        // room for four raw statements, all of which normalize to the same one
+        for (int i = 0; i < 4; i++) {
+            stats.record(SqlStatistics.Kind.READ, "select A from T where ID = " + i, MS);
+        }
+        stats.record(SqlStatistics.Kind.READ, "select A from T where ID = 4", MS);
+        // already seen, so still counted as itself
+        stats.record(SqlStatistics.Kind.READ, "select A from T where ID = 0", MS);
+
+        assertEquals(2, stats.getStatementCount());
+        assertTrue(stats.dump().contains("READ count: 5 total: 5ms"));
+        assertTrue(stats.dump().contains("READ count: 1 total: 1ms mean: 1.00ms"));
+    }
+
+    @Test
+    public void testStreamingReadsKeptApart() {
+        SqlStatistics stats = new SqlStatistics();
+        stats.record(SqlStatistics.Kind.READ, "select A from T", MS);
+        stats.record(SqlStatistics.Kind.STREAM, "select A from T", 2 * MS);
+        stats.record(SqlStatistics.Kind.STREAM, "select A from T", 2 * MS);
+
+        assertEquals(2, stats.getStatementCount());
+        assertEquals("STREAM count: 2 total: 4ms", stats.getTopStatements()[0].substring(0, 26));
+        assertTrue(stats.dump().contains("READ count: 1 total: 1ms"));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        SqlStatistics.Histogram histogram = new SqlStatistics.Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.add(3 * MS);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.add(150 * MS);
+        }
+        histogram.add(60000 * MS);
+
+        assertEquals(5, histogram.percentileMillis(0.5));
+        assertEquals(200, histogram.percentileMillis(0.95));
+        assertEquals(200, histogram.percentileMillis(0.99));
+        assertEquals(-1, histogram.percentileMillis(1.0));
+    }
+
+    @Test
+    public void testKeepsSlowestWithCaller() {
+        SqlStatistics stats = new SqlStatistics();
+        stats.setSlowSamples(2);
+        stats.setSlowThresholdMillis(10);
+        stats.record(SqlStatistics.Kind.READ, "select 1", 5 * MS);
+        stats.record(SqlStatistics.Kind.READ, "select 2", 50 * MS);
+        stats.record(SqlStatistics.Kind.READ, "select 3", 20 * MS);
+        stats.record(SqlStatistics.Kind.READ, "select 4", 30 * MS);
+
+        String[] slowest = stats.getSlowestStatements();
+        assertEquals(2, slowest.length);
+        assertTrue(slowest[0], slowest[0].startsWith("50ms READ"));
+        assertTrue(slowest[1], slowest[1].startsWith("30ms READ"));
+        assertTrue(slowest[0], slowest[0].contains("SqlStatisticsTest.testKeepsSlowestWithCaller"));
+    }
+
+    @Test
+    public void testBorrowWaitAndReset() {
+        SqlStatistics stats = new SqlStatistics();
+        stats.recordBorrow(2 * MS);
+        stats.recordBorrow(4 * MS);
+        assertEquals(2, stats.getBorrowCount());
+        assertEquals(3.0, stats.getBorrowWaitMeanMillis(), 0.001);
+        assertEquals(4, stats.getBorrowWaitMaxMillis());
+
+        stats.reset();
+        assertEquals(0, stats.getBorrowCount());
+        assertEquals(0, stats.getStatementCount());
+    }
+}
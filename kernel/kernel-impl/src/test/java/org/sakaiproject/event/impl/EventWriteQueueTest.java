@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.LearningResourceStoreService.LRS_Statement;
+
+public class EventWriteQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentPostsAllWrittenOnce() throws Exception {
+        RecordingStore store = new RecordingStore();
+        EventWriteQueue queue = new EventWriteQueue(1024, 100, 10, EventWriteQueue.OverflowPolicy.BLOCK, null, store);
+        queue.start();
+
+        int threads = 8;
+        int perThread = 20000;
+        List<Thread> posters = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            posters.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    queue.offer(new TestEvent(thread + ":" + i));
+                }
+            }));
+        }
+        posters.forEach(Thread::start);
+        for (Thread poster : posters) {
+            poster.join();
+        }
+        queue.stop(10000);
+
+        assertEquals(threads * perThread, store.ids.size());
+        assertEquals(threads * perThread, new HashSet<>(store.ids).size());
+        assertEquals(threads * perThread, queue.getEventsWritten());
+        assertEquals(0, queue.getEventsDropped());
+        assertTrue(store.largestBatch <= 100);
+    }
+
+    @Test
+    public void testPostsFromOneThreadKeepTheirOrder() throws Exception {
+        RecordingStore store = new RecordingStore();
+        EventWriteQueue queue = new EventWriteQueue(16, 4, 10, EventWriteQueue.OverflowPolicy.BLOCK, null, store);
+        queue.start();
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(new TestEvent(String.valueOf(i)));
+        }
+        queue.stop(10000);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(String.valueOf(i), store.ids.get(i));
+        }
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        RecordingStore store = new RecordingStore();
+        store.blocked = new CountDownLatch(1);
+        EventWriteQueue queue = new EventWriteQueue(4, 1, 10, EventWriteQueue.OverflowPolicy.DROP, null, store);
+        queue.start();
+
+        // the first event is taken by the writer, which then waits in the store
+        queue.offer(new TestEvent("first"));
+        assertTrue(store.writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new TestEvent(String.valueOf(i)));
+        }
+        assertEquals(4, queue.getQueueSize());
+        assertEquals(6, queue.getEventsDropped());
+
+        store.blocked.countDown();
+        queue.stop(10000);
+        assertEquals(5, store.ids.size());
+        assertEquals(11, queue.getEventsOffered());
+    }
+
+    @Test
+    public void testSpillWhenFullAndReplay() throws Exception {
+        File spill = new File(folder.getRoot(), "spill.log");
+        RecordingStore store = new RecordingStore();
+        store.blocked = new CountDownLatch(1);
+        EventWriteQueue queue = new EventWriteQueue(4, 2, 10, EventWriteQueue.OverflowPolicy.SPILL, spill, store);
+        queue.start();
+
+        queue.offer(new TestEvent("first"));
+        assertTrue(store.writing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new TestEvent("with\ttab " + i));
+        }
+        assertEquals(6, queue.getEventsSpilled());
+        assertTrue(spill.exists());
+
+        store.blocked.countDown();
+        queue.stop(10000);
+
+        assertEquals(0, queue.getEventsDropped());
+        assertEquals(11, store.ids.size());
+        assertEquals(11, new HashSet<>(store.ids).size());
+        assertFalse(spill.exists());
+        assertFalse(new File(spill.getPath() + ".replay").exists());
+    }
+
+    @Test
+    public void testSpillLeftByPreviousRunIsReplayed() throws Exception {
+        File spill = new File(folder.getRoot(), "spill.log");
+        RecordingStore store = new RecordingStore();
+        store.blocked = new CountDownLatch(1);
+        EventWriteQueue first = new EventWriteQueue(2, 1, 10, EventWriteQueue.OverflowPolicy.SPILL, spill, store);
+        first.start();
+        first.offer(new TestEvent("written"));
+        assertTrue(store.writing.await(5, TimeUnit.SECONDS));
+        first.offer(new TestEvent("a"));
+        first.offer(new TestEvent("b"));
+        first.offer(new TestEvent("spilled"));
+        assertEquals(1, first.getEventsSpilled());
+
+        // simulate the server going away without replaying
+        RecordingStore next = new RecordingStore();
+        EventWriteQueue second = new EventWriteQueue(2, 1, 10, EventWriteQueue.OverflowPolicy.SPILL, spill, next);
+        second.start();
+        second.stop(10000);
+        assertEquals(Collections.singletonList("spilled"), next.ids);
+
+        store.blocked.countDown();
+        first.stop(10000);
+    }
+
+    @Test
+    public void testLineEncoding() {
+        String[] values = {"1234", "content.read", null, "", "a\tb\\c\nd\re", "\\0"};
+        assertArrayEquals(values, EventWriteQueue.decodeLine(EventWriteQueue.encodeLine(values)));
+        assertEquals(1, EventWriteQueue.encodeLine(values).split("\n").length);
+    }
+
+    @Test
+    public void testCapacityRoundsUpToPowerOfTwo() {
+        assertEquals(2, new EventWriteQueue(1, 1, 10, EventWriteQueue.OverflowPolicy.DROP, null, new RecordingStore()).getCapacity());
+        assertEquals(1024, new EventWriteQueue(1000, 1, 10, EventWriteQueue.OverflowPolicy.DROP, null, new RecordingStore()).getCapacity());
+        assertEquals(1024, new EventWriteQueue(1024, 1, 10, EventWriteQueue.OverflowPolicy.DROP, null, new RecordingStore()).getCapacity());
+        // spilling without a file falls back to dropping
+        assertEquals("drop", new EventWriteQueue(8, 1, 10, EventWriteQueue.OverflowPolicy.SPILL, null, new RecordingStore()).getOverflowPolicy());
+    }
+
+    private static class RecordingStore implements EventWriteQueue.Store {
+        final List<String> ids = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch writing = new CountDownLatch(1);
+        volatile CountDownLatch blocked;
+        volatile int largestBatch;
+
+        public void write(List<Event> events) {
+            writing.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            largestBatch = Math.max(largestBatch, events.size());
+            for (Event event : events) {
+                ids.add(event.getResource());
+            }
+        }
+
+        public String encode(Event event) {
+            return EventWriteQueue.encodeLine(event.getResource());
+        }
+
+        public Event decode(String line) {
+            return new TestEvent(EventWriteQueue.decodeLine(line)[0]);
+        }
+    }
+
+    private static class TestEvent implements Event {
+        private final String resource;
+        private final Date time = new Date();
+
+        TestEvent(String resource) {
+            this.resource = resource;
+        }
+
+        public String getEvent() { return "test.event"; }
+        public String getResource() { return resource; }
+        public LRS_Statement getLrsStatement() { return null; }
+        public String getContext() { return null; }
+        public String getSessionId() { return null; }
+        public String getUserId() { return null; }
+        public boolean getModify() { return false; }
+        public int getPriority() { return 0; }
+        public Date getEventTime() { return time; }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class UdpEventTransportTest {
+
+    @Test
+    public void testServersOnOneMachineExchangeEvents() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        BlockingQueue<String> receivedByA = new LinkedBlockingQueue<>();
+        BlockingQueue<String> receivedByB = new LinkedBlockingQueue<>();
+
+        // b only sends to a, but must list it to accept its datagrams; only the address is checked
+        UdpEventTransport b = new UdpEventTransport(new InetSocketAddress(loopback, 0),
+                Collections.singletonList(new InetSocketAddress(loopback, 7651)));
+        b.start(receivedByB::add);
+        UdpEventTransport a = new UdpEventTransport(new InetSocketAddress(loopback, 0),
+                Collections.singletonList(new InetSocketAddress(loopback, b.getLocalPort())));
+        a.start(receivedByA::add);
+
+        try {
+            String message = "a-1\t1500000000000\tcontent.read\t/content/a \u00fc";
+            a.publish(message);
+            assertEquals(message, receivedByB.poll(5, TimeUnit.SECONDS));
+            assertTrue(receivedByA.isEmpty());
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    @Test
+    public void testDatagramsFromOtherAddressesAreDropped() throws Exception {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        BlockingQueue<String> receivedByB = new LinkedBlockingQueue<>();
+
+        UdpEventTransport b = new UdpEventTransport(new InetSocketAddress(loopback, 0),
+                Collections.singletonList(new InetSocketAddress("192.0.2.1", 7651)));
+        b.start(receivedByB::add);
+        UdpEventTransport a = new UdpEventTransport(new InetSocketAddress(loopback, 0),
+                Collections.singletonList(new InetSocketAddress(loopback, b.getLocalPort())));
+        a.start(message -> {});
+
+        try {
+            assertFalse(b.isPeer(loopback));
+            assertTrue(b.isPeer(InetAddress.getByName("192.0.2.1")));
+            a.publish("a-1\t1500000000000\trealm.upd\t/realm//site/a");
+            assertNull(receivedByB.poll(1, TimeUnit.SECONDS));
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    @Test
+    public void testParsePeers() {
+        List<InetSocketAddress> peers = UdpEventTransport.parsePeers("localhost:7651, 127.0.0.1:7652,bad,host:port");
+        assertEquals(2, peers.size());
+        assertEquals(7651, peers.get(0).getPort());
+        assertEquals("127.0.0.1", peers.get(1).getHostString());
+        assertEquals(7652, peers.get(1).getPort());
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Verifies the expiration index used by the {@link SessionComponent} maintenance thread.
+ */
+public class SessionExpiryWheelTest
+{
+	private static final long TICK = 1000L;
+
+	@Test
+	public void testDueInTick()
+	{
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK, 8, 0);
+		wheel.schedule("a", 2500);
+		wheel.schedule("b", 5000);
+		assertEquals(2, wheel.size());
+
+		assertTrue(wheel.advance(1999).isEmpty());
+		// due in the first run within the tick it expires in
+		assertEquals(Arrays.asList("a"), wheel.advance(2000));
+		assertTrue(wheel.advance(4999).isEmpty());
+		assertEquals(Arrays.asList("b"), wheel.advance(5000));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testReschedule()
+	{
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK, 8, 0);
+		wheel.schedule("a", 2000);
+		// accessed again before it expired
+		wheel.schedule("a", 6000);
+		assertTrue(wheel.advance(3000).isEmpty());
+		assertEquals(1, wheel.size());
+		assertEquals(Arrays.asList("a"), wheel.advance(6000));
+
+		// moved earlier (shorter inactive interval)
+		wheel.schedule("b", 9000);
+		wheel.schedule("b", 7000);
+		assertEquals(Arrays.asList("b"), wheel.advance(7000));
+		assertTrue(wheel.advance(10000).isEmpty());
+	}
+
+	@Test
+	public void testCancel()
+	{
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK, 8, 0);
+		wheel.schedule("a", 2000);
+		wheel.cancel("a");
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.advance(5000).isEmpty());
+	}
+
+	@Test
+	public void testBeyondOneRotation()
+	{
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK, 8, 0);
+		// same slot as tick 4 but two rounds later
+		wheel.schedule("a", 20000);
+		wheel.schedule("b", 4000);
+		assertEquals(Arrays.asList("b"), wheel.advance(4000));
+		assertTrue(wheel.advance(12000).isEmpty());
+		assertEquals(Arrays.asList("a"), wheel.advance(20000));
+	}
+
+	@Test
+	public void testAlreadyExpired()
+	{
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK, 8, 10000);
+		// expired before the wheel started, or scheduled into a tick which was already processed
+		wheel.schedule("a", 3000);
+		assertEquals(Arrays.asList("a"), wheel.advance(11000));
+		wheel.schedule("b", 10500);
+		assertEquals(Arrays.asList("b"), wheel.advance(11000));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testFarBehind()
+	{
+		SessionExpiryWheel wheel = new SessionExpiryWheel(TICK, 8, 0);
+		for (int i = 1; i <= 20; i++)
+		{
+			wheel.schedule("s" + i, i * 1000L);
+		}
+		// the maintenance thread was held up for several rotations
+		List<String> due = wheel.advance(30000);
+		assertEquals(20, due.size());
+		assertEquals(20, new HashSet<String>(due).size());
+		assertEquals(0, wheel.size());
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Verifies the cache of provider misses used by {@link BaseUserDirectoryService}.
+ */
+public class ProviderMissCacheTest
+{
+	private static final long TTL = 1000L;
+
+	@Test
+	public void testExpiry()
+	{
+		ProviderMissCache cache = new ProviderMissCache(10, TTL);
+		assertFalse(cache.contains("gone", 0));
+
+		cache.add("gone", 0);
+		assertTrue(cache.contains("gone", 999));
+		assertFalse(cache.contains("gone", 1000));
+		// expired entries are dropped when they are looked at
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testBounded()
+	{
+		ProviderMissCache cache = new ProviderMissCache(2, TTL);
+		cache.add("a", 0);
+		cache.add("b", 10);
+		// missed again, so it is now the newest
+		cache.add("a", 20);
+		cache.add("c", 30);
+
+		assertEquals(2, cache.size());
+		assertFalse(cache.contains("b", 40));
+		assertTrue(cache.contains("a", 40));
+		assertTrue(cache.contains("c", 40));
+	}
+
+	@Test
+	public void testExpiredDroppedOnAdd()
+	{
+		ProviderMissCache cache = new ProviderMissCache(10, TTL);
+		cache.add("a", 0);
+		cache.add("b", 500);
+		cache.add("c", 1200);
+
+		assertEquals(2, cache.size());
+		assertTrue(cache.contains("b", 1200));
+	}
+
+	@Test
+	public void testRemove()
+	{
+		ProviderMissCache cache = new ProviderMissCache(10, TTL);
+		cache.add("a", 0);
+		cache.add("b", 0);
+		cache.remove("a");
+		assertFalse(cache.contains("a", 1));
+		assertTrue(cache.contains("b", 1));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+}
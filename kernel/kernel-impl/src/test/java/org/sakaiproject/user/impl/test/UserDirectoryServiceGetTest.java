@@ -324,6 +324,19 @@ public class UserDirectoryServiceGetTest extends SakaiKernelTestBase {
 		log.debug("Return from getUsers=" + users);
 		Assert.assertTrue(users.size() == (searchIds.size() - 1));
 	}
+
+	@Test
+	public void testGetUsersThroughIdsReadsProperties() throws Exception {
+		List<String> searchIds = new ArrayList<String>();
+		for (String eid : new String[] {"localuser", "localfromauthn", "localwithproviderauthn", "localwithfailedproviderauthn"}) {
+			searchIds.add(eidToId.get(eid));
+		}
+		List<User> users = userDirectoryService.getUsers(searchIds);
+		Assert.assertEquals(searchIds.size(), users.size());
+		for (User user : users) {
+			Assert.assertEquals("local", user.getProperties().get(USER_SOURCE_PROPERTY));
+		}
+	}
 	
 	@Test
 	public void testCannotChangeUserId() throws Exception {
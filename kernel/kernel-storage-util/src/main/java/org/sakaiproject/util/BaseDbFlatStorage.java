@@ -24,13 +24,16 @@ package org.sakaiproject.util;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -357,6 +360,19 @@ public class BaseDbFlatStorage
 		return rv;
 	}
 
+	/**
+	 * Read all Resources, handing each to the consumer as it is read rather than collecting them first.
+	 * 
+	 * @param consumer
+	 *        Receives each Resource.
+	 * @return The number of records read.
+	 */
+	public int getAllResources(Consumer<Entity> consumer)
+	{
+		String sql = flatStorageSql.getSelectFieldsSql(m_resourceTableName, fieldList(m_resourceTableReadFields, null));
+		return m_sql.dbReadEach(sql, null, m_reader, entity -> consumer.accept((Entity) entity));
+	}
+
 	public int countAllResources()
 	{
 
@@ -1194,6 +1210,107 @@ public class BaseDbFlatStorage
 		}
 	}
 
+	/**
+	 * Read in properties from the database for a group of resources - when the properties and the main table are related by the id
+	 *
+	 * @param propsById
+	 *        The properties objects to fill, keyed by resource id.
+	 */
+	public void readProperties(Map<String, ? extends ResourcePropertiesEdit> propsById)
+	{
+		Map<Object, ResourcePropertiesEdit> props = new HashMap<Object, ResourcePropertiesEdit>();
+		for (Map.Entry<String, ? extends ResourcePropertiesEdit> entry : propsById.entrySet())
+		{
+			if (entry.getKey() == null) continue;
+			props.put(caseId(entry.getKey()), entry.getValue());
+		}
+		readProperties(null, m_resourcePropertyTableName, m_resourceTableIdField, props);
+	}
+
+	/**
+	 * Read in properties from the database for a group of resources, with as few IN clause queries as the vendor allows rather than a
+	 * query for each. Properties already in the cache are not read again.
+	 *
+	 * @param propsById
+	 *        The properties objects to fill, keyed by the value of idField.
+	 */
+	public void readProperties(Connection conn, String table, String idField, Map<?, ? extends ResourcePropertiesEdit> propsById)
+	{
+		// if not properties table set, skip it
+		if (table == null) return;
+
+		Cache myCache = getCache(table);
+
+		// the properties still to read, keyed by the id as the database returns it
+		final Map<String, ResourcePropertiesEdit> toRead = new HashMap<String, ResourcePropertiesEdit>();
+		List<Object> ids = new ArrayList<Object>();
+		for (Map.Entry<?, ? extends ResourcePropertiesEdit> entry : propsById.entrySet())
+		{
+			Object id = entry.getKey();
+			if (id == null) continue;
+
+			if ( myCache != null )
+			{
+				Object obj = myCache.get(table + ":" + idField + ":" + id);
+				if ( obj != null && obj instanceof ResourcePropertiesEdit )
+				{
+					// Clone the properties - do not return the real value
+					entry.getValue().addAll((ResourcePropertiesEdit) obj);
+					continue;
+				}
+			}
+
+			toRead.put(id.toString(), entry.getValue());
+			ids.add(id);
+		}
+
+		int maxInputs = flatStorageSql.getMaxInputsForSelectWhereInQueries();
+		for (int start = 0; start < ids.size(); start += maxInputs)
+		{
+			Object[] fields = ids.subList(start, Math.min(ids.size(), start + maxInputs)).toArray();
+			String sql = flatStorageSql.getSelectIdNameValueSql(table, idField, fields.length);
+			m_sql.dbRead(conn, sql, fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						// read the fields
+						String id = result.getString(1);
+						String name = result.getString(2);
+						String value = result.getString(3);
+
+						// add to the resource's props, if we got stuff from the fields
+						ResourcePropertiesEdit props = toRead.get(id);
+						if ((props != null) && (name != null) && (value != null))
+						{
+							props.addProperty(name, value);
+						}
+
+						// nothing to return
+						return null;
+					}
+					catch (SQLException e)
+					{
+						M_log.warn("readProperties: " + e);
+						return null;
+					}
+				}
+			});
+		}
+
+		if ( myCache != null )
+		{
+			// cache copies, as in the single resource read, including for resources that have no properties
+			for (Object id : ids)
+			{
+				ResourcePropertiesEdit cacheCopy = new BaseResourcePropertiesEdit();
+				cacheCopy.addAll(toRead.get(id.toString()));
+				myCache.put(table + ":" + idField + ":" + id, cacheCopy);
+			}
+		}
+	}
+
 	/**
 	 * Read in properties from the database.
 	 * 
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -346,6 +347,22 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		return all;
 	}
 
+	/**
+	 * Read all Resources, handing each to the consumer as it is read rather than collecting them first.
+	 * 
+	 * @param consumer
+	 *        Receives each Resource.
+	 * @return The number of records read.
+	 */
+	public int getAllResources(final Consumer<Entity> consumer)
+	{
+		String sql = singleStorageSql.getXmlSql(m_resourceTableName);
+		return m_sql.dbReadEach(sql, null, null, xml -> {
+			Entity entry = readResource((String) xml);
+			if (entry != null) consumer.accept(entry);
+		});
+	}
+
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.util.DbSingleStorage#getAllResources(int, int)
 	 */
@@ -125,6 +125,23 @@ public class FlatStorageSqlDefault implements FlatStorageSql
 		return "select NAME, VALUE from " + table + " where ( " + idField + " = ? )";
 	}
 
+	public String getSelectIdNameValueSql(String table, String idField, int numIds)
+	{
+		StringBuilder sql = new StringBuilder("select " + idField + ", NAME, VALUE from " + table + " where ( " + idField + " in (");
+		for (int i = 0; i < numIds; i++)
+		{
+			sql.append(i == 0 ? "?" : ",?");
+		}
+		sql.append(") )");
+		return sql.toString();
+	}
+
+	public int getMaxInputsForSelectWhereInQueries()
+	{
+		// For Oracle, the maximum supported number of expressions in a list is 1000.
+		return 1000;
+	}
+
 	public String getUpdateSql(String table, String fieldList, String idField)
 	{
 		return "update " + table + " set " + fieldList + " where ( " + idField + " = ? )";
@@ -15,24 +15,26 @@
  */
 package org.sakaiproject.content.util;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import javax.activation.MimetypesFileTypeMap;
 
@@ -94,6 +96,18 @@ public class ZipContentUtil {
         return MAX_ZIP_EXTRACT_FILES;
     }
 
+    /**
+     * Get the content types that are added to zip archives without compression.
+     * @return the types configured with content.zip.storedtypes, or {@link ZipContentWriter#STORED_TYPES_DEFAULT}
+     */
+    public static List<String> getZipStoredTypes() {
+        String[] storedTypes = ServerConfigurationService.getStrings("content.zip.storedtypes");
+        if (storedTypes == null) {
+            storedTypes = ZipContentWriter.STORED_TYPES_DEFAULT;
+        }
+        return Arrays.asList(storedTypes);
+    }
+
 	/**
 	 * Compresses a ContentCollection to a new zip archive with the same folder name
 	 * 
@@ -101,26 +115,13 @@ public class ZipContentUtil {
 	 * @throws Exception on failure
 	 */
     public void compressFolder(Reference reference) { 
-		File temp = null;
-		FileInputStream fis = null;
+		InputStream archive = null;
 		ToolSession toolSession = SessionManager.getCurrentToolSession();
 		try {
-			// Create the compressed archive in the filesystem
-			ZipOutputStream out = null;
-			try {
-				temp = File.createTempFile("sakai_content-", ".tmp");
-				ContentCollection collection = ContentHostingService.getCollection(reference.getId());
-				out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp),BUFFER_SIZE));
-				storeContentCollection(reference.getId(),collection,out);
-			} finally {
-				if (out != null) {
-					try {
-						out.close();
-					} catch (IOException e) {
-					}
-				}
-			}
-			
+			// Find what goes in the archive while the current user's permissions apply, it is written as it is stored
+			ContentCollection collection = ContentHostingService.getCollection(reference.getId());
+			List<Map.Entry<String, ContentResource>> entries = new ArrayList<>();
+			storeContentCollection(reference.getId(),collection,entries);
 			
 			// Store the compressed archive in the repository
 			String resourceId = reference.getId().substring(0,reference.getId().lastIndexOf(Entity.SEPARATOR));
@@ -173,8 +174,8 @@ public class ZipContentUtil {
 					throw new Exception(e);
 				}
 			}
-			fis = new FileInputStream(temp);
-			resourceEdit.setContent(fis);
+			archive = streamArchive(entries);
+			resourceEdit.setContent(archive);
 			resourceEdit.setContentType(mime.getContentType(resourceId));
 			ResourcePropertiesEdit props = resourceEdit.getPropertiesEdit();
 			props.addProperty(ResourcePropertiesEdit.PROP_DISPLAY_NAME, displayName);
@@ -189,18 +190,63 @@ public class ZipContentUtil {
 			LOG.error(e.getMessage(), e);
 		} 
 		finally {
-			if (fis != null) {
+			if (archive != null) {
 				try {
-					fis.close();
+					archive.close();
 				} catch (IOException e) {
 				}
 			}
-			if (temp != null && temp.exists()) { 
-				if (!temp.delete()) {
-					LOG.warn("failed to remove temp file");
+		}
+	}
+
+	/**
+	 * Writes a zip archive on a separate thread into a pipe, so it can be read while it is written rather than being
+	 * assembled in a temp file first. A failure while writing is thrown from the returned stream instead of it ending.
+	 * 
+	 * @param entries the names and resources to put in the archive
+	 * @return the archive
+	 * @throws IOException if the pipe cannot be created
+	 */
+	private InputStream streamArchive(final List<Map.Entry<String, ContentResource>> entries) throws IOException {
+		final PipedInputStream in = new PipedInputStream(BUFFER_SIZE);
+		final PipedOutputStream pipe = new PipedOutputStream(in);
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final List<String> storedTypes = getZipStoredTypes();
+		Thread writer = new Thread(() -> {
+			ZipContentWriter out = new ZipContentWriter(pipe, storedTypes);
+			try {
+				for (Map.Entry<String, ContentResource> entry : entries) {
+					out.putResource(entry.getKey(), entry.getValue());
+				}
+				out.close();
+			} catch (Exception e) {
+				failure.set(e);
+				try {
+					pipe.close();
+				} catch (IOException ioe) {
 				}
 			}
-		}
+		}, "ZipContentUtil " + Thread.currentThread().getName());
+		writer.setDaemon(true);
+		writer.start();
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				return checkEnd(super.read());
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return checkEnd(super.read(b, off, len));
+			}
+
+			private int checkEnd(int read) throws IOException {
+				if (read == -1 && failure.get() != null) {
+					throw new IOException("Failed to write zip archive", failure.get());
+				}
+				return read;
+			}
+		};
 	}
 	
 	private void addAlert(ToolSession toolSession, String alert){
@@ -469,14 +515,14 @@ public class ZipContentUtil {
 	}
     
 	/**
-	 * Iterates the collection.getMembers() and streams content resources recursively to the ZipOutputStream
+	 * Iterates the collection.getMembers() and lists the content resources recursively with their names in the archive
 	 * 
 	 * @param rootId
 	 * @param collection
 	 * @param out
 	 * @throws Exception
 	 */
-	private void storeContentCollection(String rootId, ContentCollection collection, ZipOutputStream out) throws Exception {
+	private void storeContentCollection(String rootId, ContentCollection collection, List<Map.Entry<String, ContentResource>> out) throws Exception {
 		List<String> members = collection.getMembers();
 		for (String memberId: members) {
 			if (memberId.endsWith(Entity.SEPARATOR)) {
@@ -491,14 +537,14 @@ public class ZipContentUtil {
 	}
 
 	/**
-	 * Streams content resource to the ZipOutputStream
+	 * Lists a content resource with its name in the archive
 	 * 
 	 * @param rootId
 	 * @param resource
 	 * @param out
 	 * @throws Exception
 	 */
-	private void storeContentResource(String rootId, ContentResource resource, ZipOutputStream out) throws Exception {		
+	private void storeContentResource(String rootId, ContentResource resource, List<Map.Entry<String, ContentResource>> out) throws Exception {		
 		String filename = resource.getId().substring(rootId.length(),resource.getId().length());
 		//Inorder to have username as the folder name rather than having eids
 		if(ContentHostingService.isInDropbox(rootId) && ServerConfigurationService.getBoolean("dropbox.zip.haveDisplayname", true)) {
@@ -518,18 +564,7 @@ public class ZipContentUtil {
 				return;
 			}
 		}
-		ZipEntry zipEntry = new ZipEntry(filename);
-		zipEntry.setSize(resource.getContentLength());
-		out.putNextEntry(zipEntry);
-		InputStream contentStream = null;
-		try {
-			contentStream = resource.streamContent();
-			IOUtils.copy(contentStream, out);
-		} finally {
-			if (contentStream != null) {
-				contentStream.close();
-			}
-		}
+		out.add(new AbstractMap.SimpleImmutableEntry<>(filename, resource));
 	}
 	
 	private String extractZipCollectionPrefix(ContentResource resource) {
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.exception.ServerOverloadException;
+
+/**
+ * Writes content resources into a zip archive as they are read, so an archive can go straight to a response or into
+ * the repository without first being assembled on disk. Bodies that are already compressed (images, audio, video,
+ * archives and office documents) are written without compression as there is nothing to gain from deflating them again.
+ */
+public class ZipContentWriter implements Closeable {
+
+	/**
+	 * Content types written without compression, entries ending in "/" or "." match every type that starts with them.
+	 */
+	public static final String[] STORED_TYPES_DEFAULT = {
+		"image/jpeg", "image/png", "image/gif", "image/webp",
+		"audio/", "video/",
+		"application/zip", "application/x-zip-compressed", "application/gzip", "application/x-gzip",
+		"application/x-bzip2", "application/x-7z-compressed", "application/x-rar-compressed",
+		"application/java-archive", "application/epub+zip", "application/pdf",
+		"application/vnd.openxmlformats-officedocument.", "application/vnd.oasis.opendocument."
+	};
+
+	private static final int BUFFER_SIZE = 32000;
+
+	private final ZipOutputStream out;
+	private final Collection<String> storedTypes;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	public ZipContentWriter(OutputStream out) {
+		this(out, Arrays.asList(STORED_TYPES_DEFAULT));
+	}
+
+	/**
+	 * @param out where the archive is written, it is closed along with this writer.
+	 * @param storedTypes the content types to write without compression, see {@link #STORED_TYPES_DEFAULT}.
+	 */
+	public ZipContentWriter(OutputStream out, Collection<String> storedTypes) {
+		this.out = new ZipOutputStream(out);
+		this.storedTypes = storedTypes;
+	}
+
+	/**
+	 * Adds the body of a resource to the archive.
+	 *
+	 * @param name the name of the entry in the archive.
+	 * @param resource the resource to add.
+	 * @throws java.util.zip.ZipException if the archive already holds an entry with this name, nothing has been written.
+	 */
+	public void putResource(String name, ContentResource resource) throws IOException, ServerOverloadException {
+		putEntry(new ZipEntry(name), resource.getContentType());
+		InputStream content = resource.streamContent();
+		if (content != null) {
+			try {
+				copy(content);
+			} finally {
+				content.close();
+			}
+		}
+		out.closeEntry();
+	}
+
+	/**
+	 * Adds a stream to the archive, the stream is closed once it has been read.
+	 *
+	 * @param name the name of the entry in the archive.
+	 * @param contentType the type of the content, used to decide if it is compressed.
+	 * @param content the content of the entry.
+	 * @throws java.util.zip.ZipException if the archive already holds an entry with this name, nothing has been written.
+	 */
+	public void putStream(String name, String contentType, InputStream content) throws IOException {
+		try {
+			putEntry(new ZipEntry(name), contentType);
+			copy(content);
+		} finally {
+			content.close();
+		}
+		out.closeEntry();
+	}
+
+	/**
+	 * Checks if content of this type is written without compression.
+	 */
+	public boolean isStored(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		String type = contentType.toLowerCase(Locale.ENGLISH);
+		int parameters = type.indexOf(';');
+		if (parameters >= 0) {
+			type = type.substring(0, parameters).trim();
+		}
+		for (String stored : storedTypes) {
+			if (stored.endsWith("/") || stored.endsWith(".") ? type.startsWith(stored) : type.equals(stored)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the end of the archive without closing the underlying stream.
+	 */
+	public void finish() throws IOException {
+		out.finish();
+	}
+
+	/**
+	 * Writes the end of the archive and closes the underlying stream.
+	 */
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void putEntry(ZipEntry entry, String contentType) throws IOException {
+		// The level applies to the next entry, entries are still deflated so their sizes need not be known up front
+		out.setLevel(isStored(contentType) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+		out.putNextEntry(entry);
+	}
+
+	private void copy(InputStream content) throws IOException {
+		int count;
+		while ((count = content.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.content.util.ZipContentWriter;
+
+public class ZipContentWriterTest {
+
+	@Test
+	public void testStoredTypes() {
+		ZipContentWriter writer = new ZipContentWriter(new ByteArrayOutputStream(), Arrays.asList("image/jpeg", "video/"));
+		assertTrue(writer.isStored("image/jpeg"));
+		assertTrue(writer.isStored("IMAGE/JPEG; charset=binary"));
+		assertTrue(writer.isStored("video/mp4"));
+		assertFalse(writer.isStored("image/jpeg2000"));
+		assertFalse(writer.isStored("text/plain"));
+		assertFalse(writer.isStored(null));
+	}
+
+	@Test
+	public void testArchive() throws Exception {
+		byte[] text = new byte[100000];
+		Arrays.fill(text, (byte) 'a');
+		byte[] photo = new byte[100000];
+		new Random(42).nextBytes(photo);
+		ContentResource resource = mock(ContentResource.class);
+		when(resource.getContentType()).thenReturn("image/png");
+		when(resource.streamContent()).thenReturn(new ByteArrayInputStream(photo));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZipContentWriter writer = new ZipContentWriter(out);
+		writer.putStream("folder/notes.txt", "text/plain", new ByteArrayInputStream(text));
+		writer.putResource("folder/photo.png", resource);
+		writer.close();
+
+		ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+		ZipEntry entry = in.getNextEntry();
+		assertEquals("folder/notes.txt", entry.getName());
+		assertArrayEquals(text, IOUtils.toByteArray(in));
+		assertTrue(entry.getCompressedSize() < text.length / 100);
+
+		entry = in.getNextEntry();
+		assertEquals("folder/photo.png", entry.getName());
+		assertArrayEquals(photo, IOUtils.toByteArray(in));
+		// written without compression, so only the deflate block headers are added
+		assertTrue(entry.getCompressedSize() >= photo.length);
+		assertTrue(entry.getCompressedSize() < photo.length + 100);
+
+		assertNull(in.getNextEntry());
+	}
+
+	@Test
+	public void testDuplicateEntry() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZipContentWriter writer = new ZipContentWriter(out);
+		writer.putStream("notes.txt", "text/plain", new ByteArrayInputStream(new byte[] {1}));
+		try {
+			writer.putStream("notes.txt", "text/plain", new ByteArrayInputStream(new byte[] {2}));
+			throw new AssertionError("Duplicate entry should fail");
+		} catch (ZipException e) {
+			// expected, and the archive can carry on
+		}
+		writer.putStream("other.txt", "text/plain", new ByteArrayInputStream(new byte[] {3}));
+		writer.close();
+
+		ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals("notes.txt", in.getNextEntry().getName());
+		assertArrayEquals(new byte[] {1}, IOUtils.toByteArray(in));
+		assertEquals("other.txt", in.getNextEntry().getName());
+		assertArrayEquals(new byte[] {3}, IOUtils.toByteArray(in));
+		assertNull(in.getNextEntry());
+	}
+
+}
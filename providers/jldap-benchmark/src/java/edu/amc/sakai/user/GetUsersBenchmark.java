@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2003 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.amc.sakai.user;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.user.api.UserEdit;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * Times {@link JLDAPDirectoryProvider#getUsers(Collection)} loading a roster from a simulated directory which takes
+ * a fixed time to answer each search, with the batches searched one after another and in parallel. The roster is
+ * made of the {@link UserEditStub}s from the jldap-mock module. Run with java -jar target/benchmarks.jar GetUsersBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GetUsersBenchmark {
+
+	/** Matches the eids in the filter written by SimpleLdapAttributeMapper.getManyUsersInOneSearch() */
+	private static final Pattern EID_FILTER = Pattern.compile("cn=([^)]+)");
+
+	@Param({ "1500" })
+	public int users;
+
+	@Param({ "200" })
+	public int batchSize;
+
+	@Param({ "1", "4", "8" })
+	public int batchThreads;
+
+	/** Milliseconds the directory takes to answer one search */
+	@Param({ "20" })
+	public int latency;
+
+	/** Searches the directory will answer at the same time, like the connection pool */
+	@Param({ "10" })
+	public int connections;
+
+	private JLDAPDirectoryProvider provider;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		provider = new SimulatedDirectoryProvider(latency, connections);
+		provider.setBatchSize(batchSize);
+		provider.setBatchThreads(batchThreads);
+		provider.init();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		long searches = provider.getBatchSearchCount();
+		if (searches > 0) {
+			System.out.println("\nbatch searches: " + searches + ", average: " + (provider.getBatchSearchTime() / searches)
+					+ "ms, slowest: " + provider.getBatchSearchMaxTime() + "ms");
+		}
+		provider.destroy();
+	}
+
+	@Benchmark
+	public Collection<UserEdit> getUsers() {
+		List<UserEdit> roster = new ArrayList<UserEdit>(users);
+		for (int i = 0; i < users; i++) {
+			UserEdit userEdit = new UserEditStub();
+			userEdit.setEid("student" + i);
+			roster.add(userEdit);
+		}
+		provider.getUsers(roster);
+		if (roster.size() != users) {
+			throw new IllegalStateException("Expected " + users + " users but found " + roster.size());
+		}
+		return roster;
+	}
+
+	/**
+	 * Answers every search from memory after a fixed delay instead of asking an LDAP server
+	 */
+	static class SimulatedDirectoryProvider extends JLDAPDirectoryProvider {
+
+		private final int latency;
+		private final Semaphore connections;
+
+		SimulatedDirectoryProvider(int latency, int connections) {
+			this.latency = latency;
+			this.connections = new Semaphore(connections);
+		}
+
+		@Override
+		protected List<LdapUserData> searchDirectory(String filter, LDAPConnection conn, LdapEntryMapper mapper,
+				String[] searchResultPhysicalAttributeNames, String searchBaseDn, int maxResults) throws LDAPException {
+			try {
+				connections.acquire();
+				try {
+					Thread.sleep(latency);
+				} finally {
+					connections.release();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new LDAPException("interrupted", LDAPException.OTHER, null);
+			}
+
+			List<LdapUserData> results = new ArrayList<LdapUserData>();
+			Matcher eids = EID_FILTER.matcher(filter);
+			while (eids.find()) {
+				String eid = eids.group(1);
+				LdapUserData userData = new LdapUserData();
+				userData.setEid(eid);
+				userData.setFirstName("First " + eid);
+				userData.setLastName("Last " + eid);
+				userData.setEmail(eid + "@example.edu");
+				userData.setProperties(new Properties());
+				results.add(userData);
+			}
+			return results;
+		}
+	}
+}
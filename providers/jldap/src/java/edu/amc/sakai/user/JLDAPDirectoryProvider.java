@@ -28,6 +28,16 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,6 +94,9 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 
 	/** Default LDAP maximum number of objects to query for */
 	public static final int DEFAULT_BATCH_SIZE = 200;
+
+	/** Default maximum number of batches searched at the same time when loading multiple users */
+	public static final int DEFAULT_BATCH_THREADS = 4;
 	
 	/** Property of the user object to store the display ID under */
 	public static final String DISPLAY_ID_PROPERTY = JLDAPDirectoryProvider.class+"-displayId";
@@ -137,6 +150,17 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 	/** The size of each batch to load from LDAP when loading multiple users. */
 	private int batchSize = DEFAULT_BATCH_SIZE;
 
+	/** The maximum number of batches searched at the same time when loading multiple users. */
+	private int batchThreads = DEFAULT_BATCH_THREADS;
+
+	/** Runs the batch searches for {@link #getUsers(Collection)}, null if batches are searched one after another. */
+	private ExecutorService batchExecutor;
+
+	/** Batch search statistics: number of searches, total and slowest time (ms). */
+	private final AtomicLong batchSearchCount = new AtomicLong();
+	private final AtomicLong batchSearchTime = new AtomicLong();
+	private final AtomicLong batchSearchMaxTime = new AtomicLong();
+
 	/** Socket factory for secure connections. Only relevant if
 	 * {@link #secureConnection} is true. Defaults to a new instance
 	 * of {@link LDAPJSSESecureSocketFactory}.
@@ -245,9 +269,37 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 
 		initLdapConnectionManager();
 		initLdapAttributeMapper();
+		initBatchExecutor();
 
 	}
 
+	/**
+	 * Starts the threads used to search batches of users in parallel. Each running
+	 * batch holds a connection, so with pooling the threads are capped at the
+	 * size of the pool.
+	 */
+	protected void initBatchExecutor() {
+
+		int threads = batchThreads;
+		if (pooling && threads > poolMaxConns) {
+			M_log.warn("JLDAP batchThreads is larger than poolMaxConns, batchThreads has been reduced from: " + threads + " to: " + poolMaxConns);
+			threads = poolMaxConns;
+		}
+		if (threads <= 1) {
+			return;
+		}
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		batchExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Sakai.JLDAPDirectoryProvider.batch-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		M_log.info("JLDAP searching up to " + threads + " batches of " + batchSize + " users in parallel");
+	}
+
 	/**
 	 * Lazily "injects" a {@link LdapConnectionManager} if one
 	 * has not been assigned already.
@@ -348,6 +400,11 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 			M_log.debug("destroy()");
 		}
 
+		if ( batchExecutor != null ) {
+			batchExecutor.shutdownNow();
+			batchExecutor = null;
+		}
+
 	}
 
 	/**
@@ -640,58 +697,63 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 			M_log.debug("getUsers(): [Collection size = " + users.size() + "]");
 		}
 
-		LDAPConnection conn = null;
 		boolean abortiveSearch = false;
 		int maxQuerySize = getMaxObjectsToQueryFor();
-		UserEdit userEdit = null;
 		
-		HashMap<String, UserEdit> usersToSearchInLDAP = new HashMap<String, UserEdit>();
+		// split the users up so no query is larger than maxQuerySize
+		List<Map<String, UserEdit>> batches = new ArrayList<Map<String, UserEdit>>();
+		Map<String, UserEdit> usersToSearchInLDAP = new HashMap<String, UserEdit>();
+		for ( Iterator<UserEdit> userEdits = users.iterator(); userEdits.hasNext(); ) {
+			UserEdit userEdit = (UserEdit) userEdits.next();
+			String eid = userEdit.getEid();
+			
+			if ( !(isSearchableEid(eid)) ) {
+				userEdits.remove();
+				continue;
+			}
+			usersToSearchInLDAP.put(eid, userEdit);
+			if (usersToSearchInLDAP.size() == maxQuerySize) {
+				batches.add(usersToSearchInLDAP);
+				usersToSearchInLDAP = new HashMap<String, UserEdit>();
+			}
+		}
+		if (!usersToSearchInLDAP.isEmpty()) {
+			batches.add(usersToSearchInLDAP);
+		}
+
 		List<UserEdit> usersToRemove = new ArrayList<UserEdit>();
+		BatchSearch batch = null;
+		long start = System.currentTimeMillis();
 		try {
-			int cnt = 0;
-			for ( Iterator<UserEdit> userEdits = users.iterator(); userEdits.hasNext(); ) {
-				userEdit = (UserEdit) userEdits.next();
-				String eid = userEdit.getEid();
-				
-				if ( !(isSearchableEid(eid)) ) {
-					userEdits.remove();
-					//proceed ahead with this (perhaps the final) iteration
-					//usersToSearchInLDAP needs to be processed unless empty
-				} else {
-						usersToSearchInLDAP.put(eid, userEdit);
-						cnt++;
+			ExecutorService executor = batchExecutor;
+			if (executor == null || batches.size() == 1) {
+				for (Map<String, UserEdit> batchUsers : batches) {
+					batch = new BatchSearch(batchUsers, maxQuerySize);
+					mergeBatch(batch.call(), usersToRemove);
 				}
-				
-				// We need to make sure this query isn't larger than maxQuerySize
-				if ((!userEdits.hasNext() || cnt == maxQuerySize) && !usersToSearchInLDAP.isEmpty()) {
-					if (conn == null) {
-						conn = ldapConnectionManager.getConnection();
+			} else {
+				// fan the batches out and merge the results on this thread as they arrive
+				CompletionService<BatchSearch> completionService = new ExecutorCompletionService<BatchSearch>(executor);
+				List<Future<BatchSearch>> futures = new ArrayList<Future<BatchSearch>>(batches.size());
+				try {
+					for (Map<String, UserEdit> batchUsers : batches) {
+						futures.add(completionService.submit(new BatchSearch(batchUsers, maxQuerySize)));
 					}
-					
-					String filter = ldapAttributeMapper.getManyUsersInOneSearch(usersToSearchInLDAP.keySet());
-					List<LdapUserData> ldapUsers = searchDirectory(filter, null, null, null, null, maxQuerySize);
-				
-					for (LdapUserData ldapUserData : ldapUsers) {
-						String ldapEid = ldapUserData.getEid();
-
-						if (StringUtils.isEmpty(ldapEid)) {
-							continue;
+					for (int i = 0; i < futures.size(); i++) {
+						try {
+							batch = completionService.take().get();
+						} catch (ExecutionException e) {
+							if (e.getCause() instanceof LDAPException) {
+								throw (LDAPException) e.getCause();
+							}
+							throw e;
 						}
-							ldapEid = ldapEid.toLowerCase();
-
-						UserEdit ue = usersToSearchInLDAP.get(ldapEid);
-						mapUserDataOntoUserEdit(ldapUserData, ue);
-						usersToSearchInLDAP.remove(ldapEid);
+						mergeBatch(batch, usersToRemove);
 					}
-					
-					// see if there are any users that we could not find in the LDAP query
-					for (Map.Entry<String, UserEdit> entry : usersToSearchInLDAP.entrySet()) {
-						usersToRemove.add(entry.getValue());
+				} finally {
+					for (Future<BatchSearch> future : futures) {
+						future.cancel(true);
 					}
-					
-					// clear the HashMap and reset the counter
-					usersToSearchInLDAP.clear();
-					cnt = 0;
 				}
 			}
 			
@@ -703,26 +765,23 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 				users.remove(userRemove);
 			}
 			
+			if (M_log.isDebugEnabled()) {
+				M_log.debug("getUsers(): searched " + batches.size() + " batches in " + (System.currentTimeMillis() - start) + "ms");
+			}
+			
 		} catch (LDAPException e)	{
 			abortiveSearch = true;
-			throw new RuntimeException("getUsers(): LDAPException during search [eid = " + 
-					(userEdit == null ? null : userEdit.getEid()) + 
+			throw new RuntimeException("getUsers(): LDAPException during search [batches = " + 
+					batches.size() + 
 					"][result code = " + e.resultCodeToString() + 
 					"][error message = " + e.getLDAPErrorMessage() + "]", e);
 		} catch ( Exception e ) {
 			abortiveSearch = true;
-			throw new RuntimeException("getUsers(): RuntimeException during search eid = " + 
-					(userEdit == null ? null : userEdit.getEid()) + 
+			throw new RuntimeException("getUsers(): RuntimeException during search [batches = " + 
+					batches.size() + 
 					"]", e);
 		} finally {
 
-			if ( conn != null ) {
-				if ( M_log.isDebugEnabled() ) {
-					M_log.debug("getUsers(): returning connection to connection manager");
-				}
-				ldapConnectionManager.returnConnection(conn);
-			}
-
 			// no sense in returning a partially complete search result
 			if ( abortiveSearch ) {
 				if ( M_log.isDebugEnabled() ) {
@@ -734,6 +793,68 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 
 	}
 
+	/**
+	 * Maps the results of a batch search onto the users in the batch
+	 * 
+	 * @param batch a completed batch search
+	 * @param usersToRemove collects the users in the batch which were not found
+	 */
+	private void mergeBatch(BatchSearch batch, List<UserEdit> usersToRemove) {
+		Map<String, UserEdit> usersToSearchInLDAP = batch.users;
+		for (LdapUserData ldapUserData : batch.results) {
+			String ldapEid = ldapUserData.getEid();
+
+			if (StringUtils.isEmpty(ldapEid)) {
+				continue;
+			}
+			ldapEid = ldapEid.toLowerCase();
+
+			UserEdit ue = usersToSearchInLDAP.get(ldapEid);
+			mapUserDataOntoUserEdit(ldapUserData, ue);
+			usersToSearchInLDAP.remove(ldapEid);
+		}
+		
+		// see if there are any users that we could not find in the LDAP query
+		for (Map.Entry<String, UserEdit> entry : usersToSearchInLDAP.entrySet()) {
+			usersToRemove.add(entry.getValue());
+		}
+	}
+
+	/**
+	 * One OR-filter search for a batch of users, each search borrows its own connection.
+	 * The users are only updated by {@link #mergeBatch(BatchSearch, List)}, on the calling thread.
+	 */
+	private class BatchSearch implements Callable<BatchSearch> {
+		private final Map<String, UserEdit> users;
+		private final int maxQuerySize;
+		private List<LdapUserData> results;
+
+		BatchSearch(Map<String, UserEdit> users, int maxQuerySize) {
+			this.users = users;
+			this.maxQuerySize = maxQuerySize;
+		}
+
+		public BatchSearch call() throws LDAPException {
+			long start = System.currentTimeMillis();
+			String filter = ldapAttributeMapper.getManyUsersInOneSearch(users.keySet());
+			results = searchDirectory(filter, null, null, null, null, maxQuerySize);
+			recordBatchSearch(users.size(), System.currentTimeMillis() - start);
+			return this;
+		}
+	}
+
+	private void recordBatchSearch(int size, long time) {
+		batchSearchCount.incrementAndGet();
+		batchSearchTime.addAndGet(time);
+		long max;
+		while (time > (max = batchSearchMaxTime.get()) && !batchSearchMaxTime.compareAndSet(max, time)) {
+			// retry
+		}
+		if (M_log.isDebugEnabled()) {
+			M_log.debug("getUsers(): batch of " + size + " users took " + time + "ms");
+		}
+	}
+
 	/**
 	 * By default returns the global boolean setting configured
 	 * via {@link #setAuthenticateWithProviderFirst(boolean)}.
@@ -1410,6 +1531,42 @@ public class JLDAPDirectoryProvider implements UserDirectoryProvider, LdapConnec
 		this.batchSize = batchSize;
 	}
 
+	/**
+	 * @return The maximum number of batches searched at the same time when loading multiple users.
+	 */
+	public int getBatchThreads() {
+		return batchThreads;
+	}
+
+	/**
+	 * @param batchThreads The maximum number of batches searched at the same time when loading
+	 * multiple users, 1 searches the batches one after another. Only read by {@link #init()}.
+	 */
+	public void setBatchThreads(int batchThreads) {
+		this.batchThreads = batchThreads;
+	}
+
+	/**
+	 * @return The number of batch searches run by {@link #getUsers(Collection)}.
+	 */
+	public long getBatchSearchCount() {
+		return batchSearchCount.get();
+	}
+
+	/**
+	 * @return The total time (ms) taken by the batch searches run by {@link #getUsers(Collection)}.
+	 */
+	public long getBatchSearchTime() {
+		return batchSearchTime.get();
+	}
+
+	/**
+	 * @return The time (ms) taken by the slowest batch search run by {@link #getUsers(Collection)}.
+	 */
+	public long getBatchSearchMaxTime() {
+		return batchSearchMaxTime.get();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
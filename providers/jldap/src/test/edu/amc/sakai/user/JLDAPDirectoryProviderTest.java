@@ -23,7 +23,14 @@ package edu.amc.sakai.user;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 import java.util.Stack;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.jmock.Mock;
 import org.jmock.cglib.MockObjectTestCase;
@@ -315,6 +322,50 @@ public class JLDAPDirectoryProviderTest extends MockObjectTestCase {
 		mockDoGetUserByEid.verify();
 		*/
 	
+	public void testGetUsersMergesBatchesSearchedInParallel() {
+		final Set<String> searchThreads = Collections.synchronizedSet(new HashSet<String>());
+		JLDAPDirectoryProvider batchProvider = new JLDAPDirectoryProvider() {
+			protected List<LdapUserData> searchDirectory(String filter, LDAPConnection conn, LdapEntryMapper mapper,
+					String[] searchResultPhysicalAttributeNames, String searchBaseDn, int maxResults) {
+				searchThreads.add(Thread.currentThread().getName());
+				List<LdapUserData> results = new ArrayList<LdapUserData>();
+				Matcher eids = Pattern.compile("cn=([^)]+)").matcher(filter);
+				while (eids.find()) {
+					if (!eids.group(1).startsWith("missing")) {
+						LdapUserData data = new LdapUserData();
+						data.setEid(eids.group(1));
+						data.setProperties(new Properties());
+						results.add(data);
+					}
+				}
+				return results;
+			}
+		};
+		mockConnManager.expects(once()).method("setConfig").with(same(batchProvider));
+		mockConnManager.expects(once()).method("init");
+		batchProvider.setLdapConnectionManager(connManager);
+		batchProvider.setBatchSize(2);
+		batchProvider.setBatchThreads(3);
+		batchProvider.init();
+		try {
+			Collection<UserEdit> users = new ArrayList<UserEdit>();
+			for (String eid : new String[] {"user-1", "user-2", "missing-3", "user-4", "user-5", "user-6", "missing-7"}) {
+				UserEdit userEdit = new UserEditStub();
+				userEdit.setEid(eid);
+				users.add(userEdit);
+			}
+			batchProvider.getUsers(users);
+			assertEquals(5, users.size());
+			for (UserEdit userEdit : users) {
+				assertTrue(userEdit.getEid().startsWith("user-"));
+			}
+			assertEquals(4, batchProvider.getBatchSearchCount());
+			assertFalse(searchThreads.contains(Thread.currentThread().getName()));
+		} finally {
+			batchProvider.destroy();
+		}
+	}
+	
 	public void testFindUserByEmailDispatch() {
 		final Mock mockDoSearchDirectoryForSingleEntry = mock(VarargsMethod.class);
 		final VarargsMethod doSearchDirectoryForSingleEntry = (VarargsMethod)mockDoSearchDirectoryForSingleEntry.proxy();